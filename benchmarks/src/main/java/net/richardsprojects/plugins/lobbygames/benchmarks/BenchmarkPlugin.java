@@ -0,0 +1,178 @@
+package net.richardsprojects.plugins.lobbygames.benchmarks;
+
+import net.richardsprojects.plugins.lobbygames.LobbyGames;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Sets up just enough of a server for the datastores to run in a benchmark.
+ * Bukkit gets a server whose scheduler accepts tasks without ever running
+ * them, so background saves and flushes only happen when a benchmark asks
+ * for them. LobbyGames.instance gets a plugin with its config loaded from
+ * the default config.yml, the same way the plugin loads it on a server.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public final class BenchmarkPlugin {
+
+	private static final Logger LOG = Logger.getLogger("LobbyGames");
+	private static final AtomicInteger TASK_IDS = new AtomicInteger();
+
+	private static boolean serverInstalled = false;
+
+	private BenchmarkPlugin() {}
+
+	/**
+	 * Installs the server if it isn't yet and a fresh plugin instance that
+	 * keeps its files in the provided folder.
+	 *
+	 * @param dataFolder the plugin's data folder
+	 * @return the plugin instance, so its config can be changed
+	 */
+	public static synchronized LobbyGames install(File dataFolder) {
+		if (!serverInstalled) {
+			Bukkit.setServer(proxy(Server.class, BenchmarkPlugin::handleServer));
+			serverInstalled = true;
+		}
+
+		LobbyGames plugin = allocatePlugin();
+		plugin.log = LOG;
+		LobbyGames.instance = plugin;
+		LobbyGames.dataFolder = dataFolder;
+
+		// writes the default config.yml into the folder and reads it back
+		try {
+			Method loadConfig = LobbyGames.class.getDeclaredMethod("loadConfig");
+			loadConfig.setAccessible(true);
+			if (!(Boolean) loadConfig.invoke(plugin)) {
+				throw new IllegalStateException("Could not load the default config");
+			}
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Could not load the default config", e);
+		}
+
+		return plugin;
+	}
+
+	/**
+	 * Creates a new temporary folder for a benchmark's files.
+	 *
+	 * @param name a name to recognise the folder by
+	 * @return the folder
+	 * @throws IOException if it could not be created
+	 */
+	public static File createFolder(String name) throws IOException {
+		return Files.createTempDirectory("lobbygames-" + name).toFile();
+	}
+
+	/**
+	 * Deletes a folder and everything in it.
+	 *
+	 * @param folder the folder
+	 * @throws IOException if something could not be deleted
+	 */
+	public static void deleteFolder(File folder) throws IOException {
+		if (folder == null || !folder.exists()) return;
+
+		try (Stream<Path> paths = Files.walk(folder.toPath())) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	/**
+	 * JavaPlugin can only be constructed by a server's plugin class loader, so
+	 * the instance is allocated without running a constructor. Every config
+	 * field is then set by loadConfig.
+	 */
+	private static LobbyGames allocatePlugin() {
+		try {
+			Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			Object unsafe = field.get(null);
+			Method allocate = unsafe.getClass().getMethod("allocateInstance", Class.class);
+			return (LobbyGames) allocate.invoke(unsafe, LobbyGames.class);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Could not create the plugin", e);
+		}
+	}
+
+	private static Object handleServer(Object proxy, Method method, Object[] args) {
+		switch (method.getName()) {
+			case "getLogger":
+				return LOG;
+			case "getName":
+			case "getVersion":
+			case "getBukkitVersion":
+				return "benchmark";
+			case "getScheduler":
+				return proxy(BukkitScheduler.class, BenchmarkPlugin::handleScheduler);
+			default:
+				return defaultValue(proxy, method, args);
+		}
+	}
+
+	/**
+	 * Accepts every task and returns a handle to it, but never runs it.
+	 */
+	private static Object handleScheduler(Object proxy, Method method, Object[] args) {
+		if (method.getReturnType() == BukkitTask.class) {
+			final int id = TASK_IDS.incrementAndGet();
+			return proxy(BukkitTask.class, (task, taskMethod, taskArgs) -> {
+				if (taskMethod.getName().equals("getTaskId")) return id;
+				return defaultValue(task, taskMethod, taskArgs);
+			});
+		}
+		if (method.getReturnType() == int.class) {
+			return TASK_IDS.incrementAndGet();
+		}
+
+		return defaultValue(proxy, method, args);
+	}
+
+	/**
+	 * Returns what an unimplemented method returns: null, false or 0.
+	 */
+	private static Object defaultValue(Object proxy, Method method, Object[] args) {
+		switch (method.getName()) {
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return method.getDeclaringClass().getSimpleName() + "(benchmark)";
+		}
+
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class) return false;
+		if (type == long.class) return 0L;
+		if (type == double.class) return 0D;
+		if (type == float.class) return 0F;
+		if (type == short.class) return (short) 0;
+		if (type == byte.class) return (byte) 0;
+		if (type == char.class) return (char) 0;
+		if (type == int.class) return 0;
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(BenchmarkPlugin.class.getClassLoader(), new Class<?>[] {type}, handler);
+	}
+}
@@ -0,0 +1,35 @@
+package net.richardsprojects.plugins.lobbygames.benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once for every thread count in the threads system
+ * property, which defaults to 1,4,16. Every other argument is passed to JMH
+ * as usual, for example a regex to only run some benchmarks or -p
+ * players=1000 to only run one dataset size. Benchmarks that set their own
+ * thread count keep it.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public final class BenchmarkRunner {
+
+	private BenchmarkRunner() {}
+
+	public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+		CommandLineOptions options = new CommandLineOptions(args);
+
+		for (String threads : System.getProperty("threads", "1,4,16").split(",")) {
+			Options run = new OptionsBuilder()
+					.parent(options)
+					.threads(Integer.parseInt(threads.trim()))
+					.build();
+			new Runner(run).run();
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package net.richardsprojects.plugins.lobbygames.benchmarks;
+
+import net.richardsprojects.plugins.lobbygames.datastore.Datastore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A generated set of players with a name, a 2048 highscore and tic tac toe
+ * stats each. The same size always generates the same players, so results
+ * from different runs can be compared.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public final class Dataset {
+
+	private static final long SEED = 20170328L;
+
+	private final UUID[] uuids;
+	private final String[] names;
+	private final int[] highscores;
+	private final int[][] ticTacToe;
+
+	/**
+	 * @param players how many players to generate
+	 */
+	public Dataset(int players) {
+		Random random = new Random(SEED);
+
+		uuids = new UUID[players];
+		names = new String[players];
+		highscores = new int[players];
+		ticTacToe = new int[players][3];
+
+		for (int i = 0; i < players; i++) {
+			uuids[i] = new UUID(random.nextLong(), random.nextLong());
+			names[i] = "player" + i;
+			// most scores are low with a long tail, like a real leaderboard
+			highscores[i] = (int) Math.min(1000000, Math.abs(random.nextGaussian()) * 20000);
+			ticTacToe[i][0] = random.nextInt(200);
+			ticTacToe[i][1] = random.nextInt(200);
+			ticTacToe[i][2] = random.nextInt(50);
+		}
+	}
+
+	public int size() {
+		return uuids.length;
+	}
+
+	public UUID getUUID(int player) {
+		return uuids[player];
+	}
+
+	public String getName(int player) {
+		return names[player];
+	}
+
+	public int getHighscore(int player) {
+		return highscores[player];
+	}
+
+	public int getWins(int player) {
+		return ticTacToe[player][0];
+	}
+
+	public int getLosses(int player) {
+		return ticTacToe[player][1];
+	}
+
+	public int getTies(int player) {
+		return ticTacToe[player][2];
+	}
+
+	/**
+	 * @return a random player's index
+	 */
+	public int randomPlayer() {
+		return ThreadLocalRandom.current().nextInt(uuids.length);
+	}
+
+	public UUID randomUUID() {
+		return uuids[randomPlayer()];
+	}
+
+	public String randomName() {
+		return names[randomPlayer()];
+	}
+
+	/**
+	 * Returns the UUIDs of random players.
+	 *
+	 * @param count how many players
+	 * @return the UUIDs
+	 */
+	public List<UUID> randomUUIDs(int count) {
+		List<UUID> players = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			players.add(randomUUID());
+		}
+		return players;
+	}
+
+	/**
+	 * Writes every player into the datastore one call at a time. Fine for
+	 * datastores kept in memory, MySQL is filled with bulk inserts instead.
+	 *
+	 * @param storage the datastore
+	 */
+	public void fill(Datastore storage) {
+		for (int i = 0; i < uuids.length; i++) {
+			storage.updateHighscore(uuids[i], names[i], highscores[i]);
+			storage.updateTicTacToeWins(uuids[i], names[i], ticTacToe[i][0]);
+			storage.updateTicTacToeLosses(uuids[i], names[i], ticTacToe[i][1]);
+			storage.updateTicTacToeTies(uuids[i], names[i], ticTacToe[i][2]);
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package net.richardsprojects.plugins.lobbygames.benchmarks;
+
+import ch.vorburger.exec.ManagedProcessException;
+import ch.vorburger.mariaDB4j.DB;
+import ch.vorburger.mariaDB4j.DBConfigurationBuilder;
+import net.richardsprojects.plugins.lobbygames.LobbyGames;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A MariaDB server started from the MariaDB4j binaries, so the MySQL
+ * benchmarks need nothing installed and no network. One server is started
+ * per benchmark JVM and stopped when it exits.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public final class EmbeddedMySQL {
+
+	private static final String DATABASE = "lobbygames";
+	private static final int INSERT_BATCH_SIZE = 10000;
+
+	private static EmbeddedMySQL instance;
+
+	private final DB db;
+	private final int port;
+
+	private EmbeddedMySQL() throws ManagedProcessException {
+		DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder();
+		// 0 picks a free port
+		config.setPort(0);
+
+		db = DB.newEmbeddedDB(config.build());
+		db.start();
+		db.createDB(DATABASE);
+		port = db.getConfiguration().getPort();
+	}
+
+	/**
+	 * Starts the server the first time it is called.
+	 *
+	 * @return the running server
+	 * @throws ManagedProcessException if the server could not be started
+	 */
+	public static synchronized EmbeddedMySQL get() throws ManagedProcessException {
+		if (instance == null) {
+			instance = new EmbeddedMySQL();
+		}
+		return instance;
+	}
+
+	/**
+	 * Points the plugin's MySQL settings at this server.
+	 *
+	 * @param plugin the plugin
+	 * @param prefix the table prefix to use
+	 */
+	public void configure(LobbyGames plugin, String prefix) {
+		plugin.mysql_dbHost = "localhost";
+		plugin.mysql_port = String.valueOf(port);
+		plugin.mysql_dbName = DATABASE;
+		plugin.mysql_dbUsername = "root";
+		plugin.mysql_dbPassword = "";
+		plugin.dbPrefix = prefix;
+	}
+
+	/**
+	 * Drops every table with the provided prefix so a trial starts from an
+	 * empty schema.
+	 *
+	 * @param prefix the table prefix
+	 * @throws SQLException if a table could not be dropped
+	 */
+	public void dropTables(String prefix) throws SQLException {
+		try (Connection conn = connect()) {
+			List<String> tables = new ArrayList<>();
+
+			String sql = "SELECT table_name FROM information_schema.tables WHERE table_schema = DATABASE()" +
+					" AND table_name LIKE ?";
+			try (PreparedStatement ps = conn.prepareStatement(sql)) {
+				ps.setString(1, prefix.replace("_", "\\_") + "%");
+				try (ResultSet set = ps.executeQuery()) {
+					while (set.next()) {
+						tables.add(set.getString(1));
+					}
+				}
+			}
+
+			try (Statement statement = conn.createStatement()) {
+				for (String table : tables) {
+					statement.executeUpdate("DROP TABLE IF EXISTS " + table);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Bulk inserts the dataset into tables the datastore has already
+	 * created, then updates the index statistics so the optimizer sees the
+	 * real table sizes.
+	 *
+	 * @param dataset the players
+	 * @param prefix the table prefix
+	 * @throws SQLException if the rows could not be inserted
+	 */
+	public void load(Dataset dataset, String prefix) throws SQLException {
+		String highscoresSql = "INSERT INTO " + prefix + "highscores (uuid, player, highscore) VALUES (?, ?, ?)";
+		String ticTacToeSql = "INSERT INTO " + prefix + "tictactoe (uuid, player, games_won, games_lost" +
+				", games_tied) VALUES (?, ?, ?, ?, ?)";
+
+		try (Connection conn = connect()) {
+			conn.setAutoCommit(false);
+
+			try (PreparedStatement highscores = conn.prepareStatement(highscoresSql);
+				 PreparedStatement ticTacToe = conn.prepareStatement(ticTacToeSql)) {
+				for (int i = 0; i < dataset.size(); i++) {
+					String uuid = dataset.getUUID(i).toString();
+
+					highscores.setString(1, uuid);
+					highscores.setString(2, dataset.getName(i));
+					highscores.setInt(3, dataset.getHighscore(i));
+					highscores.addBatch();
+
+					ticTacToe.setString(1, uuid);
+					ticTacToe.setString(2, dataset.getName(i));
+					ticTacToe.setInt(3, dataset.getWins(i));
+					ticTacToe.setInt(4, dataset.getLosses(i));
+					ticTacToe.setInt(5, dataset.getTies(i));
+					ticTacToe.addBatch();
+
+					if ((i + 1) % INSERT_BATCH_SIZE == 0) {
+						highscores.executeBatch();
+						ticTacToe.executeBatch();
+						conn.commit();
+					}
+				}
+
+				highscores.executeBatch();
+				ticTacToe.executeBatch();
+				conn.commit();
+			}
+
+			conn.setAutoCommit(true);
+			try (Statement statement = conn.createStatement()) {
+				statement.execute("ANALYZE TABLE " + prefix + "highscores, " + prefix + "tictactoe");
+			}
+		}
+	}
+
+	private Connection connect() throws SQLException {
+		String url = "jdbc:mysql://localhost:" + port + "/" + DATABASE + "?rewriteBatchedStatements=true&useSSL=false";
+		return DriverManager.getConnection(url, "root", "");
+	}
+}
@@ -0,0 +1,125 @@
+package net.richardsprojects.plugins.lobbygames.benchmarks;
+
+import net.richardsprojects.plugins.lobbygames.LobbyGames;
+import net.richardsprojects.plugins.lobbygames.datastore.LeaderboardEntry;
+import net.richardsprojects.plugins.lobbygames.datastore.MySQLDatastore;
+import net.richardsprojects.plugins.lobbygames.datastore.PlayerStats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries against a MySQLDatastore backed by an embedded MariaDB server.
+ * Every trial starts from empty tables, lets the datastore create them
+ * through its migrations and then bulk loads the players.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class MySQLDatastoreBenchmark {
+
+	private static final String PREFIX = "bench_";
+
+	@Param({"1000", "100000", "1000000"})
+	public int players;
+
+	private File folder;
+	private Dataset dataset;
+	private MySQLDatastore storage;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		EmbeddedMySQL db = EmbeddedMySQL.get();
+
+		folder = BenchmarkPlugin.createFolder("mysql");
+		LobbyGames plugin = BenchmarkPlugin.install(folder);
+		db.configure(plugin, PREFIX);
+		db.dropTables(PREFIX);
+
+		storage = new MySQLDatastore();
+		if (!storage.initalize()) {
+			throw new IllegalStateException("Could not initialize the MySQL datastore");
+		}
+
+		dataset = new Dataset(players);
+		db.load(dataset, PREFIX);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		storage.onDisable();
+		BenchmarkPlugin.deleteFolder(folder);
+	}
+
+	@Benchmark
+	public int getHighscore() {
+		return storage.getHighscore(dataset.randomUUID());
+	}
+
+	@Benchmark
+	public int getHighscoreByName() {
+		return storage.getHighscore(dataset.randomName());
+	}
+
+	@Benchmark
+	public PlayerStats getProfile() {
+		return storage.getProfile(dataset.randomUUID());
+	}
+
+	@Benchmark
+	public Map<UUID, PlayerStats> getStats() {
+		return storage.getStats(dataset.randomUUIDs(100));
+	}
+
+	@Benchmark
+	public String getLeaderboard() {
+		return storage.getLeaderboard();
+	}
+
+	@Benchmark
+	public List<LeaderboardEntry> getLeaderboardPage() {
+		return storage.getLeaderboardPage(ThreadLocalRandom.current().nextInt(players), 10);
+	}
+
+	@Benchmark
+	public int getRank() {
+		return storage.getRank(dataset.randomUUID());
+	}
+
+	@Benchmark
+	public boolean submitHighscore() {
+		int player = dataset.randomPlayer();
+		int score = ThreadLocalRandom.current().nextInt(1000000);
+		return storage.submitHighscore(dataset.getUUID(player), dataset.getName(player), score);
+	}
+
+	@Benchmark
+	public boolean incrementTicTacToeWins() {
+		int player = dataset.randomPlayer();
+		return storage.incrementTicTacToeWins(dataset.getUUID(player), dataset.getName(player), 1);
+	}
+}
@@ -0,0 +1,139 @@
+package net.richardsprojects.plugins.lobbygames.benchmarks;
+
+import net.richardsprojects.plugins.lobbygames.datastore.PlayerStatTable;
+
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures how much heap YmlDatastore's stats take with the five
+ * ConcurrentHashMaps it used to keep and with the PlayerStatTable that
+ * replaced them. Each layout is filled with the same players and the heap
+ * retained after a full collection is compared with the heap before it was
+ * built. The names are created up front and shared by both layouts, like
+ * the name Strings the datastore keeps either way. The maps get their own
+ * UUID objects, since the table stores a UUID as two longs instead.
+ *
+ * Not a JMH benchmark, run it on its own with a fixed heap and the serial
+ * collector so the numbers are stable:
+ *
+ * <pre>
+ *   java -Xms4g -Xmx4g -XX:+UseSerialGC -cp benchmarks/target/benchmarks.jar \
+ *       net.richardsprojects.plugins.lobbygames.benchmarks.StatTableFootprint 100000 1000000
+ * </pre>
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public final class StatTableFootprint {
+
+	/** The layout being measured, held here so nothing else keeps it alive afterwards. */
+	private static Object built;
+
+	private StatTableFootprint() {}
+
+	public static void main(String[] args) {
+		if (args.length == 0) args = new String[] {"100000", "1000000"};
+
+		System.out.println("players   five HashMaps          PlayerStatTable");
+		for (String arg : args) {
+			int players = Integer.parseInt(arg);
+			Dataset dataset = new Dataset(players);
+
+			long maps = retained(() -> fillMaps(dataset));
+			long table = retained(() -> fillTable(dataset));
+
+			System.out.println(String.format(Locale.ROOT, "%-9d %-22s %s", players,
+					format(maps, players), format(table, players)));
+		}
+	}
+
+	private static Object fillMaps(Dataset dataset) {
+		ConcurrentHashMap<UUID, String> names = new ConcurrentHashMap<>();
+		ConcurrentHashMap<UUID, Integer> highscores = new ConcurrentHashMap<>();
+		ConcurrentHashMap<UUID, Integer> wins = new ConcurrentHashMap<>();
+		ConcurrentHashMap<UUID, Integer> losses = new ConcurrentHashMap<>();
+		ConcurrentHashMap<UUID, Integer> ties = new ConcurrentHashMap<>();
+
+		for (int i = 0; i < dataset.size(); i++) {
+			UUID shared = dataset.getUUID(i);
+			UUID player = new UUID(shared.getMostSignificantBits(), shared.getLeastSignificantBits());
+			names.put(player, dataset.getName(i));
+			highscores.put(player, dataset.getHighscore(i));
+			wins.put(player, dataset.getWins(i));
+			losses.put(player, dataset.getLosses(i));
+			ties.put(player, dataset.getTies(i));
+		}
+
+		return new Object[] {names, highscores, wins, losses, ties};
+	}
+
+	private static Object fillTable(Dataset dataset) {
+		PlayerStatTable table = new PlayerStatTable();
+
+		for (int i = 0; i < dataset.size(); i++) {
+			UUID player = dataset.getUUID(i);
+			table.putName(player, dataset.getName(i));
+			table.put(player, PlayerStatTable.HIGHSCORE, dataset.getHighscore(i));
+			table.put(player, PlayerStatTable.WINS, dataset.getWins(i));
+			table.put(player, PlayerStatTable.LOSSES, dataset.getLosses(i));
+			table.put(player, PlayerStatTable.TIES, dataset.getTies(i));
+		}
+
+		return table;
+	}
+
+	/**
+	 * Returns how many bytes the object built by the provided layout keeps
+	 * alive once everything else it allocated has been collected.
+	 */
+	private static long retained(Layout layout) {
+		long before = usedAfterGC();
+		built = layout.build();
+		long after = usedAfterGC();
+		built = null;
+
+		return after - before;
+	}
+
+	/**
+	 * Collects until the used heap has stopped shrinking for a few
+	 * collections in a row. A single System.gc() is only a hint and doesn't
+	 * always free what was just released.
+	 */
+	private static long usedAfterGC() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		int stable = 0;
+
+		for (int i = 0; i < 20 && stable < 3; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			long now = runtime.totalMemory() - runtime.freeMemory();
+			if (now < used) {
+				used = now;
+				stable = 0;
+			} else {
+				stable++;
+			}
+		}
+
+		return used;
+	}
+
+	private static String format(long bytes, int players) {
+		return String.format(Locale.ROOT, "%d MB (%d B/player)", Math.round(bytes / 1048576.0),
+				bytes / players);
+	}
+
+	private interface Layout {
+
+		Object build();
+	}
+}
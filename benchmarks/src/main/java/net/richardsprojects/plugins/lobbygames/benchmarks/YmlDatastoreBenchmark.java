@@ -0,0 +1,111 @@
+package net.richardsprojects.plugins.lobbygames.benchmarks;
+
+import net.richardsprojects.plugins.lobbygames.datastore.LeaderboardEntry;
+import net.richardsprojects.plugins.lobbygames.datastore.PlayerStats;
+import net.richardsprojects.plugins.lobbygames.datastore.YmlDatastore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and writes against a YmlDatastore that has every player in memory.
+ * Writes only touch memory, the files are benchmarked by
+ * YmlPersistenceBenchmark.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class YmlDatastoreBenchmark {
+
+	@Param({"1000", "10000", "100000", "1000000"})
+	public int players;
+
+	private File folder;
+	private Dataset dataset;
+	private YmlDatastore storage;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		folder = BenchmarkPlugin.createFolder("yml");
+		BenchmarkPlugin.install(folder);
+
+		storage = new YmlDatastore();
+		if (!storage.initalize()) {
+			throw new IllegalStateException("Could not initialize the yml datastore");
+		}
+
+		dataset = new Dataset(players);
+		dataset.fill(storage);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		BenchmarkPlugin.deleteFolder(folder);
+	}
+
+	@Benchmark
+	public int getHighscore() {
+		return storage.getHighscore(dataset.randomUUID());
+	}
+
+	@Benchmark
+	public int getHighscoreByName() {
+		return storage.getHighscore(dataset.randomName());
+	}
+
+	@Benchmark
+	public PlayerStats getProfile() {
+		return storage.getProfile(dataset.randomUUID());
+	}
+
+	@Benchmark
+	public String getLeaderboard() {
+		return storage.getLeaderboard();
+	}
+
+	@Benchmark
+	public List<LeaderboardEntry> getLeaderboardPage() {
+		return storage.getLeaderboardPage(ThreadLocalRandom.current().nextInt(players), 10);
+	}
+
+	@Benchmark
+	public int getRank() {
+		return storage.getRank(dataset.randomUUID());
+	}
+
+	@Benchmark
+	public boolean submitHighscore() {
+		int player = dataset.randomPlayer();
+		int score = ThreadLocalRandom.current().nextInt(1000000);
+		return storage.submitHighscore(dataset.getUUID(player), dataset.getName(player), score);
+	}
+
+	@Benchmark
+	public boolean incrementTicTacToeWins() {
+		int player = dataset.randomPlayer();
+		return storage.incrementTicTacToeWins(dataset.getUUID(player), dataset.getName(player), 1);
+	}
+}
@@ -0,0 +1,91 @@
+package net.richardsprojects.plugins.lobbygames.benchmarks;
+
+import net.richardsprojects.plugins.lobbygames.datastore.YmlDatastore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times a full save and a full load of the yml files. Each measurement is a
+ * single save or load, since one takes far longer than the timer's
+ * resolution. Saving and loading each use their own threads internally, so
+ * these always run on one benchmark thread.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Threads(1)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class YmlPersistenceBenchmark {
+
+	@Param({"1000", "10000", "100000", "1000000"})
+	public int players;
+
+	private File folder;
+	private YmlDatastore storage;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		folder = BenchmarkPlugin.createFolder("yml-persistence");
+		BenchmarkPlugin.install(folder);
+
+		YmlDatastore filled = new YmlDatastore();
+		if (!filled.initalize()) {
+			throw new IllegalStateException("Could not initialize the yml datastore");
+		}
+		new Dataset(players).fill(filled);
+		filled.onDisable();
+	}
+
+	/**
+	 * onDisable can only run once per datastore, so every save gets a
+	 * freshly loaded one.
+	 */
+	@Setup(Level.Iteration)
+	public void loadStorage() {
+		storage = new YmlDatastore();
+		if (!storage.initalize()) {
+			throw new IllegalStateException("Could not load the yml files");
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		BenchmarkPlugin.deleteFolder(folder);
+	}
+
+	@Benchmark
+	public void save() {
+		storage.onDisable();
+	}
+
+	@Benchmark
+	public YmlDatastore load() {
+		YmlDatastore loaded = new YmlDatastore();
+		if (!loaded.initalize()) {
+			throw new IllegalStateException("Could not load the yml files");
+		}
+		return loaded;
+	}
+}
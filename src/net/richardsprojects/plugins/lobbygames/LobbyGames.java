@@ -7,11 +7,23 @@ import java.io.PrintWriter;
 import java.util.logging.Logger;
 
 import net.richardsprojects.plugins.lobbygames.commands.ExampleCommand;
+import net.richardsprojects.plugins.lobbygames.commands.MetricsCommand;
+import net.richardsprojects.plugins.lobbygames.commands.MigrateCommand;
+import net.richardsprojects.plugins.lobbygames.datastore.AsyncDatastore;
+import net.richardsprojects.plugins.lobbygames.datastore.CachingDatastore;
 import net.richardsprojects.plugins.lobbygames.datastore.Datastore;
+import net.richardsprojects.plugins.lobbygames.datastore.DatastoreMetrics;
+import net.richardsprojects.plugins.lobbygames.datastore.InstrumentedDatastore;
+import net.richardsprojects.plugins.lobbygames.datastore.MappedDatastore;
+import net.richardsprojects.plugins.lobbygames.datastore.SQLiteDatastore;
+import net.richardsprojects.plugins.lobbygames.datastore.SessionDatastore;
 import net.richardsprojects.plugins.lobbygames.datastore.YmlDatastore;
 import net.richardsprojects.plugins.lobbygames.datastore.MySQLDatastore;
+import net.richardsprojects.plugins.lobbygames.listeners.SessionListener;
 
+import org.bukkit.Bukkit;
 import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.PluginManager;
 import org.bukkit.plugin.java.JavaPlugin;
 
@@ -30,6 +42,8 @@ public class LobbyGames extends JavaPlugin {
 	public PluginManager pm;
 
 	private Datastore storage;
+	private AsyncDatastore asyncStorage;
+	private DatastoreMetrics metrics;
 
 	public static File dataFolder;
 
@@ -41,6 +55,39 @@ public class LobbyGames extends JavaPlugin {
 	public String mysql_port = "3306";
 	public String dbPrefix = "";
 	public String dbType = "";
+	public boolean mysql_writeBehind = false;
+	public int mysql_writeBehindInterval = 20;
+	public int mysql_writeBehindMaxPending = 500;
+	public boolean mysql_compactUUIDs = false;
+	public int mysql_poolMinIdle = 2;
+	public int mysql_poolMaxSize = 5;
+	public int mysql_connectionTimeout = 10;
+	public int mysql_idleTimeout = 600;
+	public int mysql_maxLifetime = 1800;
+	public int mysql_leakDetectionThreshold = 0;
+	public int mysql_statementCacheSize = 250;
+	public boolean mysql_serverPrepStmts = true;
+	public boolean mysql_changeLog = false;
+	public int mysql_changeLogPollInterval = 20;
+	public int mysql_changeLogRetention = 3600;
+	public boolean mysql_circuitBreaker = false;
+	public int mysql_circuitBreakerFailures = 3;
+	public int mysql_circuitBreakerProbeInterval = 5;
+	public int mysql_queryTimeout = 0;
+	public String sqlite_file = "lobbygames.db";
+	public int sqlite_poolSize = 4;
+	public String sqlite_synchronous = "NORMAL";
+	public int mapped_syncInterval = 600;
+	public boolean cache_enabled = false;
+	public int cache_maxPlayers = 5000;
+	public int cache_expireSeconds = 300;
+	public boolean sessions_enabled = false;
+	public int sessions_flushInterval = 600;
+	public boolean yml_caseInsensitiveNames = false;
+	public boolean yml_journal = false;
+	public int yml_compactionInterval = 600;
+	public boolean metrics_enabled = true;
+	public int metrics_exportInterval = 0;
 
 	/**
 	 * Called when the plugin is enabled by the Bukkit API. Loads the config,
@@ -69,8 +116,23 @@ public class LobbyGames extends JavaPlugin {
 			this.setEnabled(false);
 		}
 
+		asyncStorage = new AsyncDatastore(storage);
+
+		// keep online players' stats in memory
+		if (storage instanceof SessionDatastore) {
+			SessionDatastore sessions = (SessionDatastore) storage;
+			pm.registerEvents(new SessionListener(sessions), this);
+
+			// players that are already online after a reload
+			for (Player player : Bukkit.getOnlinePlayers()) {
+				sessions.open(player.getUniqueId(), player.getName());
+			}
+		}
+
 		// register example command
 		getCommand("example").setExecutor(new ExampleCommand());
+		getCommand("lgmetrics").setExecutor(new MetricsCommand());
+		getCommand("lgmigrate").setExecutor(new MigrateCommand());
 	}
 
 	/**
@@ -126,6 +188,49 @@ public class LobbyGames extends JavaPlugin {
 			}
 
 			dbPrefix = config.getString("tablePrefix");
+
+			mysql_writeBehind = config.getBoolean("MySQL_WriteBehind", false);
+			mysql_writeBehindInterval = config.getInt("MySQL_WriteBehindInterval", 20);
+			mysql_writeBehindMaxPending = config.getInt("MySQL_WriteBehindMaxPending", 500);
+			mysql_compactUUIDs = config.getBoolean("MySQL_CompactUUIDs", false);
+
+			mysql_poolMinIdle = config.getInt("MySQL_PoolMinIdle", 2);
+			mysql_poolMaxSize = config.getInt("MySQL_PoolMaxSize", 5);
+			mysql_connectionTimeout = config.getInt("MySQL_ConnectionTimeout", 10);
+			mysql_idleTimeout = config.getInt("MySQL_IdleTimeout", 600);
+			mysql_maxLifetime = config.getInt("MySQL_MaxLifetime", 1800);
+			mysql_leakDetectionThreshold = config.getInt("MySQL_LeakDetectionThreshold", 0);
+			mysql_statementCacheSize = config.getInt("MySQL_StatementCacheSize", 250);
+			mysql_serverPrepStmts = config.getBoolean("MySQL_ServerPrepStmts", true);
+
+			mysql_changeLog = config.getBoolean("MySQL_ChangeLog", false);
+			mysql_changeLogPollInterval = config.getInt("MySQL_ChangeLogPollInterval", 20);
+			mysql_changeLogRetention = config.getInt("MySQL_ChangeLogRetention", 3600);
+
+			mysql_circuitBreaker = config.getBoolean("MySQL_CircuitBreaker", false);
+			mysql_circuitBreakerFailures = config.getInt("MySQL_CircuitBreakerFailures", 3);
+			mysql_circuitBreakerProbeInterval = config.getInt("MySQL_CircuitBreakerProbeInterval", 5);
+			mysql_queryTimeout = config.getInt("MySQL_QueryTimeout", 0);
+
+			sqlite_file = config.getString("SQLite_File", "lobbygames.db");
+			sqlite_poolSize = config.getInt("SQLite_PoolSize", 4);
+			sqlite_synchronous = config.getString("SQLite_Synchronous", "NORMAL");
+
+			mapped_syncInterval = config.getInt("Mapped_SyncInterval", 600);
+
+			cache_enabled = config.getBoolean("Cache_Enabled", false);
+			cache_maxPlayers = config.getInt("Cache_MaxPlayers", 5000);
+			cache_expireSeconds = config.getInt("Cache_ExpireSeconds", 300);
+
+			sessions_enabled = config.getBoolean("Sessions_Enabled", false);
+			sessions_flushInterval = config.getInt("Sessions_FlushInterval", 600);
+
+			yml_caseInsensitiveNames = config.getBoolean("Yml_CaseInsensitiveNames", false);
+			yml_journal = config.getBoolean("Yml_Journal", false);
+			yml_compactionInterval = config.getInt("Yml_CompactionInterval", 600);
+
+			metrics_enabled = config.getBoolean("Metrics_Enabled", true);
+			metrics_exportInterval = config.getInt("Metrics_ExportInterval", 0);
 		} catch (Exception e) {
 			log.info("There was an error reading from the config...");
 			return false;
@@ -133,15 +238,41 @@ public class LobbyGames extends JavaPlugin {
 
 		if (dbType.equalsIgnoreCase("mysql")) {
 			log.info("Using MySQL as database...");
-			storage = new MySQLDatastore();
+		} else if (dbType.equalsIgnoreCase("sqlite")) {
+			log.info("Using SQLite to store data...");
+		} else if (dbType.equalsIgnoreCase("mapped")) {
+			log.info("Using a memory-mapped record file to store data...");
 		} else if(dbType.equalsIgnoreCase("yml")) {
 			log.info("Using yml files to store data...");
-			storage = new YmlDatastore();
-		} else {
+		}
+
+		storage = createDatastore(dbType);
+		if (storage == null) {
 			log.info("Please set your storage type.");
 			return false;
 		}
 
+		// time the storage itself, below the cache and sessions
+		if (metrics_enabled) {
+			metrics = new DatastoreMetrics();
+			storage = new InstrumentedDatastore(storage, metrics, getMetricsFile(),
+					metrics_exportInterval * 20L);
+		}
+
+		if (cache_enabled) {
+			log.info("Caching player stats in memory...");
+			storage = new CachingDatastore(storage, cache_maxPlayers, cache_expireSeconds);
+		}
+
+		if (sessions_enabled) {
+			log.info("Keeping online players' stats in memory...");
+			storage = new SessionDatastore(storage, sessions_flushInterval);
+		}
+
+		if (metrics != null) {
+			metrics.setGaugeSource(storage);
+		}
+
 		return true;
 	}
 
@@ -151,9 +282,33 @@ public class LobbyGames extends JavaPlugin {
 	 */
 	@Override
 	public void onDisable() {
+		// let queued async operations finish before the storage shuts down
+		if (asyncStorage != null) asyncStorage.shutdown();
 	    storage.onDisable();
 	}
 
+	/**
+	 * Creates a datastore of the provided type with the settings in the
+	 * config. It isn't initalized or wrapped in any of the optional layers,
+	 * so it can also be used alongside the plugin's own datastore.
+	 *
+	 * @param type mysql, sqlite, mapped or yml
+	 * @return the new datastore or null if the type is unknown
+	 */
+	public Datastore createDatastore(String type) {
+		if (type.equalsIgnoreCase("mysql")) {
+			return new MySQLDatastore();
+		} else if (type.equalsIgnoreCase("sqlite")) {
+			return new SQLiteDatastore();
+		} else if (type.equalsIgnoreCase("mapped")) {
+			return new MappedDatastore();
+		} else if (type.equalsIgnoreCase("yml")) {
+			return new YmlDatastore();
+		}
+
+		return null;
+	}
+
 	/**
 	 * Returns the datastore for the plugin.
 	 *
@@ -162,4 +317,32 @@ public class LobbyGames extends JavaPlugin {
 	public Datastore getDatastore() {
 			return storage;
 		}
+
+	/**
+	 * Returns a non-blocking view of the plugin's datastore. Calls made
+	 * through it never hold up the calling thread.
+	 *
+	 * @return plugin's async datastore
+	 */
+	public AsyncDatastore getAsyncDatastore() {
+		return asyncStorage;
+	}
+
+	/**
+	 * Returns the datastore metrics, or null if they are turned off.
+	 *
+	 * @return plugin's datastore metrics or null
+	 */
+	public DatastoreMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Returns the file the datastore metrics are exported to.
+	 *
+	 * @return the metrics file
+	 */
+	public File getMetricsFile() {
+		return new File(dataFolder, "metrics.prom");
+	}
 }
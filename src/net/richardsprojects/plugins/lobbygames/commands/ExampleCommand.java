@@ -2,55 +2,82 @@ package net.richardsprojects.plugins.lobbygames.commands;
 
 import net.md_5.bungee.api.ChatColor;
 import net.richardsprojects.plugins.lobbygames.LobbyGames;
+import net.richardsprojects.plugins.lobbygames.datastore.AsyncDatastore;
+import net.richardsprojects.plugins.lobbygames.datastore.LeaderboardEntry;
 
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
-import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 /**
  * This is a simple CommandExecutor for the example command. Its purpose is to
- * demonstrate how calls should be made to the datastore asynchronously
- * to not hold up the main thread and how these calls should work regardless of
- * what storage type is being used.
+ * demonstrate how calls should be made through the AsyncDatastore to not hold
+ * up the main thread and how these calls should work regardless of what
+ * storage type is being used.
  *
  * @author RichardB122
  * @version 3/26/17
  */
 public class ExampleCommand implements CommandExecutor {
 
+	private static final int PAGE_SIZE = 10;
+
 	@Override
 	public boolean onCommand(CommandSender sender, Command cmd, String label,
 							 String[] args) {
 		if (sender instanceof Player) {
 			Player player = (Player) sender;
-			new PrintLeaderboardTask(player).runTaskAsynchronously(LobbyGames.instance);
+
+			int page = 1;
+			if (args.length > 0) {
+				try {
+					page = Math.max(1, Integer.parseInt(args[0]));
+				} catch (NumberFormatException e) {
+					player.sendMessage(ChatColor.RED + "The page must be a number.");
+					return true;
+				}
+			}
+
+			AsyncDatastore storage = LobbyGames.instance.getAsyncDatastore();
+			CompletableFuture<List<LeaderboardEntry>> entries =
+					storage.getLeaderboardPage((page - 1) * PAGE_SIZE, PAGE_SIZE);
+			CompletableFuture<Integer> rank = storage.getRank(player.getUniqueId());
+			entries.thenAcceptBoth(rank, new PrintLeaderboardTask(player, page))
+					.exceptionally(e -> {
+						LobbyGames.instance.log.info("[LobbyGames] Failed to load the leaderboard: " + e.getMessage());
+						player.sendMessage(ChatColor.RED + "The leaderboard couldn't be loaded. Try again later.");
+						return null;
+					});
 		}
 
-		return false;
+		return true;
 	}
 
-	private class PrintLeaderboardTask extends BukkitRunnable {
+	private class PrintLeaderboardTask implements BiConsumer<List<LeaderboardEntry>, Integer> {
 
 		private Player player;
+		private int page;
 
-		private PrintLeaderboardTask(Player player) {
+		private PrintLeaderboardTask(Player player, int page) {
 			this.player = player;
+			this.page = page;
 		}
 
 		@Override
-		public void run() {
-			// load leaderboard data
-			String leaderboard = LobbyGames.instance.getDatastore().getLeaderboard();
-			String[] leaderboardArray = leaderboard.split(">");
-
+		public void accept(List<LeaderboardEntry> entries, Integer rank) {
 			// print leaderboard
-			player.sendMessage(ChatColor.YELLOW + "" + ChatColor.BOLD + "Leaderboard: ");
-			for (int i = 0; i < leaderboardArray.length; i++) {
-				String tmp = leaderboardArray[i];
-				String[] tmpArray = tmp.split(",");
-				player.sendMessage(tmpArray[0] + " - " + tmpArray[1]);
+			player.sendMessage(ChatColor.YELLOW + "" + ChatColor.BOLD + "Leaderboard (page " + page + "): ");
+			for (LeaderboardEntry entry : entries) {
+				player.sendMessage("#" + entry.getRank() + " " + entry.getName() + " - " + entry.getScore());
+			}
+
+			if (rank > 0) {
+				player.sendMessage(ChatColor.YELLOW + "Your rank: #" + rank);
 			}
 		}
 	}
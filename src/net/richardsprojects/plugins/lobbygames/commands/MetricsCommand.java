@@ -0,0 +1,120 @@
+package net.richardsprojects.plugins.lobbygames.commands;
+
+import net.md_5.bungee.api.ChatColor;
+import net.richardsprojects.plugins.lobbygames.LobbyGames;
+import net.richardsprojects.plugins.lobbygames.datastore.DatastoreMetrics;
+import net.richardsprojects.plugins.lobbygames.datastore.LatencyHistogram;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * The CommandExecutor for the admin metrics command. With no arguments it
+ * shows the call count, error count and latency of every datastore operation
+ * that has been called, followed by the datastores' gauges. "reset" clears
+ * the operations and "export" writes everything to metrics.prom in the
+ * Prometheus text format.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class MetricsCommand implements CommandExecutor {
+
+	public static final String PERMISSION = "lobbygames.admin";
+
+	@Override
+	public boolean onCommand(CommandSender sender, Command cmd, String label,
+							 String[] args) {
+		if (!sender.hasPermission(PERMISSION)) {
+			sender.sendMessage(ChatColor.RED + "You don't have permission to do that.");
+			return true;
+		}
+
+		DatastoreMetrics metrics = LobbyGames.instance.getMetrics();
+		if (metrics == null) {
+			sender.sendMessage(ChatColor.RED + "Metrics are turned off. Set Metrics_Enabled to true in the config.");
+			return true;
+		}
+
+		if (args.length == 0) {
+			show(sender, metrics);
+		} else if (args[0].equalsIgnoreCase("reset")) {
+			metrics.reset();
+			sender.sendMessage(ChatColor.YELLOW + "Datastore metrics have been reset.");
+		} else if (args[0].equalsIgnoreCase("export")) {
+			new ExportTask(sender, metrics).runTaskAsynchronously(LobbyGames.instance);
+		} else {
+			return false;
+		}
+
+		return true;
+	}
+
+	private void show(CommandSender sender, DatastoreMetrics metrics) {
+		sender.sendMessage(ChatColor.YELLOW + "" + ChatColor.BOLD + "Datastore operations:");
+		boolean any = false;
+		for (DatastoreMetrics.Operation operation : metrics.getOperations()) {
+			if (operation.getCalls() == 0) continue;
+			any = true;
+
+			LatencyHistogram latency = operation.getLatency();
+			ChatColor color = operation.getErrors() > 0 ? ChatColor.RED : ChatColor.WHITE;
+			sender.sendMessage(color + operation.getName() + ChatColor.GRAY
+					+ " calls " + operation.getCalls()
+					+ ", errors " + operation.getErrors()
+					+ ", p50 " + millis(latency.getPercentile(0.5))
+					+ ", p99 " + millis(latency.getPercentile(0.99))
+					+ ", max " + millis(latency.getMax()));
+		}
+		if (!any) {
+			sender.sendMessage(ChatColor.GRAY + "Nothing has been called yet.");
+		}
+
+		sender.sendMessage(ChatColor.YELLOW + "" + ChatColor.BOLD + "Datastore gauges:");
+		for (DatastoreMetrics.Gauge gauge : metrics.getGauges()) {
+			sender.sendMessage(ChatColor.WHITE + gauge.getName() + ChatColor.GRAY + " "
+					+ format(gauge.getValue()));
+		}
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.2fms", nanos / 1e6);
+	}
+
+	private static String format(double value) {
+		if (value == Math.rint(value)) return Long.toString((long) value);
+		return String.format(Locale.ROOT, "%.4f", value);
+	}
+
+	/**
+	 * Writes the metrics file off the main thread and tells the sender
+	 * where it went.
+	 */
+	private class ExportTask extends BukkitRunnable {
+
+		private final CommandSender sender;
+		private final DatastoreMetrics metrics;
+
+		private ExportTask(CommandSender sender, DatastoreMetrics metrics) {
+			this.sender = sender;
+			this.metrics = metrics;
+		}
+
+		@Override
+		public void run() {
+			File file = LobbyGames.instance.getMetricsFile();
+			try {
+				metrics.writePrometheus(file);
+				sender.sendMessage(ChatColor.YELLOW + "Metrics written to " + file.getPath());
+			} catch (IOException e) {
+				sender.sendMessage(ChatColor.RED + "Could not write the metrics: " + e.getMessage());
+			}
+		}
+	}
+}
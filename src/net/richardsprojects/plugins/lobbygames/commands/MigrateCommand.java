@@ -0,0 +1,133 @@
+package net.richardsprojects.plugins.lobbygames.commands;
+
+import net.md_5.bungee.api.ChatColor;
+import net.richardsprojects.plugins.lobbygames.LobbyGames;
+import net.richardsprojects.plugins.lobbygames.datastore.Datastore;
+import net.richardsprojects.plugins.lobbygames.datastore.DatastoreMigrator;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The CommandExecutor for the admin migration command, which copies every
+ * player from one type of datastore to another with DatastoreMigrator. The
+ * type set as dbType is the plugin's own datastore, while any other type is
+ * opened just for the migration with the settings in the config and closed
+ * again afterwards. An interrupted migration carries on where it stopped
+ * unless "restart" is added.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class MigrateCommand implements CommandExecutor {
+
+	private static final AtomicBoolean running = new AtomicBoolean();
+
+	@Override
+	public boolean onCommand(CommandSender sender, Command cmd, String label,
+							 String[] args) {
+		if (!sender.hasPermission(MetricsCommand.PERMISSION)) {
+			sender.sendMessage(ChatColor.RED + "You don't have permission to do that.");
+			return true;
+		}
+
+		if (args.length < 2 || args.length > 3) return false;
+		if (args.length == 3 && !args[2].equalsIgnoreCase("restart")) return false;
+
+		String from = args[0].toLowerCase(Locale.ROOT);
+		String to = args[1].toLowerCase(Locale.ROOT);
+		if (from.equals(to)) {
+			sender.sendMessage(ChatColor.RED + "The source and target must be different datastores.");
+			return true;
+		}
+
+		if (!running.compareAndSet(false, true)) {
+			sender.sendMessage(ChatColor.RED + "A migration is already running.");
+			return true;
+		}
+
+		sender.sendMessage(ChatColor.YELLOW + "Migrating players from " + from + " to " + to + "...");
+		new MigrationTask(sender, from, to, args.length == 3).runTaskAsynchronously(LobbyGames.instance);
+		return true;
+	}
+
+	/**
+	 * Opens both datastores and runs the migration off the main thread.
+	 */
+	private class MigrationTask extends BukkitRunnable {
+
+		private final CommandSender sender;
+		private final String from;
+		private final String to;
+		private final boolean restart;
+
+		private MigrationTask(CommandSender sender, String from, String to, boolean restart) {
+			this.sender = sender;
+			this.from = from;
+			this.to = to;
+			this.restart = restart;
+		}
+
+		@Override
+		public void run() {
+			Datastore source = null;
+			Datastore target = null;
+
+			try {
+				source = open(from);
+				if (source == null) return;
+				target = open(to);
+				if (target == null) return;
+
+				File progress = new File(LobbyGames.dataFolder, "migration-" + from + "-" + to + ".properties");
+				DatastoreMigrator migrator = new DatastoreMigrator(source, target, progress,
+						message -> sender.sendMessage(ChatColor.GRAY + message));
+
+				if (migrator.run(restart)) {
+					sender.sendMessage(ChatColor.YELLOW + "Migration from " + from + " to " + to + " finished.");
+				} else {
+					sender.sendMessage(ChatColor.RED + "Migration from " + from + " to " + to + " failed.");
+				}
+			} finally {
+				close(source);
+				close(target);
+				running.set(false);
+			}
+		}
+
+		/**
+		 * Returns the plugin's own datastore if it is of the provided type
+		 * or opens a new one.
+		 */
+		private Datastore open(String type) {
+			LobbyGames plugin = LobbyGames.instance;
+			if (type.equalsIgnoreCase(plugin.dbType)) return plugin.getDatastore();
+
+			Datastore storage = plugin.createDatastore(type);
+			if (storage == null) {
+				sender.sendMessage(ChatColor.RED + type + " isn't a datastore type, use mysql, sqlite, mapped or yml.");
+				return null;
+			}
+
+			if (!storage.initalize()) {
+				// not closed, onDisable would save whatever was half loaded
+				sender.sendMessage(ChatColor.RED + "Could not open the " + type + " datastore, see the console.");
+				return null;
+			}
+
+			return storage;
+		}
+
+		private void close(Datastore storage) {
+			if (storage != null && storage != LobbyGames.instance.getDatastore()) {
+				storage.onDisable();
+			}
+		}
+	}
+}
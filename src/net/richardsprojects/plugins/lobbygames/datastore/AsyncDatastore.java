@@ -0,0 +1,330 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A non-blocking view of a Datastore. Every method returns a
+ * CompletableFuture instead of waiting for the result, so callers no longer
+ * need to start their own async Bukkit task for each call.
+ *
+ * Datastores that block (such as MySQL) are run on a dedicated executor with
+ * exactly as many threads as the datastore can serve at once, so threads are
+ * never parked waiting for a pooled connection. Datastores that are kept in
+ * memory (such as YML) are run directly on the calling thread and return an
+ * already completed future.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class AsyncDatastore {
+
+	/**
+	 * How many pending operations may be queued per executor thread before
+	 * new operations are rejected instead of piling up.
+	 */
+	private static final int QUEUE_SIZE_PER_THREAD = 256;
+
+	private final Datastore storage;
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Creates an async view of the provided datastore and sizes its executor
+	 * based on Datastore#getMaxConcurrentOperations().
+	 *
+	 * @param storage the datastore to wrap
+	 */
+	public AsyncDatastore(Datastore storage) {
+		this.storage = storage;
+
+		int threads = storage.getMaxConcurrentOperations();
+		if (threads > 0) {
+			executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(threads * QUEUE_SIZE_PER_THREAD),
+					new DatastoreThreadFactory());
+			executor.allowCoreThreadTimeOut(true);
+		} else {
+			executor = null;
+		}
+	}
+
+	/**
+	 * Returns the datastore this async view wraps.
+	 *
+	 * @return the wrapped datastore
+	 */
+	public Datastore getDatastore() {
+		return storage;
+	}
+
+	/**
+	 * @see Datastore#updateHighscore(UUID, String, int)
+	 */
+	public CompletableFuture<Boolean> updateHighscore(final UUID player, final String name,
+													  final int score) {
+		return supply(() -> storage.updateHighscore(player, name, score));
+	}
+
+	/**
+	 * @see Datastore#getHighscore(UUID)
+	 */
+	public CompletableFuture<Integer> getHighscore(final UUID player) {
+		return supply(() -> storage.getHighscore(player));
+	}
+
+	/**
+	 * @see Datastore#getHighscore(String)
+	 */
+	public CompletableFuture<Integer> getHighscore(final String player) {
+		return supply(() -> storage.getHighscore(player));
+	}
+
+	/**
+	 * @see Datastore#getLeaderboard()
+	 */
+	public CompletableFuture<String> getLeaderboard() {
+		return supply(storage::getLeaderboard);
+	}
+
+	/**
+	 * @see Datastore#getLeaderboardPage(int, int)
+	 */
+	public CompletableFuture<List<LeaderboardEntry>> getLeaderboardPage(final int offset, final int limit) {
+		return supply(() -> storage.getLeaderboardPage(offset, limit));
+	}
+
+	/**
+	 * @see Datastore#getRank(UUID)
+	 */
+	public CompletableFuture<Integer> getRank(final UUID player) {
+		return supply(() -> storage.getRank(player));
+	}
+
+	/**
+	 * @see Datastore#updateTicTacToeWins(UUID, String, int)
+	 */
+	public CompletableFuture<Boolean> updateTicTacToeWins(final UUID player, final String name,
+														  final int value) {
+		return supply(() -> storage.updateTicTacToeWins(player, name, value));
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeWins(UUID)
+	 */
+	public CompletableFuture<Integer> getTicTacToeWins(final UUID player) {
+		return supply(() -> storage.getTicTacToeWins(player));
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeWins(String)
+	 */
+	public CompletableFuture<Integer> getTicTacToeWins(final String player) {
+		return supply(() -> storage.getTicTacToeWins(player));
+	}
+
+	/**
+	 * @see Datastore#updateTicTacToeLosses(UUID, String, int)
+	 */
+	public CompletableFuture<Boolean> updateTicTacToeLosses(final UUID player, final String name,
+															final int value) {
+		return supply(() -> storage.updateTicTacToeLosses(player, name, value));
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeLosses(UUID)
+	 */
+	public CompletableFuture<Integer> getTicTacToeLosses(final UUID player) {
+		return supply(() -> storage.getTicTacToeLosses(player));
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeLosses(String)
+	 */
+	public CompletableFuture<Integer> getTicTacToeLosses(final String player) {
+		return supply(() -> storage.getTicTacToeLosses(player));
+	}
+
+	/**
+	 * @see Datastore#updateTicTacToeTies(UUID, String, int)
+	 */
+	public CompletableFuture<Boolean> updateTicTacToeTies(final UUID player, final String name,
+														  final int value) {
+		return supply(() -> storage.updateTicTacToeTies(player, name, value));
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeTies(UUID)
+	 */
+	public CompletableFuture<Integer> getTicTacToeTies(final UUID player) {
+		return supply(() -> storage.getTicTacToeTies(player));
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeTies(String)
+	 */
+	public CompletableFuture<Integer> getTicTacToeTies(final String player) {
+		return supply(() -> storage.getTicTacToeTies(player));
+	}
+
+	/**
+	 * @see Datastore#submitHighscore(UUID, String, int)
+	 */
+	public CompletableFuture<Boolean> submitHighscore(final UUID player, final String name,
+													  final int score) {
+		return supply(() -> storage.submitHighscore(player, name, score));
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeWins(UUID, String, int)
+	 */
+	public CompletableFuture<Boolean> incrementTicTacToeWins(final UUID player, final String name,
+															 final int delta) {
+		return supply(() -> storage.incrementTicTacToeWins(player, name, delta));
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeLosses(UUID, String, int)
+	 */
+	public CompletableFuture<Boolean> incrementTicTacToeLosses(final UUID player, final String name,
+															   final int delta) {
+		return supply(() -> storage.incrementTicTacToeLosses(player, name, delta));
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeTies(UUID, String, int)
+	 */
+	public CompletableFuture<Boolean> incrementTicTacToeTies(final UUID player, final String name,
+															 final int delta) {
+		return supply(() -> storage.incrementTicTacToeTies(player, name, delta));
+	}
+
+	/**
+	 * @see Datastore#getProfile(UUID)
+	 */
+	public CompletableFuture<PlayerStats> getProfile(final UUID player) {
+		return supply(() -> storage.getProfile(player));
+	}
+
+	/**
+	 * @see Datastore#getProfile(String)
+	 */
+	public CompletableFuture<PlayerStats> getProfile(final String name) {
+		return supply(() -> storage.getProfile(name));
+	}
+
+	/**
+	 * @see Datastore#getStats(Collection)
+	 */
+	public CompletableFuture<Map<UUID, PlayerStats>> getStats(final Collection<UUID> players) {
+		return supply(() -> storage.getStats(players));
+	}
+
+	/**
+	 * @see Datastore#getStat(UUID, StatKey)
+	 */
+	public CompletableFuture<Integer> getStat(final UUID player, final StatKey stat) {
+		return supply(() -> storage.getStat(player, stat));
+	}
+
+	/**
+	 * @see Datastore#getStats(Collection, List)
+	 */
+	public CompletableFuture<Map<UUID, int[]>> getStats(final Collection<UUID> players,
+														 final List<StatKey> stats) {
+		return supply(() -> storage.getStats(players, stats));
+	}
+
+	/**
+	 * @see Datastore#setStat(UUID, String, StatKey, int)
+	 */
+	public CompletableFuture<Boolean> setStat(final UUID player, final String name,
+											  final StatKey stat, final int value) {
+		return supply(() -> storage.setStat(player, name, stat, value));
+	}
+
+	/**
+	 * @see Datastore#recordStat(UUID, String, StatKey, int)
+	 */
+	public CompletableFuture<Boolean> recordStat(final UUID player, final String name,
+												 final StatKey stat, final int value) {
+		return supply(() -> storage.recordStat(player, name, stat, value));
+	}
+
+	/**
+	 * @see Datastore#writeStats(StatBatch)
+	 */
+	public CompletableFuture<Boolean> writeStats(final StatBatch batch) {
+		return supply(() -> storage.writeStats(batch));
+	}
+
+	/**
+	 * @see Datastore#registeredName(String)
+	 */
+	public CompletableFuture<Boolean> registeredName(final String name) {
+		return supply(() -> storage.registeredName(name));
+	}
+
+	/**
+	 * Stops accepting new operations and waits a short time for the queued
+	 * ones to finish. Should be run before Datastore#onDisable() so pending
+	 * writes are not lost.
+	 */
+	public void shutdown() {
+		if (executor == null) return;
+
+		executor.shutdown();
+		try {
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Runs the provided operation on the executor, or right away on the
+	 * calling thread if the datastore never blocks. If the executor is full
+	 * or shut down the returned future is completed exceptionally rather than
+	 * blocking the caller.
+	 *
+	 * @param operation the datastore call to run
+	 * @return a future with the result of the call
+	 */
+	private <T> CompletableFuture<T> supply(Supplier<T> operation) {
+		try {
+			if (executor == null) {
+				return CompletableFuture.completedFuture(operation.get());
+			}
+			return CompletableFuture.supplyAsync(operation, executor);
+		} catch (RuntimeException e) {
+			// covers both a RejectedExecutionException and an in-memory failure
+			CompletableFuture<T> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+	}
+
+	/**
+	 * Names the executor's threads so they are easy to spot in thread dumps
+	 * and makes them daemons so they never hold up a server shutdown.
+	 */
+	private static class DatastoreThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "LobbyGames-Datastore-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
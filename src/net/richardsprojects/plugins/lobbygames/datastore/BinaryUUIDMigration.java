@@ -0,0 +1,208 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts a table's VARCHAR uuid column to BINARY(16) without locking the
+ * table for the length of the conversion. Rows are copied into a shadow
+ * table a chunk at a time while triggers mirror any writes made to the
+ * original in the meantime, and the two tables are then swapped with a
+ * single atomic RENAME. Each chunk is its own short statement, so other
+ * servers still using the table only ever wait on a few thousand rows.
+ *
+ * If the conversion is interrupted, the shadow table and triggers are thrown
+ * away and it starts over on the next run. The original table is untouched
+ * until the final swap. If any row's uuid isn't a well-formed UUID, it
+ * can't be converted, so the conversion stops before the swap and the
+ * table is left as it was.
+ *
+ * Creating the triggers needs the TRIGGER privilege on the database as well
+ * as the usual ones.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class BinaryUUIDMigration {
+
+	private static final int CHUNK_SIZE = 5000;
+
+	/** Matches the rows whose uuid can be converted. */
+	private static final String WELL_FORMED = "uuid REGEXP"
+			+ " '^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$'";
+
+	private final Connection conn;
+	private final String table;
+	private final String shadow;
+	private final String old;
+
+	/**
+	 * @param conn the connection to run the conversion on
+	 * @param table the full table name including the prefix
+	 */
+	public BinaryUUIDMigration(Connection conn, String table) {
+		this.conn = conn;
+		this.table = table;
+		this.shadow = table + "_uuidbin";
+		this.old = table + "_uuidold";
+	}
+
+	/**
+	 * Converts the table unless its uuid column is already binary.
+	 *
+	 * @throws SQLException if the conversion failed
+	 */
+	public void run() throws SQLException {
+		if ("binary".equals(SchemaMigrator.getColumnType(conn, table, "uuid"))) return;
+
+		String msg = "[LobbyGames] Converting the UUIDs in " + table + " to BINARY(16)...";
+		DatastoreLog.get().info(msg);
+
+		List<String> columns = getOtherColumns();
+
+		// left over from an interrupted run
+		dropTriggers();
+		execute("DROP TABLE IF EXISTS " + shadow);
+
+		// an empty copy keeps every index, so changing its key type is instant
+		execute("CREATE TABLE " + shadow + " LIKE " + table);
+		execute("ALTER TABLE " + shadow + " MODIFY uuid BINARY(16) NOT NULL");
+
+		createTriggers(columns);
+		long copied = copyChunks(columns);
+
+		// rows that weren't copied would be lost with the old table
+		long malformed = countMalformed();
+		if (malformed > 0) {
+			dropTriggers();
+			execute("DROP TABLE " + shadow);
+			throw new SQLException(malformed + " rows in " + table + " don't have a well-formed UUID and"
+					+ " can't be converted. Fix or delete them and restart the server.");
+		}
+
+		execute("RENAME TABLE " + table + " TO " + old + ", " + shadow + " TO " + table);
+		// the triggers moved with the old table and are dropped along with it
+		execute("DROP TABLE " + old);
+
+		msg = "[LobbyGames] Converted " + copied + " rows in " + table + ".";
+		DatastoreLog.get().info(msg);
+	}
+
+	/**
+	 * Copies the table into the shadow table in primary key order, one chunk
+	 * per statement. Rows the triggers already wrote are newer, so INSERT
+	 * IGNORE keeps them.
+	 *
+	 * @param columns every column except uuid
+	 * @return the number of rows copied
+	 */
+	private long copyChunks(List<String> columns) throws SQLException {
+		String list = join(columns, "");
+
+		String boundSql = "SELECT MAX(uuid) FROM (SELECT uuid FROM " + table + " WHERE uuid > ?" +
+				" ORDER BY uuid LIMIT " + CHUNK_SIZE + ") chunk";
+		// anything that isn't a well-formed UUID can't be converted and stops the swap
+		String copySql = "INSERT IGNORE INTO " + shadow + " (uuid" + list + ") SELECT" +
+				" UNHEX(REPLACE(uuid, '-', ''))" + list + " FROM " + table +
+				" WHERE uuid > ? AND uuid <= ? AND " + WELL_FORMED;
+
+		long copied = 0;
+		String lower = "";
+
+		try (PreparedStatement boundPs = conn.prepareStatement(boundSql);
+			 PreparedStatement copyPs = conn.prepareStatement(copySql)) {
+			while (true) {
+				boundPs.setString(1, lower);
+				String upper;
+				try (ResultSet set = boundPs.executeQuery()) {
+					upper = set.next() ? set.getString(1) : null;
+				}
+				if (upper == null) break;
+
+				copyPs.setString(1, lower);
+				copyPs.setString(2, upper);
+				copied += copyPs.executeUpdate();
+				lower = upper;
+			}
+		}
+
+		return copied;
+	}
+
+	/**
+	 * Returns the number of rows whose uuid can't be converted. The plugin
+	 * never writes such a row, so this only finds ones added by hand.
+	 */
+	private long countMalformed() throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM " + table
+				+ " WHERE NOT (" + WELL_FORMED + ")");
+			 ResultSet set = ps.executeQuery()) {
+			set.next();
+			return set.getLong(1);
+		}
+	}
+
+	private void createTriggers(List<String> columns) throws SQLException {
+		String list = join(columns, "");
+		String values = join(columns, "NEW.");
+		String upsert = "REPLACE INTO " + shadow + " (uuid" + list + ") VALUES" +
+				" (UNHEX(REPLACE(NEW.uuid, '-', ''))" + values + ")";
+
+		execute("CREATE TRIGGER " + shadow + "_ins AFTER INSERT ON " + table +
+				" FOR EACH ROW " + upsert);
+		execute("CREATE TRIGGER " + shadow + "_upd AFTER UPDATE ON " + table +
+				" FOR EACH ROW " + upsert);
+		execute("CREATE TRIGGER " + shadow + "_del AFTER DELETE ON " + table +
+				" FOR EACH ROW DELETE FROM " + shadow + " WHERE uuid = UNHEX(REPLACE(OLD.uuid, '-', ''))");
+	}
+
+	private void dropTriggers() throws SQLException {
+		execute("DROP TRIGGER IF EXISTS " + shadow + "_ins");
+		execute("DROP TRIGGER IF EXISTS " + shadow + "_upd");
+		execute("DROP TRIGGER IF EXISTS " + shadow + "_del");
+	}
+
+	/**
+	 * Returns the table's columns other than uuid in table order.
+	 */
+	private List<String> getOtherColumns() throws SQLException {
+		List<String> columns = new ArrayList<>();
+
+		String sql = "SELECT column_name FROM information_schema.columns WHERE table_schema = DATABASE()" +
+				" AND table_name = ? ORDER BY ordinal_position";
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			ps.setString(1, table);
+			try (ResultSet set = ps.executeQuery()) {
+				while (set.next()) {
+					String column = set.getString(1);
+					if (!column.equalsIgnoreCase("uuid")) columns.add(column);
+				}
+			}
+		}
+
+		return columns;
+	}
+
+	/**
+	 * Joins the columns into ", a, b" with the provided prefix in front of
+	 * each one.
+	 */
+	private static String join(List<String> columns, String prefix) {
+		StringBuilder builder = new StringBuilder();
+		for (String column : columns) {
+			builder.append(", ").append(prefix).append(column);
+		}
+		return builder.toString();
+	}
+
+	private void execute(String sql) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			ps.executeUpdate();
+		}
+	}
+}
@@ -0,0 +1,660 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A datastore that wraps any other datastore and keeps recently read player
+ * stats in memory. Reads are served from a bounded LRU cache keyed by both
+ * UUID and name, entries expire after a configurable time and every write
+ * goes straight through to the wrapped datastore and then invalidates the
+ * player's cached entries.
+ *
+ * A name entry is only invalidated when a write is made under that same
+ * name, so a lookup by a player's old name after a rename may be stale until
+ * the entry expires.
+ *
+ * If the wrapped datastore can tell when other servers change a player, such
+ * as MySQL with the change log turned on, those players are invalidated too.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class CachingDatastore extends Datastore {
+
+	private final Datastore storage;
+
+	private final Cache<UUID, CachedStats> byUUID;
+	private final Cache<String, CachedStats> byName;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Wraps the provided datastore with a cache.
+	 *
+	 * @param storage the datastore to read from and write to
+	 * @param maxPlayers how many players each of the UUID and name caches
+	 *                   may hold before the least recently used is evicted
+	 * @param expireSeconds how long an entry may be served before it has to
+	 *                      be read from the datastore again
+	 */
+	public CachingDatastore(Datastore storage, long maxPlayers, long expireSeconds) {
+		this.storage = storage;
+
+		RemovalListener<Object, CachedStats> listener = new RemovalListener<Object, CachedStats>() {
+			@Override
+			public void onRemoval(RemovalNotification<Object, CachedStats> notification) {
+				if (notification.wasEvicted()) evictions.incrementAndGet();
+			}
+		};
+
+		byUUID = CacheBuilder.newBuilder()
+				.maximumSize(maxPlayers)
+				.expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+				.removalListener(listener)
+				.build();
+		byName = CacheBuilder.newBuilder()
+				.maximumSize(maxPlayers)
+				.expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+				.removalListener(listener)
+				.build();
+
+		// drop players other servers change, entries still expire if nothing says so
+		storage.addChangeListener(new ChangeListener() {
+			@Override
+			public void playerChanged(UUID player, String name) {
+				invalidate(player, name);
+			}
+
+			@Override
+			public void allChanged() {
+				invalidateAll();
+			}
+		});
+	}
+
+	/**
+	 * Returns the datastore this cache wraps.
+	 *
+	 * @return the wrapped datastore
+	 */
+	public Datastore getDatastore() {
+		return storage;
+	}
+
+	/**
+	 * @see Datastore#initalize()
+	 */
+	@Override
+	public boolean initalize() {
+		return storage.initalize();
+	}
+
+	/**
+	 * @see Datastore#updateHighscore(UUID, String, int)
+	 */
+	@Override
+	public boolean updateHighscore(UUID player, String name, int score) {
+		boolean success = storage.updateHighscore(player, name, score);
+		invalidate(player, name);
+		return success;
+	}
+
+	/**
+	 * @see Datastore#getHighscore(UUID)
+	 */
+	@Override
+	public int getHighscore(UUID player) {
+		CachedStats stats = getOrCreate(player);
+		Integer highscore = stats.highscore;
+		if (highscore != null) {
+			hits.incrementAndGet();
+			return highscore;
+		}
+
+		misses.incrementAndGet();
+		highscore = storage.getHighscore(player);
+		stats.highscore = highscore;
+		return highscore;
+	}
+
+	/**
+	 * @see Datastore#getHighscore(String)
+	 */
+	@Override
+	public int getHighscore(String player) {
+		CachedStats stats = getOrCreate(player);
+		Integer highscore = stats.highscore;
+		if (highscore != null) {
+			hits.incrementAndGet();
+			return highscore;
+		}
+
+		misses.incrementAndGet();
+		highscore = storage.getHighscore(player);
+		stats.highscore = highscore;
+		return highscore;
+	}
+
+	/**
+	 * The leaderboard depends on every player so it is never cached.
+	 *
+	 * @see Datastore#getLeaderboard()
+	 */
+	@Override
+	public String getLeaderboard() {
+		return storage.getLeaderboard();
+	}
+
+	/**
+	 * @see Datastore#getLeaderboardPage(int, int)
+	 */
+	@Override
+	public List<LeaderboardEntry> getLeaderboardPage(int offset, int limit) {
+		return storage.getLeaderboardPage(offset, limit);
+	}
+
+	/**
+	 * A rank depends on every other player's score so it is never cached.
+	 *
+	 * @see Datastore#getRank(UUID)
+	 */
+	@Override
+	public int getRank(UUID player) {
+		return storage.getRank(player);
+	}
+
+	/**
+	 * @see Datastore#updateTicTacToeWins(UUID, String, int)
+	 */
+	@Override
+	public boolean updateTicTacToeWins(UUID player, String name, int value) {
+		boolean success = storage.updateTicTacToeWins(player, name, value);
+		invalidate(player, name);
+		return success;
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeWins(UUID)
+	 */
+	@Override
+	public int getTicTacToeWins(UUID player) {
+		CachedStats stats = getOrCreate(player);
+		Integer wins = stats.wins;
+		if (wins != null) {
+			hits.incrementAndGet();
+			return wins;
+		}
+
+		misses.incrementAndGet();
+		wins = storage.getTicTacToeWins(player);
+		stats.wins = wins;
+		return wins;
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeWins(String)
+	 */
+	@Override
+	public int getTicTacToeWins(String player) {
+		CachedStats stats = getOrCreate(player);
+		Integer wins = stats.wins;
+		if (wins != null) {
+			hits.incrementAndGet();
+			return wins;
+		}
+
+		misses.incrementAndGet();
+		wins = storage.getTicTacToeWins(player);
+		stats.wins = wins;
+		return wins;
+	}
+
+	/**
+	 * @see Datastore#updateTicTacToeLosses(UUID, String, int)
+	 */
+	@Override
+	public boolean updateTicTacToeLosses(UUID player, String name, int value) {
+		boolean success = storage.updateTicTacToeLosses(player, name, value);
+		invalidate(player, name);
+		return success;
+	}
+
+	/**
+	 * @see Datastore#updateTicTacToeTies(UUID, String, int)
+	 */
+	@Override
+	public boolean updateTicTacToeTies(UUID player, String name, int value) {
+		boolean success = storage.updateTicTacToeTies(player, name, value);
+		invalidate(player, name);
+		return success;
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeLosses(UUID)
+	 */
+	@Override
+	public int getTicTacToeLosses(UUID player) {
+		CachedStats stats = getOrCreate(player);
+		Integer losses = stats.losses;
+		if (losses != null) {
+			hits.incrementAndGet();
+			return losses;
+		}
+
+		misses.incrementAndGet();
+		losses = storage.getTicTacToeLosses(player);
+		stats.losses = losses;
+		return losses;
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeLosses(String)
+	 */
+	@Override
+	public int getTicTacToeLosses(String player) {
+		CachedStats stats = getOrCreate(player);
+		Integer losses = stats.losses;
+		if (losses != null) {
+			hits.incrementAndGet();
+			return losses;
+		}
+
+		misses.incrementAndGet();
+		losses = storage.getTicTacToeLosses(player);
+		stats.losses = losses;
+		return losses;
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeTies(String)
+	 */
+	@Override
+	public int getTicTacToeTies(String player) {
+		CachedStats stats = getOrCreate(player);
+		Integer ties = stats.ties;
+		if (ties != null) {
+			hits.incrementAndGet();
+			return ties;
+		}
+
+		misses.incrementAndGet();
+		ties = storage.getTicTacToeTies(player);
+		stats.ties = ties;
+		return ties;
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeTies(UUID)
+	 */
+	@Override
+	public int getTicTacToeTies(UUID player) {
+		CachedStats stats = getOrCreate(player);
+		Integer ties = stats.ties;
+		if (ties != null) {
+			hits.incrementAndGet();
+			return ties;
+		}
+
+		misses.incrementAndGet();
+		ties = storage.getTicTacToeTies(player);
+		stats.ties = ties;
+		return ties;
+	}
+
+	/**
+	 * @see Datastore#submitHighscore(UUID, String, int)
+	 */
+	@Override
+	public boolean submitHighscore(UUID player, String name, int score) {
+		boolean success = storage.submitHighscore(player, name, score);
+		invalidate(player, name);
+		return success;
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeWins(UUID, String, int)
+	 */
+	@Override
+	public boolean incrementTicTacToeWins(UUID player, String name, int delta) {
+		boolean success = storage.incrementTicTacToeWins(player, name, delta);
+		invalidate(player, name);
+		return success;
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeLosses(UUID, String, int)
+	 */
+	@Override
+	public boolean incrementTicTacToeLosses(UUID player, String name, int delta) {
+		boolean success = storage.incrementTicTacToeLosses(player, name, delta);
+		invalidate(player, name);
+		return success;
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeTies(UUID, String, int)
+	 */
+	@Override
+	public boolean incrementTicTacToeTies(UUID player, String name, int delta) {
+		boolean success = storage.incrementTicTacToeTies(player, name, delta);
+		invalidate(player, name);
+		return success;
+	}
+
+	/**
+	 * @see Datastore#getProfile(UUID)
+	 */
+	@Override
+	public PlayerStats getProfile(UUID player) {
+		CachedStats stats = getOrCreate(player);
+		PlayerStats all = stats.all;
+		if (all != null) {
+			hits.incrementAndGet();
+			return all;
+		}
+
+		misses.incrementAndGet();
+		all = storage.getProfile(player);
+		stats.fill(all);
+		return all;
+	}
+
+	/**
+	 * @see Datastore#getProfile(String)
+	 */
+	@Override
+	public PlayerStats getProfile(String name) {
+		CachedStats stats = getOrCreate(name);
+		PlayerStats all = stats.all;
+		if (all != null || Boolean.FALSE.equals(stats.registered)) {
+			hits.incrementAndGet();
+			return all;
+		}
+
+		misses.incrementAndGet();
+		all = storage.getProfile(name);
+		if (all != null) {
+			stats.fill(all);
+		} else {
+			stats.registered = false;
+		}
+		return all;
+	}
+
+	/**
+	 * Serves the players that are fully cached and reads the rest from the
+	 * wrapped datastore in one call, caching what comes back.
+	 *
+	 * @see Datastore#getStats(Collection)
+	 */
+	@Override
+	public Map<UUID, PlayerStats> getStats(Collection<UUID> players) {
+		Map<UUID, PlayerStats> result = new HashMap<>();
+		Map<UUID, CachedStats> missing = new HashMap<>();
+
+		for (UUID player : players) {
+			CachedStats stats = getOrCreate(player);
+			PlayerStats all = stats.all;
+			if (all != null) {
+				result.put(player, all);
+			} else {
+				missing.put(player, stats);
+			}
+		}
+
+		hits.addAndGet(result.size());
+		if (missing.isEmpty()) return result;
+		misses.addAndGet(missing.size());
+
+		for (Map.Entry<UUID, PlayerStats> entry : storage.getStats(missing.keySet()).entrySet()) {
+			PlayerStats all = entry.getValue();
+			CachedStats stats = missing.get(entry.getKey());
+			if (stats != null) stats.fill(all);
+			result.put(entry.getKey(), all);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Empties the cache and closes the wrapped datastore.
+	 *
+	 * @see Datastore#onDisable()
+	 */
+	@Override
+	public void onDisable() {
+		invalidateAll();
+		storage.onDisable();
+	}
+
+	/**
+	 * @see Datastore#registeredName(String)
+	 */
+	@Override
+	public boolean registeredName(String name) {
+		CachedStats stats = getOrCreate(name);
+		Boolean registered = stats.registered;
+		if (registered != null) {
+			hits.incrementAndGet();
+			return registered;
+		}
+
+		misses.incrementAndGet();
+		registered = storage.registeredName(name);
+		stats.registered = registered;
+		return registered;
+	}
+
+	/**
+	 * Only the built-in stats are cached. Registered stats are read from the
+	 * wrapped datastore every time.
+	 *
+	 * @see Datastore#readCustomStats(Collection, List)
+	 */
+	@Override
+	protected Map<UUID, int[]> readCustomStats(Collection<UUID> players, List<StatKey> stats) {
+		return storage.readCustomStats(players, stats);
+	}
+
+	/**
+	 * @see Datastore#writeCustomStats(List)
+	 */
+	@Override
+	protected boolean writeCustomStats(List<StatBatch.Op> ops) {
+		return storage.writeCustomStats(ops);
+	}
+
+	/**
+	 * @see Datastore#exportPlayers(UUID, int)
+	 */
+	@Override
+	public List<PlayerRecord> exportPlayers(UUID after, int limit) {
+		return storage.exportPlayers(after, limit);
+	}
+
+	/**
+	 * Writes the records through and then invalidates every imported
+	 * player's cached entries.
+	 *
+	 * @see Datastore#importPlayers(List)
+	 */
+	@Override
+	public boolean importPlayers(List<PlayerRecord> players) {
+		boolean success = storage.importPlayers(players);
+		for (PlayerRecord record : players) {
+			invalidate(record.getUUID(), record.getName());
+		}
+		return success;
+	}
+
+	/**
+	 * @see Datastore#getMaxConcurrentOperations()
+	 */
+	@Override
+	public int getMaxConcurrentOperations() {
+		return storage.getMaxConcurrentOperations();
+	}
+
+	/**
+	 * Adds the cache's hit, miss and eviction counts and its size, then the
+	 * wrapped datastore's gauges.
+	 *
+	 * @see Datastore#collectGauges(List)
+	 */
+	@Override
+	public void collectGauges(List<DatastoreMetrics.Gauge> gauges) {
+		gauges.add(DatastoreMetrics.Gauge.counter("cache_hits_total",
+				"Reads served from the cache.", getHits()));
+		gauges.add(DatastoreMetrics.Gauge.counter("cache_misses_total",
+				"Reads that went to the wrapped datastore.", getMisses()));
+		gauges.add(DatastoreMetrics.Gauge.counter("cache_evictions_total",
+				"Entries removed because the cache was full or they expired.", getEvictions()));
+		gauges.add(DatastoreMetrics.Gauge.of("cache_entries",
+				"Players cached by UUID and by name.", size()));
+		storage.collectGauges(gauges);
+	}
+
+	/**
+	 * @see Datastore#addChangeListener(ChangeListener)
+	 */
+	@Override
+	public void addChangeListener(ChangeListener listener) {
+		storage.addChangeListener(listener);
+	}
+
+	/**
+	 * Removes the cached entries for the provided player and name so the
+	 * next read goes to the wrapped datastore.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name or null
+	 */
+	public void invalidate(UUID player, String name) {
+		byUUID.invalidate(player);
+		if (name != null) byName.invalidate(name);
+	}
+
+	/**
+	 * Removes every cached entry.
+	 */
+	public void invalidateAll() {
+		byUUID.invalidateAll();
+		byName.invalidateAll();
+	}
+
+	/**
+	 * Returns the number of reads that were served from the cache.
+	 *
+	 * @return hit count
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of reads that had to go to the wrapped datastore.
+	 *
+	 * @return miss count
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of entries that were removed because the cache was
+	 * full or the entry expired. Invalidations from writes are not counted.
+	 *
+	 * @return eviction count
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Returns the fraction of reads that were served from the cache or 0 if
+	 * nothing has been read yet.
+	 *
+	 * @return hit rate between 0 and 1
+	 */
+	public double getHitRate() {
+		long hitCount = hits.get();
+		long total = hitCount + misses.get();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	/**
+	 * Returns the number of players currently cached by UUID and by name.
+	 *
+	 * @return cached entry count
+	 */
+	public long size() {
+		return byUUID.size() + byName.size();
+	}
+
+	/**
+	 * Helper method that returns the cached entry for a UUID and creates it if
+	 * needed. The entry is put in the cache before the wrapped datastore is
+	 * read so a write that lands during the read invalidates it instead of
+	 * leaving an old value behind.
+	 */
+	private CachedStats getOrCreate(UUID player) {
+		CachedStats stats = byUUID.getIfPresent(player);
+		if (stats == null) {
+			stats = new CachedStats();
+			byUUID.put(player, stats);
+		}
+		return stats;
+	}
+
+	/**
+	 * Helper method that returns the cached entry for a name and creates it if
+	 * needed.
+	 */
+	private CachedStats getOrCreate(String name) {
+		CachedStats stats = byName.getIfPresent(name);
+		if (stats == null) {
+			stats = new CachedStats();
+			byName.put(name, stats);
+		}
+		return stats;
+	}
+
+	/**
+	 * The cached values for a single player. A null field has not been read
+	 * from the wrapped datastore yet. all is only set by getProfile and
+	 * getStats.
+	 */
+	private static class CachedStats {
+
+		private volatile Integer highscore;
+		private volatile Integer wins;
+		private volatile Integer losses;
+		private volatile Integer ties;
+		private volatile Boolean registered;
+		private volatile PlayerStats all;
+
+		/**
+		 * Caches every stat from a profile read from the wrapped datastore.
+		 */
+		private void fill(PlayerStats stats) {
+			highscore = stats.getHighscore();
+			wins = stats.getTicTacToeWins();
+			losses = stats.getTicTacToeLosses();
+			ties = stats.getTicTacToeTies();
+			all = stats;
+		}
+	}
+}
@@ -0,0 +1,319 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import net.richardsprojects.plugins.lobbygames.LobbyGames;
+
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lets servers that share a MySQL database find out which players the others
+ * have changed. Every write adds a row with the player's UUID and name to the
+ * changes table, whose AUTO_INCREMENT version only ever goes up. Each server
+ * polls for the rows after the last version it has seen and tells its
+ * listeners about every player changed by another server, so a cache only
+ * has to drop those players instead of expiring everything.
+ *
+ * Versions are handed out when a row is inserted but become visible when
+ * its transaction commits, so a lower version can show up after a higher
+ * one. Versions skipped by a poll are asked for again until they show up or
+ * are older than HOLE_TIMEOUT, after which they are taken to be rolled back.
+ *
+ * Rows older than the retention are deleted a few at a time. A server that
+ * couldn't poll for that long may have missed changes, so it tells its
+ * listeners that every player changed.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class ChangeLog {
+
+	/** The most rows read by one query. A poll keeps reading until it is caught up. */
+	private static final int POLL_LIMIT = 5000;
+
+	/** The most rows deleted by one statement. */
+	private static final int PRUNE_LIMIT = 10000;
+
+	/** How long a skipped version is waited for, in milliseconds. */
+	private static final long HOLE_TIMEOUT = 10000;
+
+	/** The most skipped versions waited for at once. */
+	private static final int MAX_HOLES = 1000;
+
+	/** How often old rows are deleted, in milliseconds. */
+	private static final long PRUNE_INTERVAL = 60000;
+
+	private final ConnectionPoolManager pool;
+	private final String insertSql;
+	private final String pollSql;
+	private final String latestSql;
+	private final String pruneSql;
+	private final long retention;
+
+	/** Tells this server's rows apart from the others'. Picked again on every start. */
+	private final long serverId = ThreadLocalRandom.current().nextLong();
+	private final List<Datastore.ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+	// only used while holding the poll lock
+	private final Object pollLock = new Object();
+	private final TreeMap<Long, Long> holes = new TreeMap<>();
+	private long lastVersion;
+	private long step = 1;
+	private long lastPrune;
+
+	private volatile long lastPoll;
+	private final LongAdder remoteChanges = new LongAdder();
+	private final LongAdder failedPolls = new LongAdder();
+
+	private PollTask pollTask;
+
+	/**
+	 * @param pool the pool to borrow connections from
+	 * @param prefix the table prefix
+	 * @param retention how long rows are kept, in seconds
+	 */
+	public ChangeLog(ConnectionPoolManager pool, String prefix, int retention) {
+		this.pool = pool;
+		this.retention = retention;
+
+		String table = prefix + "changes";
+		insertSql = "INSERT INTO " + table + " (uuid, player, server) VALUES (?, ?, ?)";
+		pollSql = "SELECT version, uuid, player, server FROM " + table
+				+ " WHERE version > ? ORDER BY version LIMIT " + POLL_LIMIT;
+		latestSql = "SELECT COALESCE(MAX(version), 0), @@auto_increment_increment FROM " + table;
+		// rows are deleted in version order, which is also roughly the order they were written
+		pruneSql = "DELETE FROM " + table + " WHERE changed_at < NOW() - INTERVAL ? SECOND"
+				+ " ORDER BY version LIMIT " + PRUNE_LIMIT;
+	}
+
+	/**
+	 * Returns the statement that creates the changes table.
+	 *
+	 * @param prefix the table prefix
+	 * @return the SQL
+	 */
+	public static String createTable(String prefix) {
+		return "CREATE TABLE IF NOT EXISTS " + prefix + "changes (version BIGINT NOT NULL AUTO_INCREMENT"
+				+ ", uuid BINARY(16) NOT NULL, player VARCHAR(50), server BIGINT NOT NULL"
+				+ ", changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, PRIMARY KEY (version))";
+	}
+
+	/**
+	 * Registers a listener for players changed by other servers.
+	 *
+	 * @param listener the listener
+	 */
+	public void addListener(Datastore.ChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Starts polling from the latest version, since this server has nothing
+	 * cached that an older change could have made stale.
+	 *
+	 * @param interval ticks between polls
+	 * @return whether the latest version could be read
+	 */
+	public boolean start(long interval) {
+		try (Connection conn = pool.getConnection();
+			 PreparedStatement ps = conn.prepareStatement(latestSql);
+			 ResultSet set = ps.executeQuery()) {
+			set.next();
+			synchronized (pollLock) {
+				lastVersion = set.getLong(1);
+				step = Math.max(1, set.getLong(2));
+			}
+		} catch (SQLException e) {
+			String msg = "[LobbyGames] Could not read the MySQL change log: " + e.getMessage();
+			DatastoreLog.get().info(msg);
+			return false;
+		}
+
+		lastPoll = System.currentTimeMillis();
+		pollTask = new PollTask();
+		pollTask.runTaskTimerAsynchronously(LobbyGames.instance, interval, interval);
+		return true;
+	}
+
+	/**
+	 * Stops polling.
+	 */
+	public void stop() {
+		if (pollTask != null) {
+			pollTask.cancel();
+			pollTask = null;
+		}
+	}
+
+	/**
+	 * Records that a player was changed. If the connection is in a
+	 * transaction the row is only seen by the other servers once it commits.
+	 *
+	 * @param conn the connection the change was written with
+	 * @param player player's UUID
+	 * @param name player's name or null
+	 * @throws SQLException if the row could not be added
+	 */
+	public void record(Connection conn, UUID player, String name) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement(insertSql)) {
+			bind(ps, player, name);
+			ps.executeUpdate();
+		}
+	}
+
+	/**
+	 * Records that several players were changed with a single batch, which
+	 * the driver sends as a multi-row insert.
+	 *
+	 * @param conn the connection the changes were written with
+	 * @param players the players' names keyed by UUID, a name may be null
+	 * @throws SQLException if the rows could not be added
+	 */
+	public void record(Connection conn, Map<UUID, String> players) throws SQLException {
+		if (players.isEmpty()) return;
+
+		try (PreparedStatement ps = conn.prepareStatement(insertSql)) {
+			for (Map.Entry<UUID, String> entry : players.entrySet()) {
+				bind(ps, entry.getKey(), entry.getValue());
+				ps.addBatch();
+			}
+			ps.executeBatch();
+		}
+	}
+
+	private void bind(PreparedStatement ps, UUID player, String name) throws SQLException {
+		UUIDFormat.BINARY.set(ps, 1, player);
+		ps.setString(2, name);
+		ps.setLong(3, serverId);
+	}
+
+	/**
+	 * Reads every change since the last poll and passes the other servers'
+	 * on to the listeners. Only one poll runs at a time.
+	 */
+	public void poll() {
+		synchronized (pollLock) {
+			long now = System.currentTimeMillis();
+
+			try (Connection conn = pool.getConnection();
+				 PreparedStatement ps = conn.prepareStatement(pollSql)) {
+				expireHoles(now);
+				// the first query also looks for skipped versions, later ones only for new rows
+				long after = holes.isEmpty() ? lastVersion : holes.firstKey() - 1;
+				int rows;
+				do {
+					ps.setLong(1, after);
+
+					rows = 0;
+					try (ResultSet set = ps.executeQuery()) {
+						while (set.next()) {
+							rows++;
+							read(set, now);
+						}
+					}
+					after = lastVersion;
+					// a full page means there may be more
+				} while (rows == POLL_LIMIT);
+
+				if (now - lastPrune >= PRUNE_INTERVAL) {
+					lastPrune = now;
+					prune(conn);
+				}
+			} catch (SQLException e) {
+				failedPolls.increment();
+				String msg = "[LobbyGames] Could not poll the MySQL change log: " + e.getMessage();
+				DatastoreLog.get().info(msg);
+				return;
+			}
+
+			// the rows from while this server couldn't poll may already be deleted
+			if (now - lastPoll > retention * 1000L) {
+				String msg = "[LobbyGames] Missed too many changes from other servers, clearing the cache.";
+				DatastoreLog.get().info(msg);
+				for (Datastore.ChangeListener listener : listeners) {
+					listener.allChanged();
+				}
+			}
+			lastPoll = now;
+		}
+	}
+
+	/**
+	 * Handles one row of a poll. Rows below the last version were either
+	 * waited for or already seen.
+	 */
+	private void read(ResultSet set, long now) throws SQLException {
+		long version = set.getLong("version");
+
+		if (version <= lastVersion) {
+			if (holes.remove(version) == null) return;
+		} else {
+			for (long skipped = lastVersion + step; skipped < version && holes.size() < MAX_HOLES;
+					skipped += step) {
+				holes.put(skipped, now);
+			}
+			lastVersion = version;
+		}
+
+		if (set.getLong("server") == serverId) return;
+
+		remoteChanges.increment();
+		UUID player = UUIDFormat.BINARY.get(set, "uuid");
+		String name = set.getString("player");
+		for (Datastore.ChangeListener listener : listeners) {
+			listener.playerChanged(player, name);
+		}
+	}
+
+	private void expireHoles(long now) {
+		Iterator<Long> waiting = holes.values().iterator();
+		while (waiting.hasNext()) {
+			if (now - waiting.next() > HOLE_TIMEOUT) waiting.remove();
+		}
+	}
+
+	private void prune(Connection conn) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement(pruneSql)) {
+			ps.setLong(1, retention);
+			ps.executeUpdate();
+		}
+	}
+
+	/**
+	 * Adds the change log's gauges to the provided list.
+	 *
+	 * @param gauges the list to add to
+	 */
+	public void collectGauges(List<DatastoreMetrics.Gauge> gauges) {
+		gauges.add(DatastoreMetrics.Gauge.counter("mysql_change_log_remote_changes_total",
+				"Changes made by other servers that this server was told about.", remoteChanges.sum()));
+		gauges.add(DatastoreMetrics.Gauge.counter("mysql_change_log_failed_polls_total",
+				"Polls of the change log that failed.", failedPolls.sum()));
+		gauges.add(DatastoreMetrics.Gauge.of("mysql_change_log_staleness_seconds",
+				"Seconds since the change log was last polled.",
+				(System.currentTimeMillis() - lastPoll) / 1000.0));
+	}
+
+	/**
+	 * A small BukkitRunnable that polls the change log so it can be run on a
+	 * timer.
+	 */
+	private class PollTask extends BukkitRunnable {
+
+		@Override
+		public void run() {
+			poll();
+		}
+	}
+}
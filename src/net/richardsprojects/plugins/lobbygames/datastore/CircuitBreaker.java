@@ -0,0 +1,144 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stops calls from waiting on a database that isn't answering. Once enough
+ * calls fail because the database couldn't be reached or timed out within
+ * a short window, the breaker opens and every call fails straight away
+ * instead of waiting for its own timeout. It stays open until something
+ * checks that the database answers again and closes it, so only that check
+ * ever waits on a database that is still down.
+ *
+ * Errors the database sends back, such as a bad query, say nothing about
+ * whether it is reachable and are ignored.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class CircuitBreaker {
+
+	/** How long failures are counted towards opening, in milliseconds. */
+	private static final long FAILURE_WINDOW = 10000;
+
+	private final String name;
+	private final int threshold;
+
+	private final Object lock = new Object();
+	private int failures;
+	private long windowStart;
+
+	private volatile boolean open;
+	private volatile long openedAt;
+	private final LongAdder trips = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * @param name what is being protected, used in log messages
+	 * @param threshold how many failures within the window open the breaker
+	 */
+	public CircuitBreaker(String name, int threshold) {
+		this.name = name;
+		this.threshold = Math.max(1, threshold);
+	}
+
+	/**
+	 * Returns whether a call may go ahead. Calls that may not are counted.
+	 *
+	 * @return false if the breaker is open
+	 */
+	public boolean allowRequest() {
+		if (!open) return true;
+		rejected.increment();
+		return false;
+	}
+
+	/**
+	 * Counts a failed call if it failed because the database couldn't be
+	 * reached, opening the breaker once there have been enough.
+	 *
+	 * @param e why the call failed
+	 */
+	public void recordFailure(SQLException e) {
+		if (!isUnavailable(e)) return;
+
+		synchronized (lock) {
+			if (open) return;
+
+			long now = System.currentTimeMillis();
+			if (now - windowStart > FAILURE_WINDOW) {
+				windowStart = now;
+				failures = 0;
+			}
+
+			if (++failures >= threshold) {
+				open = true;
+				openedAt = now;
+				trips.increment();
+
+				String msg = "[LobbyGames] " + name + " is not answering, failing calls straight away until"
+						+ " it is back: " + e.getMessage();
+				DatastoreLog.get().info(msg);
+			}
+		}
+	}
+
+	/**
+	 * Closes the breaker after the database was found to answer again.
+	 */
+	public void close() {
+		synchronized (lock) {
+			if (!open) return;
+			open = false;
+			failures = 0;
+
+			long seconds = (System.currentTimeMillis() - openedAt) / 1000;
+			String msg = "[LobbyGames] " + name + " is answering again after " + seconds + " seconds.";
+			DatastoreLog.get().info(msg);
+		}
+	}
+
+	public boolean isOpen() {
+		return open;
+	}
+
+	/**
+	 * Returns whether an exception means the database couldn't be reached or
+	 * didn't answer in time, rather than that it refused the statement.
+	 *
+	 * @param e the exception
+	 * @return whether the database is unavailable
+	 */
+	public static boolean isUnavailable(SQLException e) {
+		if (e instanceof SQLTransientConnectionException || e instanceof SQLTimeoutException
+				|| e instanceof SQLNonTransientConnectionException) {
+			return true;
+		}
+
+		// SQL state class 08 is a connection exception, which is what the driver reports for socket timeouts
+		String state = e.getSQLState();
+		return state != null && state.startsWith("08");
+	}
+
+	/**
+	 * Adds the breaker's state, how often it opened and how many calls it
+	 * failed straight away.
+	 *
+	 * @param gauges the list to add to
+	 * @param prefix the start of every gauge name
+	 */
+	public void collectGauges(List<DatastoreMetrics.Gauge> gauges, String prefix) {
+		gauges.add(DatastoreMetrics.Gauge.of(prefix + "_circuit_open",
+				"1 while calls fail straight away, otherwise 0.", open ? 1 : 0));
+		gauges.add(DatastoreMetrics.Gauge.counter(prefix + "_circuit_trips_total",
+				"Times the circuit breaker opened.", trips.sum()));
+		gauges.add(DatastoreMetrics.Gauge.counter(prefix + "_circuit_rejected_total",
+				"Calls failed straight away while the circuit breaker was open.", rejected.sum()));
+	}
+}
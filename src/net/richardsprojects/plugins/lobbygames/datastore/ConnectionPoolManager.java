@@ -1,13 +1,25 @@
 package net.richardsprojects.plugins.lobbygames.datastore;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.sql.SQLException;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 
 import net.richardsprojects.plugins.lobbygames.LobbyGames;
 
@@ -21,11 +33,26 @@ import net.richardsprojects.plugins.lobbygames.LobbyGames;
  */
 public class ConnectionPoolManager {
 
+    private static final AtomicInteger POOL_IDS = new AtomicInteger();
+
     private HikariDataSource dataSource;
+    private HikariPoolMXBean poolBean;
+    private final String poolName = "LobbyGames-" + POOL_IDS.incrementAndGet();
+    private String gaugePrefix = "mysql_pool";
+
+    private final LatencyHistogram acquireTimes = new LatencyHistogram();
+    private final LongAdder acquireTimeouts = new LongAdder();
+    private volatile CircuitBreaker breaker;
     
     private int minimumConnections;
     private int maximumConnections;
     private long connectionTimeout;
+    private long idleTimeout;
+    private long maxLifetime;
+    private long leakDetectionThreshold;
+    private int statementCacheSize;
+    private boolean serverPrepStmts;
+    private long queryTimeout;
 
     /**
      * Simple constructor that runs the init method.
@@ -34,14 +61,53 @@ public class ConnectionPoolManager {
     	init();
     }
 
+    /**
+     * Opens a pool of connections to an SQLite database file in WAL mode,
+     * where readers never wait for the writer. Every connection is opened up
+     * front and kept, since opening one means reading the file's schema
+     * again.
+     *
+     * @param database the database file, created if it doesn't exist
+     * @param connections how many connections to keep open
+     * @param synchronous the synchronous pragma, NORMAL or FULL
+     */
+    public ConnectionPoolManager(File database, int connections, String synchronous) {
+        gaugePrefix = "sqlite_pool";
+        maximumConnections = Math.max(1, connections);
+        minimumConnections = maximumConnections;
+        connectionTimeout = 10000;
+        // 0 keeps connections open until the pool is closed
+        idleTimeout = 0;
+        maxLifetime = 0;
+
+        HikariConfig config = newConfig();
+        config.setJdbcUrl("jdbc:sqlite:" + database.getAbsolutePath());
+        config.setDriverClassName("org.sqlite.JDBC");
+        config.setConnectionTestQuery("SELECT 1");
+        // read by the driver when it opens each connection
+        config.addDataSourceProperty("journal_mode", "WAL");
+        config.addDataSourceProperty("synchronous", synchronous);
+        // a connection that finds the file locked waits instead of failing
+        config.setConnectionInitSql("PRAGMA busy_timeout = 5000");
+        dataSource = new HikariDataSource(config);
+    }
+
     /**
      * Initializes the connection pool based on the data loaded from the
      * plugin's config file.
      */
     private void init() {
-        minimumConnections = 0;
-        maximumConnections = 5;
-        connectionTimeout = 29999;
+        LobbyGames plugin = LobbyGames.instance;
+        maximumConnections = Math.max(1, plugin.mysql_poolMaxSize);
+        // idle connections are kept open so a quiet server's next call doesn't pay for a new one
+        minimumConnections = Math.max(0, Math.min(plugin.mysql_poolMinIdle, maximumConnections));
+        connectionTimeout = plugin.mysql_connectionTimeout * 1000L;
+        idleTimeout = plugin.mysql_idleTimeout * 1000L;
+        maxLifetime = plugin.mysql_maxLifetime * 1000L;
+        leakDetectionThreshold = plugin.mysql_leakDetectionThreshold * 1000L;
+        statementCacheSize = Math.max(0, plugin.mysql_statementCacheSize);
+        serverPrepStmts = plugin.mysql_serverPrepStmts;
+        queryTimeout = Math.max(0, plugin.mysql_queryTimeout) * 1000L;
         setupPool();
     }
 
@@ -49,7 +115,7 @@ public class ConnectionPoolManager {
      * Creates a new HikariDataSource.
      */
     private void setupPool() {
-        HikariConfig config = new HikariConfig();
+        HikariConfig config = newConfig();
         config.setJdbcUrl(
                 "jdbc:mysql://" +
                         LobbyGames.instance.mysql_dbHost +
@@ -61,20 +127,174 @@ public class ConnectionPoolManager {
         config.setDriverClassName("com.mysql.jdbc.Driver");
         config.setUsername(LobbyGames.instance.mysql_dbUsername);
         config.setPassword(LobbyGames.instance.mysql_dbPassword);
+        // lets the driver send a JDBC batch as multi-row statements
+        config.addDataSourceProperty("rewriteBatchedStatements", "true");
+
+        // every statement MySQLDatastore runs has fixed SQL text, so each
+        // connection only has to prepare it once
+        if (statementCacheSize > 0) {
+            config.addDataSourceProperty("cachePrepStmts", "true");
+            config.addDataSourceProperty("prepStmtCacheSize", String.valueOf(statementCacheSize));
+            // large enough for the padded IN lists getStats uses
+            config.addDataSourceProperty("prepStmtCacheSqlLimit", "8192");
+        }
+        config.addDataSourceProperty("useServerPrepStmts", String.valueOf(serverPrepStmts));
+
+        // skip round trips the driver would otherwise make on every borrow
+        config.addDataSourceProperty("useLocalSessionState", "true");
+        config.addDataSourceProperty("cacheServerConfiguration", "true");
+        config.addDataSourceProperty("cacheResultSetMetadata", "true");
+        config.addDataSourceProperty("elideSetAutoCommits", "true");
+        config.addDataSourceProperty("maintainTimeStats", "false");
+
+        // a statement that gets no answer fails instead of holding its thread forever
+        if (queryTimeout > 0) {
+            config.addDataSourceProperty("socketTimeout", String.valueOf(queryTimeout));
+        }
+        dataSource = new HikariDataSource(config);
+    }
+
+    /**
+     * Helper method that creates a HikariConfig with the pool's size,
+     * timeouts and name set.
+     *
+     * @return the config
+     */
+    private HikariConfig newConfig() {
+        HikariConfig config = new HikariConfig();
         config.setMinimumIdle(minimumConnections);
         config.setMaximumPoolSize(maximumConnections);
         config.setConnectionTimeout(connectionTimeout);
-        dataSource = new HikariDataSource(config);
+        config.setIdleTimeout(idleTimeout);
+        config.setMaxLifetime(maxLifetime);
+        config.setLeakDetectionThreshold(leakDetectionThreshold);
+        // HikariCP 2.4 only exposes the pool's usage through JMX
+        config.setPoolName(poolName);
+        config.setRegisterMbeans(true);
+        return config;
     }
 
     /**
-     * Returns a new available connection from the pool.
+     * Returns a new available connection from the pool. Throws a
+     * SQLTransientConnectionException if none could be had before the
+     * connection timeout or the circuit breaker is open, in which case
+     * nothing was sent to the database.
      *
      * @return a connection
      * @throws SQLException
      */
     public Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+        CircuitBreaker breaker = this.breaker;
+        if (breaker != null && !breaker.allowRequest()) {
+            throw new SQLTransientConnectionException("The database is unavailable, not waiting for a connection.");
+        }
+
+        long start = System.nanoTime();
+        try {
+            return dataSource.getConnection();
+        } catch (SQLException e) {
+            if (e instanceof SQLTransientConnectionException) acquireTimeouts.increment();
+            if (breaker != null) breaker.recordFailure(e);
+            throw e;
+        } finally {
+            acquireTimes.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Sets the circuit breaker that every getConnection call goes through.
+     * Failures to get a connection are counted by it, and while it is open
+     * getConnection fails without waiting.
+     *
+     * @param breaker the circuit breaker or null for none
+     */
+    public void setCircuitBreaker(CircuitBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    /**
+     * Counts a failed statement towards opening the circuit breaker, if
+     * there is one.
+     *
+     * @param e why the statement failed
+     */
+    public void recordFailure(SQLException e) {
+        CircuitBreaker breaker = this.breaker;
+        if (breaker != null) breaker.recordFailure(e);
+    }
+
+    /**
+     * Checks whether the database answers, bypassing the circuit breaker.
+     *
+     * @param timeout how long to wait for an answer, in seconds
+     * @return whether a connection could be borrowed and is valid
+     */
+    public boolean isReachable(int timeout) {
+        try (Connection conn = dataSource.getConnection()) {
+            return conn.isValid(timeout);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the maximum number of connections the pool will open.
+     *
+     * @return maximum pool size
+     */
+    public int getMaximumConnections() {
+        return maximumConnections;
+    }
+
+    /**
+     * Adds gauges for how many connections are in use, idle and waited for,
+     * and how long getting a connection takes.
+     *
+     * @param gauges the list to add to
+     */
+    public void collectGauges(List<DatastoreMetrics.Gauge> gauges) {
+        HikariPoolMXBean pool = getPoolBean();
+        if (pool != null) {
+            gauges.add(DatastoreMetrics.Gauge.of(gaugePrefix + "_active_connections",
+                    "Connections currently in use.", pool.getActiveConnections()));
+            gauges.add(DatastoreMetrics.Gauge.of(gaugePrefix + "_idle_connections",
+                    "Open connections that are not in use.", pool.getIdleConnections()));
+            gauges.add(DatastoreMetrics.Gauge.of(gaugePrefix + "_total_connections",
+                    "Open connections.", pool.getTotalConnections()));
+            gauges.add(DatastoreMetrics.Gauge.of(gaugePrefix + "_pending_threads",
+                    "Threads waiting for a connection.", pool.getThreadsAwaitingConnection()));
+        }
+        gauges.add(DatastoreMetrics.Gauge.of(gaugePrefix + "_max_connections",
+                "Most connections the pool will open.", maximumConnections));
+        gauges.add(DatastoreMetrics.Gauge.of(gaugePrefix + "_acquire_p99_seconds",
+                "99th percentile time to get a connection from the pool.",
+                acquireTimes.getPercentile(0.99) / 1e9));
+        gauges.add(DatastoreMetrics.Gauge.of(gaugePrefix + "_acquire_max_seconds",
+                "Longest time to get a connection from the pool.", acquireTimes.getMax() / 1e9));
+        gauges.add(DatastoreMetrics.Gauge.counter(gaugePrefix + "_acquire_timeouts_total",
+                "Times no connection became free before the timeout.", acquireTimeouts.sum()));
+    }
+
+    /**
+     * Looks up the pool's JMX bean the first time it is needed, since it is
+     * only registered once the pool has started.
+     *
+     * @return the pool's bean or null if it is not registered
+     */
+    private HikariPoolMXBean getPoolBean() {
+        if (poolBean != null) return poolBean;
+        if (dataSource == null || dataSource.isClosed()) return null;
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.zaxxer.hikari:type=Pool (" + poolName + ")");
+            if (!server.isRegistered(name)) return null;
+            poolBean = JMX.newMXBeanProxy(server, name, HikariPoolMXBean.class);
+        } catch (JMException e) {
+            return null;
+        }
+
+        return poolBean;
     }
 
     /**
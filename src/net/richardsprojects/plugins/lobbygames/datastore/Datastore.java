@@ -1,5 +1,11 @@
 package net.richardsprojects.plugins.lobbygames.datastore;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -11,6 +17,9 @@ import java.util.UUID;
  */
 public abstract class Datastore {
 
+	/** Whether the call running on each thread reported a failure. */
+	private static final ThreadLocal<boolean[]> callFailed = ThreadLocal.withInitial(() -> new boolean[1]);
+
 	/**
 	 * Initializes the datastore type. Should be run in the onEnable method of
 	 * the plugin.
@@ -59,6 +68,27 @@ public abstract class Datastore {
 	 */
 	public abstract String getLeaderboard();
 
+	/**
+	 * Returns part of the 2048 leaderboard from highest to lowest score.
+	 * Players that share a score are ordered the same way on every call, so
+	 * consecutive pages neither repeat nor skip anyone while the scores stay
+	 * the same.
+	 *
+	 * @param offset how many players to skip from the top
+	 * @param limit the most entries to return
+	 * @return the entries on the page, empty if offset is past the end
+	 */
+	public abstract List<LeaderboardEntry> getLeaderboardPage(int offset, int limit);
+
+	/**
+	 * Returns the player's rank on the 2048 leaderboard. Players that share
+	 * a score share a rank.
+	 *
+	 * @param player player's UUID
+	 * @return the player's rank starting at 1, or 0 if they have no highscore
+	 */
+	public abstract int getRank(UUID player);
+
 	/**
 	 * Updates the player's Tic Tac Wins and their username based on the
 	 * provided UUID.
@@ -152,6 +182,53 @@ public abstract class Datastore {
 	 */
 	public abstract int getTicTacToeTies(UUID player);
 
+	/**
+	 * Submits a new 2048 score for the player and updates their name. The
+	 * stored highscore is only replaced if the new score is higher, and the
+	 * comparison is done by the datastore itself so two servers submitting at
+	 * once can never overwrite a better score.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param score the score the player just got
+	 * @return whether the operation was successful or not
+	 */
+	public abstract boolean submitHighscore(UUID player, String name, int score);
+
+	/**
+	 * Adds the provided amount to the player's Tic Tac Toe win count and
+	 * updates their name. Unlike updateTicTacToeWins this does not need the
+	 * current count to be read first and never loses a concurrent update.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param delta amount to add to the win count
+	 * @return whether the operation was successful or not
+	 */
+	public abstract boolean incrementTicTacToeWins(UUID player, String name, int delta);
+
+	/**
+	 * Adds the provided amount to the player's Tic Tac Toe loss count and
+	 * updates their name.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param delta amount to add to the loss count
+	 * @return whether the operation was successful or not
+	 */
+	public abstract boolean incrementTicTacToeLosses(UUID player, String name, int delta);
+
+	/**
+	 * Adds the provided amount to the player's Tic Tac Toe tie count and
+	 * updates their name.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param delta amount to add to the tie count
+	 * @return whether the operation was successful or not
+	 */
+	public abstract boolean incrementTicTacToeTies(UUID player, String name, int delta);
+
 	/**
 	 * Closes connections and saves all pending data. Should be run in the
 	 * onDisable method of the plugin.
@@ -165,5 +242,334 @@ public abstract class Datastore {
 	 * @return if there is information regarding this player in the datastore
 	 */
 	public abstract boolean registeredName(String name);
-	
+
+	/**
+	 * Returns every stat the datastore keeps for the player, read in one
+	 * go. This is cheaper than calling each getter when more than one stat
+	 * is needed. Returns a PlayerStats with every stat at 0 if there are no
+	 * records for the player.
+	 *
+	 * @param player player's UUID
+	 * @return the player's stats
+	 */
+	public abstract PlayerStats getProfile(UUID player);
+
+	/**
+	 * Returns every stat the datastore keeps for the player with the
+	 * provided name, read in one go. Returns null if the name is not in the
+	 * records.
+	 *
+	 * @param name player's name
+	 * @return the player's stats or null
+	 */
+	public abstract PlayerStats getProfile(String name);
+
+	/**
+	 * Returns up to limit players in the datastore's own order, starting
+	 * after the provided player. Passing the last player of one call to the
+	 * next walks every player exactly once, so a migration can stop and
+	 * carry on later from the last player it wrote. The order only has to
+	 * be stable while no players are added.
+	 *
+	 * @param after the last player of the previous call or null to start
+	 *              from the beginning
+	 * @param limit the most players to return
+	 * @return the players, an empty list once every player has been returned
+	 *         or null if they couldn't be read
+	 */
+	public abstract List<PlayerRecord> exportPlayers(UUID after, int limit);
+
+	/**
+	 * Writes whole player records, replacing whatever the datastore had for
+	 * those players. This version calls the update methods once per stat,
+	 * which is all an in-memory datastore needs. Datastores that make a
+	 * round trip per call should override it to write all the players at
+	 * once.
+	 *
+	 * @param players the records to write
+	 * @return whether every record was written
+	 */
+	public boolean importPlayers(List<PlayerRecord> players) {
+		boolean success = true;
+
+		for (PlayerRecord record : players) {
+			UUID player = record.getUUID();
+			String name = record.getName();
+
+			if (record.getHighscore() != null) {
+				success &= updateHighscore(player, name, record.getHighscore());
+			}
+			if (record.hasTicTacToe()) {
+				success &= updateTicTacToeWins(player, name, record.getTicTacToeWins());
+				success &= updateTicTacToeLosses(player, name, record.getTicTacToeLosses());
+				success &= updateTicTacToeTies(player, name, record.getTicTacToeTies());
+			}
+		}
+
+		return success;
+	}
+
+	/**
+	 * Returns every stat for each of the provided players. The map has an
+	 * entry for every player asked for, and players with no records have all
+	 * their stats at 0. This version calls getProfile once per player, which
+	 * is all an in-memory datastore needs. Datastores that make a round trip
+	 * per call should override it to read all the players at once.
+	 *
+	 * @param players the players' UUIDs
+	 * @return each player's stats keyed by UUID
+	 */
+	public Map<UUID, PlayerStats> getStats(Collection<UUID> players) {
+		Map<UUID, PlayerStats> stats = new HashMap<>();
+
+		for (UUID player : players) {
+			stats.put(player, getProfile(player));
+		}
+
+		return stats;
+	}
+
+	/**
+	 * Returns the value of a registered stat for the player, or 0 if they
+	 * don't have one.
+	 *
+	 * @param player player's UUID
+	 * @param stat the stat
+	 * @return the stat's value or 0
+	 */
+	public int getStat(UUID player, StatKey stat) {
+		if (stat.isBuiltIn()) {
+			return stat.getValue(getProfile(player));
+		}
+
+		int[] values = readCustomStats(Collections.singleton(player),
+				Collections.singletonList(stat)).get(player);
+		return values != null ? values[0] : 0;
+	}
+
+	/**
+	 * Returns the values of several registered stats for several players at
+	 * once. Each player's array holds the stats in the order they were asked
+	 * for, and stats a player doesn't have are 0. Built-in stats are read
+	 * with getStats(Collection) and every other stat with a single call to
+	 * the datastore.
+	 *
+	 * @param players the players' UUIDs
+	 * @param stats the stats to read
+	 * @return each player's values keyed by UUID
+	 */
+	public Map<UUID, int[]> getStats(Collection<UUID> players, List<StatKey> stats) {
+		List<StatKey> custom = new ArrayList<>();
+		boolean builtIn = false;
+		for (StatKey stat : stats) {
+			if (stat.isBuiltIn()) {
+				builtIn = true;
+			} else {
+				custom.add(stat);
+			}
+		}
+
+		Map<UUID, PlayerStats> profiles = builtIn ? getStats(players) : null;
+		Map<UUID, int[]> customValues = custom.isEmpty() ? null : readCustomStats(players, custom);
+
+		Map<UUID, int[]> result = new HashMap<>();
+		for (UUID player : players) {
+			int[] row = customValues != null ? customValues.get(player) : null;
+			int[] values = new int[stats.size()];
+			int next = 0;
+
+			for (int i = 0; i < values.length; i++) {
+				StatKey stat = stats.get(i);
+				if (stat.isBuiltIn()) {
+					values[i] = stat.getValue(profiles.get(player));
+				} else {
+					values[i] = row != null ? row[next] : 0;
+					next++;
+				}
+			}
+
+			result.put(player, values);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Sets a registered stat to an exact value.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param stat the stat
+	 * @param value the new value
+	 * @return whether the operation was successful or not
+	 */
+	public boolean setStat(UUID player, String name, StatKey stat, int value) {
+		return writeStats(new StatBatch().set(player, name, stat, value));
+	}
+
+	/**
+	 * Records a value for a registered stat. A COUNTER stat has the value
+	 * added to it and a MAX stat keeps the higher of the two. Either way the
+	 * datastore combines them itself, so concurrent updates are never lost.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param stat the stat
+	 * @param value the value to record
+	 * @return whether the operation was successful or not
+	 */
+	public boolean recordStat(UUID player, String name, StatKey stat, int value) {
+		return writeStats(new StatBatch().record(player, name, stat, value));
+	}
+
+	/**
+	 * Applies every write in the batch. Built-in stats go through the same
+	 * methods as always and every other stat is written with a single call
+	 * to the datastore.
+	 *
+	 * @param batch the writes
+	 * @return whether every write was successful
+	 */
+	public boolean writeStats(StatBatch batch) {
+		List<StatBatch.Op> custom = new ArrayList<>();
+		boolean success = true;
+
+		for (StatBatch.Op op : batch.getOps()) {
+			if (op.getStat().isBuiltIn()) {
+				success &= writeBuiltInStat(op);
+			} else {
+				custom.add(op);
+			}
+		}
+
+		if (!custom.isEmpty()) {
+			success &= writeCustomStats(custom);
+		}
+
+		return success;
+	}
+
+	/**
+	 * Reads registered stats that aren't built in. The map must have an
+	 * entry for every player, holding the stats in the order they were
+	 * asked for with 0 for any the player doesn't have.
+	 *
+	 * @param players the players' UUIDs
+	 * @param stats the stats to read, none of them built in
+	 * @return each player's values keyed by UUID
+	 */
+	protected abstract Map<UUID, int[]> readCustomStats(Collection<UUID> players, List<StatKey> stats);
+
+	/**
+	 * Applies writes to registered stats that aren't built in, in order.
+	 *
+	 * @param ops the writes, none of them to a built-in stat
+	 * @return whether every write was successful
+	 */
+	protected abstract boolean writeCustomStats(List<StatBatch.Op> ops);
+
+	/**
+	 * Helper method that turns a write to a built-in stat into a call to
+	 * the method that has always handled it.
+	 */
+	private boolean writeBuiltInStat(StatBatch.Op op) {
+		UUID player = op.getPlayer();
+		String name = op.getName();
+		int value = op.getValue();
+
+		switch (op.getStat().getColumn()) {
+			case PlayerStatTable.HIGHSCORE:
+				return op.isSet() ? updateHighscore(player, name, value)
+						: submitHighscore(player, name, value);
+			case PlayerStatTable.WINS:
+				return op.isSet() ? updateTicTacToeWins(player, name, value)
+						: incrementTicTacToeWins(player, name, value);
+			case PlayerStatTable.LOSSES:
+				return op.isSet() ? updateTicTacToeLosses(player, name, value)
+						: incrementTicTacToeLosses(player, name, value);
+			case PlayerStatTable.TIES:
+				return op.isSet() ? updateTicTacToeTies(player, name, value)
+						: incrementTicTacToeTies(player, name, value);
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Returns how many operations on this datastore can usefully run at the
+	 * same time. Datastores that wait on an outside resource such as a
+	 * connection pool should return the size of that resource. Datastores
+	 * that are kept entirely in memory should return 0, which tells
+	 * AsyncDatastore to run their methods on the calling thread.
+	 *
+	 * @return the number of concurrent operations or 0 if nothing blocks
+	 */
+	public int getMaxConcurrentOperations() {
+		return 0;
+	}
+
+	/**
+	 * Adds gauges describing the datastore's own state, such as connection
+	 * pool usage or unsaved changes, to the provided list. Datastores that
+	 * wrap another one should add their own and then pass the list on. Adds
+	 * nothing by default.
+	 *
+	 * @param gauges the list to add to
+	 */
+	public void collectGauges(List<DatastoreMetrics.Gauge> gauges) {}
+
+	/**
+	 * Registers a listener that is told about players changed by something
+	 * other than this datastore, such as another server sharing the same
+	 * database. Datastores that wrap another one should pass the listener
+	 * on. Does nothing by default, since most datastores are only ever
+	 * changed through themselves.
+	 *
+	 * @param listener the listener
+	 */
+	public void addChangeListener(ChangeListener listener) {}
+
+	/**
+	 * Reports that the call running on this thread failed. Datastores that
+	 * catch an error and return a default value instead of throwing call
+	 * this, so the failure is still counted by InstrumentedDatastore.
+	 */
+	protected static void reportFailure() {
+		callFailed.get()[0] = true;
+	}
+
+	/**
+	 * Returns whether a failure was reported on this thread since the last
+	 * time this was called, and clears it.
+	 *
+	 * @return whether a failure was reported
+	 */
+	static boolean takeFailure() {
+		boolean[] failed = callFailed.get();
+		boolean result = failed[0];
+		failed[0] = false;
+		return result;
+	}
+
+	/**
+	 * Told about players that were changed behind a datastore's back, so
+	 * anything kept in memory for them can be dropped.
+	 */
+	public interface ChangeListener {
+
+		/**
+		 * Called when a player's stats were changed elsewhere.
+		 *
+		 * @param player player's UUID
+		 * @param name the name the player was written with or null
+		 */
+		void playerChanged(UUID player, String name);
+
+		/**
+		 * Called when changes may have been missed, so every player has to
+		 * be treated as changed.
+		 */
+		void allChanged();
+	}
+
 }
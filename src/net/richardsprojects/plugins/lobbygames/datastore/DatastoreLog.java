@@ -0,0 +1,28 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import net.richardsprojects.plugins.lobbygames.LobbyGames;
+
+import java.util.logging.Logger;
+
+/**
+ * Where the datastore classes log to. On a server that's the plugin's
+ * logger. Without a running plugin, like in the tests, a logger with the
+ * same name is used instead.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+final class DatastoreLog {
+
+	private static final Logger FALLBACK = Logger.getLogger("LobbyGames");
+
+	private DatastoreLog() {}
+
+	/**
+	 * @return the plugin's logger, or the fallback if the plugin isn't enabled
+	 */
+	static Logger get() {
+		LobbyGames plugin = LobbyGames.instance;
+		return plugin != null && plugin.log != null ? plugin.log : FALLBACK;
+	}
+}
@@ -0,0 +1,281 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics collected by an InstrumentedDatastore: a call count, an error
+ * count and a latency histogram for every datastore operation, plus the
+ * gauges the wrapped datastores report about themselves such as connection
+ * pool usage or how long yml saves take. Everything can be read directly or
+ * written out in the Prometheus text format.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class DatastoreMetrics {
+
+	private static final String PREFIX = "lobbygames_";
+
+	private final ConcurrentHashMap<String, Operation> operations = new ConcurrentHashMap<>();
+	private volatile Datastore gaugeSource;
+
+	/**
+	 * Sets the datastore that is asked for gauges. This should be the
+	 * outermost datastore so every datastore it wraps adds its gauges too.
+	 *
+	 * @param storage the datastore asked for gauges
+	 */
+	public void setGaugeSource(Datastore storage) {
+		this.gaugeSource = storage;
+	}
+
+	/**
+	 * Returns the operation with the provided name and creates it if needed.
+	 *
+	 * @param name the operation's name
+	 * @return the operation
+	 */
+	public Operation operation(String name) {
+		return operations.computeIfAbsent(name, Operation::new);
+	}
+
+	/**
+	 * Returns every operation sorted by name.
+	 *
+	 * @return the operations
+	 */
+	public List<Operation> getOperations() {
+		return new ArrayList<>(new TreeMap<>(operations).values());
+	}
+
+	/**
+	 * Asks the datastores for their current gauges.
+	 *
+	 * @return the gauges in the order they were reported, empty if there is
+	 *         no gauge source
+	 */
+	public List<Gauge> getGauges() {
+		List<Gauge> gauges = new ArrayList<>();
+		Datastore storage = gaugeSource;
+		if (storage != null) storage.collectGauges(gauges);
+		return gauges;
+	}
+
+	/**
+	 * Clears the call counts, error counts and latencies of every operation.
+	 * Gauges are read live so they are not affected.
+	 */
+	public void reset() {
+		for (Operation operation : operations.values()) {
+			operation.reset();
+		}
+	}
+
+	/**
+	 * Writes every metric in the Prometheus text format.
+	 *
+	 * @param out where to write
+	 * @throws IOException if writing fails
+	 */
+	public void writePrometheus(Writer out) throws IOException {
+		List<Operation> operations = getOperations();
+
+		header(out, "datastore_calls_total", "counter", "Datastore calls by operation.");
+		for (Operation operation : operations) {
+			sample(out, "datastore_calls_total", operation.label(), operation.getCalls());
+		}
+
+		header(out, "datastore_errors_total", "counter",
+				"Datastore calls that failed or threw an exception by operation.");
+		for (Operation operation : operations) {
+			sample(out, "datastore_errors_total", operation.label(), operation.getErrors());
+		}
+
+		header(out, "datastore_latency_seconds", "summary", "Datastore call latency by operation.");
+		for (Operation operation : operations) {
+			LatencyHistogram latency = operation.getLatency();
+			String label = operation.label();
+			sample(out, "datastore_latency_seconds", label + ",quantile=\"0.5\"",
+					seconds(latency.getPercentile(0.5)));
+			sample(out, "datastore_latency_seconds", label + ",quantile=\"0.99\"",
+					seconds(latency.getPercentile(0.99)));
+			sample(out, "datastore_latency_seconds_sum", label, seconds(latency.getSum()));
+			sample(out, "datastore_latency_seconds_count", label, latency.getCount());
+		}
+
+		header(out, "datastore_latency_max_seconds", "gauge", "Slowest datastore call by operation.");
+		for (Operation operation : operations) {
+			sample(out, "datastore_latency_max_seconds", operation.label(),
+					seconds(operation.getLatency().getMax()));
+		}
+
+		for (Gauge gauge : getGauges()) {
+			header(out, gauge.getName(), gauge.isCounter() ? "counter" : "gauge", gauge.getHelp());
+			sample(out, gauge.getName(), null, gauge.getValue());
+		}
+	}
+
+	/**
+	 * Writes every metric in the Prometheus text format to a file, for
+	 * example one read by node_exporter's textfile collector. The file is
+	 * written next to its final location and moved into place so a reader
+	 * never sees it half written.
+	 *
+	 * @param file the file to write
+	 * @throws IOException if writing fails
+	 */
+	public void writePrometheus(File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		try (Writer out = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+			writePrometheus(out);
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void header(Writer out, String name, String type, String help) throws IOException {
+		out.write("# HELP " + PREFIX + name + " " + help + "\n");
+		out.write("# TYPE " + PREFIX + name + " " + type + "\n");
+	}
+
+	private static void sample(Writer out, String name, String labels, double value) throws IOException {
+		out.write(PREFIX + name);
+		if (labels != null) out.write("{" + labels + "}");
+		out.write(" " + format(value) + "\n");
+	}
+
+	private static String format(double value) {
+		if (value == Math.rint(value) && !Double.isInfinite(value)) {
+			return Long.toString((long) value);
+		}
+		return String.format(Locale.ROOT, "%.9f", value);
+	}
+
+	private static double seconds(long nanos) {
+		return nanos / 1e9;
+	}
+
+	/**
+	 * The call count, error count and latency of one datastore operation.
+	 */
+	public static class Operation {
+
+		private final String name;
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		private Operation(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Records a finished call.
+		 *
+		 * @param nanos how long the call took
+		 * @param failed whether it failed
+		 */
+		public void record(long nanos, boolean failed) {
+			calls.increment();
+			if (failed) errors.increment();
+			latency.record(nanos);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getCalls() {
+			return calls.sum();
+		}
+
+		public long getErrors() {
+			return errors.sum();
+		}
+
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		private void reset() {
+			calls.reset();
+			errors.reset();
+			latency.reset();
+		}
+
+		private String label() {
+			return "operation=\"" + name + "\"";
+		}
+	}
+
+	/**
+	 * A single value a datastore reports about itself. Counters only ever go
+	 * up, every other gauge may go up and down.
+	 */
+	public static class Gauge {
+
+		private final String name;
+		private final String help;
+		private final double value;
+		private final boolean counter;
+
+		private Gauge(String name, String help, double value, boolean counter) {
+			this.name = name;
+			this.help = help;
+			this.value = value;
+			this.counter = counter;
+		}
+
+		/**
+		 * Creates a gauge.
+		 *
+		 * @param name the name without the lobbygames_ prefix, for example
+		 *             mysql_pool_active_connections
+		 * @param help a one line description
+		 * @param value the current value
+		 * @return the gauge
+		 */
+		public static Gauge of(String name, String help, double value) {
+			return new Gauge(name, help, value, false);
+		}
+
+		/**
+		 * Creates a counter. Its name should end in _total.
+		 *
+		 * @param name the name without the lobbygames_ prefix
+		 * @param help a one line description
+		 * @param value the current count
+		 * @return the counter
+		 */
+		public static Gauge counter(String name, String help, double value) {
+			return new Gauge(name, help, value, true);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getHelp() {
+			return help;
+		}
+
+		public double getValue() {
+			return value;
+		}
+
+		public boolean isCounter() {
+			return counter;
+		}
+	}
+}
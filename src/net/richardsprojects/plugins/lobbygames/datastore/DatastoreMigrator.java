@@ -0,0 +1,493 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import net.richardsprojects.plugins.lobbygames.LobbyGames;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Copies every player from one datastore to another. The source is read a
+ * page at a time in UUID order with exportPlayers and each page is written
+ * to the target with a single importPlayers call, which the SQL datastores
+ * turn into one batched transaction. One thread reads while several writer
+ * threads write, with a small queue of pages between them so the reader is
+ * never far ahead of the writers.
+ *
+ * After every page the UUID up to which everything has been written is
+ * saved to a progress file, so an interrupted migration carries on from
+ * there the next time it is run. Once every page is written the source is
+ * read again and compared with the target, and a checksum of each side is
+ * reported along with any players that differ.
+ *
+ * Registered stats are copied along with the players, but only the ones
+ * registered when the migration runs and only for players that have a
+ * highscore or tic tac toe stats.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class DatastoreMigrator {
+
+	/** The most players read and written at once. */
+	private static final int PAGE_SIZE = 1000;
+
+	/** How many times a page is written before the migration gives up. */
+	private static final int MAX_ATTEMPTS = 3;
+
+	/** The most writer threads, however many connections the target has. */
+	private static final int MAX_WRITERS = 8;
+
+	/** The least time between two progress messages, in milliseconds. */
+	private static final long PROGRESS_INTERVAL = 5000;
+
+	/** How many differing players are reported by the verification. */
+	private static final int MAX_REPORTED_MISMATCHES = 5;
+
+	/** Tells a writer there are no more pages. */
+	private static final Page END = new Page(-1, null);
+
+	private final Datastore source;
+	private final Datastore target;
+	private final File progressFile;
+	private final Consumer<String> output;
+	private final List<StatKey> customStats = new ArrayList<>();
+
+	private final AtomicLong written = new AtomicLong();
+	private final TreeMap<Integer, Page> finished = new TreeMap<>();
+	private int nextToSave;
+	private long saved;
+
+	private volatile String error;
+
+	/**
+	 * @param source the datastore to copy from
+	 * @param target the datastore to copy to
+	 * @param progressFile where to keep the position of the migration
+	 * @param output receives the progress messages
+	 */
+	public DatastoreMigrator(Datastore source, Datastore target, File progressFile,
+							 Consumer<String> output) {
+		this.source = source;
+		this.target = target;
+		this.progressFile = progressFile;
+		this.output = output;
+
+		for (StatKey stat : StatKey.values()) {
+			if (!stat.isBuiltIn()) customStats.add(stat);
+		}
+	}
+
+	/**
+	 * Copies every player and verifies the copy. Blocks until it is done, so
+	 * it must not be called on the main thread.
+	 *
+	 * @param restart whether to ignore the progress of an earlier run
+	 * @return whether every player was copied and the two datastores match
+	 */
+	public boolean run(boolean restart) {
+		UUID after = null;
+		if (!restart && progressFile.exists()) {
+			after = loadProgress();
+			if (after != null) {
+				report("Resuming after " + after + " with " + saved + " players already copied.");
+			}
+		} else {
+			saved = 0;
+		}
+
+		if (!copy(after)) {
+			report("Migration stopped: " + error + " " + saved + " players were saved,"
+					+ " run it again to carry on from there.");
+			return false;
+		}
+
+		if (!progressFile.delete() && progressFile.exists()) {
+			report("Could not delete " + progressFile.getName() + ", delete it before migrating again.");
+		}
+
+		return verify();
+	}
+
+	/**
+	 * Reads the source on this thread and hands the pages to the writers.
+	 */
+	private boolean copy(UUID after) {
+		int writers = Math.max(1, Math.min(MAX_WRITERS, target.getMaxConcurrentOperations()));
+		BlockingQueue<Page> queue = new ArrayBlockingQueue<>(writers * 2);
+		ExecutorService executor = Executors.newFixedThreadPool(writers, new MigrationThreadFactory());
+
+		for (int i = 0; i < writers; i++) {
+			executor.execute(new Writer(queue));
+		}
+
+		report("Copying players with " + writers + " writer thread" + (writers == 1 ? "" : "s") + "...");
+		long start = System.nanoTime();
+		long lastReport = System.currentTimeMillis();
+		int index = 0;
+
+		try {
+			while (error == null) {
+				List<PlayerRecord> records = source.exportPlayers(after, PAGE_SIZE);
+				if (records == null) {
+					fail("Could not read players from the source.");
+					break;
+				}
+				if (records.isEmpty()) break;
+
+				Page page = new Page(index++, records);
+				while (error == null && !queue.offer(page, 1, TimeUnit.SECONDS)) {
+					// waiting for a writer
+				}
+				after = page.getLast();
+
+				if (System.currentTimeMillis() - lastReport >= PROGRESS_INTERVAL) {
+					lastReport = System.currentTimeMillis();
+					reportRate("Copied", written.get(), start);
+				}
+			}
+
+			// writers stop on their own after an error, so only tell them when there isn't one
+			for (int i = 0; i < writers && error == null; ) {
+				if (queue.offer(END, 1, TimeUnit.SECONDS)) i++;
+			}
+
+			executor.shutdown();
+			while (!executor.awaitTermination(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS)) {
+				reportRate("Copied", written.get(), start);
+			}
+		} catch (InterruptedException e) {
+			fail("The migration was interrupted.");
+			executor.shutdown();
+			Thread.currentThread().interrupt();
+		}
+
+		if (error != null) return false;
+
+		reportRate("Copied", written.get(), start);
+		return true;
+	}
+
+	/**
+	 * Writes one page, trying again if the target fails.
+	 */
+	private boolean write(Page page) {
+		List<PlayerRecord> records = page.getRecords();
+
+		for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+			if (target.importPlayers(records) && writeCustomStats(records)) {
+				return true;
+			}
+
+			String msg = "[LobbyGames] Writing players " + page.getFirst() + " to " + page.getLast()
+					+ " failed (attempt " + attempt + " of " + MAX_ATTEMPTS + ").";
+			DatastoreLog.get().info(msg);
+		}
+
+		return false;
+	}
+
+	private boolean writeCustomStats(List<PlayerRecord> records) {
+		if (customStats.isEmpty()) return true;
+
+		Map<UUID, int[]> values = source.getStats(uuids(records), customStats);
+		StatBatch batch = new StatBatch();
+
+		for (PlayerRecord record : records) {
+			int[] row = values.get(record.getUUID());
+			if (row == null) continue;
+
+			for (int i = 0; i < row.length; i++) {
+				if (row[i] != 0) {
+					batch.set(record.getUUID(), record.getName(), customStats.get(i), row[i]);
+				}
+			}
+		}
+
+		return batch.isEmpty() || target.writeStats(batch);
+	}
+
+	/**
+	 * Marks a page as written and saves the last UUID before which every
+	 * page has been written. Pages finish out of order, so a page is only
+	 * saved once all the pages before it are done too.
+	 */
+	private synchronized void finish(Page page) {
+		finished.put(page.getIndex(), page);
+
+		Page last = null;
+		while (finished.containsKey(nextToSave)) {
+			last = finished.remove(nextToSave);
+			saved += last.getRecords().size();
+			nextToSave++;
+		}
+
+		if (last != null) saveProgress(last.getLast());
+	}
+
+	/**
+	 * Reads the source again and compares every player with the target.
+	 */
+	private boolean verify() {
+		report("Verifying the copy...");
+		long start = System.nanoTime();
+		long lastReport = System.currentTimeMillis();
+
+		long sourceSum = 0;
+		long targetSum = 0;
+		long players = 0;
+		long mismatches = 0;
+		UUID after = null;
+
+		while (true) {
+			List<PlayerRecord> records = source.exportPlayers(after, PAGE_SIZE);
+			if (records == null) {
+				report("Verification stopped: could not read players from the source.");
+				return false;
+			}
+			if (records.isEmpty()) break;
+
+			List<UUID> uuids = uuids(records);
+			Map<UUID, PlayerStats> stats = target.getStats(uuids);
+			Map<UUID, int[]> sourceCustom = customStats.isEmpty() ? null : source.getStats(uuids, customStats);
+			Map<UUID, int[]> targetCustom = customStats.isEmpty() ? null : target.getStats(uuids, customStats);
+
+			for (PlayerRecord record : records) {
+				UUID uuid = record.getUUID();
+				PlayerStats expected = record.toStats();
+				PlayerStats actual = stats.get(uuid);
+				int[] expectedCustom = sourceCustom != null ? sourceCustom.get(uuid) : null;
+				int[] actualCustom = targetCustom != null ? targetCustom.get(uuid) : null;
+
+				long expectedHash = checksum(uuid, expected, expectedCustom);
+				long actualHash = actual == null ? 0 : checksum(uuid, actual, actualCustom);
+				sourceSum += expectedHash;
+				targetSum += actualHash;
+
+				if (expectedHash != actualHash || !sameName(expected, actual)) {
+					mismatches++;
+					if (mismatches <= MAX_REPORTED_MISMATCHES) {
+						report("Mismatch for " + uuid + ": source " + expected + ", target " + actual);
+					}
+				}
+			}
+
+			players += records.size();
+			after = records.get(records.size() - 1).getUUID();
+
+			if (System.currentTimeMillis() - lastReport >= PROGRESS_INTERVAL) {
+				lastReport = System.currentTimeMillis();
+				reportRate("Verified", players, start);
+			}
+		}
+
+		report("Verified " + players + " players. Source checksum " + Long.toHexString(sourceSum)
+				+ ", target checksum " + Long.toHexString(targetSum) + ".");
+
+		if (mismatches > 0) {
+			report(mismatches + " players differ between the two datastores.");
+			return false;
+		}
+
+		report("Migration complete, both datastores match.");
+		return true;
+	}
+
+	/**
+	 * Returns a hash of everything stored for the player. The hashes of all
+	 * players are added together, so the checksum of a datastore doesn't
+	 * depend on the order its players were read in. Names are compared
+	 * separately since datastores may change their case.
+	 */
+	private static long checksum(UUID uuid, PlayerStats stats, int[] custom) {
+		long hash = mix(uuid.getMostSignificantBits());
+		hash = mix(hash ^ uuid.getLeastSignificantBits());
+		hash = mix(hash ^ stats.getHighscore());
+		hash = mix(hash ^ stats.getTicTacToeWins());
+		hash = mix(hash ^ stats.getTicTacToeLosses());
+		hash = mix(hash ^ stats.getTicTacToeTies());
+
+		if (custom != null) {
+			for (int value : custom) {
+				hash = mix(hash ^ value);
+			}
+		}
+
+		return hash;
+	}
+
+	/**
+	 * The finalizer of SplitMix64, so that similar inputs give unrelated
+	 * hashes.
+	 */
+	private static long mix(long value) {
+		value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+		value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+		return value ^ (value >>> 31);
+	}
+
+	private static boolean sameName(PlayerStats expected, PlayerStats actual) {
+		if (expected.getName() == null) return true;
+		return actual != null && expected.getName().equalsIgnoreCase(actual.getName());
+	}
+
+	private static List<UUID> uuids(List<PlayerRecord> records) {
+		List<UUID> uuids = new ArrayList<>(records.size());
+		for (PlayerRecord record : records) {
+			uuids.add(record.getUUID());
+		}
+		return uuids;
+	}
+
+	private UUID loadProgress() {
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(progressFile)) {
+			properties.load(in);
+			saved = Long.parseLong(properties.getProperty("players", "0"));
+			String after = properties.getProperty("after");
+			return after != null ? UUID.fromString(after) : null;
+		} catch (IOException | IllegalArgumentException e) {
+			report("Could not read " + progressFile.getName() + ", starting from the beginning.");
+			saved = 0;
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the progress to a temporary file and moves it over the old one,
+	 * so a crash never leaves half a progress file behind.
+	 */
+	private void saveProgress(UUID after) {
+		Properties properties = new Properties();
+		properties.setProperty("after", after.toString());
+		properties.setProperty("players", Long.toString(saved));
+
+		File temp = new File(progressFile.getPath() + ".tmp");
+		try {
+			try (OutputStream out = new FileOutputStream(temp)) {
+				properties.store(out, "LobbyGames migration progress");
+			}
+			Files.move(temp.toPath(), progressFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			String msg = "[LobbyGames] Could not save the migration progress: " + e.getMessage();
+			DatastoreLog.get().info(msg);
+		}
+	}
+
+	private void fail(String message) {
+		if (error == null) error = message;
+	}
+
+	private void reportRate(String verb, long players, long start) {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long rate = seconds > 0 ? (long) (players / seconds) : 0;
+		report(String.format(Locale.ROOT, "%s %d players (%d per second).", verb, players, rate));
+	}
+
+	private void report(String message) {
+		DatastoreLog.get().info("[LobbyGames] " + message);
+		output.accept(message);
+	}
+
+	/**
+	 * A page of players read from the source and its place in the order
+	 * they were read in.
+	 */
+	private static class Page {
+
+		private final int index;
+		private final List<PlayerRecord> records;
+
+		private Page(int index, List<PlayerRecord> records) {
+			this.index = index;
+			this.records = records;
+		}
+
+		private int getIndex() {
+			return index;
+		}
+
+		private List<PlayerRecord> getRecords() {
+			return records;
+		}
+
+		private UUID getFirst() {
+			return records.get(0).getUUID();
+		}
+
+		private UUID getLast() {
+			return records.get(records.size() - 1).getUUID();
+		}
+	}
+
+	/**
+	 * Takes pages off the queue and writes them until it is told to stop or
+	 * any writer fails. It is never interrupted, since an interrupt would
+	 * close the file channels of the file based datastores.
+	 */
+	private class Writer implements Runnable {
+
+		private final BlockingQueue<Page> queue;
+
+		private Writer(BlockingQueue<Page> queue) {
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (error == null) {
+					Page page = queue.poll(1, TimeUnit.SECONDS);
+					if (page == null) continue;
+					if (page == END) return;
+
+					if (!write(page)) {
+						fail("Could not write players " + page.getFirst() + " to " + page.getLast() + ".");
+						return;
+					}
+
+					written.addAndGet(page.getRecords().size());
+					finish(page);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (RuntimeException e) {
+				fail("A writer failed: " + e + ".");
+			}
+		}
+	}
+
+	private static class MigrationThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "LobbyGames-Migration-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
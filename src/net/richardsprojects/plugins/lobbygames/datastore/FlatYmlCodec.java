@@ -0,0 +1,209 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A streaming reader and writer for the flat "key: value" yml files used by
+ * YmlDatastore. Bukkit's YamlConfiguration builds a full tree of the file in
+ * memory before anything can be read, and another one before anything can be
+ * written. These files never nest, so they are read a line at a time
+ * straight into the caller's handler and written straight from the caller's
+ * data instead.
+ *
+ * Only the subset of YAML those files use is understood: one mapping per
+ * line, plain, single-quoted or double-quoted scalars and comments. Files
+ * written here can still be read by YamlConfiguration.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class FlatYmlCodec {
+
+	/**
+	 * Receives each entry read from a file.
+	 */
+	public interface EntryHandler {
+
+		/**
+		 * @param key the entry's key with any quotes removed
+		 * @param value the entry's value with any quotes removed
+		 */
+		void entry(String key, String value);
+	}
+
+	/**
+	 * Reads every entry in the provided file and passes it to the handler.
+	 * Blank lines, comments and lines that are not a single mapping are
+	 * skipped.
+	 *
+	 * @param file the file to read
+	 * @param handler called once per entry
+	 * @return whether the file could be read
+	 */
+	public static boolean read(File file, EntryHandler handler) {
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty() || line.charAt(0) == '#' || line.equals("{}")) continue;
+
+				int split = line.indexOf(": ");
+				if (split < 0) continue;
+
+				String key = unquote(line.substring(0, split).trim());
+				String value = unquote(line.substring(split + 2).trim());
+				handler.entry(key, value);
+			}
+		} catch (IOException e) {
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Opens a writer that will replace the provided file once it is
+	 * committed.
+	 *
+	 * @param file the file to replace
+	 * @return the writer
+	 */
+	public static Writer write(File file) {
+		return new Writer(file);
+	}
+
+	/**
+	 * Writes entries to a temporary file next to the target and moves it into
+	 * place on commit, so a crash mid-save never leaves a half written file.
+	 * Write errors are remembered and reported by commit() so the write
+	 * methods can be called from places that can't throw.
+	 */
+	public static class Writer {
+
+		private final File file;
+		private final File tempFile;
+		private FileOutputStream out;
+		private BufferedWriter writer;
+		private boolean failed = false;
+
+		private Writer(File file) {
+			this.file = file;
+			this.tempFile = new File(file.getPath() + ".tmp");
+
+			try {
+				out = new FileOutputStream(tempFile);
+				writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+			} catch (IOException e) {
+				failed = true;
+			}
+		}
+
+		/**
+		 * Writes an entry with a number value.
+		 *
+		 * @param key the entry's key
+		 * @param value the entry's value
+		 */
+		public void write(String key, int value) {
+			if (failed) return;
+
+			try {
+				writer.write(key);
+				writer.write(": ");
+				writer.write(Integer.toString(value));
+				writer.write('\n');
+			} catch (IOException e) {
+				failed = true;
+			}
+		}
+
+		/**
+		 * Writes an entry with a String value. The value is always single
+		 * quoted so it is read back as a String no matter what it contains.
+		 *
+		 * @param key the entry's key
+		 * @param value the entry's value
+		 */
+		public void write(String key, String value) {
+			if (failed) return;
+
+			try {
+				writer.write(key);
+				writer.write(": '");
+				writer.write(value.replace("'", "''"));
+				writer.write("'\n");
+			} catch (IOException e) {
+				failed = true;
+			}
+		}
+
+		/**
+		 * Forces everything written to disk and replaces the target file with
+		 * it. If anything failed the target file is left untouched.
+		 *
+		 * @return whether the file was replaced
+		 */
+		public boolean commit() {
+			if (failed) {
+				abort();
+				return false;
+			}
+
+			try {
+				writer.flush();
+				out.getFD().sync();
+				writer.close();
+
+				try {
+					Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+							StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			} catch (IOException e) {
+				abort();
+				return false;
+			}
+
+			return true;
+		}
+
+		/**
+		 * Throws away everything written and leaves the target file as it was.
+		 */
+		public void abort() {
+			if (writer != null) try { writer.close(); } catch (IOException ignored) {}
+			if (tempFile.exists()) tempFile.delete();
+		}
+	}
+
+	/**
+	 * Removes the quotes from a single or double quoted scalar. Plain scalars
+	 * are returned as they are.
+	 */
+	private static String unquote(String scalar) {
+		int length = scalar.length();
+		if (length < 2) return scalar;
+
+		char first = scalar.charAt(0);
+		if (first == '\'' && scalar.charAt(length - 1) == '\'') {
+			return scalar.substring(1, length - 1).replace("''", "'");
+		}
+		if (first == '"' && scalar.charAt(length - 1) == '"') {
+			return scalar.substring(1, length - 1).replace("\\\"", "\"").replace("\\\\", "\\");
+		}
+
+		return scalar;
+	}
+}
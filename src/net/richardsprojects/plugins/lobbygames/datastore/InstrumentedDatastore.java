@@ -0,0 +1,489 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import net.richardsprojects.plugins.lobbygames.LobbyGames;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A datastore that wraps any other datastore and records a call count, an
+ * error count and a latency histogram for every method. It is meant to wrap
+ * the MySQL or yml datastore directly, below any cache or sessions, so the
+ * latencies are those of the database or the files rather than of memory
+ * hits. A call counts as an error if it throws, if a write returns false or
+ * if the wrapped datastore reports a failure it caught, such as a read that
+ * returned 0 because its statement failed.
+ *
+ * If an export file and interval are provided, every metric is written to
+ * the file in the Prometheus text format in the background every interval
+ * and once more when the datastore is disabled.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class InstrumentedDatastore extends Datastore {
+
+	private final Datastore storage;
+	private final DatastoreMetrics metrics;
+	private final File exportFile;
+	private final long exportInterval;
+
+	private ExportTask exportTask;
+
+	private final DatastoreMetrics.Operation updateHighscore;
+	private final DatastoreMetrics.Operation getHighscore;
+	private final DatastoreMetrics.Operation getHighscoreByName;
+	private final DatastoreMetrics.Operation getLeaderboard;
+	private final DatastoreMetrics.Operation getLeaderboardPage;
+	private final DatastoreMetrics.Operation getRank;
+	private final DatastoreMetrics.Operation updateTicTacToeWins;
+	private final DatastoreMetrics.Operation getTicTacToeWins;
+	private final DatastoreMetrics.Operation getTicTacToeWinsByName;
+	private final DatastoreMetrics.Operation updateTicTacToeLosses;
+	private final DatastoreMetrics.Operation getTicTacToeLosses;
+	private final DatastoreMetrics.Operation getTicTacToeLossesByName;
+	private final DatastoreMetrics.Operation updateTicTacToeTies;
+	private final DatastoreMetrics.Operation getTicTacToeTies;
+	private final DatastoreMetrics.Operation getTicTacToeTiesByName;
+	private final DatastoreMetrics.Operation submitHighscore;
+	private final DatastoreMetrics.Operation incrementTicTacToeWins;
+	private final DatastoreMetrics.Operation incrementTicTacToeLosses;
+	private final DatastoreMetrics.Operation incrementTicTacToeTies;
+	private final DatastoreMetrics.Operation registeredName;
+	private final DatastoreMetrics.Operation getProfile;
+	private final DatastoreMetrics.Operation getProfileByName;
+	private final DatastoreMetrics.Operation getStats;
+	private final DatastoreMetrics.Operation readCustomStats;
+	private final DatastoreMetrics.Operation writeCustomStats;
+	private final DatastoreMetrics.Operation exportPlayers;
+	private final DatastoreMetrics.Operation importPlayers;
+
+	/**
+	 * Wraps the provided datastore and records its calls in the provided
+	 * metrics.
+	 *
+	 * @param storage the datastore to time
+	 * @param metrics where to record the calls
+	 * @param exportFile file to write the metrics to or null
+	 * @param exportInterval ticks between exports, 0 to only export when
+	 *                       asked
+	 */
+	public InstrumentedDatastore(Datastore storage, DatastoreMetrics metrics, File exportFile,
+								 long exportInterval) {
+		this.storage = storage;
+		this.metrics = metrics;
+		this.exportFile = exportFile;
+		this.exportInterval = exportInterval;
+
+		updateHighscore = metrics.operation("updateHighscore");
+		getHighscore = metrics.operation("getHighscore");
+		getHighscoreByName = metrics.operation("getHighscoreByName");
+		getLeaderboard = metrics.operation("getLeaderboard");
+		getLeaderboardPage = metrics.operation("getLeaderboardPage");
+		getRank = metrics.operation("getRank");
+		updateTicTacToeWins = metrics.operation("updateTicTacToeWins");
+		getTicTacToeWins = metrics.operation("getTicTacToeWins");
+		getTicTacToeWinsByName = metrics.operation("getTicTacToeWinsByName");
+		updateTicTacToeLosses = metrics.operation("updateTicTacToeLosses");
+		getTicTacToeLosses = metrics.operation("getTicTacToeLosses");
+		getTicTacToeLossesByName = metrics.operation("getTicTacToeLossesByName");
+		updateTicTacToeTies = metrics.operation("updateTicTacToeTies");
+		getTicTacToeTies = metrics.operation("getTicTacToeTies");
+		getTicTacToeTiesByName = metrics.operation("getTicTacToeTiesByName");
+		submitHighscore = metrics.operation("submitHighscore");
+		incrementTicTacToeWins = metrics.operation("incrementTicTacToeWins");
+		incrementTicTacToeLosses = metrics.operation("incrementTicTacToeLosses");
+		incrementTicTacToeTies = metrics.operation("incrementTicTacToeTies");
+		registeredName = metrics.operation("registeredName");
+		getProfile = metrics.operation("getProfile");
+		getProfileByName = metrics.operation("getProfileByName");
+		getStats = metrics.operation("getStats");
+		readCustomStats = metrics.operation("readCustomStats");
+		writeCustomStats = metrics.operation("writeCustomStats");
+		exportPlayers = metrics.operation("exportPlayers");
+		importPlayers = metrics.operation("importPlayers");
+	}
+
+	/**
+	 * Returns the datastore being timed.
+	 *
+	 * @return the wrapped datastore
+	 */
+	public Datastore getDatastore() {
+		return storage;
+	}
+
+	/**
+	 * Returns the metrics the calls are recorded in.
+	 *
+	 * @return the metrics
+	 */
+	public DatastoreMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Initializes the wrapped datastore and starts the export task. The
+	 * time it takes is logged rather than recorded, since it only happens
+	 * once.
+	 *
+	 * @see Datastore#initalize()
+	 */
+	@Override
+	public boolean initalize() {
+		long start = System.nanoTime();
+		if (!storage.initalize()) return false;
+
+		long millis = (System.nanoTime() - start) / 1000000;
+		DatastoreLog.get().info("[LobbyGames] Storage initialized in " + millis + " ms");
+
+		if (exportFile != null && exportInterval > 0) {
+			exportTask = new ExportTask();
+			exportTask.runTaskTimerAsynchronously(LobbyGames.instance, exportInterval, exportInterval);
+		}
+		return true;
+	}
+
+	/**
+	 * @see Datastore#updateHighscore(UUID, String, int)
+	 */
+	@Override
+	public boolean updateHighscore(UUID player, String name, int score) {
+		return timeWrite(updateHighscore, () -> storage.updateHighscore(player, name, score));
+	}
+
+	/**
+	 * @see Datastore#getHighscore(UUID)
+	 */
+	@Override
+	public int getHighscore(UUID player) {
+		return timeInt(getHighscore, () -> storage.getHighscore(player));
+	}
+
+	/**
+	 * @see Datastore#getHighscore(String)
+	 */
+	@Override
+	public int getHighscore(String player) {
+		return timeInt(getHighscoreByName, () -> storage.getHighscore(player));
+	}
+
+	/**
+	 * @see Datastore#getLeaderboard()
+	 */
+	@Override
+	public String getLeaderboard() {
+		return time(getLeaderboard, storage::getLeaderboard);
+	}
+
+	/**
+	 * @see Datastore#getLeaderboardPage(int, int)
+	 */
+	@Override
+	public List<LeaderboardEntry> getLeaderboardPage(int offset, int limit) {
+		return time(getLeaderboardPage, () -> storage.getLeaderboardPage(offset, limit));
+	}
+
+	/**
+	 * @see Datastore#getRank(UUID)
+	 */
+	@Override
+	public int getRank(UUID player) {
+		return timeInt(getRank, () -> storage.getRank(player));
+	}
+
+	/**
+	 * @see Datastore#updateTicTacToeWins(UUID, String, int)
+	 */
+	@Override
+	public boolean updateTicTacToeWins(UUID player, String name, int value) {
+		return timeWrite(updateTicTacToeWins, () -> storage.updateTicTacToeWins(player, name, value));
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeWins(UUID)
+	 */
+	@Override
+	public int getTicTacToeWins(UUID player) {
+		return timeInt(getTicTacToeWins, () -> storage.getTicTacToeWins(player));
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeWins(String)
+	 */
+	@Override
+	public int getTicTacToeWins(String player) {
+		return timeInt(getTicTacToeWinsByName, () -> storage.getTicTacToeWins(player));
+	}
+
+	/**
+	 * @see Datastore#updateTicTacToeLosses(UUID, String, int)
+	 */
+	@Override
+	public boolean updateTicTacToeLosses(UUID player, String name, int value) {
+		return timeWrite(updateTicTacToeLosses, () -> storage.updateTicTacToeLosses(player, name, value));
+	}
+
+	/**
+	 * @see Datastore#updateTicTacToeTies(UUID, String, int)
+	 */
+	@Override
+	public boolean updateTicTacToeTies(UUID player, String name, int value) {
+		return timeWrite(updateTicTacToeTies, () -> storage.updateTicTacToeTies(player, name, value));
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeLosses(UUID)
+	 */
+	@Override
+	public int getTicTacToeLosses(UUID player) {
+		return timeInt(getTicTacToeLosses, () -> storage.getTicTacToeLosses(player));
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeLosses(String)
+	 */
+	@Override
+	public int getTicTacToeLosses(String player) {
+		return timeInt(getTicTacToeLossesByName, () -> storage.getTicTacToeLosses(player));
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeTies(String)
+	 */
+	@Override
+	public int getTicTacToeTies(String player) {
+		return timeInt(getTicTacToeTiesByName, () -> storage.getTicTacToeTies(player));
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeTies(UUID)
+	 */
+	@Override
+	public int getTicTacToeTies(UUID player) {
+		return timeInt(getTicTacToeTies, () -> storage.getTicTacToeTies(player));
+	}
+
+	/**
+	 * @see Datastore#submitHighscore(UUID, String, int)
+	 */
+	@Override
+	public boolean submitHighscore(UUID player, String name, int score) {
+		return timeWrite(submitHighscore, () -> storage.submitHighscore(player, name, score));
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeWins(UUID, String, int)
+	 */
+	@Override
+	public boolean incrementTicTacToeWins(UUID player, String name, int delta) {
+		return timeWrite(incrementTicTacToeWins, () -> storage.incrementTicTacToeWins(player, name, delta));
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeLosses(UUID, String, int)
+	 */
+	@Override
+	public boolean incrementTicTacToeLosses(UUID player, String name, int delta) {
+		return timeWrite(incrementTicTacToeLosses, () -> storage.incrementTicTacToeLosses(player, name, delta));
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeTies(UUID, String, int)
+	 */
+	@Override
+	public boolean incrementTicTacToeTies(UUID player, String name, int delta) {
+		return timeWrite(incrementTicTacToeTies, () -> storage.incrementTicTacToeTies(player, name, delta));
+	}
+
+	/**
+	 * Stops the export task, closes the wrapped datastore and then exports
+	 * one last time so the file includes the final save.
+	 *
+	 * @see Datastore#onDisable()
+	 */
+	@Override
+	public void onDisable() {
+		if (exportTask != null) exportTask.cancel();
+
+		storage.onDisable();
+
+		if (exportTask != null) export();
+	}
+
+	/**
+	 * @see Datastore#registeredName(String)
+	 */
+	@Override
+	public boolean registeredName(String name) {
+		return time(registeredName, () -> storage.registeredName(name));
+	}
+
+	/**
+	 * @see Datastore#getProfile(UUID)
+	 */
+	@Override
+	public PlayerStats getProfile(UUID player) {
+		return time(getProfile, () -> storage.getProfile(player));
+	}
+
+	/**
+	 * @see Datastore#getProfile(String)
+	 */
+	@Override
+	public PlayerStats getProfile(String name) {
+		return time(getProfileByName, () -> storage.getProfile(name));
+	}
+
+	/**
+	 * @see Datastore#getStats(Collection)
+	 */
+	@Override
+	public Map<UUID, PlayerStats> getStats(Collection<UUID> players) {
+		return time(getStats, () -> storage.getStats(players));
+	}
+
+	/**
+	 * @see Datastore#readCustomStats(Collection, List)
+	 */
+	@Override
+	protected Map<UUID, int[]> readCustomStats(Collection<UUID> players, List<StatKey> stats) {
+		return time(readCustomStats, () -> storage.readCustomStats(players, stats));
+	}
+
+	/**
+	 * @see Datastore#writeCustomStats(List)
+	 */
+	@Override
+	protected boolean writeCustomStats(List<StatBatch.Op> ops) {
+		return timeWrite(writeCustomStats, () -> storage.writeCustomStats(ops));
+	}
+
+	/**
+	 * @see Datastore#exportPlayers(UUID, int)
+	 */
+	@Override
+	public List<PlayerRecord> exportPlayers(UUID after, int limit) {
+		return time(exportPlayers, () -> storage.exportPlayers(after, limit));
+	}
+
+	/**
+	 * @see Datastore#importPlayers(List)
+	 */
+	@Override
+	public boolean importPlayers(List<PlayerRecord> players) {
+		return timeWrite(importPlayers, () -> storage.importPlayers(players));
+	}
+
+	/**
+	 * @see Datastore#getMaxConcurrentOperations()
+	 */
+	@Override
+	public int getMaxConcurrentOperations() {
+		return storage.getMaxConcurrentOperations();
+	}
+
+	/**
+	 * @see Datastore#collectGauges(List)
+	 */
+	@Override
+	public void collectGauges(List<DatastoreMetrics.Gauge> gauges) {
+		storage.collectGauges(gauges);
+	}
+
+	/**
+	 * @see Datastore#addChangeListener(ChangeListener)
+	 */
+	@Override
+	public void addChangeListener(ChangeListener listener) {
+		storage.addChangeListener(listener);
+	}
+
+	/**
+	 * Writes every metric to the export file. Should not be called on the
+	 * main thread.
+	 *
+	 * @return whether the file was written
+	 */
+	public boolean export() {
+		if (exportFile == null) return false;
+
+		try {
+			metrics.writePrometheus(exportFile);
+			return true;
+		} catch (IOException e) {
+			String msg = "[LobbyGames] Could not write " + exportFile.getName() + ": " + e.getMessage();
+			DatastoreLog.get().info(msg);
+			return false;
+		}
+	}
+
+	/**
+	 * Helper method that times a call and counts it as an error if it
+	 * throws or reports a failure.
+	 */
+	private <T> T time(DatastoreMetrics.Operation operation, Supplier<T> call) {
+		long start = System.nanoTime();
+		boolean failed = true;
+		// anything left over from work outside a timed call
+		Datastore.takeFailure();
+		try {
+			T result = call.get();
+			failed = Datastore.takeFailure();
+			return result;
+		} finally {
+			operation.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	/**
+	 * Helper method that times a call returning an int without boxing it.
+	 */
+	private int timeInt(DatastoreMetrics.Operation operation, IntSupplier call) {
+		long start = System.nanoTime();
+		boolean failed = true;
+		Datastore.takeFailure();
+		try {
+			int result = call.getAsInt();
+			failed = Datastore.takeFailure();
+			return result;
+		} finally {
+			operation.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	/**
+	 * Helper method that times a write and counts it as an error if it
+	 * throws, returns false or reports a failure.
+	 */
+	private boolean timeWrite(DatastoreMetrics.Operation operation, BooleanSupplier call) {
+		long start = System.nanoTime();
+		boolean failed = true;
+		Datastore.takeFailure();
+		try {
+			boolean success = call.getAsBoolean();
+			failed = Datastore.takeFailure() || !success;
+			return success;
+		} finally {
+			operation.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	/**
+	 * Writes the metrics to the export file every interval.
+	 */
+	private class ExportTask extends BukkitRunnable {
+
+		public void run() {
+			export();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations in nanoseconds. Every power of two is
+ * split into 8 buckets, so a percentile is never more than 12.5% above the
+ * real value while the whole histogram stays a fixed 4 KB no matter how many
+ * durations are recorded. The count, sum and max are exact.
+ *
+ * Recording and reading can happen at the same time from any thread. A read
+ * made during a record may see the record in some numbers but not others.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a duration.
+	 *
+	 * @param nanos the duration in nanoseconds, negative values count as 0
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+
+		buckets.incrementAndGet(bucket(nanos));
+		count.increment();
+		sum.add(nanos);
+
+		long current = max.get();
+		while (nanos > current && !max.compareAndSet(current, nanos)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Returns the number of durations recorded.
+	 *
+	 * @return count
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the total of every duration recorded.
+	 *
+	 * @return sum in nanoseconds
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * Returns the longest duration recorded, or 0 if there are none.
+	 *
+	 * @return max in nanoseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the duration that the provided fraction of recorded durations
+	 * are at or below, for example 0.99 for the 99th percentile. Returns 0 if
+	 * nothing has been recorded.
+	 *
+	 * @param fraction between 0 and 1
+	 * @return the percentile in nanoseconds
+	 */
+	public long getPercentile(double fraction) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) return 0;
+
+		long target = Math.max(1, (long) Math.ceil(fraction * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= target) {
+				// the top of the bucket, but never more than what was really seen
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+
+		return max.get();
+	}
+
+	/**
+	 * Clears every recorded duration. Durations recorded during the reset
+	 * may be partly kept.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	/**
+	 * Helper method that returns the bucket a duration belongs in. Values
+	 * below SUB_BUCKETS get a bucket each, larger ones are bucketed by their
+	 * highest bit and the SUB_BITS bits below it.
+	 */
+	private static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) return (int) nanos;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Helper method that returns the largest duration that falls in a bucket.
+	 */
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) return bucket;
+
+		int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+		int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		long upper = ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+		return upper < 0 ? Long.MAX_VALUE : upper;
+	}
+}
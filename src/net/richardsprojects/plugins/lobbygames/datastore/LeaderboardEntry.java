@@ -0,0 +1,56 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import java.util.UUID;
+
+/**
+ * One row of the 2048 leaderboard. Players that share a score share a rank,
+ * so the rank is one more than the number of players with a higher score.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public final class LeaderboardEntry {
+
+	private final int rank;
+	private final UUID uuid;
+	private final String name;
+	private final int score;
+
+	/**
+	 * @param rank the player's rank, starting at 1
+	 * @param uuid player's UUID
+	 * @param name player's last known name or null if there is none
+	 * @param score 2048 highscore
+	 */
+	public LeaderboardEntry(int rank, UUID uuid, String name, int score) {
+		this.rank = rank;
+		this.uuid = uuid;
+		this.name = name;
+		this.score = score;
+	}
+
+	public int getRank() {
+		return rank;
+	}
+
+	public UUID getUUID() {
+		return uuid;
+	}
+
+	/**
+	 * @return the player's last known name or null if there is none
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public int getScore() {
+		return score;
+	}
+
+	@Override
+	public String toString() {
+		return "LeaderboardEntry{rank=" + rank + ", uuid=" + uuid + ", name=" + name
+				+ ", score=" + score + "}";
+	}
+}
@@ -0,0 +1,384 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * An ordered index of highscores that is kept up to date as scores change,
+ * so the leaderboard can be read without sorting every score. Players are
+ * kept from highest to lowest score, with ties ordered by UUID so pages
+ * never shift between reads.
+ *
+ * The index is a treap where every node also counts the players below it,
+ * which makes it an order-statistic tree. Moving a player to a new score,
+ * finding a player's rank and jumping to any position in the leaderboard
+ * all take O(log n), and reading k players from there takes O(k).
+ *
+ * All methods are synchronized on the index, so callers that need to update
+ * their own score map together with the index can hold the same lock.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class LeaderboardIndex {
+
+	private Node root;
+	private long seed = System.nanoTime() | 1;
+
+	/**
+	 * Moves a player from their old score to their new score.
+	 *
+	 * @param player player's UUID
+	 * @param oldScore the player's previous score or null if they had none
+	 * @param newScore the player's new score
+	 */
+	public synchronized void update(UUID player, Integer oldScore, int newScore) {
+		if (oldScore != null) {
+			if (oldScore == newScore) return;
+			remove(player, oldScore);
+		}
+
+		root = insert(root, new Node(newScore, player, nextPriority()));
+	}
+
+	/**
+	 * Removes a player from the index.
+	 *
+	 * @param player player's UUID
+	 * @param score the score the player is currently indexed under
+	 */
+	public synchronized void remove(UUID player, int score) {
+		root = remove(root, score, player);
+	}
+
+	/**
+	 * Removes every player from the index.
+	 */
+	public synchronized void clear() {
+		root = null;
+	}
+
+	/**
+	 * Returns the number of players in the index.
+	 *
+	 * @return the player count
+	 */
+	public synchronized int size() {
+		return size(root);
+	}
+
+	/**
+	 * Returns the rank a player with the provided score has. Players that
+	 * share a score share a rank, so the rank is one more than the number of
+	 * players with a strictly higher score.
+	 *
+	 * @param score the score
+	 * @return the rank, starting at 1
+	 */
+	public synchronized int getRank(int score) {
+		return countAbove(score) + 1;
+	}
+
+	/**
+	 * Returns part of the leaderboard from highest to lowest score.
+	 *
+	 * @param offset how many players to skip from the top
+	 * @param limit the most players to return
+	 * @return the players on the page with their rank and score
+	 */
+	public synchronized List<Entry> getPage(int offset, int limit) {
+		List<Node> nodes = new ArrayList<>(Math.max(0, Math.min(limit, size(root) - offset)));
+		if (offset >= 0 && limit > 0) {
+			collect(root, offset, limit, nodes);
+		}
+
+		List<Entry> page = new ArrayList<>(nodes.size());
+		int rank = 0;
+		for (int i = 0; i < nodes.size(); i++) {
+			Node node = nodes.get(i);
+			if (i == 0) {
+				rank = countAbove(node.score) + 1;
+			} else if (node.score != nodes.get(i - 1).score) {
+				rank = offset + i + 1;
+			}
+			page.add(new Entry(rank, node.player, node.score));
+		}
+
+		return page;
+	}
+
+	/**
+	 * Returns the score groups that make up the top of the leaderboard. A
+	 * group is included if fewer than the requested number of players have
+	 * a strictly higher score, and every player in an included group is
+	 * returned so ties are never split.
+	 *
+	 * @param players how many players the leaderboard should show
+	 * @return the top score groups from highest to lowest
+	 */
+	public synchronized List<ScoreGroup> getTop(int players) {
+		List<ScoreGroup> top = new ArrayList<>();
+		if (players <= 0 || root == null) return top;
+
+		// everyone tied with the last player that makes the cut is included
+		Node last = select(Math.min(players, size(root)) - 1);
+		List<Node> nodes = new ArrayList<>();
+		collect(root, 0, countAtLeast(last.score), nodes);
+
+		ScoreGroup group = null;
+		for (Node node : nodes) {
+			if (group == null || group.score != node.score) {
+				group = new ScoreGroup(node.score, new ArrayList<>());
+				top.add(group);
+			}
+			group.players.add(node.player);
+		}
+
+		return top;
+	}
+
+	/**
+	 * Orders nodes from highest to lowest score, then by UUID.
+	 */
+	private static int compare(int score, UUID player, Node node) {
+		if (score != node.score) return score > node.score ? -1 : 1;
+		return player.compareTo(node.player);
+	}
+
+	private static int size(Node node) {
+		return node == null ? 0 : node.size;
+	}
+
+	private static void resize(Node node) {
+		node.size = size(node.left) + size(node.right) + 1;
+	}
+
+	/**
+	 * A xorshift generator, cheaper than Random and only ever used under the
+	 * index lock.
+	 */
+	private int nextPriority() {
+		seed ^= seed << 13;
+		seed ^= seed >>> 7;
+		seed ^= seed << 17;
+		return (int) seed;
+	}
+
+	private Node insert(Node node, Node added) {
+		if (node == null) return added;
+
+		if (added.priority > node.priority) {
+			split(node, added);
+			resize(added);
+			return added;
+		}
+
+		if (compare(added.score, added.player, node) < 0) {
+			node.left = insert(node.left, added);
+		} else {
+			node.right = insert(node.right, added);
+		}
+		resize(node);
+		return node;
+	}
+
+	/**
+	 * Splits the subtree around the key of the added node, putting the
+	 * smaller half on its left and the larger half on its right.
+	 */
+	private void split(Node node, Node added) {
+		if (node == null) {
+			added.left = null;
+			added.right = null;
+			return;
+		}
+
+		if (compare(added.score, added.player, node) < 0) {
+			split(node.left, added);
+			node.left = added.right;
+			resize(node);
+			added.right = node;
+		} else {
+			split(node.right, added);
+			node.right = added.left;
+			resize(node);
+			added.left = node;
+		}
+	}
+
+	private Node remove(Node node, int score, UUID player) {
+		if (node == null) return null;
+
+		int cmp = compare(score, player, node);
+		if (cmp == 0) return merge(node.left, node.right);
+
+		if (cmp < 0) {
+			node.left = remove(node.left, score, player);
+		} else {
+			node.right = remove(node.right, score, player);
+		}
+		resize(node);
+		return node;
+	}
+
+	private Node merge(Node left, Node right) {
+		if (left == null) return right;
+		if (right == null) return left;
+
+		if (left.priority > right.priority) {
+			left.right = merge(left.right, right);
+			resize(left);
+			return left;
+		} else {
+			right.left = merge(left, right.left);
+			resize(right);
+			return right;
+		}
+	}
+
+	/**
+	 * Returns the number of players with a score higher than the provided
+	 * one.
+	 */
+	private int countAbove(int score) {
+		int count = 0;
+		Node node = root;
+		while (node != null) {
+			if (node.score > score) {
+				count += size(node.left) + 1;
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of players with the provided score or higher.
+	 */
+	private int countAtLeast(int score) {
+		int count = 0;
+		Node node = root;
+		while (node != null) {
+			if (node.score >= score) {
+				count += size(node.left) + 1;
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the node at the provided position, starting at 0.
+	 */
+	private Node select(int position) {
+		Node node = root;
+		while (node != null) {
+			int left = size(node.left);
+			if (position < left) {
+				node = node.left;
+			} else if (position == left) {
+				return node;
+			} else {
+				position -= left + 1;
+				node = node.right;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds the subtree's nodes in order to the list, skipping the first ones
+	 * and stopping once the list holds limit nodes. Whole subtrees that are
+	 * skipped are never visited.
+	 */
+	private void collect(Node node, int skip, int limit, List<Node> out) {
+		while (node != null && out.size() < limit) {
+			int left = size(node.left);
+			if (skip < left) {
+				collect(node.left, skip, limit, out);
+				skip = 0;
+			} else {
+				skip -= left;
+			}
+
+			if (out.size() >= limit) return;
+			if (skip == 0) {
+				out.add(node);
+			} else {
+				skip--;
+			}
+			node = node.right;
+		}
+	}
+
+	private static class Node {
+
+		private final int score;
+		private final UUID player;
+		private final int priority;
+		private Node left;
+		private Node right;
+		private int size = 1;
+
+		private Node(int score, UUID player, int priority) {
+			this.score = score;
+			this.player = player;
+			this.priority = priority;
+		}
+	}
+
+	/**
+	 * A score and every player who has it.
+	 */
+	public static class ScoreGroup {
+
+		private final int score;
+		private final List<UUID> players;
+
+		private ScoreGroup(int score, List<UUID> players) {
+			this.score = score;
+			this.players = players;
+		}
+
+		public int getScore() {
+			return score;
+		}
+
+		public List<UUID> getPlayers() {
+			return players;
+		}
+	}
+
+	/**
+	 * One player's place on a page of the leaderboard.
+	 */
+	public static class Entry {
+
+		private final int rank;
+		private final UUID player;
+		private final int score;
+
+		private Entry(int rank, UUID player, int score) {
+			this.rank = rank;
+			this.player = player;
+			this.score = score;
+		}
+
+		public int getRank() {
+			return rank;
+		}
+
+		public UUID getPlayer() {
+			return player;
+		}
+
+		public int getScore() {
+			return score;
+		}
+	}
+}
@@ -0,0 +1,684 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import net.richardsprojects.plugins.lobbygames.LobbyGames;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class is an implementation of the LobbyGames datastore system on a
+ * memory-mapped RecordFile. Starting up maps the file and reads each record
+ * once to build a hash index from UUID to slot, a name index and the
+ * leaderboard, instead of parsing highscores.yml, tictactoe.yml and
+ * uuids.yml. Every update is written straight into its record, so there is
+ * nothing to rewrite in the background. A sync task only asks the operating
+ * system to flush the pages that changed.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class MappedDatastore extends Datastore {
+
+	private final File folder = new File(LobbyGames.dataFolder, "records");
+	private final RecordFile file = new RecordFile(new File(folder, "players.dat"),
+			new File(folder, "names.dat"));
+	private final StatColumnStore customStats = new StatColumnStore(new File(folder, "stats"));
+	private final LeaderboardIndex leaderboard = new LeaderboardIndex();
+
+	// guarded by lock, which also covers every read and write of the file
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final HashMap<UUID, Integer> slots = new HashMap<>();
+	private final HashMap<String, UUID> uuids = new HashMap<>();
+	private final ArrayList<String> names = new ArrayList<>();
+
+	private SyncTask syncTask;
+	private final LongAdder failedWrites = new LongAdder();
+	private final LongAdder failedSyncs = new LongAdder();
+
+	/**
+	 * Maps the record file, creating it if needed, indexes every record and
+	 * loads the registered stats. Starts a background task that flushes
+	 * changes to disk every sync interval.
+	 *
+	 * @return whether it succeeded or not.
+	 */
+	@Override
+	public boolean initalize() {
+		if (!folder.exists() && !folder.mkdirs()) return false;
+
+		try {
+			file.open((slot, player, name) -> {
+				slots.put(player, slot);
+				names.add(name);
+				if (name != null) uuids.put(name, player);
+
+				if ((file.get(slot, RecordFile.FLAGS) & RecordFile.HAS_HIGHSCORE) != 0) {
+					leaderboard.update(player, null, file.get(slot, RecordFile.HIGHSCORE));
+				}
+			});
+		} catch (IOException e) {
+			String msg = "[LobbyGames] Could not open the record file: " + e.getMessage();
+			DatastoreLog.get().info(msg);
+			return false;
+		}
+
+		if (!customStats.load()) return false;
+
+		long interval = Math.max(1, LobbyGames.instance.mapped_syncInterval);
+		syncTask = new SyncTask();
+		syncTask.runTaskTimerAsynchronously(LobbyGames.instance, interval, interval);
+
+		return true;
+	}
+
+	/**
+	 * @see Datastore#updateHighscore(UUID, String, int)
+	 */
+	@Override
+	public boolean updateHighscore(UUID player, String name, int score) {
+		lock.writeLock().lock();
+		try {
+			int slot = slot(player);
+			if (slot < 0) return false;
+
+			leaderboard.update(player, getHighscore(slot), score);
+			file.put(slot, RecordFile.HIGHSCORE, score);
+			file.put(slot, RecordFile.FLAGS, file.get(slot, RecordFile.FLAGS) | RecordFile.HAS_HIGHSCORE);
+
+			return setName(slot, player, name);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Keeps the higher of the stored and submitted score.
+	 *
+	 * @see Datastore#submitHighscore(UUID, String, int)
+	 */
+	@Override
+	public boolean submitHighscore(UUID player, String name, int score) {
+		lock.writeLock().lock();
+		try {
+			int slot = slot(player);
+			if (slot < 0) return false;
+
+			Integer oldScore = getHighscore(slot);
+			if (oldScore == null || score > oldScore) {
+				leaderboard.update(player, oldScore, score);
+				file.put(slot, RecordFile.HIGHSCORE, score);
+				file.put(slot, RecordFile.FLAGS, file.get(slot, RecordFile.FLAGS) | RecordFile.HAS_HIGHSCORE);
+			}
+
+			return setName(slot, player, name);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @see Datastore#updateTicTacToeWins(UUID, String, int)
+	 */
+	@Override
+	public boolean updateTicTacToeWins(UUID player, String name, int value) {
+		return write(player, name, RecordFile.WINS, value, false);
+	}
+
+	/**
+	 * @see Datastore#updateTicTacToeLosses(UUID, String, int)
+	 */
+	@Override
+	public boolean updateTicTacToeLosses(UUID player, String name, int value) {
+		return write(player, name, RecordFile.LOSSES, value, false);
+	}
+
+	/**
+	 * @see Datastore#updateTicTacToeTies(UUID, String, int)
+	 */
+	@Override
+	public boolean updateTicTacToeTies(UUID player, String name, int value) {
+		return write(player, name, RecordFile.TIES, value, false);
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeWins(UUID, String, int)
+	 */
+	@Override
+	public boolean incrementTicTacToeWins(UUID player, String name, int delta) {
+		return write(player, name, RecordFile.WINS, delta, true);
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeLosses(UUID, String, int)
+	 */
+	@Override
+	public boolean incrementTicTacToeLosses(UUID player, String name, int delta) {
+		return write(player, name, RecordFile.LOSSES, delta, true);
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeTies(UUID, String, int)
+	 */
+	@Override
+	public boolean incrementTicTacToeTies(UUID player, String name, int delta) {
+		return write(player, name, RecordFile.TIES, delta, true);
+	}
+
+	/**
+	 * Helper method that sets or adds to one tic tac toe field of the
+	 * player's record.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param field the record field
+	 * @param value the new value or the amount to add
+	 * @param add whether to add the value instead of setting it
+	 * @return whether it succeeded or failed
+	 */
+	private boolean write(UUID player, String name, int field, int value, boolean add) {
+		lock.writeLock().lock();
+		try {
+			int slot = slot(player);
+			if (slot < 0) return false;
+
+			file.put(slot, field, add ? file.get(slot, field) + value : value);
+			return setName(slot, player, name);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @see Datastore#getHighscore(UUID)
+	 */
+	@Override
+	public int getHighscore(UUID player) {
+		return read(player, RecordFile.HIGHSCORE);
+	}
+
+	/**
+	 * @see Datastore#getHighscore(String)
+	 */
+	@Override
+	public int getHighscore(String player) {
+		return read(player, RecordFile.HIGHSCORE);
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeWins(UUID)
+	 */
+	@Override
+	public int getTicTacToeWins(UUID player) {
+		return read(player, RecordFile.WINS);
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeWins(String)
+	 */
+	@Override
+	public int getTicTacToeWins(String player) {
+		return read(player, RecordFile.WINS);
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeLosses(UUID)
+	 */
+	@Override
+	public int getTicTacToeLosses(UUID player) {
+		return read(player, RecordFile.LOSSES);
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeLosses(String)
+	 */
+	@Override
+	public int getTicTacToeLosses(String player) {
+		return read(player, RecordFile.LOSSES);
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeTies(UUID)
+	 */
+	@Override
+	public int getTicTacToeTies(UUID player) {
+		return read(player, RecordFile.TIES);
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeTies(String)
+	 */
+	@Override
+	public int getTicTacToeTies(String player) {
+		return read(player, RecordFile.TIES);
+	}
+
+	/**
+	 * Helper method that reads one field of the player's record, or 0 if
+	 * they have none.
+	 */
+	private int read(UUID player, int field) {
+		lock.readLock().lock();
+		try {
+			Integer slot = slots.get(player);
+			return slot == null ? 0 : file.get(slot, field);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Helper method that reads one field of the record of the player with
+	 * the provided name, or 0 if there is no such player.
+	 */
+	private int read(String name, int field) {
+		lock.readLock().lock();
+		try {
+			UUID player = name == null ? null : uuids.get(name);
+			return player == null ? 0 : file.get(slots.get(player), field);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * This method creates a String with the leaderboard of highscores in 2048.
+	 * Players that share a score are listed in the same entry separated by an
+	 * ampersand (&), the same as the yml datastore.
+	 *
+	 * @see Datastore#getLeaderboard()
+	 */
+	@Override
+	public String getLeaderboard() {
+		StringBuilder builder = new StringBuilder();
+
+		lock.readLock().lock();
+		try {
+			for (LeaderboardIndex.ScoreGroup group : leaderboard.getTop(10)) {
+				builder.append(">");
+				for (int i = 0; i < group.getPlayers().size(); i++) {
+					if (i > 0) builder.append(" & ");
+					builder.append(getName(group.getPlayers().get(i)));
+				}
+				builder.append(",");
+				builder.append(group.getScore());
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		String leaderboard = builder.toString();
+		if (leaderboard.length() > 0) leaderboard = leaderboard.substring(1);
+		return leaderboard;
+	}
+
+	/**
+	 * Reads the page straight out of the leaderboard index.
+	 *
+	 * @see Datastore#getLeaderboardPage(int, int)
+	 */
+	@Override
+	public List<LeaderboardEntry> getLeaderboardPage(int offset, int limit) {
+		List<LeaderboardEntry> page = new ArrayList<>();
+
+		lock.readLock().lock();
+		try {
+			for (LeaderboardIndex.Entry entry : leaderboard.getPage(offset, limit)) {
+				page.add(new LeaderboardEntry(entry.getRank(), entry.getPlayer(),
+						getName(entry.getPlayer()), entry.getScore()));
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return page;
+	}
+
+	/**
+	 * Counts the players above the player's score in the leaderboard index.
+	 *
+	 * @see Datastore#getRank(UUID)
+	 */
+	@Override
+	public int getRank(UUID player) {
+		lock.readLock().lock();
+		try {
+			Integer slot = slots.get(player);
+			Integer score = slot == null ? null : getHighscore(slot);
+			return score == null ? 0 : leaderboard.getRank(score);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Copies the player's whole record in one lookup.
+	 *
+	 * @see Datastore#getProfile(UUID)
+	 */
+	@Override
+	public PlayerStats getProfile(UUID player) {
+		lock.readLock().lock();
+		try {
+			Integer slot = slots.get(player);
+			if (slot == null) return new PlayerStats(player, null, 0, 0, 0, 0);
+
+			return new PlayerStats(player, names.get(slot), file.get(slot, RecordFile.HIGHSCORE),
+					file.get(slot, RecordFile.WINS), file.get(slot, RecordFile.LOSSES),
+					file.get(slot, RecordFile.TIES));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @see Datastore#getProfile(String)
+	 */
+	@Override
+	public PlayerStats getProfile(String name) {
+		UUID player;
+		lock.readLock().lock();
+		try {
+			player = name == null ? null : uuids.get(name);
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return player == null ? null : getProfile(player);
+	}
+
+	/**
+	 * Reads every player's record under a single lock.
+	 *
+	 * @see Datastore#getStats(Collection)
+	 */
+	@Override
+	public Map<UUID, PlayerStats> getStats(Collection<UUID> players) {
+		Map<UUID, PlayerStats> result = new HashMap<>();
+
+		lock.readLock().lock();
+		try {
+			for (UUID player : players) {
+				result.put(player, getProfile(player));
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return result;
+	}
+
+	/**
+	 * @see Datastore#readCustomStats(Collection, List)
+	 */
+	@Override
+	protected Map<UUID, int[]> readCustomStats(Collection<UUID> players, List<StatKey> stats) {
+		return customStats.read(players, stats);
+	}
+
+	/**
+	 * Registered stats are kept in a StatColumnStore next to the record file
+	 * and saved with the sync task, only the stats that changed are
+	 * rewritten. Names go into the player's record.
+	 *
+	 * @see Datastore#writeCustomStats(List)
+	 */
+	@Override
+	protected boolean writeCustomStats(List<StatBatch.Op> ops) {
+		customStats.write(ops);
+
+		boolean success = true;
+		lock.writeLock().lock();
+		try {
+			for (StatBatch.Op op : ops) {
+				if (op.getName() == null) continue;
+
+				int slot = slot(op.getPlayer());
+				success &= slot >= 0 && setName(slot, op.getPlayer(), op.getName());
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		return success;
+	}
+
+	/**
+	 * Players are returned in slot order. New players are always appended,
+	 * so the order never changes.
+	 *
+	 * @see Datastore#exportPlayers(UUID, int)
+	 */
+	@Override
+	public List<PlayerRecord> exportPlayers(UUID after, int limit) {
+		List<PlayerRecord> page = new ArrayList<>();
+
+		lock.readLock().lock();
+		try {
+			int start = 0;
+			if (after != null) {
+				Integer slot = slots.get(after);
+				if (slot == null) return page;
+				start = slot + 1;
+			}
+
+			for (int slot = start; slot < file.size() && page.size() < limit; slot++) {
+				page.add(new PlayerRecord(file.getUUID(slot), names.get(slot), getHighscore(slot), true,
+						file.get(slot, RecordFile.WINS), file.get(slot, RecordFile.LOSSES),
+						file.get(slot, RecordFile.TIES)));
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return page;
+	}
+
+	/**
+	 * Writes every record in place under a single lock.
+	 *
+	 * @see Datastore#importPlayers(List)
+	 */
+	@Override
+	public boolean importPlayers(List<PlayerRecord> players) {
+		boolean success = true;
+
+		lock.writeLock().lock();
+		try {
+			for (PlayerRecord record : players) {
+				UUID player = record.getUUID();
+				int slot = slot(player);
+				if (slot < 0) {
+					success = false;
+					continue;
+				}
+
+				Integer score = record.getHighscore();
+				if (score != null) {
+					leaderboard.update(player, getHighscore(slot), score);
+					file.put(slot, RecordFile.HIGHSCORE, score);
+					file.put(slot, RecordFile.FLAGS, file.get(slot, RecordFile.FLAGS) | RecordFile.HAS_HIGHSCORE);
+				}
+				if (record.hasTicTacToe()) {
+					file.put(slot, RecordFile.WINS, record.getTicTacToeWins());
+					file.put(slot, RecordFile.LOSSES, record.getTicTacToeLosses());
+					file.put(slot, RecordFile.TIES, record.getTicTacToeTies());
+				}
+
+				success &= setName(slot, player, record.getName());
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		return success;
+	}
+
+	/**
+	 * @see Datastore#registeredName(String)
+	 */
+	@Override
+	public boolean registeredName(String name) {
+		if (name == null) return false;
+
+		lock.readLock().lock();
+		try {
+			return uuids.containsKey(name);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Stops the sync task, saves the registered stats and flushes and
+	 * closes the record file.
+	 */
+	@Override
+	public void onDisable() {
+		if (syncTask != null) syncTask.cancel();
+		customStats.save(true);
+
+		lock.writeLock().lock();
+		try {
+			file.close();
+		} catch (IOException e) {
+			String msg = "[LobbyGames] Could not close the record file: " + e.getMessage();
+			DatastoreLog.get().info(msg);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds how many records there are, how big the file and name heap are
+	 * and how many writes and syncs failed.
+	 *
+	 * @see Datastore#collectGauges(List)
+	 */
+	@Override
+	public void collectGauges(List<DatastoreMetrics.Gauge> gauges) {
+		int players;
+		int capacity;
+		long heapSize;
+		lock.readLock().lock();
+		try {
+			players = file.size();
+			capacity = file.getCapacity();
+			heapSize = file.getHeapSize();
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		gauges.add(DatastoreMetrics.Gauge.of("mapped_players",
+				"Player records in the record file.", players));
+		gauges.add(DatastoreMetrics.Gauge.of("mapped_capacity",
+				"Records that fit before the record file grows.", capacity));
+		gauges.add(DatastoreMetrics.Gauge.of("mapped_name_heap_bytes",
+				"Size of the name heap.", heapSize));
+		gauges.add(DatastoreMetrics.Gauge.of("mapped_dirty_stat_files",
+				"Registered stat files with changes that are not saved yet.", customStats.getDirtyCount()));
+		gauges.add(DatastoreMetrics.Gauge.counter("mapped_failed_writes_total",
+				"Writes that failed because the record file could not grow.", failedWrites.sum()));
+		gauges.add(DatastoreMetrics.Gauge.counter("mapped_failed_syncs_total",
+				"Syncs where the files could not be flushed to disk.", failedSyncs.sum()));
+	}
+
+	/**
+	 * Helper method that returns the player's slot, appending a record for
+	 * them if they don't have one yet. Returns -1 if the record file
+	 * couldn't grow. The caller must hold the write lock.
+	 *
+	 * @param player player's UUID
+	 * @return the slot or -1
+	 */
+	private int slot(UUID player) {
+		Integer slot = slots.get(player);
+		if (slot != null) return slot;
+
+		try {
+			slot = file.append(player);
+		} catch (IOException e) {
+			failedWrites.increment();
+			String msg = "[LobbyGames] Could not add a record for " + player + ": " + e.getMessage();
+			DatastoreLog.get().info(msg);
+			return -1;
+		}
+
+		slots.put(player, slot);
+		names.add(null);
+		return slot;
+	}
+
+	/**
+	 * Helper method that records a player's name if it changed and keeps the
+	 * name index in step. The caller must hold the write lock.
+	 *
+	 * @param slot the player's slot
+	 * @param player the player's UUID
+	 * @param name the player's current name or null
+	 * @return false if the name couldn't be written
+	 */
+	private boolean setName(int slot, UUID player, String name) {
+		String oldName = names.get(slot);
+		if (name == null || name.equals(oldName)) return true;
+
+		try {
+			file.setName(slot, name);
+		} catch (IOException e) {
+			failedWrites.increment();
+			String msg = "[LobbyGames] Could not write the name of " + player + ": " + e.getMessage();
+			DatastoreLog.get().info(msg);
+			return false;
+		}
+
+		names.set(slot, name);
+		if (oldName != null) uuids.remove(oldName, player);
+		uuids.put(name, player);
+		return true;
+	}
+
+	/**
+	 * Helper method that returns a player's name. The caller must hold the
+	 * lock.
+	 */
+	private String getName(UUID player) {
+		Integer slot = slots.get(player);
+		return slot == null ? null : names.get(slot);
+	}
+
+	/**
+	 * Helper method that returns the highscore in a record, or null if the
+	 * player has none. The caller must hold the lock.
+	 */
+	private Integer getHighscore(int slot) {
+		if ((file.get(slot, RecordFile.FLAGS) & RecordFile.HAS_HIGHSCORE) == 0) return null;
+		return file.get(slot, RecordFile.HIGHSCORE);
+	}
+
+	/**
+	 * Flushes the record file's changed pages to disk and saves the
+	 * registered stats that changed. Records are written in place as they
+	 * change, so this never rewrites anything that didn't change.
+	 */
+	private class SyncTask extends BukkitRunnable {
+
+		@Override
+		public void run() {
+			try {
+				file.force();
+			} catch (IOException e) {
+				failedSyncs.increment();
+			}
+
+			if (!customStats.save(true)) failedSyncs.increment();
+		}
+	}
+}
@@ -1,13 +1,28 @@
 package net.richardsprojects.plugins.lobbygames.datastore;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import net.richardsprojects.plugins.lobbygames.LobbyGames;
 
+import org.bukkit.scheduler.BukkitRunnable;
+
 import javax.xml.transform.Result;
+import java.io.File;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class is an implementation of the LobbyGames plugin datastore for
@@ -18,14 +33,84 @@ import java.util.UUID;
  */
 public class MySQLDatastore extends Datastore {
 
+	/** How many players getStats looks up per statement. */
+	private static final int STATS_CHUNK_SIZE = MySQLQueries.MAX_IN_SIZE;
+
+	/** The least time between two logged SQL errors, in milliseconds. */
+	private static final long ERROR_LOG_INTERVAL = 60000;
+
+	/** The least time between two checks for tables converted by another server, in milliseconds. */
+	private static final long UUID_RECHECK_INTERVAL = 10000;
+
+	/** How many players' saved writes are sent per transaction once MySQL is back. */
+	private static final int REPLAY_BATCH_SIZE = 500;
+
+	/** How many players' last read stats are kept to answer reads while MySQL is down. */
+	private static final int LAST_KNOWN_SIZE = 10000;
+
 	private final ConnectionPoolManager pool;
 	private final String PREFIX = LobbyGames.instance.dbPrefix;
+	private final MySQLQueries queries = new MySQLQueries(PREFIX);
+	private WriteBehindQueue writeBehind;
+	private ChangeLog changeLog;
+	private CircuitBreaker breaker;
+	private SpillJournal spill;
+	private Cache<UUID, StatsRow> lastKnown;
+	private RecoveryTask recoveryTask;
+	private volatile UUIDFormat uuidFormat = UUIDFormat.STRING;
+	private final ConcurrentHashMap<StatKey, Integer> statIds = new ConcurrentHashMap<>();
+
+	private final LongAdder sqlErrors = new LongAdder();
+	private volatile long lastErrorLog;
+	private volatile long lastUUIDCheck;
 
 	/**
-	 * Setups the connection to the MySQL database.
+	 * Setups the connection to the MySQL database. If write-behind is enabled
+	 * in the config, updates are queued and written in batches instead of
+	 * one statement per call. If the change log is enabled, every write is
+	 * recorded so other servers sharing the database can drop the changed
+	 * players from their caches. If the circuit breaker is enabled, writes
+	 * that can't reach MySQL are saved to a spill journal and reads fall back
+	 * to the last stats read for the player.
 	 */
 	public MySQLDatastore() {
 		pool = new ConnectionPoolManager();
+
+		if (LobbyGames.instance.mysql_changeLog) {
+			changeLog = new ChangeLog(pool, PREFIX, LobbyGames.instance.mysql_changeLogRetention);
+		}
+
+		if (LobbyGames.instance.mysql_writeBehind) {
+			writeBehind = new WriteBehindQueue(pool, PREFIX,
+					LobbyGames.instance.mysql_writeBehindMaxPending);
+			writeBehind.setChangeLog(changeLog);
+			writeBehind.setErrorHandler(this::sqlError);
+		}
+
+		if (LobbyGames.instance.mysql_circuitBreaker) {
+			breaker = new CircuitBreaker("MySQL", LobbyGames.instance.mysql_circuitBreakerFailures);
+			pool.setCircuitBreaker(breaker);
+
+			spill = new SpillJournal(new File(LobbyGames.dataFolder, "mysql-spill.dat"), pool, PREFIX);
+			spill.setChangeLog(changeLog);
+			spill.setErrorHandler(this::sqlError);
+			lastKnown = CacheBuilder.newBuilder().maximumSize(LAST_KNOWN_SIZE).build();
+
+			if (changeLog != null) {
+				// another server's write makes the stats read before it out of date
+				changeLog.addListener(new ChangeListener() {
+					@Override
+					public void playerChanged(UUID player, String name) {
+						lastKnown.invalidate(player);
+					}
+
+					@Override
+					public void allChanged() {
+						lastKnown.invalidateAll();
+					}
+				});
+			}
+		}
 	}
 
 	/**
@@ -38,21 +123,30 @@ public class MySQLDatastore extends Datastore {
 	 * @return whether it succeeded or failed
 	 */
 	public boolean updateTicTacToeLosses(UUID player, String name, int losses) {
+		if (spill != null && spill.isActive()) {
+			return spill.append(SpillJournal.LOSSES, player, name, losses);
+		}
+
+		if (writeBehind != null) {
+			writeBehind.queueTicTacToeLosses(player, name, losses);
+			return true;
+		}
+
 		boolean success = true;
 
-		String sql = "INSERT INTO " + PREFIX + "tictactoe VALUES (?, ?, 0, ?, 0) ON DUPLICATE KEY" +
-				" UPDATE games_lost = ?, player = ?";
 		try (Connection conn = pool.getConnection();
-			 PreparedStatement ps = conn.prepareStatement(sql)) {
-			ps.setString(1, player.toString());
+			 PreparedStatement ps = conn.prepareStatement(queries.setLosses)) {
+			uuidFormat.set(ps, 1, player);
 			ps.setString(2, name);
 			ps.setInt(3, losses);
 			ps.setInt(4, losses);
 			ps.setString(5, name);
 
 			ps.executeUpdate();
+			changed(conn, player, name);
 		} catch (SQLException e) {
-			success = false;
+			sqlError(e);
+			success = spill(e, SpillJournal.LOSSES, player, name, losses);
 		}
 
 		return success;
@@ -69,35 +163,65 @@ public class MySQLDatastore extends Datastore {
 	 */
 	@Override
 	public boolean updateTicTacToeTies(UUID player, String name, int ties) {
+		if (spill != null && spill.isActive()) {
+			return spill.append(SpillJournal.TIES, player, name, ties);
+		}
+
+		if (writeBehind != null) {
+			writeBehind.queueTicTacToeTies(player, name, ties);
+			return true;
+		}
+
 		boolean success = true;
 
-		String sql = "INSERT INTO " + PREFIX + "tictactoe VALUES (?, ?, 0, 0, ?) ON DUPLICATE KEY" +
-				" UPDATE games_tied = ?, player = ?";
 		try (Connection conn = pool.getConnection();
-			 PreparedStatement ps = conn.prepareStatement(sql)) {
-			ps.setString(1, player.toString());
+			 PreparedStatement ps = conn.prepareStatement(queries.setTies)) {
+			uuidFormat.set(ps, 1, player);
 			ps.setString(2, name);
 			ps.setInt(3, ties);
 			ps.setInt(4, ties);
 			ps.setString(5, name);
 
 			ps.executeUpdate();
+			changed(conn, player, name);
 		} catch (SQLException e) {
-			success = false;
+			sqlError(e);
+			success = spill(e, SpillJournal.TIES, player, name, ties);
 		}
 
 		return success;
 	}
 
 	/**
-	 * Opens the initial database connection and checks for the needed tables.
-	 * If they can't be found it adds them.
+	 * Opens the initial database connection and runs any schema migrations
+	 * the database hasn't had yet, which creates the tables if needed. Writes
+	 * left in the spill journal by the last run are sent before anything
+	 * else is written.
 	 *
 	 * @return whether it was successful or not.
 	 */
 	@Override
 	public boolean initalize() {
-		return checkTables();
+		if (!checkTables()) return false;
+
+		if (changeLog != null && !changeLog.start(LobbyGames.instance.mysql_changeLogPollInterval)) {
+			return false;
+		}
+
+		if (spill != null) {
+			if (!spill.open()) return false;
+			spill.replay(REPLAY_BATCH_SIZE);
+
+			long interval = Math.max(1, LobbyGames.instance.mysql_circuitBreakerProbeInterval) * 20L;
+			recoveryTask = new RecoveryTask();
+			recoveryTask.runTaskTimerAsynchronously(LobbyGames.instance, interval, interval);
+		}
+
+		if (writeBehind != null) {
+			writeBehind.start(LobbyGames.instance.mysql_writeBehindInterval);
+		}
+
+		return true;
 	}
 
 	/**
@@ -108,24 +232,7 @@ public class MySQLDatastore extends Datastore {
 	 * @return player's highscore or 0 if no record was found.
 	 */
 	public int getHighscore(UUID player) {
-		ResultSet set;
-		int highscore = 0;
-
-		String sql = "SELECT highscore FROM " + PREFIX + "highscores WHERE uuid = ?";
-		try (Connection conn = pool.getConnection();
-			 PreparedStatement ps = conn.prepareStatement(sql)) {
-			ps.setString(1, player.toString());
-			set = ps.executeQuery();
-
-			// load data from set
-			while (set.next()) {
-				highscore = set.getInt("highscore");
-			}
-
-			set.close();
-		} catch (SQLException e) {}
-
-		return highscore;
+		return getProfile(player).getHighscore();
 	}
 
 	/**
@@ -141,11 +248,8 @@ public class MySQLDatastore extends Datastore {
 		StringBuilder builder = new StringBuilder();
 		String leaderboard;
 
-		String sql = "SELECT uuid, player, highscore FROM " + PREFIX
-				+ "highscores ORDER BY highscore DESC LIMIT 10";
-
 		try (Connection conn = pool.getConnection();
-			 PreparedStatement ps = conn.prepareStatement(sql)) {
+			 PreparedStatement ps = conn.prepareStatement(queries.leaderboard)) {
 			set = ps.executeQuery();
 
 			while (set.next()) {
@@ -158,7 +262,9 @@ public class MySQLDatastore extends Datastore {
 			}
 
 			set.close();
-		} catch (SQLException e) {}
+		} catch (SQLException e) {
+			sqlError(e);
+		}
 
 		leaderboard = builder.toString();
 		if (leaderboard.length() > 0) leaderboard = leaderboard.substring(1);
@@ -166,61 +272,136 @@ public class MySQLDatastore extends Datastore {
 	}
 
 	/**
-	 * Gets the number of tic tac toe wins of a player from the database based
-	 * on the provided UUID. Returns 0 if they had no record in the database.
+	 * Reads the page in index order. Ties are ordered by uuid descending so
+	 * MySQL can walk highscore_idx, which ends in the primary key, backwards
+	 * instead of sorting. The offset is skipped in a subquery that only reads
+	 * that index, so deep pages never load the rows before them and only the
+	 * page's own rows are read from the table. The rank of the first entry
+	 * is counted with an index range scan and the rest follow from their
+	 * position. Scores still waiting in the write-behind queue show up once
+	 * they are written.
 	 *
-	 * @param player player's UUID
-	 * @return player's wins or 0 if no record was found.
+	 * @see Datastore#getLeaderboardPage(int, int)
 	 */
-	public int getTicTacToeWins(UUID player) {
-		ResultSet set;
-		int gamesWon = 0;
+	@Override
+	public List<LeaderboardEntry> getLeaderboardPage(int offset, int limit) {
+		List<LeaderboardEntry> page = new ArrayList<>();
+		if (offset < 0 || limit <= 0) return page;
+
+		try (Connection conn = pool.getConnection()) {
+			List<UUID> players = new ArrayList<>();
+			List<String> names = new ArrayList<>();
+			List<Integer> scores = new ArrayList<>();
+
+			try (PreparedStatement ps = conn.prepareStatement(queries.leaderboardPage)) {
+				ps.setInt(1, limit);
+				ps.setInt(2, offset);
+
+				try (ResultSet set = ps.executeQuery()) {
+					while (set.next()) {
+						players.add(uuidFormat.get(set, "uuid"));
+						names.add(set.getString("player"));
+						scores.add(set.getInt("highscore"));
+					}
+				}
+			}
 
-		String sql = "SELECT games_won FROM " + PREFIX + "tictactoe WHERE uuid = ?";
-		try (Connection conn = pool.getConnection();
-			 PreparedStatement ps = conn.prepareStatement(sql)) {
-			ps.setString(1, player.toString());
-			set = ps.executeQuery();
+			if (players.isEmpty()) return page;
 
-			// load data from set
-			while (set.next()) {
-				gamesWon = set.getInt("games_won");
+			int rank = countHigherScores(conn, scores.get(0)) + 1;
+			for (int i = 0; i < players.size(); i++) {
+				if (i > 0 && !scores.get(i).equals(scores.get(i - 1))) {
+					rank = offset + i + 1;
+				}
+				page.add(new LeaderboardEntry(rank, players.get(i), names.get(i), scores.get(i)));
 			}
+		} catch (SQLException e) {
+			sqlError(e);
+		}
 
-			set.close();
-		} catch (SQLException e) {}
-
-		return gamesWon;
+		return page;
 	}
 
 	/**
-	 * Gets the number of tic tac toe ties of a player from the database based
-	 * on the provided UUID. Returns 0 if they had no record in the database.
+	 * Counts the players with a higher score using highscore_idx, so only
+	 * the part of the index above the player's score is read. A score still
+	 * waiting in the write-behind queue is ranked as if it were written.
 	 *
-	 * @param player player's UUID
-	 * @return player's ties or 0 if no record was found.
+	 * @see Datastore#getRank(UUID)
 	 */
 	@Override
-	public int getTicTacToeTies(UUID player) {
-		ResultSet set;
-		int gamesTied = 0;
+	public int getRank(UUID player) {
+		Integer score = null;
+		int higher = 0;
+
+		try (Connection conn = pool.getConnection()) {
+			try (PreparedStatement ps = conn.prepareStatement(queries.rank)) {
+				uuidFormat.set(ps, 1, player);
+
+				try (ResultSet set = ps.executeQuery()) {
+					if (set.next()) {
+						score = set.getInt(1);
+						if (set.wasNull()) score = null;
+						higher = set.getInt(2);
+					}
+				}
+			}
 
-		String sql = "SELECT games_tied FROM " + PREFIX + "tictactoe WHERE uuid = ?";
-		try (Connection conn = pool.getConnection();
-			 PreparedStatement ps = conn.prepareStatement(sql)) {
+			WriteBehindQueue.Update pending = getPending(player);
+			if (pending != null && pending.getHighscore() != null) {
+				score = pending.getHighscore();
+			} else if (pending != null && pending.getBestScore() != null) {
+				score = score == null ? pending.getBestScore() : Math.max(score, pending.getBestScore());
+			} else {
+				return score == null ? 0 : higher + 1;
+			}
 
-			ps.setString(1, player.toString());
-			set = ps.executeQuery();
+			return countHigherScores(conn, score) + 1;
+		} catch (SQLException e) {
+			sqlError(e);
+			return 0;
+		}
+	}
 
-			// load data from set
-			while (set.next()) {
-				gamesTied = set.getInt("games_tied");
+	/**
+	 * Helper method that counts the players with a score higher than the
+	 * provided one.
+	 *
+	 * @param conn the connection to use
+	 * @param score the score
+	 * @return the number of players with a higher score
+	 * @throws SQLException if the query fails
+	 */
+	private int countHigherScores(Connection conn, int score) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement(queries.countHigherScores)) {
+			ps.setInt(1, score);
+			try (ResultSet set = ps.executeQuery()) {
+				return set.next() ? set.getInt(1) : 0;
 			}
+		}
+	}
 
-			set.close();
-		} catch (SQLException e) {}
+	/**
+	 * Gets the number of tic tac toe wins of a player from the database based
+	 * on the provided UUID. Returns 0 if they had no record in the database.
+	 *
+	 * @param player player's UUID
+	 * @return player's wins or 0 if no record was found.
+	 */
+	public int getTicTacToeWins(UUID player) {
+		return getProfile(player).getTicTacToeWins();
+	}
 
-		return gamesTied;
+	/**
+	 * Gets the number of tic tac toe ties of a player from the database based
+	 * on the provided UUID. Returns 0 if they had no record in the database.
+	 *
+	 * @param player player's UUID
+	 * @return player's ties or 0 if no record was found.
+	 */
+	@Override
+	public int getTicTacToeTies(UUID player) {
+		return getProfile(player).getTicTacToeTies();
 	}
 
 	/**
@@ -232,24 +413,8 @@ public class MySQLDatastore extends Datastore {
 	 */
 	@Override
 	public int getTicTacToeTies(String player) {
-		ResultSet set;
-		int gamesTied = 0;
-
-		String sql = "SELECT games_tied FROM " + PREFIX + "tictactoe WHERE player = ?";
-		try (Connection conn = pool.getConnection();
-			 PreparedStatement ps = conn.prepareStatement(sql)) {
-			ps.setString(1, player);
-			set = ps.executeQuery();
-
-			// load data from set
-			while (set.next()) {
-				gamesTied = set.getInt("games_tied");
-			}
-
-			set.close();
-		} catch (SQLException e) {}
-
-		return gamesTied;
+		PlayerStats profile = getProfile(player);
+		return profile == null ? 0 : profile.getTicTacToeTies();
 	}
 
 	/**
@@ -260,24 +425,7 @@ public class MySQLDatastore extends Datastore {
 	 * @return loss count or 0 if no information available
 	 */
 	public int getTicTacToeLosses(UUID player) {
-		ResultSet set;
-		int gamesLost = 0;
-
-		String sql = "SELECT games_lost FROM " + PREFIX + "tictactoe WHERE uuid = ?";
-		try (Connection conn = pool.getConnection();
-			 PreparedStatement ps = conn.prepareStatement(sql)) {
-			ps.setString(1, player.toString());
-			set = ps.executeQuery();
-
-			// load data from set
-			while (set.next()) {
-				gamesLost = set.getInt("games_lost");
-			}
-
-			set.close();
-		} catch (SQLException e) {}
-
-		return gamesLost;
+		return getProfile(player).getTicTacToeLosses();
 	}
 
 	/**
@@ -290,22 +438,30 @@ public class MySQLDatastore extends Datastore {
 	 * @return whether the operation succeeded or failed
 	 */
 	public boolean updateHighscore(UUID player, String name, int score) {
-		boolean success = true;
+		if (spill != null && spill.isActive()) {
+			return spill.append(SpillJournal.HIGHSCORE, player, name, score);
+		}
+
+		if (writeBehind != null) {
+			writeBehind.queueHighscore(player, name, score);
+			return true;
+		}
 
-		String sql = "INSERT INTO " + PREFIX + "highscores VALUES (?, ?, ?) ON DUPLICATE KEY" +
-				" UPDATE highscore = ?, player = ?";
+		boolean success = true;
 
 		try (Connection conn = pool.getConnection();
-			 PreparedStatement ps = conn.prepareStatement(sql)) {
-			ps.setString(1, player.toString());
+			 PreparedStatement ps = conn.prepareStatement(queries.setHighscore)) {
+			uuidFormat.set(ps, 1, player);
 			ps.setString(2, name);
 			ps.setInt(3, score);
 			ps.setInt(4, score);
 			ps.setString(5, name);
 
 			ps.executeUpdate();
+			changed(conn, player, name);
 		} catch (SQLException e) {
-			success = false;
+			sqlError(e);
+			success = spill(e, SpillJournal.HIGHSCORE, player, name, score);
 		}
 
 		return success;
@@ -319,24 +475,8 @@ public class MySQLDatastore extends Datastore {
 	 * @return player's highscore or 0 if no record was found.
 	 */
 	public int getHighscore(String player) {
-		ResultSet set;
-		int highscore = 0;
-
-		String sql = "SELECT highscore FROM " + PREFIX + "highscores WHERE player = ?";
-		try (Connection conn = pool.getConnection();
-			PreparedStatement ps = conn.prepareStatement(sql)) {
-			ps.setString(1, player);
-			set = ps.executeQuery();
-
-			// load data from set
-			while (set.next()) {
-				highscore = set.getInt("highscore");
-			}
-
-			set.close();
-		} catch (SQLException e) {}
-
-		return highscore;
+		PlayerStats profile = getProfile(player);
+		return profile == null ? 0 : profile.getHighscore();
 	}
 
 	/**
@@ -349,22 +489,30 @@ public class MySQLDatastore extends Datastore {
 	 * @return whether it succeeded or failed
 	 */
 	public boolean updateTicTacToeWins(UUID player, String name, int wins) {
-		boolean success = true;
+		if (spill != null && spill.isActive()) {
+			return spill.append(SpillJournal.WINS, player, name, wins);
+		}
+
+		if (writeBehind != null) {
+			writeBehind.queueTicTacToeWins(player, name, wins);
+			return true;
+		}
 
-		String sql = "INSERT INTO " + PREFIX + "tictactoe VALUES (?, ?, ?, 0, 0) ON DUPLICATE KEY" +
-				" UPDATE games_won = ?, player = ?";
+		boolean success = true;
 
 		try (Connection conn = pool.getConnection();
-			 PreparedStatement ps = conn.prepareStatement(sql)) {
-			ps.setString(1, player.toString());
+			 PreparedStatement ps = conn.prepareStatement(queries.setWins)) {
+			uuidFormat.set(ps, 1, player);
 			ps.setString(2, name);
 			ps.setInt(3, wins);
 			ps.setInt(4, wins);
 			ps.setString(5, name);
 
 			ps.executeUpdate();
+			changed(conn, player, name);
 		} catch (SQLException e) {
-			success = false;
+			sqlError(e);
+			success = spill(e, SpillJournal.WINS, player, name, wins);
 		}
 
 		return success;
@@ -378,177 +526,1151 @@ public class MySQLDatastore extends Datastore {
 	 * @return player's wins or 0 if no record was found.
 	 */
 	public int getTicTacToeWins(String player) {
-		int gamesWon = 0;
-		ResultSet set;
-
-		String sql = "SELECT games_won FROM " + PREFIX + "tictactoe WHERE player = ?";
-		try (Connection conn = pool.getConnection();
-			 PreparedStatement ps = conn.prepareStatement(sql)) {
-			ps.setString(1, player);
-			set = ps.executeQuery();
-
-			// load data from set
-			while (set.next()) {
-				gamesWon = set.getInt("games_won");
-			}
-
-			set.close();
-		} catch (SQLException e) {}
+		PlayerStats profile = getProfile(player);
+		return profile == null ? 0 : profile.getTicTacToeWins();
+	}
 
-		return gamesWon;
+	/**
+	 * Returns the number of games of Tic Tac Toe losses based on the provided
+	 * name. Returns 0 if there is no record for the specified player.
+	 *
+	 * @param player player's username
+	 * @return loss count or 0 if no information available
+	 */
+	public int getTicTacToeLosses(String player) {
+		PlayerStats profile = getProfile(player);
+		return profile == null ? 0 : profile.getTicTacToeLosses();
 	}
 
 	/**
-	 * Updates a player's loss count in Tic Tac Toe and their username based on
-	 * the provided UUID. Returns true if it succeeds false if it fails.
+	 * Submits a new score for the player in a single statement. MySQL keeps
+	 * whichever of the stored highscore and the submitted score is higher.
 	 *
 	 * @param player player's UUID
 	 * @param name player's name
-	 * @param losses new loss count
-	 * @return whether it succeeded or failed
+	 * @param score submitted score
+	 * @return whether the operation succeeded or failed
 	 */
-	public boolean updateTickTackToeLosses(UUID player, String name, int losses) {
+	@Override
+	public boolean submitHighscore(UUID player, String name, int score) {
+		if (spill != null && spill.isActive()) {
+			return spill.append(SpillJournal.SUBMITTED_HIGHSCORE, player, name, score);
+		}
+
+		if (writeBehind != null) {
+			writeBehind.queueSubmittedHighscore(player, name, score);
+			return true;
+		}
+
 		boolean success = true;
 
-		String sql = "INSERT INTO " + PREFIX + "tictactoe VALUES (?, ?, 0, ?, 0) ON" +
-				" DUPLICATE KEY UPDATE games_lost = ?, name = ?";
 		try (Connection conn = pool.getConnection();
-			 PreparedStatement ps = conn.prepareStatement(sql)) {
-			ps.setString(1, player.toString());
+			 PreparedStatement ps = conn.prepareStatement(queries.submitHighscore)) {
+			uuidFormat.set(ps, 1, player);
 			ps.setString(2, name);
-			ps.setInt(3, losses);
-			ps.setInt(4, losses);
+			ps.setInt(3, score);
+			ps.setInt(4, score);
 			ps.setString(5, name);
 
 			ps.executeUpdate();
+			changed(conn, player, name);
 		} catch (SQLException e) {
-			success = false;
+			sqlError(e);
+			success = spill(e, SpillJournal.SUBMITTED_HIGHSCORE, player, name, score);
 		}
 
 		return success;
 	}
 
 	/**
-	 * Returns the number of games of Tic Tac Toe losses based on the provided
-	 * name. Returns 0 if there is no record for the specified player.
+	 * Adds to a player's win count in Tic Tac Toe in a single statement
+	 * without reading the current count first.
 	 *
-	 * @param player player's username
-	 * @return loss count or 0 if no information available
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param delta amount to add
+	 * @return whether it succeeded or failed
 	 */
-	public int getTicTacToeLosses(String player) {
-		ResultSet set;
-		int gamesLost = 0;
-
-		String sql = "SELECT games_lost FROM " + PREFIX + "tictactoe WHERE Player = ?";
-		try (Connection conn = pool.getConnection();
-			 PreparedStatement ps = conn.prepareStatement(sql)) {
+	@Override
+	public boolean incrementTicTacToeWins(UUID player, String name, int delta) {
+		if (spill != null && spill.isActive()) {
+			return spill.append(SpillJournal.WINS_INCREMENT, player, name, delta);
+		}
 
-			ps.setString(1, player);
-			set = ps.executeQuery();
+		if (writeBehind != null) {
+			writeBehind.queueTicTacToeWinsIncrement(player, name, delta);
+			return true;
+		}
 
-			while (set.next()) {
-				gamesLost = set.getInt("games_lost");
-			}
+		boolean success = true;
 
-			set.close();
-		} catch (SQLException e) {}
+		try (Connection conn = pool.getConnection();
+			 PreparedStatement ps = conn.prepareStatement(queries.incrementWins)) {
+			uuidFormat.set(ps, 1, player);
+			ps.setString(2, name);
+			ps.setInt(3, delta);
+			ps.setInt(4, delta);
+			ps.setString(5, name);
 
-		return gamesLost;
-	}
+			ps.executeUpdate();
+			changed(conn, player, name);
+		} catch (SQLException e) {
+			sqlError(e);
+			success = spill(e, SpillJournal.WINS_INCREMENT, player, name, delta);
+		}
 
-	/**
-	 * Closes all connections in the connection pool. Should be called in the
-	 * onDisable method of the plugin.
-	 */
-	@Override
-	public void onDisable() {
-		pool.closePool();
+		return success;
 	}
 
 	/**
-	 * This is a simple method that returns if there is information
-	 * regarding this name in the datastore.
+	 * Adds to a player's loss count in Tic Tac Toe in a single statement
+	 * without reading the current count first.
 	 *
-	 * @param name the player's name to check
-	 * @return if there is information regarding this player in the datastore
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param delta amount to add
+	 * @return whether it succeeded or failed
 	 */
 	@Override
-	public boolean registeredName(String name) {
-		ResultSet set;
-		boolean registeredName = false;
+	public boolean incrementTicTacToeLosses(UUID player, String name, int delta) {
+		if (spill != null && spill.isActive()) {
+			return spill.append(SpillJournal.LOSSES_INCREMENT, player, name, delta);
+		}
 
-		String sql = "SELECT games_won FROM " + PREFIX + "tictactoe WHERE player = ?";
-		try (Connection conn = pool.getConnection();
-			 PreparedStatement ps = conn.prepareStatement(sql)) {
-			ps.setString(1, name);
-			set = ps.executeQuery();
+		if (writeBehind != null) {
+			writeBehind.queueTicTacToeLossesIncrement(player, name, delta);
+			return true;
+		}
 
-			// load data from set
-			while (set.next()) {
-				registeredName = true;
-			}
+		boolean success = true;
 
-			set.close();
-		} catch (SQLException e) {}
+		try (Connection conn = pool.getConnection();
+			 PreparedStatement ps = conn.prepareStatement(queries.incrementLosses)) {
+			uuidFormat.set(ps, 1, player);
+			ps.setString(2, name);
+			ps.setInt(3, delta);
+			ps.setInt(4, delta);
+			ps.setString(5, name);
 
-		return registeredName;
+			ps.executeUpdate();
+			changed(conn, player, name);
+		} catch (SQLException e) {
+			sqlError(e);
+			success = spill(e, SpillJournal.LOSSES_INCREMENT, player, name, delta);
+		}
+
+		return success;
 	}
 
 	/**
-	 * Checks that the tables needed for the plugin exist and creates them if
-	 * they do not. Returns true if the operation succeeded false if it failed.
+	 * Adds to a player's tie count in Tic Tac Toe in a single statement
+	 * without reading the current count first.
 	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param delta amount to add
 	 * @return whether it succeeded or failed
 	 */
-	private boolean checkTables() {
-		return makeTicTacToeTable() && makeHighscoresTable();
-	}
+	@Override
+	public boolean incrementTicTacToeTies(UUID player, String name, int delta) {
+		if (spill != null && spill.isActive()) {
+			return spill.append(SpillJournal.TIES_INCREMENT, player, name, delta);
+		}
 
-	/**
-	 * Checks for the existence of the TicTacToe table in the database and
-	 * creates it if it does not exist. Returns whether the operation
-	 * succeeded or failed.
-	 *
-	 * @return success of the operation
-	 */
-	private boolean makeTicTacToeTable() {
-		boolean result = true;
+		if (writeBehind != null) {
+			writeBehind.queueTicTacToeTiesIncrement(player, name, delta);
+			return true;
+		}
 
-		String sql = "CREATE TABLE IF NOT EXISTS " + PREFIX + "tictactoe (uuid VARCHAR(50"
-				+ "), player VARCHAR(50), games_won INT, games_lost INT, games_tied INT" +
-				", PRIMARY KEY(uuid))";
+		boolean success = true;
 
 		try (Connection conn = pool.getConnection();
-			 PreparedStatement ps = conn.prepareStatement(sql)) {
+			 PreparedStatement ps = conn.prepareStatement(queries.incrementTies)) {
+			uuidFormat.set(ps, 1, player);
+			ps.setString(2, name);
+			ps.setInt(3, delta);
+			ps.setInt(4, delta);
+			ps.setString(5, name);
+
 			ps.executeUpdate();
+			changed(conn, player, name);
 		} catch (SQLException e) {
-			result = false;
+			sqlError(e);
+			success = spill(e, SpillJournal.TIES_INCREMENT, player, name, delta);
+		}
+
+		return success;
+	}
+
+	/**
+	 * Reads every stat for the player in a single query. Changes still
+	 * waiting in the write-behind queue or spill journal are applied on top.
+	 * If MySQL can't be read the last stats read for the player are used.
+	 *
+	 * @param player player's UUID
+	 * @return the player's stats, all 0 if they have no records
+	 */
+	@Override
+	public PlayerStats getProfile(UUID player) {
+		StatsRow row = null;
+
+		try (Connection conn = pool.getConnection();
+			 PreparedStatement ps = conn.prepareStatement(queries.profileByUUID)) {
+			uuidFormat.set(ps, 1, player);
+			uuidFormat.set(ps, 2, player);
+
+			try (ResultSet set = ps.executeQuery()) {
+				row = set.next() ? readProfileRow(set) : new StatsRow();
+			}
+			remember(player, row);
+		} catch (SQLException e) {
+			sqlError(e);
+			row = getLastKnown(player);
+		}
+
+		if (row == null) row = new StatsRow();
+		return toPlayerStats(player, row);
+	}
+
+	/**
+	 * Reads every stat for the player with the provided name in a single
+	 * query. Changes still waiting in the write-behind queue are applied on
+	 * top.
+	 *
+	 * @param name player's name
+	 * @return the player's stats or null if no player has that name
+	 */
+	@Override
+	public PlayerStats getProfile(String name) {
+		UUID player = null;
+		StatsRow row = null;
+
+		try (Connection conn = pool.getConnection();
+			 PreparedStatement ps = conn.prepareStatement(queries.profileByName)) {
+			ps.setString(1, name);
+			ps.setString(2, name);
+
+			try (ResultSet set = ps.executeQuery()) {
+				if (set.next()) {
+					player = uuidFormat.get(set, "uuid");
+					row = readProfileRow(set);
+				}
+			}
+		} catch (SQLException e) {
+			sqlError(e);
+		}
+
+		if (player == null) return null;
+		return toPlayerStats(player, row);
+	}
+
+	/**
+	 * Reads the stats from the current row of a profile query.
+	 */
+	private StatsRow readProfileRow(ResultSet set) throws SQLException {
+		StatsRow row = new StatsRow();
+		row.name = set.getString(2);
+		row.highscore = set.getInt(3);
+		row.wins = set.getInt(4);
+		row.losses = set.getInt(5);
+		row.ties = set.getInt(6);
+		return row;
+	}
+
+	/**
+	 * Applies anything pending in the write-behind queue and then the spill
+	 * journal to the row and turns it into a PlayerStats.
+	 */
+	private PlayerStats toPlayerStats(UUID player, StatsRow row) {
+		WriteBehindQueue.Update pending = getPending(player);
+		if (pending != null) row.applyPending(pending);
+
+		WriteBehindQueue.Update spilled = spill != null ? spill.getPending(player) : null;
+		if (spilled != null) row.applyPending(spilled);
+
+		return new PlayerStats(player, row.name, row.highscore, row.wins, row.losses, row.ties);
+	}
+
+	/**
+	 * Reads every player's stats on one connection, STATS_CHUNK_SIZE players
+	 * per statement. Each statement looks the chunk up in both tables with an
+	 * IN list and unions the rows, since a player may only be in one of
+	 * them. Changes still waiting in the write-behind queue are applied on
+	 * top and the last stats read are used if MySQL can't be read, the same
+	 * as the single stat getters do.
+	 *
+	 * @param players the players' UUIDs
+	 * @return each player's stats keyed by UUID
+	 */
+	@Override
+	public Map<UUID, PlayerStats> getStats(Collection<UUID> players) {
+		List<UUID> unique = new ArrayList<>(new LinkedHashSet<>(players));
+		Map<UUID, StatsRow> rows = new HashMap<>();
+		boolean failed = false;
+
+		try (Connection conn = pool.getConnection()) {
+			for (int start = 0; start < unique.size(); start += STATS_CHUNK_SIZE) {
+				int end = Math.min(start + STATS_CHUNK_SIZE, unique.size());
+				readStats(conn, unique.subList(start, end), rows);
+			}
+		} catch (SQLException e) {
+			sqlError(e);
+			failed = true;
+		}
+
+		Map<UUID, PlayerStats> result = new HashMap<>();
+		for (UUID player : unique) {
+			StatsRow row = rows.get(player);
+			if (failed) {
+				// players after the failed chunk were never read
+				if (row == null) row = getLastKnown(player);
+			} else {
+				if (row == null) row = new StatsRow();
+				remember(player, row);
+			}
+
+			if (row == null) row = new StatsRow();
+			result.put(player, toPlayerStats(player, row));
 		}
 
 		return result;
 	}
 
 	/**
-	 * Checks for the existence of the Highscores table in the database and
-	 * creates it if it does not exist. Returns whether the operation
-	 * succeeded or failed.
+	 * Reads one chunk of players from both tables and adds their rows to the
+	 * provided map.
+	 *
+	 * @param conn the connection to use
+	 * @param chunk the players to read
+	 * @param rows the map to add the rows to
+	 * @throws SQLException if the query fails
+	 */
+	private void readStats(Connection conn, List<UUID> chunk, Map<UUID, StatsRow> rows)
+			throws SQLException {
+		int size = MySQLQueries.paddedSize(chunk.size());
+
+		try (PreparedStatement ps = conn.prepareStatement(queries.stats(chunk.size()))) {
+			for (int i = 0; i < size; i++) {
+				// the padding repeats the last player
+				UUID player = chunk.get(Math.min(i, chunk.size() - 1));
+				uuidFormat.set(ps, i + 1, player);
+				uuidFormat.set(ps, size + i + 1, player);
+			}
+
+			try (ResultSet set = ps.executeQuery()) {
+				while (set.next()) {
+					UUID player = uuidFormat.get(set, "uuid");
+					StatsRow row = rows.get(player);
+					if (row == null) {
+						row = new StatsRow();
+						rows.put(player, row);
+					}
+
+					String name = set.getString(2);
+					if (name != null) row.name = name;
+					row.highscore += set.getInt(3);
+					row.wins += set.getInt(4);
+					row.losses += set.getInt(5);
+					row.ties += set.getInt(6);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads STATS_CHUNK_SIZE players per statement. Each statement is a range
+	 * of the stats table's primary key, so only the requested rows are read.
+	 *
+	 * @see Datastore#readCustomStats(Collection, List)
+	 */
+	@Override
+	protected Map<UUID, int[]> readCustomStats(Collection<UUID> players, List<StatKey> stats) {
+		List<UUID> unique = new ArrayList<>(new LinkedHashSet<>(players));
+		Map<UUID, int[]> result = new HashMap<>();
+		for (UUID player : unique) {
+			result.put(player, new int[stats.size()]);
+		}
+
+		try (Connection conn = pool.getConnection()) {
+			// stat number to its position in the result arrays
+			Map<Integer, Integer> positions = new HashMap<>();
+			for (int i = 0; i < stats.size(); i++) {
+				Integer id = getStatId(conn, stats.get(i), false);
+				if (id != null) positions.put(id, i);
+			}
+			if (positions.isEmpty()) return result;
+
+			for (int start = 0; start < unique.size(); start += STATS_CHUNK_SIZE) {
+				int end = Math.min(start + STATS_CHUNK_SIZE, unique.size());
+				readCustomStats(conn, unique.subList(start, end), positions, result);
+			}
+		} catch (SQLException e) {
+			sqlError(e);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Reads one chunk of players and fills in their result arrays.
+	 *
+	 * @param conn the connection to use
+	 * @param chunk the players to read
+	 * @param positions each stat number's position in the result arrays
+	 * @param result the arrays to fill in
+	 * @throws SQLException if the query fails
+	 */
+	private void readCustomStats(Connection conn, List<UUID> chunk, Map<Integer, Integer> positions,
+								 Map<UUID, int[]> result) throws SQLException {
+		String sql = queries.customStats(chunk.size(), positions.size());
+		List<Integer> ids = new ArrayList<>(positions.keySet());
+
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			// both lists are padded by repeating their last value
+			int index = 1;
+			int players = MySQLQueries.paddedSize(chunk.size());
+			for (int i = 0; i < players; i++) {
+				uuidFormat.set(ps, index++, chunk.get(Math.min(i, chunk.size() - 1)));
+			}
+			int stats = MySQLQueries.paddedSize(ids.size());
+			for (int i = 0; i < stats; i++) {
+				ps.setInt(index++, ids.get(Math.min(i, ids.size() - 1)));
+			}
+
+			try (ResultSet set = ps.executeQuery()) {
+				while (set.next()) {
+					int[] values = result.get(uuidFormat.get(set, "uuid"));
+					Integer position = positions.get(set.getInt("stat_id"));
+					if (values != null && position != null) {
+						values[position] = set.getInt("value");
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends every write in one transaction. Consecutive writes of the same
+	 * kind share a JDBC batch, and the order of the writes is kept so a set
+	 * followed by a record ends up the same as it would one at a time.
+	 *
+	 * @see Datastore#writeCustomStats(List)
+	 */
+	@Override
+	protected boolean writeCustomStats(List<StatBatch.Op> ops) {
+		String[] sql = queries.writeStat;
+
+		try (Connection conn = pool.getConnection()) {
+			// numbers for new stats are committed on their own so other servers see them
+			int[] ids = new int[ops.size()];
+			for (int i = 0; i < ops.size(); i++) {
+				ids[i] = getStatId(conn, ops.get(i).getStat(), true);
+			}
+
+			conn.setAutoCommit(false);
+			PreparedStatement[] statements = new PreparedStatement[sql.length];
+			try {
+				for (int i = 0; i < sql.length; i++) {
+					statements[i] = conn.prepareStatement(sql[i]);
+				}
+
+				int current = -1;
+				for (int i = 0; i < ops.size(); i++) {
+					StatBatch.Op op = ops.get(i);
+					int kind = op.isSet() ? 0 : op.getStat().getType() == StatKey.Type.MAX ? 2 : 1;
+					if (current >= 0 && kind != current) {
+						statements[current].executeBatch();
+					}
+					current = kind;
+
+					PreparedStatement ps = statements[kind];
+					uuidFormat.set(ps, 1, op.getPlayer());
+					ps.setInt(2, ids[i]);
+					ps.setInt(3, op.getValue());
+					ps.addBatch();
+				}
+				if (current >= 0) statements[current].executeBatch();
+
+				if (changeLog != null) {
+					Map<UUID, String> players = new HashMap<>();
+					for (StatBatch.Op op : ops) {
+						players.put(op.getPlayer(), op.getName());
+					}
+					changeLog.record(conn, players);
+				}
+
+				conn.commit();
+			} catch (SQLException e) {
+				conn.rollback();
+				throw e;
+			} finally {
+				for (PreparedStatement ps : statements) {
+					if (ps != null) ps.close();
+				}
+				conn.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			sqlError(e);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Pages through both tables in uuid order. Anything waiting in the
+	 * write-behind queue is written before the first page.
+	 *
+	 * @see Datastore#exportPlayers(UUID, int)
+	 */
+	@Override
+	public List<PlayerRecord> exportPlayers(UUID after, int limit) {
+		List<PlayerRecord> page = new ArrayList<>();
+		if (limit <= 0) return page;
+		if (after == null && writeBehind != null) writeBehind.flush();
+
+		try (Connection conn = pool.getConnection();
+			 PreparedStatement ps = conn.prepareStatement(after == null ? queries.exportFirst
+					 : queries.exportAfter)) {
+			int index = 1;
+			for (int i = 0; i < 2; i++) {
+				if (after != null) uuidFormat.set(ps, index++, after);
+				ps.setInt(index++, limit);
+			}
+			ps.setInt(index, limit);
+
+			try (ResultSet set = ps.executeQuery()) {
+				while (set.next()) {
+					Integer highscore = set.getInt(3);
+					if (set.wasNull()) highscore = null;
+					page.add(new PlayerRecord(uuidFormat.get(set, "uuid"), set.getString(2), highscore,
+							set.getBoolean(7), set.getInt(4), set.getInt(5), set.getInt(6)));
+				}
+			}
+		} catch (SQLException e) {
+			sqlError(e);
+			return null;
+		}
+
+		return page;
+	}
+
+	/**
+	 * Writes every record in one transaction with one JDBC batch per table,
+	 * which the driver sends as multi-row inserts.
+	 *
+	 * @see Datastore#importPlayers(List)
+	 */
+	@Override
+	public boolean importPlayers(List<PlayerRecord> players) {
+		try (Connection conn = pool.getConnection()) {
+			conn.setAutoCommit(false);
+			try (PreparedStatement highscores = conn.prepareStatement(queries.importHighscore);
+				 PreparedStatement ticTacToe = conn.prepareStatement(queries.importTicTacToe)) {
+				for (PlayerRecord record : players) {
+					if (record.getHighscore() != null) {
+						uuidFormat.set(highscores, 1, record.getUUID());
+						highscores.setString(2, record.getName());
+						highscores.setInt(3, record.getHighscore());
+						highscores.addBatch();
+					}
+
+					if (record.hasTicTacToe()) {
+						uuidFormat.set(ticTacToe, 1, record.getUUID());
+						ticTacToe.setString(2, record.getName());
+						ticTacToe.setInt(3, record.getTicTacToeWins());
+						ticTacToe.setInt(4, record.getTicTacToeLosses());
+						ticTacToe.setInt(5, record.getTicTacToeTies());
+						ticTacToe.addBatch();
+					}
+				}
+
+				highscores.executeBatch();
+				ticTacToe.executeBatch();
+
+				if (changeLog != null) {
+					Map<UUID, String> changed = new HashMap<>();
+					for (PlayerRecord record : players) {
+						changed.put(record.getUUID(), record.getName());
+					}
+					changeLog.record(conn, changed);
+				}
+
+				conn.commit();
+			} catch (SQLException e) {
+				conn.rollback();
+				throw e;
+			} finally {
+				conn.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			sqlError(e);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Helper method that returns the number of a registered stat. Numbers are
+	 * cached once found, since a stat's number never changes.
+	 *
+	 * @param conn the connection to use
+	 * @param stat the stat
+	 * @param create whether to give the stat a number if it has none yet
+	 * @return the stat's number, or null if it has none and create is false
+	 * @throws SQLException if a query fails
+	 */
+	private Integer getStatId(Connection conn, StatKey stat, boolean create) throws SQLException {
+		Integer id = statIds.get(stat);
+		if (id != null) return id;
+
+		try (PreparedStatement ps = conn.prepareStatement(queries.selectStatId)) {
+			ps.setString(1, stat.getGame());
+			ps.setString(2, stat.getName());
+
+			try (ResultSet set = ps.executeQuery()) {
+				if (set.next()) id = set.getInt(1);
+			}
+
+			if (id == null && create) {
+				// another server may add the same stat first, which IGNORE allows for
+				try (PreparedStatement insertPs = conn.prepareStatement(queries.insertStatId)) {
+					insertPs.setString(1, stat.getGame());
+					insertPs.setString(2, stat.getName());
+					insertPs.executeUpdate();
+				}
+
+				try (ResultSet set = ps.executeQuery()) {
+					if (set.next()) id = set.getInt(1);
+				}
+			}
+		}
+
+		if (id != null) statIds.put(stat, id);
+		return id;
+	}
+
+	/**
+	 * Closes all connections in the connection pool. Should be called in the
+	 * onDisable method of the plugin. Write-behind changes that can't be
+	 * written are saved to the spill journal if there is one, instead of
+	 * being lost.
+	 */
+	@Override
+	public void onDisable() {
+		if (recoveryTask != null) {
+			recoveryTask.cancel();
+			recoveryTask = null;
+		}
+		if (changeLog != null) {
+			changeLog.stop();
+		}
+		if (writeBehind != null) {
+			writeBehind.stop();
+			if (spill != null && writeBehind.pendingCount() > 0
+					&& spill.appendAll(writeBehind.getPendingUpdates())) {
+				String msg = "[LobbyGames] Saved the pending player updates to the spill journal.";
+				DatastoreLog.get().info(msg);
+			}
+		}
+		if (spill != null) {
+			spill.close();
+		}
+		pool.closePool();
+	}
+
+	/**
+	 * Adds the connection pool's gauges, the number of failed statements, how
+	 * many players have changes waiting in the write-behind queue and the
+	 * circuit breaker's and spill journal's state.
+	 *
+	 * @see Datastore#collectGauges(List)
+	 */
+	@Override
+	public void collectGauges(List<DatastoreMetrics.Gauge> gauges) {
+		pool.collectGauges(gauges);
+		gauges.add(DatastoreMetrics.Gauge.counter("mysql_errors_total",
+				"Statements that failed with an SQLException.", sqlErrors.sum()));
+		if (writeBehind != null) {
+			gauges.add(DatastoreMetrics.Gauge.of("mysql_write_behind_pending_players",
+					"Players with changes not written to MySQL yet.", writeBehind.pendingCount()));
+			gauges.add(DatastoreMetrics.Gauge.counter("mysql_write_behind_failed_flushes_total",
+					"Write-behind flushes that failed and will be retried.", writeBehind.getFailedFlushes()));
+		}
+		if (changeLog != null) {
+			changeLog.collectGauges(gauges);
+		}
+		if (breaker != null) {
+			breaker.collectGauges(gauges, "mysql");
+			gauges.add(DatastoreMetrics.Gauge.of("mysql_spill_pending_players",
+					"Players with writes saved to the spill journal that haven't reached MySQL yet.",
+					spill.pendingCount()));
+			gauges.add(DatastoreMetrics.Gauge.of("mysql_spill_bytes",
+					"Size of the spill journal file.", spill.getFileSize()));
+		}
+	}
+
+	/**
+	 * Listeners are only told anything if the change log is enabled.
+	 *
+	 * @see Datastore#addChangeListener(ChangeListener)
+	 */
+	@Override
+	public void addChangeListener(ChangeListener listener) {
+		if (changeLog != null) {
+			changeLog.addListener(listener);
+		}
+	}
+
+	/**
+	 * Helper method that records a write in the change log if it is enabled
+	 * and forgets the player's last read stats, which are now out of date.
+	 * Single writes are committed on their own, so the write has already
+	 * happened when this runs. If the change can't be recorded the failure
+	 * is only counted and logged, the write still succeeded and other
+	 * servers see it once their cached entry expires.
+	 *
+	 * @param conn the connection the write was made with
+	 * @param player player's UUID
+	 * @param name player's name
+	 */
+	private void changed(Connection conn, UUID player, String name) {
+		if (lastKnown != null) {
+			lastKnown.invalidate(player);
+		}
+		if (changeLog != null) {
+			try {
+				changeLog.record(conn, player, name);
+			} catch (SQLException e) {
+				sqlError(e);
+			}
+		}
+	}
+
+	/**
+	 * Helper method that counts a failed statement towards the circuit
+	 * breaker and logs it. At most one error is logged a minute so a
+	 * database outage doesn't flood the console, the rest are only counted.
+	 * Write-behind flushes and spill journal replays that fail are passed
+	 * here too. The failure is also reported against the running call, since
+	 * most callers return a default value instead of throwing.
+	 *
+	 * @param e the exception
+	 */
+	private void sqlError(SQLException e) {
+		sqlErrors.increment();
+		reportFailure();
+		// failing to get a connection was already counted by the pool
+		if (!(e instanceof SQLTransientConnectionException)) pool.recordFailure(e);
+		// a data error may mean another server converted the tables to binary UUIDs
+		String state = e.getSQLState();
+		if (state != null && state.startsWith("22")) recheckUUIDFormat();
+
+		long now = System.currentTimeMillis();
+		if (now - lastErrorLog < ERROR_LOG_INTERVAL) return;
+		lastErrorLog = now;
+
+		String msg = "[LobbyGames] A MySQL statement failed: " + e.getMessage()
+				+ " (" + sqlErrors.sum() + " failed so far)";
+		DatastoreLog.get().info(msg);
+	}
+
+	/**
+	 * Every operation holds a pooled connection while it runs, so there is no
+	 * point running more of them at once than the pool has connections.
+	 *
+	 * @return the maximum size of the connection pool
+	 */
+	@Override
+	public int getMaxConcurrentOperations() {
+		return pool.getMaximumConnections();
+	}
+
+	/**
+	 * This is a simple method that returns if there is information
+	 * regarding this name in the datastore.
+	 *
+	 * @param name the player's name to check
+	 * @return if there is information regarding this player in the datastore
+	 */
+	@Override
+	public boolean registeredName(String name) {
+		ResultSet set;
+		boolean registeredName = false;
+
+		try (Connection conn = pool.getConnection();
+			 PreparedStatement ps = conn.prepareStatement(queries.registeredName)) {
+			ps.setString(1, name);
+			set = ps.executeQuery();
+
+			// load data from set
+			while (set.next()) {
+				registeredName = true;
+			}
+
+			set.close();
+		} catch (SQLException e) {
+			sqlError(e);
+		}
+
+		return registeredName;
+	}
+
+	/**
+	 * Helper method that returns the player's changes that are still waiting
+	 * in the write-behind queue, or null if there are none or write-behind is
+	 * disabled.
+	 *
+	 * @param player player's UUID
+	 * @return the pending changes or null
+	 */
+	private WriteBehindQueue.Update getPending(UUID player) {
+		if (writeBehind == null) return null;
+		return writeBehind.getPending(player);
+	}
+
+	/**
+	 * Helper method that saves a write to the spill journal if it failed
+	 * because no connection could be had, so it is sent once MySQL is back.
+	 * A write that failed after it reached MySQL, such as with a socket
+	 * timeout, may have been committed before the reply was lost, so it
+	 * isn't saved, since sending an increment twice would count it twice.
+	 * Returns whether the write was saved.
+	 *
+	 * @param e why the write failed
+	 * @param op which write, one of SpillJournal's constants
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param value the write's value
+	 * @return whether the write was saved
+	 */
+	private boolean spill(SQLException e, byte op, UUID player, String name, int value) {
+		// getConnection only throws this when it gave up waiting for a connection
+		return spill != null && e instanceof SQLTransientConnectionException
+				&& spill.append(op, player, name, value);
+	}
+
+	/**
+	 * Helper method that keeps a copy of the stats just read for the player
+	 * to answer reads with while MySQL is down.
+	 *
+	 * @param player player's UUID
+	 * @param row the stats read
+	 */
+	private void remember(UUID player, StatsRow row) {
+		if (lastKnown != null) {
+			lastKnown.put(player, row.copy());
+		}
+	}
+
+	/**
+	 * Helper method that returns a copy of the last stats read for the
+	 * player, or null if there are none.
 	 *
-	 * @return success of the operation
+	 * @param player player's UUID
+	 * @return the last stats read or null
 	 */
-	private boolean makeHighscoresTable() {
-		boolean result = true;
+	private StatsRow getLastKnown(UUID player) {
+		if (lastKnown == null) return null;
+		StatsRow row = lastKnown.getIfPresent(player);
+		return row != null ? row.copy() : null;
+	}
 
+	/**
+	 * Brings the database up to the latest schema, creating the tables on a
+	 * new database and upgrading older ones. Returns true if the operation
+	 * succeeded false if it failed.
+	 *
+	 * @return whether it succeeded or failed
+	 */
+	private boolean checkTables() {
+		SchemaMigrator migrator = new SchemaMigrator(pool, PREFIX);
+		if (!migrator.migrate(getMigrations())) return false;
+
+		if (LobbyGames.instance.mysql_compactUUIDs) {
+			boolean converted = migrator.runLocked((conn, prefix) -> {
+				new BinaryUUIDMigration(conn, prefix + "highscores").run();
+				new BinaryUUIDMigration(conn, prefix + "tictactoe").run();
+				new BinaryUUIDMigration(conn, prefix + "stats").run();
+			});
+			if (!converted) return false;
+		}
+
+		return checkUUIDFormat();
+	}
+
+	/**
+	 * Works out how the tables store UUIDs so every statement sends them in
+	 * the right format. Once converted to BINARY(16) the tables stay that
+	 * way even if compact UUIDs are turned off again.
+	 *
+	 * @return false if the tables don't agree on a format
+	 */
+	private boolean checkUUIDFormat() {
+		String highscoresType;
+		String ticTacToeType;
+		String statsType;
+
+		try (Connection conn = pool.getConnection()) {
+			highscoresType = SchemaMigrator.getColumnType(conn, PREFIX + "highscores", "uuid");
+			ticTacToeType = SchemaMigrator.getColumnType(conn, PREFIX + "tictactoe", "uuid");
+			statsType = SchemaMigrator.getColumnType(conn, PREFIX + "stats", "uuid");
+		} catch (SQLException e) {
+			sqlError(e);
+			return false;
+		}
+
+		boolean highscoresBinary = "binary".equals(highscoresType);
+		if (highscoresBinary != "binary".equals(ticTacToeType)
+				|| highscoresBinary != "binary".equals(statsType)) {
+			String msg = "[LobbyGames] Only some tables have been converted to compact UUIDs. Set"
+					+ " MySQL_CompactUUIDs to true to finish converting them.";
+			DatastoreLog.get().info(msg);
+			return false;
+		}
+
+		setUUIDFormat(highscoresBinary ? UUIDFormat.BINARY : UUIDFormat.STRING);
+		return true;
+	}
+
+	/**
+	 * Switches to binary UUIDs if another server has converted every table
+	 * since this one started. Until this server switches, its UUIDs don't fit
+	 * the converted columns, so its writes fail with a data error and its
+	 * reads find nothing, and it is the data errors that call this. Checks
+	 * at most once every UUID_RECHECK_INTERVAL.
+	 */
+	private void recheckUUIDFormat() {
+		if (uuidFormat == UUIDFormat.BINARY) return;
+
+		long now = System.currentTimeMillis();
+		if (now - lastUUIDCheck < UUID_RECHECK_INTERVAL) return;
+		lastUUIDCheck = now;
+
+		try (Connection conn = pool.getConnection()) {
+			// the tables are converted one at a time, the format can only change once all of them are
+			for (String table : new String[] {"highscores", "tictactoe", "stats"}) {
+				if (!"binary".equals(SchemaMigrator.getColumnType(conn, PREFIX + table, "uuid"))) return;
+			}
+		} catch (SQLException e) {
+			return;
+		}
+
+		setUUIDFormat(UUIDFormat.BINARY);
+		String msg = "[LobbyGames] Another server converted the MySQL tables to compact UUIDs, switched to them.";
+		DatastoreLog.get().info(msg);
+	}
+
+	private void setUUIDFormat(UUIDFormat uuidFormat) {
+		this.uuidFormat = uuidFormat;
+		if (writeBehind != null) {
+			writeBehind.setUUIDFormat(uuidFormat);
+		}
+		if (spill != null) {
+			spill.setUUIDFormat(uuidFormat);
+		}
+	}
+
+	/**
+	 * Returns every schema migration in version order. Add new migrations to
+	 * the end with the next version, never change one that has been
+	 * released.
+	 *
+	 * @return the migrations
+	 */
+	private List<SchemaMigrator.Migration> getMigrations() {
+		List<SchemaMigrator.Migration> migrations = new ArrayList<>();
+
+		// databases from before migrations existed already have these tables
+		migrations.add(new SchemaMigrator.Migration(1, "Create the tictactoe and highscores tables",
+				(conn, prefix) -> {
+					makeTicTacToeTable(conn);
+					makeHighscoresTable(conn);
+				}));
+
+		// the leaderboard sorts by highscore and name lookups filter by player
+		migrations.add(new SchemaMigrator.Migration(2, "Index highscore and player",
+				(conn, prefix) -> {
+					addIndex(conn, prefix + "highscores", "highscore_idx", "highscore");
+					addIndex(conn, prefix + "highscores", "player_idx", "player");
+					addIndex(conn, prefix + "tictactoe", "player_idx", "player");
+				}));
+
+		// registered stats share one narrow table instead of a table per game
+		migrations.add(new SchemaMigrator.Migration(3, "Create the stat_keys and stats tables",
+				(conn, prefix) -> {
+					makeStatKeysTable(conn);
+					makeStatsTable(conn);
+				}));
+
+		// lets servers sharing the database see which players the others changed
+		migrations.add(new SchemaMigrator.Migration(4, "Create the changes table",
+				(conn, prefix) -> {
+					try (PreparedStatement ps = conn.prepareStatement(ChangeLog.createTable(prefix))) {
+						ps.executeUpdate();
+					}
+				}));
+
+		// lets the spill journal tell which of its batches were already written
+		migrations.add(new SchemaMigrator.Migration(5, "Create the spill_batches table",
+				(conn, prefix) -> {
+					try (PreparedStatement ps = conn.prepareStatement(SpillJournal.createTable(prefix))) {
+						ps.executeUpdate();
+					}
+				}));
+
+		return migrations;
+	}
+
+	/**
+	 * Checks for the existence of the TicTacToe table in the database and
+	 * creates it if it does not exist.
+	 *
+	 * @param conn the connection to use
+	 * @throws SQLException if the table could not be created
+	 */
+	private void makeTicTacToeTable(Connection conn) throws SQLException {
+		String sql = "CREATE TABLE IF NOT EXISTS " + PREFIX + "tictactoe (uuid VARCHAR(50"
+				+ "), player VARCHAR(50), games_won INT, games_lost INT, games_tied INT" +
+				", PRIMARY KEY(uuid))";
+
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			ps.executeUpdate();
+		}
+	}
+
+	/**
+	 * Checks for the existence of the Highscores table in the database and
+	 * creates it if it does not exist.
+	 *
+	 * @param conn the connection to use
+	 * @throws SQLException if the table could not be created
+	 */
+	private void makeHighscoresTable(Connection conn) throws SQLException {
 		String sql = "CREATE TABLE IF NOT EXISTS " + PREFIX + "highscores" +
 				" (uuid VARCHAR(50), player VARCHAR(50), highscore INT, " +
 				"PRIMARY KEY (uuid))";
 
-		try (Connection conn = pool.getConnection();
-			 PreparedStatement ps = conn.prepareStatement(sql)) {
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
 			ps.executeUpdate();
-		} catch (SQLException e) {
-			result = false;
 		}
+	}
 
-		return result;
+	/**
+	 * Creates the table that gives every registered stat a number, so the
+	 * stats table only has to store a number per row.
+	 *
+	 * @param conn the connection to use
+	 * @throws SQLException if the table could not be created
+	 */
+	private void makeStatKeysTable(Connection conn) throws SQLException {
+		String sql = "CREATE TABLE IF NOT EXISTS " + PREFIX + "stat_keys (id INT NOT NULL AUTO_INCREMENT" +
+				", game VARCHAR(32) NOT NULL, stat VARCHAR(32) NOT NULL, PRIMARY KEY (id)" +
+				", UNIQUE KEY game_stat (game, stat))";
+
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			ps.executeUpdate();
+		}
+	}
+
+	/**
+	 * Creates the table that holds every registered stat that isn't built
+	 * in, one row per player and stat. The uuid column matches the other
+	 * tables so compact UUIDs keep working on databases that were already
+	 * converted.
+	 *
+	 * @param conn the connection to use
+	 * @throws SQLException if the table could not be created
+	 */
+	private void makeStatsTable(Connection conn) throws SQLException {
+		String uuidType = "binary".equals(SchemaMigrator.getColumnType(conn, PREFIX + "highscores", "uuid"))
+				? "BINARY(16)" : "VARCHAR(50)";
+		String sql = "CREATE TABLE IF NOT EXISTS " + PREFIX + "stats (uuid " + uuidType + " NOT NULL" +
+				", stat_id INT NOT NULL, value INT NOT NULL, PRIMARY KEY (uuid, stat_id))";
+
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			ps.executeUpdate();
+		}
+	}
+
+	/**
+	 * Adds an index on the provided column unless the table already has an
+	 * index with that name.
+	 *
+	 * @param conn the connection to use
+	 * @param table the full table name including the prefix
+	 * @param index the index name
+	 * @param column the column to index
+	 * @throws SQLException if the index could not be created
+	 */
+	private void addIndex(Connection conn, String table, String index, String column) throws SQLException {
+		if (SchemaMigrator.hasIndex(conn, table, index)) return;
+
+		String sql = "CREATE INDEX " + index + " ON " + table + " (" + column + ")";
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			ps.executeUpdate();
+		}
+	}
+
+	/**
+	 * One player's stats while they are being read by getStats.
+	 */
+	private static class StatsRow {
+
+		private String name;
+		private int highscore;
+		private int wins;
+		private int losses;
+		private int ties;
+
+		private StatsRow copy() {
+			StatsRow copy = new StatsRow();
+			copy.name = name;
+			copy.highscore = highscore;
+			copy.wins = wins;
+			copy.losses = losses;
+			copy.ties = ties;
+			return copy;
+		}
+
+		/**
+		 * Applies changes still waiting in the write-behind queue the same
+		 * way the single stat getters do.
+		 */
+		private void applyPending(WriteBehindQueue.Update pending) {
+			if (pending.getName() != null) name = pending.getName();
+
+			if (pending.getHighscore() != null) {
+				highscore = pending.getHighscore();
+			} else if (pending.getBestScore() != null) {
+				highscore = Math.max(highscore, pending.getBestScore());
+			}
+
+			wins = pending.getWins() != null ? pending.getWins() : wins + pending.getWinsDelta();
+			losses = pending.getLosses() != null ? pending.getLosses() : losses + pending.getLossesDelta();
+			ties = pending.getTies() != null ? pending.getTies() : ties + pending.getTiesDelta();
+		}
+	}
+
+	/**
+	 * Checks on MySQL every probe interval while the circuit breaker is
+	 * enabled. Closes the breaker once MySQL answers again and then sends the
+	 * writes saved to the spill journal, a batch at a time.
+	 */
+	private class RecoveryTask extends BukkitRunnable {
+
+		@Override
+		public void run() {
+			if (breaker.isOpen()) {
+				int timeout = Math.max(1, LobbyGames.instance.mysql_circuitBreakerProbeInterval);
+				if (!pool.isReachable(timeout)) return;
+				breaker.close();
+			}
+
+			if (spill.isActive()) {
+				spill.replay(REPLAY_BATCH_SIZE);
+			}
+		}
 	}
 }
@@ -0,0 +1,216 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+/**
+ * Every statement MySQLDatastore runs, built once for its table prefix
+ * instead of on every call. Keeping the exact same SQL text for each call
+ * also lets the driver's prepared statement cache find it.
+ *
+ * Statements with an IN list are built for list sizes that are powers of
+ * two, and callers pad their lists up to the next size by repeating the last
+ * value. A repeated value matches the same rows, and the cache then only
+ * ever sees a handful of IN statements instead of one per list length.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class MySQLQueries {
+
+	/** The longest IN list that is built, also a power of two. */
+	public static final int MAX_IN_SIZE = 512;
+
+	public final String setHighscore;
+	public final String submitHighscore;
+	public final String setWins;
+	public final String setLosses;
+	public final String setTies;
+	public final String incrementWins;
+	public final String incrementLosses;
+	public final String incrementTies;
+
+	public final String leaderboard;
+	public final String leaderboardPage;
+	public final String rank;
+	public final String countHigherScores;
+
+	public final String profileByUUID;
+	public final String profileByName;
+	public final String registeredName;
+
+	public final String exportFirst;
+	public final String exportAfter;
+	public final String importHighscore;
+	public final String importTicTacToe;
+
+	public final String selectStatId;
+	public final String insertStatId;
+	/** Indexed by write kind: set, add, keep the highest. */
+	public final String[] writeStat;
+
+	private final String prefix;
+	private final String[] stats = new String[sizeIndex(MAX_IN_SIZE) + 1];
+	private final String[][] customStats = new String[sizeIndex(MAX_IN_SIZE) + 1][sizeIndex(MAX_IN_SIZE) + 1];
+
+	/**
+	 * Builds every statement for the provided table prefix.
+	 *
+	 * @param prefix the table prefix
+	 */
+	public MySQLQueries(String prefix) {
+		this.prefix = prefix;
+
+		String highscores = "INSERT INTO " + prefix + "highscores VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE ";
+		setHighscore = highscores + "highscore = ?, player = ?";
+		submitHighscore = highscores + "highscore = GREATEST(highscore, ?), player = ?";
+
+		String tictactoe = "INSERT INTO " + prefix + "tictactoe VALUES ";
+		setWins = tictactoe + "(?, ?, ?, 0, 0) ON DUPLICATE KEY UPDATE games_won = ?, player = ?";
+		setLosses = tictactoe + "(?, ?, 0, ?, 0) ON DUPLICATE KEY UPDATE games_lost = ?, player = ?";
+		setTies = tictactoe + "(?, ?, 0, 0, ?) ON DUPLICATE KEY UPDATE games_tied = ?, player = ?";
+		incrementWins = tictactoe + "(?, ?, ?, 0, 0) ON DUPLICATE KEY UPDATE games_won = games_won + ?"
+				+ ", player = ?";
+		incrementLosses = tictactoe + "(?, ?, 0, ?, 0) ON DUPLICATE KEY UPDATE games_lost = games_lost + ?"
+				+ ", player = ?";
+		incrementTies = tictactoe + "(?, ?, 0, 0, ?) ON DUPLICATE KEY UPDATE games_tied = games_tied + ?"
+				+ ", player = ?";
+
+		leaderboard = "SELECT uuid, player, highscore FROM " + prefix
+				+ "highscores ORDER BY highscore DESC LIMIT 10";
+		// the offset is skipped inside highscore_idx, so only the page's own rows are looked up
+		leaderboardPage = "SELECT h.uuid, h.player, h.highscore FROM " + prefix + "highscores h JOIN"
+				+ " (SELECT uuid FROM " + prefix + "highscores WHERE highscore IS NOT NULL"
+				+ " ORDER BY highscore DESC, uuid DESC LIMIT ? OFFSET ?) page ON page.uuid = h.uuid"
+				+ " ORDER BY h.highscore DESC, h.uuid DESC";
+		rank = "SELECT h.highscore, (SELECT COUNT(*) FROM " + prefix + "highscores"
+				+ " WHERE highscore > h.highscore) FROM " + prefix + "highscores h WHERE h.uuid = ?";
+		countHigherScores = "SELECT COUNT(*) FROM " + prefix + "highscores WHERE highscore > ?";
+
+		profileByUUID = profile("uuid");
+		profileByName = profile("player");
+		registeredName = "SELECT games_won FROM " + prefix + "tictactoe WHERE player = ?";
+
+		exportFirst = export(false);
+		exportAfter = export(true);
+		// no parameters after VALUES, so the driver can send a batch as one multi-row insert
+		importHighscore = "INSERT INTO " + prefix + "highscores (uuid, player, highscore) VALUES (?, ?, ?)"
+				+ " ON DUPLICATE KEY UPDATE player = VALUES(player), highscore = VALUES(highscore)";
+		importTicTacToe = "INSERT INTO " + prefix + "tictactoe (uuid, player, games_won, games_lost, games_tied)"
+				+ " VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE player = VALUES(player)"
+				+ ", games_won = VALUES(games_won), games_lost = VALUES(games_lost)"
+				+ ", games_tied = VALUES(games_tied)";
+
+		selectStatId = "SELECT id FROM " + prefix + "stat_keys WHERE game = ? AND stat = ?";
+		insertStatId = "INSERT IGNORE INTO " + prefix + "stat_keys (game, stat) VALUES (?, ?)";
+
+		String stat = "INSERT INTO " + prefix + "stats (uuid, stat_id, value) VALUES (?, ?, ?)"
+				+ " ON DUPLICATE KEY UPDATE value = ";
+		writeStat = new String[] {
+				stat + "VALUES(value)",
+				stat + "value + VALUES(value)",
+				stat + "GREATEST(value, VALUES(value))"
+		};
+	}
+
+	/**
+	 * Returns the size an IN list of the provided length should be padded
+	 * to.
+	 *
+	 * @param size the list's length
+	 * @return the next power of two
+	 */
+	public static int paddedSize(int size) {
+		if (size <= 1) return 1;
+		return Integer.highestOneBit(size - 1) << 1;
+	}
+
+	/**
+	 * Returns the query that reads the built-in stats of the provided number
+	 * of players from both tables. It has two IN lists of the padded size,
+	 * the first for highscores and the second for tictactoe.
+	 *
+	 * @param players how many players, at most MAX_IN_SIZE
+	 * @return the SQL
+	 */
+	public String stats(int players) {
+		int index = sizeIndex(players);
+		String sql = stats[index];
+		if (sql == null) {
+			String in = placeholders(paddedSize(players));
+			// the columns a table doesn't have are 0 so the two rows can simply be added
+			sql = "SELECT uuid, player, highscore, 0, 0, 0 FROM " + prefix + "highscores WHERE uuid IN ("
+					+ in + ") UNION ALL SELECT uuid, player, 0, games_won, games_lost, games_tied FROM "
+					+ prefix + "tictactoe WHERE uuid IN (" + in + ")";
+			// two threads may build the same string, which is harmless
+			stats[index] = sql;
+		}
+		return sql;
+	}
+
+	/**
+	 * Returns the query that reads registered stats. It has an IN list of
+	 * players followed by an IN list of stat numbers, each of the padded
+	 * size.
+	 *
+	 * @param players how many players, at most MAX_IN_SIZE
+	 * @param stats how many stats, any number
+	 * @return the SQL
+	 */
+	public String customStats(int players, int stats) {
+		if (stats > MAX_IN_SIZE) {
+			// far more stats than anyone registers, not worth caching
+			return "SELECT uuid, stat_id, value FROM " + prefix + "stats WHERE uuid IN ("
+					+ placeholders(paddedSize(players)) + ") AND stat_id IN (" + placeholders(paddedSize(stats)) + ")";
+		}
+
+		int playersIndex = sizeIndex(players);
+		int statsIndex = sizeIndex(stats);
+		String sql = customStats[playersIndex][statsIndex];
+		if (sql == null) {
+			sql = "SELECT uuid, stat_id, value FROM " + prefix + "stats WHERE uuid IN ("
+					+ placeholders(paddedSize(players)) + ") AND stat_id IN ("
+					+ placeholders(paddedSize(stats)) + ")";
+			customStats[playersIndex][statsIndex] = sql;
+		}
+		return sql;
+	}
+
+	/**
+	 * A player may only be in one of the tables, so their UUID is found in
+	 * either table first and then left joined to both.
+	 */
+	private String profile(String column) {
+		return "SELECT p.uuid, COALESCE(t.player, h.player), h.highscore, t.games_won, t.games_lost" +
+				", t.games_tied FROM (SELECT uuid FROM " + prefix + "highscores WHERE " + column +
+				" = ? UNION SELECT uuid FROM " + prefix + "tictactoe WHERE " + column + " = ? LIMIT 1) p" +
+				" LEFT JOIN " + prefix + "highscores h ON h.uuid = p.uuid" +
+				" LEFT JOIN " + prefix + "tictactoe t ON t.uuid = p.uuid";
+	}
+
+	/**
+	 * Pages through every player in uuid order. Each table is only read from
+	 * its primary key for at most a page of players past the last one, so a
+	 * page costs the same at the end of the table as at the start. The
+	 * parameters are the last uuid and the page size for each table, then
+	 * the page size again, without the uuids on the first page.
+	 */
+	private String export(boolean after) {
+		String where = after ? " WHERE uuid > ?" : "";
+		return "SELECT p.uuid, COALESCE(t.player, h.player), h.highscore, t.games_won, t.games_lost" +
+				", t.games_tied, t.uuid IS NOT NULL FROM ((SELECT uuid FROM " + prefix + "highscores" + where +
+				" ORDER BY uuid LIMIT ?) UNION (SELECT uuid FROM " + prefix + "tictactoe" + where +
+				" ORDER BY uuid LIMIT ?) ORDER BY uuid LIMIT ?) p" +
+				" LEFT JOIN " + prefix + "highscores h ON h.uuid = p.uuid" +
+				" LEFT JOIN " + prefix + "tictactoe t ON t.uuid = p.uuid ORDER BY p.uuid";
+	}
+
+	private static int sizeIndex(int size) {
+		return Integer.numberOfTrailingZeros(paddedSize(size));
+	}
+
+	private static String placeholders(int count) {
+		StringBuilder builder = new StringBuilder(count * 3);
+		for (int i = 0; i < count; i++) {
+			builder.append(i == 0 ? "?" : ", ?");
+		}
+		return builder.toString();
+	}
+}
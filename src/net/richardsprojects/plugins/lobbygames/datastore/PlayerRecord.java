@@ -0,0 +1,98 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import java.util.UUID;
+
+/**
+ * Everything a datastore keeps in its built-in columns for one player, as
+ * exported and imported when moving players between datastores. Unlike
+ * PlayerStats it tells a missing highscore or tic tac toe row apart from a
+ * stored 0, so a migration doesn't add rows the player never had.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public final class PlayerRecord {
+
+	private final UUID uuid;
+	private final String name;
+	private final Integer highscore;
+	private final boolean ticTacToe;
+	private final int ticTacToeWins;
+	private final int ticTacToeLosses;
+	private final int ticTacToeTies;
+
+	/**
+	 * @param uuid player's UUID
+	 * @param name player's last known name or null if there is none
+	 * @param highscore 2048 highscore or null if the player has none
+	 * @param ticTacToe whether the player has tic tac toe stats
+	 * @param ticTacToeWins tic tac toe win count
+	 * @param ticTacToeLosses tic tac toe loss count
+	 * @param ticTacToeTies tic tac toe tie count
+	 */
+	public PlayerRecord(UUID uuid, String name, Integer highscore, boolean ticTacToe, int ticTacToeWins,
+						int ticTacToeLosses, int ticTacToeTies) {
+		this.uuid = uuid;
+		this.name = name;
+		this.highscore = highscore;
+		this.ticTacToe = ticTacToe;
+		this.ticTacToeWins = ticTacToeWins;
+		this.ticTacToeLosses = ticTacToeLosses;
+		this.ticTacToeTies = ticTacToeTies;
+	}
+
+	public UUID getUUID() {
+		return uuid;
+	}
+
+	/**
+	 * @return the player's last known name or null if there is none
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the player's highscore or null if they have none
+	 */
+	public Integer getHighscore() {
+		return highscore;
+	}
+
+	/**
+	 * @return whether the player has tic tac toe stats
+	 */
+	public boolean hasTicTacToe() {
+		return ticTacToe;
+	}
+
+	public int getTicTacToeWins() {
+		return ticTacToeWins;
+	}
+
+	public int getTicTacToeLosses() {
+		return ticTacToeLosses;
+	}
+
+	public int getTicTacToeTies() {
+		return ticTacToeTies;
+	}
+
+	/**
+	 * Returns the record the way the stat getters see it, with anything
+	 * missing as 0.
+	 *
+	 * @return the player's stats
+	 */
+	public PlayerStats toStats() {
+		return new PlayerStats(uuid, name, highscore == null ? 0 : highscore, ticTacToeWins,
+				ticTacToeLosses, ticTacToeTies);
+	}
+
+	@Override
+	public String toString() {
+		return "PlayerRecord{uuid=" + uuid + ", name=" + name + ", highscore=" + highscore
+				+ ", ticTacToe=" + ticTacToe + ", ticTacToeWins=" + ticTacToeWins
+				+ ", ticTacToeLosses=" + ticTacToeLosses + ", ticTacToeTies=" + ticTacToeTies + "}";
+	}
+}
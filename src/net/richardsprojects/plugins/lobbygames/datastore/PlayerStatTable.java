@@ -0,0 +1,615 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A compact in-memory table of player stats keyed by UUID. It replaces one
+ * boxed HashMap per stat with a single open-addressing hash table that stores
+ * each UUID as its two longs, every stat in a packed int column and the
+ * player's name as a plain reference. Nothing is boxed and no per-player
+ * objects are created, so a player costs a few dozen bytes of array slots
+ * instead of a map entry, a boxed key and a boxed value for every stat.
+ * Retained heap measured with the StatTableFootprint benchmark (JDK 17,
+ * compressed oops, names excluded since both layouts keep the same ones):
+ *
+ * <pre>
+ *   players    five HashMaps           PlayerStatTable
+ *   100,000    26 MB (271 B/player)    8 MB (85 B/player)
+ *   1,000,000  249 MB (261 B/player)   74 MB (77 B/player)
+ * </pre>
+ *
+ * The table is split into 64 segments that are locked independently, so
+ * updates to different players rarely wait on each other. Reads don't lock at
+ * all: they read optimistically and only fall back to a read lock if a write
+ * to the same segment happened meanwhile. Players are never removed, matching
+ * how the datastores use it.
+ *
+ * snapshot() takes a point-in-time copy of the whole table without copying
+ * anything up front. The snapshot shares each segment's arrays, and a segment
+ * is only copied if it is written to while the snapshot is still in use, so a
+ * long running save never holds a lock that game threads need.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class PlayerStatTable {
+
+	public static final int HIGHSCORE = 0;
+	public static final int WINS = 1;
+	public static final int LOSSES = 2;
+	public static final int TIES = 3;
+	public static final int COLUMNS = 4;
+
+	/**
+	 * Returned by put and max when the player had no value in that column.
+	 */
+	public static final long NO_VALUE = Long.MIN_VALUE;
+
+	private static final int SEGMENTS = 64;
+	private static final int SEGMENT_SHIFT = 58;
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** Set in a slot's flags once a player has been stored in it. */
+	private static final int OCCUPIED = 1 << COLUMNS;
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	/**
+	 * Creates an empty table.
+	 */
+	public PlayerStatTable() {
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment();
+		}
+	}
+
+	/**
+	 * Returns the player's value in the provided column or 0 if they have
+	 * none.
+	 *
+	 * @param player player's UUID
+	 * @param column the stat column
+	 * @return the stat value or 0
+	 */
+	public int get(UUID player, int column) {
+		long most = player.getMostSignificantBits();
+		long least = player.getLeastSignificantBits();
+		long hash = hash(most, least);
+		Segment segment = segmentFor(hash);
+
+		long stamp = segment.lock.tryOptimisticRead();
+		int value = segment.slots.get(most, least, hash, column);
+		if (!segment.lock.validate(stamp)) {
+			stamp = segment.lock.readLock();
+			try {
+				value = segment.slots.get(most, least, hash, column);
+			} finally {
+				segment.lock.unlockRead(stamp);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Returns whether the player has a value in the provided column.
+	 *
+	 * @param player player's UUID
+	 * @param column the stat column
+	 * @return if a value has been stored
+	 */
+	public boolean has(UUID player, int column) {
+		long most = player.getMostSignificantBits();
+		long least = player.getLeastSignificantBits();
+		long hash = hash(most, least);
+		Segment segment = segmentFor(hash);
+
+		long stamp = segment.lock.tryOptimisticRead();
+		boolean has = segment.slots.has(most, least, hash, column);
+		if (!segment.lock.validate(stamp)) {
+			stamp = segment.lock.readLock();
+			try {
+				has = segment.slots.has(most, least, hash, column);
+			} finally {
+				segment.lock.unlockRead(stamp);
+			}
+		}
+		return has;
+	}
+
+	/**
+	 * Returns whether anything has been stored for the player.
+	 *
+	 * @param player player's UUID
+	 * @return if the player is in the table
+	 */
+	public boolean contains(UUID player) {
+		long most = player.getMostSignificantBits();
+		long least = player.getLeastSignificantBits();
+		long hash = hash(most, least);
+		Segment segment = segmentFor(hash);
+
+		long stamp = segment.lock.tryOptimisticRead();
+		boolean contains = segment.slots.find(most, least, hash) >= 0;
+		if (!segment.lock.validate(stamp)) {
+			stamp = segment.lock.readLock();
+			try {
+				contains = segment.slots.find(most, least, hash) >= 0;
+			} finally {
+				segment.lock.unlockRead(stamp);
+			}
+		}
+		return contains;
+	}
+
+	/**
+	 * Sets the player's value in the provided column.
+	 *
+	 * @param player player's UUID
+	 * @param column the stat column
+	 * @param value the new value
+	 * @return the old value or NO_VALUE if there was none
+	 */
+	public long put(UUID player, int column, int value) {
+		long hash = hash(player);
+		Segment segment = segmentFor(hash);
+		long stamp = segment.lock.writeLock();
+		try {
+			int slot = segment.findOrInsert(player, hash);
+			Slots slots = segment.slots;
+			long old = slots.value(slot, column);
+			slots.columns[column][slot] = value;
+			slots.flags[slot] |= 1 << column;
+			return old;
+		} finally {
+			segment.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Adds to the player's value in the provided column, treating a missing
+	 * value as 0.
+	 *
+	 * @param player player's UUID
+	 * @param column the stat column
+	 * @param delta amount to add
+	 * @return the new value
+	 */
+	public int add(UUID player, int column, int delta) {
+		long hash = hash(player);
+		Segment segment = segmentFor(hash);
+		long stamp = segment.lock.writeLock();
+		try {
+			int slot = segment.findOrInsert(player, hash);
+			Slots slots = segment.slots;
+			int value = slots.columns[column][slot] + delta;
+			slots.columns[column][slot] = value;
+			slots.flags[slot] |= 1 << column;
+			return value;
+		} finally {
+			segment.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Sets the player's value in the provided column to the provided value
+	 * only if it is higher than the current value or there is none.
+	 *
+	 * @param player player's UUID
+	 * @param column the stat column
+	 * @param value the candidate value
+	 * @return the old value or NO_VALUE if there was none
+	 */
+	public long max(UUID player, int column, int value) {
+		long hash = hash(player);
+		Segment segment = segmentFor(hash);
+		long stamp = segment.lock.writeLock();
+		try {
+			int slot = segment.findOrInsert(player, hash);
+			Slots slots = segment.slots;
+			long old = slots.value(slot, column);
+			if (old == NO_VALUE || value > old) {
+				slots.columns[column][slot] = value;
+				slots.flags[slot] |= 1 << column;
+			}
+			return old;
+		} finally {
+			segment.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Copies every stat column for the player into the provided array in one
+	 * step, so the row can't be torn by a concurrent update.
+	 *
+	 * @param player player's UUID
+	 * @param values array of at least COLUMNS length to copy into
+	 * @return mask of the columns that have a value or -1 if the player is
+	 *         not in the table
+	 */
+	public int getRow(UUID player, int[] values) {
+		long most = player.getMostSignificantBits();
+		long least = player.getLeastSignificantBits();
+		long hash = hash(most, least);
+		Segment segment = segmentFor(hash);
+
+		long stamp = segment.lock.tryOptimisticRead();
+		int present = segment.slots.getRow(most, least, hash, values);
+		if (!segment.lock.validate(stamp)) {
+			stamp = segment.lock.readLock();
+			try {
+				present = segment.slots.getRow(most, least, hash, values);
+			} finally {
+				segment.lock.unlockRead(stamp);
+			}
+		}
+		return present;
+	}
+
+	/**
+	 * Returns the player's name or null if none has been stored.
+	 *
+	 * @param player player's UUID
+	 * @return the player's name or null
+	 */
+	public String getName(UUID player) {
+		long most = player.getMostSignificantBits();
+		long least = player.getLeastSignificantBits();
+		long hash = hash(most, least);
+		Segment segment = segmentFor(hash);
+
+		long stamp = segment.lock.tryOptimisticRead();
+		String name = segment.slots.getName(most, least, hash);
+		if (!segment.lock.validate(stamp)) {
+			stamp = segment.lock.readLock();
+			try {
+				name = segment.slots.getName(most, least, hash);
+			} finally {
+				segment.lock.unlockRead(stamp);
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * Sets the player's name.
+	 *
+	 * @param player player's UUID
+	 * @param name the player's name
+	 * @return the old name or null if there was none
+	 */
+	public String putName(UUID player, String name) {
+		long hash = hash(player);
+		Segment segment = segmentFor(hash);
+		long stamp = segment.lock.writeLock();
+		try {
+			int slot = segment.findOrInsert(player, hash);
+			Slots slots = segment.slots;
+			String old = slots.names[slot];
+			slots.names[slot] = name;
+			return old;
+		} finally {
+			segment.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Returns the number of players in the table.
+	 *
+	 * @return player count
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			long stamp = segment.lock.readLock();
+			try {
+				size += segment.size;
+			} finally {
+				segment.lock.unlockRead(stamp);
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Calls the visitor once for every player in the table, as it was when
+	 * this method was called. Nothing is locked while the visitor runs.
+	 *
+	 * @param visitor the visitor to call
+	 */
+	public void forEach(RowVisitor visitor) {
+		Snapshot snapshot = snapshot();
+		try {
+			snapshot.forEach(visitor);
+		} finally {
+			snapshot.release();
+		}
+	}
+
+	/**
+	 * Takes a point-in-time snapshot of the whole table. Every segment is
+	 * locked at once for just long enough to share its arrays with the
+	 * snapshot, so the snapshot is consistent across players. Release it once
+	 * it is no longer needed so later writes stop copying segments.
+	 *
+	 * @return the snapshot
+	 */
+	public Snapshot snapshot() {
+		Slots[] shared = new Slots[SEGMENTS];
+		long[] stamps = new long[SEGMENTS];
+
+		for (int i = 0; i < SEGMENTS; i++) {
+			stamps[i] = segments[i].lock.writeLock();
+		}
+		try {
+			for (int i = 0; i < SEGMENTS; i++) {
+				shared[i] = segments[i].slots;
+				segments[i].sharers++;
+			}
+		} finally {
+			for (int i = 0; i < SEGMENTS; i++) {
+				segments[i].lock.unlockWrite(stamps[i]);
+			}
+		}
+
+		return new Snapshot(shared);
+	}
+
+	/**
+	 * Returns whether the provided column is set in a presence mask passed
+	 * to a RowVisitor.
+	 *
+	 * @param present the presence mask
+	 * @param column the stat column
+	 * @return if the column has a value
+	 */
+	public static boolean isPresent(int present, int column) {
+		return (present & (1 << column)) != 0;
+	}
+
+	private Segment segmentFor(long hash) {
+		return segments[(int) (hash >>> SEGMENT_SHIFT)];
+	}
+
+	/**
+	 * Mixes both halves of the UUID so that the segment (taken from the top
+	 * bits) and the slot (taken from the bottom bits) are independent.
+	 */
+	private static long hash(UUID player) {
+		return hash(player.getMostSignificantBits(), player.getLeastSignificantBits());
+	}
+
+	private static long hash(long most, long least) {
+		long h = most ^ Long.rotateLeft(least, 32);
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Called once per player by forEach.
+	 */
+	public interface RowVisitor {
+
+		/**
+		 * @param player player's UUID
+		 * @param name player's name or null
+		 * @param values every stat column for the player, only valid during
+		 *               the call
+		 * @param present mask of the columns that have a value, see
+		 *                PlayerStatTable#isPresent(int, int)
+		 */
+		void visit(UUID player, String name, int[] values, int present);
+	}
+
+	/**
+	 * A point-in-time view of the table returned by snapshot(). It never
+	 * changes, even while the table is being written to.
+	 */
+	public class Snapshot {
+
+		private final Slots[] shared;
+		private boolean released = false;
+
+		private Snapshot(Slots[] shared) {
+			this.shared = shared;
+		}
+
+		/**
+		 * Calls the visitor once for every player in the snapshot.
+		 *
+		 * @param visitor the visitor to call
+		 */
+		public void forEach(RowVisitor visitor) {
+			int[] values = new int[COLUMNS];
+
+			for (Slots slots : shared) {
+				for (int slot = 0; slot < slots.flags.length; slot++) {
+					int flags = slots.flags[slot];
+					if ((flags & OCCUPIED) == 0) continue;
+
+					for (int column = 0; column < COLUMNS; column++) {
+						values[column] = slots.columns[column][slot];
+					}
+					UUID player = new UUID(slots.mostBits[slot], slots.leastBits[slot]);
+					visitor.visit(player, slots.names[slot], values, flags & ~OCCUPIED);
+				}
+			}
+		}
+
+		/**
+		 * Tells the table the snapshot is no longer needed. Segments that
+		 * haven't been written to since it was taken go back to being
+		 * updated in place.
+		 */
+		public void release() {
+			if (released) return;
+			released = true;
+
+			for (int i = 0; i < SEGMENTS; i++) {
+				Segment segment = segments[i];
+				long stamp = segment.lock.writeLock();
+				try {
+					// already copied if the segment was written to meanwhile
+					if (segment.slots == shared[i] && segment.sharers > 0) {
+						segment.sharers--;
+					}
+				} finally {
+					segment.lock.unlockWrite(stamp);
+				}
+			}
+		}
+	}
+
+	/**
+	 * One independently locked open-addressing table with linear probing.
+	 * Only writers take the lock, readers validate against it instead.
+	 */
+	private static final class Segment {
+
+		private final StampedLock lock = new StampedLock();
+		private volatile Slots slots = new Slots(INITIAL_CAPACITY);
+		private int size;
+
+		/** How many unreleased snapshots share the current slots. */
+		private int sharers;
+
+		/**
+		 * Finds or adds the player's slot, copying the arrays first if a
+		 * snapshot still shares them. Must hold the write lock, and must use
+		 * the segment's slots again afterwards since they may have been
+		 * replaced.
+		 */
+		private int findOrInsert(UUID player, long hash) {
+			long most = player.getMostSignificantBits();
+			long least = player.getLeastSignificantBits();
+			int slot = slots.find(most, least, hash);
+			int capacity = slots.flags.length;
+
+			// keep the load factor at or below 3/4
+			if (slot < 0 && (size + 1) * 4 > capacity * 3) {
+				slots = slots.copy(capacity * 2);
+				sharers = 0;
+			} else if (sharers > 0) {
+				// same capacity, so the slot found above doesn't move
+				slots = slots.copy(capacity);
+				sharers = 0;
+			}
+			if (slot >= 0) return slot;
+
+			slot = slots.insertSlot(hash);
+			slots.mostBits[slot] = most;
+			slots.leastBits[slot] = least;
+			slots.flags[slot] = (byte) OCCUPIED;
+			size++;
+			return slot;
+		}
+	}
+
+	/**
+	 * The arrays behind a segment. They are only replaced as a whole, so a
+	 * reader that grabbed them once always sees arrays of the same length.
+	 */
+	private static final class Slots {
+
+		private final long[] mostBits;
+		private final long[] leastBits;
+		private final int[][] columns;
+		private final String[] names;
+		private final byte[] flags;
+
+		private Slots(int capacity) {
+			mostBits = new long[capacity];
+			leastBits = new long[capacity];
+			columns = new int[COLUMNS][capacity];
+			names = new String[capacity];
+			flags = new byte[capacity];
+		}
+
+		private int find(long most, long least, long hash) {
+			int mask = flags.length - 1;
+
+			for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+				if ((flags[slot] & OCCUPIED) == 0) return -1;
+				if (mostBits[slot] == most && leastBits[slot] == least) return slot;
+			}
+		}
+
+		private int insertSlot(long hash) {
+			int mask = flags.length - 1;
+			int slot = (int) hash & mask;
+			while ((flags[slot] & OCCUPIED) != 0) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private int get(long most, long least, long hash, int column) {
+			int slot = find(most, least, hash);
+			if (slot < 0) return 0;
+			return columns[column][slot];
+		}
+
+		private boolean has(long most, long least, long hash, int column) {
+			int slot = find(most, least, hash);
+			return slot >= 0 && (flags[slot] & (1 << column)) != 0;
+		}
+
+		private int getRow(long most, long least, long hash, int[] values) {
+			int slot = find(most, least, hash);
+			if (slot < 0) return -1;
+
+			for (int column = 0; column < COLUMNS; column++) {
+				values[column] = columns[column][slot];
+			}
+			return flags[slot] & ~OCCUPIED;
+		}
+
+		private String getName(long most, long least, long hash) {
+			int slot = find(most, least, hash);
+			if (slot < 0) return null;
+			return names[slot];
+		}
+
+		private long value(int slot, int column) {
+			if ((flags[slot] & (1 << column)) == 0) return NO_VALUE;
+			return columns[column][slot];
+		}
+
+		/**
+		 * Returns a copy of these slots with the provided capacity. Players
+		 * are rehashed when the capacity changes.
+		 */
+		private Slots copy(int capacity) {
+			Slots copy = new Slots(capacity);
+
+			if (capacity == flags.length) {
+				System.arraycopy(mostBits, 0, copy.mostBits, 0, capacity);
+				System.arraycopy(leastBits, 0, copy.leastBits, 0, capacity);
+				for (int column = 0; column < COLUMNS; column++) {
+					System.arraycopy(columns[column], 0, copy.columns[column], 0, capacity);
+				}
+				System.arraycopy(names, 0, copy.names, 0, capacity);
+				System.arraycopy(flags, 0, copy.flags, 0, capacity);
+				return copy;
+			}
+
+			for (int old = 0; old < flags.length; old++) {
+				if ((flags[old] & OCCUPIED) == 0) continue;
+
+				int slot = copy.insertSlot(hash(mostBits[old], leastBits[old]));
+				copy.mostBits[slot] = mostBits[old];
+				copy.leastBits[slot] = leastBits[old];
+				for (int column = 0; column < COLUMNS; column++) {
+					copy.columns[column][slot] = columns[column][old];
+				}
+				copy.names[slot] = names[old];
+				copy.flags[slot] = flags[old];
+			}
+			return copy;
+		}
+	}
+}
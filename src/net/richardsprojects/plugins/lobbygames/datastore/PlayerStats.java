@@ -0,0 +1,73 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import java.util.UUID;
+
+/**
+ * An immutable copy of every stat the datastore keeps for one player, read
+ * at the same time. Stats the player doesn't have yet are 0, the same as the
+ * single stat getters return.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public final class PlayerStats {
+
+	private final UUID uuid;
+	private final String name;
+	private final int highscore;
+	private final int ticTacToeWins;
+	private final int ticTacToeLosses;
+	private final int ticTacToeTies;
+
+	/**
+	 * @param uuid player's UUID
+	 * @param name player's last known name or null if there is none
+	 * @param highscore 2048 highscore
+	 * @param ticTacToeWins tic tac toe win count
+	 * @param ticTacToeLosses tic tac toe loss count
+	 * @param ticTacToeTies tic tac toe tie count
+	 */
+	public PlayerStats(UUID uuid, String name, int highscore, int ticTacToeWins,
+					   int ticTacToeLosses, int ticTacToeTies) {
+		this.uuid = uuid;
+		this.name = name;
+		this.highscore = highscore;
+		this.ticTacToeWins = ticTacToeWins;
+		this.ticTacToeLosses = ticTacToeLosses;
+		this.ticTacToeTies = ticTacToeTies;
+	}
+
+	public UUID getUUID() {
+		return uuid;
+	}
+
+	/**
+	 * @return the player's last known name or null if there is none
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public int getHighscore() {
+		return highscore;
+	}
+
+	public int getTicTacToeWins() {
+		return ticTacToeWins;
+	}
+
+	public int getTicTacToeLosses() {
+		return ticTacToeLosses;
+	}
+
+	public int getTicTacToeTies() {
+		return ticTacToeTies;
+	}
+
+	@Override
+	public String toString() {
+		return "PlayerStats{uuid=" + uuid + ", name=" + name + ", highscore=" + highscore
+				+ ", ticTacToeWins=" + ticTacToeWins + ", ticTacToeLosses=" + ticTacToeLosses
+				+ ", ticTacToeTies=" + ticTacToeTies + "}";
+	}
+}
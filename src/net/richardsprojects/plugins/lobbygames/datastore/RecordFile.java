@@ -0,0 +1,296 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * A file of fixed-size player records that is memory-mapped, so a record is
+ * read and written in place with no parsing and no rewriting of the file.
+ * Each record holds the player's UUID as two longs, their highscore, wins,
+ * losses and ties, a flags field and the offset of their name in a separate
+ * name heap.
+ *
+ * The name heap is an append-only file of length-prefixed UTF-8 names. A
+ * renamed player gets their new name appended and their record pointed at
+ * it, which only happens on the rare Minecraft name change.
+ *
+ * A record is appended by writing it first and then bumping the count in
+ * the header, so a crash in between leaves the file as it was. This class
+ * isn't thread safe, callers have to lock around it.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class RecordFile {
+
+	public static final int HIGHSCORE = 16;
+	public static final int WINS = 20;
+	public static final int LOSSES = 24;
+	public static final int TIES = 28;
+	public static final int FLAGS = 32;
+
+	/** Set in FLAGS once the player has a highscore. */
+	public static final int HAS_HIGHSCORE = 1;
+
+	private static final int MAGIC = 0x4C475244;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 32;
+	private static final int COUNT = 12;
+
+	private static final int UUID_MOST = 0;
+	private static final int UUID_LEAST = 8;
+	private static final int NAME = 36;
+	private static final int RECORD_SIZE = 40;
+
+	private static final int NO_NAME = -1;
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+
+	private final File recordsFile;
+	private final File namesFile;
+
+	private RandomAccessFile records;
+	private RandomAccessFile names;
+	private volatile MappedByteBuffer buffer;
+	private int capacity;
+	private int size;
+	private long heapEnd;
+
+	/**
+	 * @param recordsFile the file of records
+	 * @param namesFile the name heap
+	 */
+	public RecordFile(File recordsFile, File namesFile) {
+		this.recordsFile = recordsFile;
+		this.namesFile = namesFile;
+	}
+
+	/**
+	 * Opens both files, creating them if needed, maps the records and
+	 * passes every record to the loader in slot order.
+	 *
+	 * @param loader told about every record
+	 * @throws IOException if a file can't be opened or isn't a record file
+	 */
+	public void open(Loader loader) throws IOException {
+		records = new RandomAccessFile(recordsFile, "rw");
+		names = new RandomAccessFile(namesFile, "rw");
+
+		if (records.length() == 0) {
+			map(INITIAL_CAPACITY);
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(8, RECORD_SIZE);
+			buffer.putInt(COUNT, 0);
+		} else {
+			if (records.length() < HEADER_SIZE) throw new IOException(recordsFile.getName() + " is too short");
+			map((int) ((records.length() - HEADER_SIZE) / RECORD_SIZE));
+
+			if (buffer.getInt(0) != MAGIC) {
+				throw new IOException(recordsFile.getName() + " is not a LobbyGames record file");
+			}
+			if (buffer.getInt(4) != VERSION || buffer.getInt(8) != RECORD_SIZE) {
+				throw new IOException(recordsFile.getName() + " was written by a newer version of LobbyGames");
+			}
+		}
+
+		size = buffer.getInt(COUNT);
+		if (size < 0 || size > capacity) throw new IOException(recordsFile.getName() + " has a bad record count");
+
+		// a name appended before a crash but never pointed to is just skipped
+		heapEnd = names.length();
+		byte[] heap = new byte[(int) heapEnd];
+		names.readFully(heap);
+
+		for (int slot = 0; slot < size; slot++) {
+			int offset = buffer.getInt(position(slot) + NAME);
+			String name = null;
+			if (offset != NO_NAME && offset + 2 <= heap.length) {
+				int length = ((heap[offset] & 0xFF) << 8) | (heap[offset + 1] & 0xFF);
+				if (offset + 2 + length <= heap.length) {
+					name = new String(heap, offset + 2, length, StandardCharsets.UTF_8);
+				}
+			}
+			loader.load(slot, getUUID(slot), name);
+		}
+	}
+
+	/**
+	 * Returns the number of records.
+	 *
+	 * @return number of records
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the UUID stored in a record.
+	 *
+	 * @param slot the record's slot
+	 * @return the UUID
+	 */
+	public UUID getUUID(int slot) {
+		int position = position(slot);
+		return new UUID(buffer.getLong(position + UUID_MOST), buffer.getLong(position + UUID_LEAST));
+	}
+
+	/**
+	 * Reads one field of a record.
+	 *
+	 * @param slot the record's slot
+	 * @param field HIGHSCORE, WINS, LOSSES, TIES or FLAGS
+	 * @return the value
+	 */
+	public int get(int slot, int field) {
+		return buffer.getInt(position(slot) + field);
+	}
+
+	/**
+	 * Writes one field of a record in place.
+	 *
+	 * @param slot the record's slot
+	 * @param field HIGHSCORE, WINS, LOSSES, TIES or FLAGS
+	 * @param value the new value
+	 */
+	public void put(int slot, int field, int value) {
+		buffer.putInt(position(slot) + field, value);
+	}
+
+	/**
+	 * Appends an empty record for the player, growing the file if it is
+	 * full.
+	 *
+	 * @param player player's UUID
+	 * @return the new record's slot
+	 * @throws IOException if the file couldn't be grown
+	 */
+	public int append(UUID player) throws IOException {
+		if (size == capacity) {
+			if (capacity == MAX_CAPACITY) throw new IOException(recordsFile.getName() + " is full");
+			map((int) Math.min((long) capacity * 2, MAX_CAPACITY));
+		}
+
+		int slot = size;
+		int position = position(slot);
+		buffer.putLong(position + UUID_MOST, player.getMostSignificantBits());
+		buffer.putLong(position + UUID_LEAST, player.getLeastSignificantBits());
+		buffer.putInt(position + HIGHSCORE, 0);
+		buffer.putInt(position + WINS, 0);
+		buffer.putInt(position + LOSSES, 0);
+		buffer.putInt(position + TIES, 0);
+		buffer.putInt(position + FLAGS, 0);
+		buffer.putInt(position + NAME, NO_NAME);
+
+		size++;
+		buffer.putInt(COUNT, size);
+		return slot;
+	}
+
+	/**
+	 * Appends a name to the name heap and points the record at it.
+	 *
+	 * @param slot the record's slot
+	 * @param name the player's name
+	 * @throws IOException if the name couldn't be written
+	 */
+	public void setName(int slot, String name) throws IOException {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > 0xFFFF) throw new IOException("Name is too long");
+		if (heapEnd + 2 + bytes.length > Integer.MAX_VALUE) {
+			throw new IOException(namesFile.getName() + " is full");
+		}
+
+		ByteBuffer entry = ByteBuffer.allocate(2 + bytes.length);
+		entry.putShort((short) bytes.length);
+		entry.put(bytes);
+		entry.flip();
+
+		long offset = heapEnd;
+		FileChannel channel = names.getChannel();
+		while (entry.hasRemaining()) {
+			channel.write(entry, offset + entry.position());
+		}
+		heapEnd += 2 + bytes.length;
+
+		buffer.putInt(position(slot) + NAME, (int) offset);
+	}
+
+	/**
+	 * Flushes every change to both files to the disk. This can be called
+	 * from any thread while the file is being written.
+	 *
+	 * @throws IOException if the names couldn't be flushed
+	 */
+	public void force() throws IOException {
+		MappedByteBuffer current = buffer;
+		if (current != null) current.force();
+		if (names != null) names.getChannel().force(false);
+	}
+
+	/**
+	 * Flushes and closes both files.
+	 *
+	 * @throws IOException if they couldn't be flushed or closed
+	 */
+	public void close() throws IOException {
+		try {
+			force();
+		} finally {
+			if (records != null) records.close();
+			if (names != null) names.close();
+		}
+	}
+
+	/**
+	 * Returns how many records fit before the file has to grow.
+	 *
+	 * @return the capacity in records
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the size of the name heap.
+	 *
+	 * @return size in bytes
+	 */
+	public long getHeapSize() {
+		return heapEnd;
+	}
+
+	/**
+	 * Helper method that maps the file with room for the provided number of
+	 * records, growing the file if it is smaller. The old mapping is left
+	 * for the garbage collector, since Java can't unmap a buffer.
+	 */
+	private void map(int records) throws IOException {
+		capacity = records;
+		buffer = this.records.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+				HEADER_SIZE + (long) records * RECORD_SIZE);
+	}
+
+	private static int position(int slot) {
+		return HEADER_SIZE + slot * RECORD_SIZE;
+	}
+
+	/**
+	 * Told about every record when the file is opened.
+	 */
+	public interface Loader {
+
+		/**
+		 * @param slot the record's slot
+		 * @param player the player's UUID
+		 * @param name the player's name or null if they have none
+		 */
+		void load(int slot, UUID player, String name);
+	}
+}
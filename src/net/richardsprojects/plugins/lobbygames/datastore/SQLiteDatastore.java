@@ -0,0 +1,836 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import net.richardsprojects.plugins.lobbygames.LobbyGames;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class is an implementation of the LobbyGames plugin datastore for a
+ * single SQLite database file, so the indexed leaderboard queries of the
+ * MySQL datastore are available without running a database server. The
+ * file is opened in WAL mode, where any number of pooled connections can
+ * read while one writes, and every write is its own small transaction that
+ * appends to the WAL instead of rewriting a whole file.
+ *
+ * SQLite only allows one writer at a time, so writes take a lock first and
+ * wait their turn in Java instead of retrying on a busy database.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class SQLiteDatastore extends Datastore {
+
+	/** The schema version stored in the file's user_version pragma. */
+	private static final int SCHEMA_VERSION = 1;
+
+	/** The least time between two logged SQL errors, in milliseconds. */
+	private static final long ERROR_LOG_INTERVAL = 60000;
+
+	private final File file;
+	private final ConnectionPoolManager pool;
+	private final SQLiteQueries queries = new SQLiteQueries(LobbyGames.instance.dbPrefix);
+	private final ReentrantLock writeLock = new ReentrantLock();
+	private final ConcurrentHashMap<StatKey, Integer> statIds = new ConcurrentHashMap<>();
+
+	private final LongAdder sqlErrors = new LongAdder();
+	private volatile long lastErrorLog;
+
+	/**
+	 * Opens the connection pool for the database file set in the config.
+	 */
+	public SQLiteDatastore() {
+		LobbyGames plugin = LobbyGames.instance;
+		file = new File(LobbyGames.dataFolder, plugin.sqlite_file);
+		pool = new ConnectionPoolManager(file, plugin.sqlite_poolSize, plugin.sqlite_synchronous);
+	}
+
+	/**
+	 * Creates the tables if the file doesn't have them yet and checks that
+	 * the file really is in WAL mode.
+	 *
+	 * @return whether it was successful or not.
+	 */
+	@Override
+	public boolean initalize() {
+		try (Connection conn = pool.getConnection();
+			 Statement statement = conn.createStatement()) {
+			int version;
+			try (ResultSet set = statement.executeQuery("PRAGMA user_version")) {
+				version = set.next() ? set.getInt(1) : 0;
+			}
+
+			if (version > SCHEMA_VERSION) {
+				String msg = "[LobbyGames] " + file.getName() + " was written by a newer version of"
+						+ " LobbyGames (schema " + version + ").";
+				DatastoreLog.get().info(msg);
+				return false;
+			}
+
+			if (version < SCHEMA_VERSION) {
+				conn.setAutoCommit(false);
+				try {
+					for (String sql : queries.createSchema()) {
+						statement.executeUpdate(sql);
+					}
+					statement.executeUpdate("PRAGMA user_version = " + SCHEMA_VERSION);
+					conn.commit();
+				} catch (SQLException e) {
+					conn.rollback();
+					throw e;
+				} finally {
+					conn.setAutoCommit(true);
+				}
+			}
+
+			// some file systems, network shares in particular, can't use WAL
+			try (ResultSet set = statement.executeQuery("PRAGMA journal_mode")) {
+				String mode = set.next() ? set.getString(1) : null;
+				if (!"wal".equalsIgnoreCase(mode)) {
+					String msg = "[LobbyGames] " + file.getName() + " is using the " + mode
+							+ " journal instead of WAL, reads will wait for writes.";
+					DatastoreLog.get().info(msg);
+				}
+			}
+		} catch (SQLException e) {
+			String msg = "[LobbyGames] Could not open " + file.getName() + ": " + e.getMessage();
+			DatastoreLog.get().info(msg);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @see Datastore#updateHighscore(UUID, String, int)
+	 */
+	@Override
+	public boolean updateHighscore(UUID player, String name, int score) {
+		return write(queries.insertHighscore, queries.setHighscore, player.toString(), name, score);
+	}
+
+	/**
+	 * SQLite keeps whichever of the stored highscore and the submitted score
+	 * is higher.
+	 *
+	 * @see Datastore#submitHighscore(UUID, String, int)
+	 */
+	@Override
+	public boolean submitHighscore(UUID player, String name, int score) {
+		return write(queries.insertHighscore, queries.submitHighscore, player.toString(), name, score);
+	}
+
+	/**
+	 * @see Datastore#updateTicTacToeWins(UUID, String, int)
+	 */
+	@Override
+	public boolean updateTicTacToeWins(UUID player, String name, int value) {
+		return write(queries.insertWins, queries.setWins, player.toString(), name, value);
+	}
+
+	/**
+	 * @see Datastore#updateTicTacToeLosses(UUID, String, int)
+	 */
+	@Override
+	public boolean updateTicTacToeLosses(UUID player, String name, int value) {
+		return write(queries.insertLosses, queries.setLosses, player.toString(), name, value);
+	}
+
+	/**
+	 * @see Datastore#updateTicTacToeTies(UUID, String, int)
+	 */
+	@Override
+	public boolean updateTicTacToeTies(UUID player, String name, int value) {
+		return write(queries.insertTies, queries.setTies, player.toString(), name, value);
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeWins(UUID, String, int)
+	 */
+	@Override
+	public boolean incrementTicTacToeWins(UUID player, String name, int delta) {
+		return write(queries.insertWins, queries.incrementWins, player.toString(), name, delta);
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeLosses(UUID, String, int)
+	 */
+	@Override
+	public boolean incrementTicTacToeLosses(UUID player, String name, int delta) {
+		return write(queries.insertLosses, queries.incrementLosses, player.toString(), name, delta);
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeTies(UUID, String, int)
+	 */
+	@Override
+	public boolean incrementTicTacToeTies(UUID player, String name, int delta) {
+		return write(queries.insertTies, queries.incrementTies, player.toString(), name, delta);
+	}
+
+	/**
+	 * Helper method that writes one value. Only one of the two statements
+	 * ever changes the file, so each write is a single transaction without
+	 * starting one explicitly.
+	 *
+	 * @param insertSql inserts a new row with the value
+	 * @param updateSql combines the value with an existing row
+	 * @param key the first parameter of both statements
+	 * @param second the second parameter of both statements
+	 * @param value the third parameter of both statements
+	 * @return whether it succeeded or failed
+	 */
+	private boolean write(String insertSql, String updateSql, String key, Object second, int value) {
+		try (Connection conn = pool.getConnection()) {
+			writeLock.lock();
+			try {
+				write(conn, insertSql, updateSql, key, second, value);
+			} finally {
+				writeLock.unlock();
+			}
+		} catch (SQLException e) {
+			sqlError(e);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Helper method that runs the insert and, if the row already existed,
+	 * the update. The caller must hold the write lock.
+	 */
+	private void write(Connection conn, String insertSql, String updateSql, String key, Object second,
+					   int value) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement(insertSql)) {
+			ps.setString(1, key);
+			ps.setObject(2, second);
+			ps.setInt(3, value);
+			if (ps.executeUpdate() > 0) return;
+		}
+
+		try (PreparedStatement ps = conn.prepareStatement(updateSql)) {
+			ps.setString(1, key);
+			ps.setObject(2, second);
+			ps.setInt(3, value);
+			ps.executeUpdate();
+		}
+	}
+
+	/**
+	 * @see Datastore#getHighscore(UUID)
+	 */
+	@Override
+	public int getHighscore(UUID player) {
+		return getProfile(player).getHighscore();
+	}
+
+	/**
+	 * @see Datastore#getHighscore(String)
+	 */
+	@Override
+	public int getHighscore(String player) {
+		PlayerStats profile = getProfile(player);
+		return profile == null ? 0 : profile.getHighscore();
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeWins(UUID)
+	 */
+	@Override
+	public int getTicTacToeWins(UUID player) {
+		return getProfile(player).getTicTacToeWins();
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeWins(String)
+	 */
+	@Override
+	public int getTicTacToeWins(String player) {
+		PlayerStats profile = getProfile(player);
+		return profile == null ? 0 : profile.getTicTacToeWins();
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeLosses(UUID)
+	 */
+	@Override
+	public int getTicTacToeLosses(UUID player) {
+		return getProfile(player).getTicTacToeLosses();
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeLosses(String)
+	 */
+	@Override
+	public int getTicTacToeLosses(String player) {
+		PlayerStats profile = getProfile(player);
+		return profile == null ? 0 : profile.getTicTacToeLosses();
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeTies(UUID)
+	 */
+	@Override
+	public int getTicTacToeTies(UUID player) {
+		return getProfile(player).getTicTacToeTies();
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeTies(String)
+	 */
+	@Override
+	public int getTicTacToeTies(String player) {
+		PlayerStats profile = getProfile(player);
+		return profile == null ? 0 : profile.getTicTacToeTies();
+	}
+
+	/**
+	 * Reads the top 10 from the highscore index.
+	 *
+	 * @see Datastore#getLeaderboard()
+	 */
+	@Override
+	public String getLeaderboard() {
+		StringBuilder builder = new StringBuilder();
+
+		try (Connection conn = pool.getConnection();
+			 PreparedStatement ps = conn.prepareStatement(queries.leaderboard);
+			 ResultSet set = ps.executeQuery()) {
+			while (set.next()) {
+				builder.append(">");
+				builder.append(set.getString("player"));
+				builder.append(",");
+				builder.append(set.getInt("highscore"));
+			}
+		} catch (SQLException e) {
+			sqlError(e);
+		}
+
+		String leaderboard = builder.toString();
+		if (leaderboard.length() > 0) leaderboard = leaderboard.substring(1);
+		return leaderboard;
+	}
+
+	/**
+	 * Reads the page by walking the highscore index backwards. The rank of
+	 * the first entry is counted from the index and the rest follow from
+	 * their position.
+	 *
+	 * @see Datastore#getLeaderboardPage(int, int)
+	 */
+	@Override
+	public List<LeaderboardEntry> getLeaderboardPage(int offset, int limit) {
+		List<LeaderboardEntry> page = new ArrayList<>();
+		if (offset < 0 || limit <= 0) return page;
+
+		try (Connection conn = pool.getConnection()) {
+			List<UUID> players = new ArrayList<>();
+			List<String> names = new ArrayList<>();
+			List<Integer> scores = new ArrayList<>();
+
+			try (PreparedStatement ps = conn.prepareStatement(queries.leaderboardPage)) {
+				ps.setInt(1, limit);
+				ps.setInt(2, offset);
+
+				try (ResultSet set = ps.executeQuery()) {
+					while (set.next()) {
+						players.add(UUID.fromString(set.getString("uuid")));
+						names.add(set.getString("player"));
+						scores.add(set.getInt("highscore"));
+					}
+				}
+			}
+
+			if (players.isEmpty()) return page;
+
+			int rank = countHigherScores(conn, scores.get(0)) + 1;
+			for (int i = 0; i < players.size(); i++) {
+				if (i > 0 && !scores.get(i).equals(scores.get(i - 1))) {
+					rank = offset + i + 1;
+				}
+				page.add(new LeaderboardEntry(rank, players.get(i), names.get(i), scores.get(i)));
+			}
+		} catch (SQLException e) {
+			sqlError(e);
+		}
+
+		return page;
+	}
+
+	/**
+	 * Counts the players with a higher score from the highscore index.
+	 *
+	 * @see Datastore#getRank(UUID)
+	 */
+	@Override
+	public int getRank(UUID player) {
+		try (Connection conn = pool.getConnection();
+			 PreparedStatement ps = conn.prepareStatement(queries.rank)) {
+			ps.setString(1, player.toString());
+
+			try (ResultSet set = ps.executeQuery()) {
+				if (!set.next()) return 0;
+				set.getInt(1);
+				if (set.wasNull()) return 0;
+				return set.getInt(2) + 1;
+			}
+		} catch (SQLException e) {
+			sqlError(e);
+			return 0;
+		}
+	}
+
+	/**
+	 * Helper method that counts the players with a score higher than the
+	 * provided one.
+	 *
+	 * @param conn the connection to use
+	 * @param score the score
+	 * @return the number of players with a higher score
+	 * @throws SQLException if the query fails
+	 */
+	private int countHigherScores(Connection conn, int score) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement(queries.countHigherScores)) {
+			ps.setInt(1, score);
+			try (ResultSet set = ps.executeQuery()) {
+				return set.next() ? set.getInt(1) : 0;
+			}
+		}
+	}
+
+	/**
+	 * Reads every stat for the player in a single query.
+	 *
+	 * @see Datastore#getProfile(UUID)
+	 */
+	@Override
+	public PlayerStats getProfile(UUID player) {
+		try (Connection conn = pool.getConnection();
+			 PreparedStatement ps = conn.prepareStatement(queries.profileByUUID)) {
+			ps.setString(1, player.toString());
+
+			try (ResultSet set = ps.executeQuery()) {
+				if (set.next()) return readProfileRow(player, set);
+			}
+		} catch (SQLException e) {
+			sqlError(e);
+		}
+
+		return new PlayerStats(player, null, 0, 0, 0, 0);
+	}
+
+	/**
+	 * Reads every stat for the player with the provided name in a single
+	 * query.
+	 *
+	 * @see Datastore#getProfile(String)
+	 */
+	@Override
+	public PlayerStats getProfile(String name) {
+		try (Connection conn = pool.getConnection();
+			 PreparedStatement ps = conn.prepareStatement(queries.profileByName)) {
+			ps.setString(1, name);
+
+			try (ResultSet set = ps.executeQuery()) {
+				if (set.next()) return readProfileRow(UUID.fromString(set.getString(1)), set);
+			}
+		} catch (SQLException e) {
+			sqlError(e);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Reads the stats from the current row of a profile query.
+	 */
+	private PlayerStats readProfileRow(UUID player, ResultSet set) throws SQLException {
+		return new PlayerStats(player, set.getString(2), set.getInt(3), set.getInt(4), set.getInt(5),
+				set.getInt(6));
+	}
+
+	/**
+	 * Reads every player's stats on one connection, MAX_IN_SIZE players per
+	 * statement. Each statement looks the chunk up in both tables with an IN
+	 * list and unions the rows, since a player may only be in one of them.
+	 *
+	 * @see Datastore#getStats(Collection)
+	 */
+	@Override
+	public Map<UUID, PlayerStats> getStats(Collection<UUID> players) {
+		List<UUID> unique = new ArrayList<>(new LinkedHashSet<>(players));
+		Map<UUID, PlayerStats> result = new HashMap<>();
+
+		try (Connection conn = pool.getConnection()) {
+			for (int start = 0; start < unique.size(); start += SQLiteQueries.MAX_IN_SIZE) {
+				int end = Math.min(start + SQLiteQueries.MAX_IN_SIZE, unique.size());
+				readStats(conn, unique.subList(start, end), result);
+			}
+		} catch (SQLException e) {
+			sqlError(e);
+		}
+
+		for (UUID player : unique) {
+			if (!result.containsKey(player)) {
+				result.put(player, new PlayerStats(player, null, 0, 0, 0, 0));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Reads one chunk of players from both tables and adds them to the
+	 * provided map.
+	 *
+	 * @param conn the connection to use
+	 * @param chunk the players to read
+	 * @param result the map to add them to
+	 * @throws SQLException if the query fails
+	 */
+	private void readStats(Connection conn, List<UUID> chunk, Map<UUID, PlayerStats> result)
+			throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement(queries.stats(chunk.size()))) {
+			for (int i = 0; i < chunk.size(); i++) {
+				ps.setString(i + 1, chunk.get(i).toString());
+				ps.setString(chunk.size() + i + 1, chunk.get(i).toString());
+			}
+
+			try (ResultSet set = ps.executeQuery()) {
+				while (set.next()) {
+					UUID player = UUID.fromString(set.getString(1));
+					PlayerStats stats = result.get(player);
+					String name = set.getString(2);
+					if (stats != null) {
+						// the player is in both tables, add the second row to the first
+						if (name == null) name = stats.getName();
+						stats = new PlayerStats(player, name,
+								stats.getHighscore() + set.getInt(3),
+								stats.getTicTacToeWins() + set.getInt(4),
+								stats.getTicTacToeLosses() + set.getInt(5),
+								stats.getTicTacToeTies() + set.getInt(6));
+					} else {
+						stats = new PlayerStats(player, name, set.getInt(3), set.getInt(4),
+								set.getInt(5), set.getInt(6));
+					}
+					result.put(player, stats);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads MAX_IN_SIZE players per statement from the stats table's
+	 * primary key.
+	 *
+	 * @see Datastore#readCustomStats(Collection, List)
+	 */
+	@Override
+	protected Map<UUID, int[]> readCustomStats(Collection<UUID> players, List<StatKey> stats) {
+		List<UUID> unique = new ArrayList<>(new LinkedHashSet<>(players));
+		Map<UUID, int[]> result = new HashMap<>();
+		for (UUID player : unique) {
+			result.put(player, new int[stats.size()]);
+		}
+
+		try (Connection conn = pool.getConnection()) {
+			// stat number to its position in the result arrays
+			Map<Integer, Integer> positions = new HashMap<>();
+			for (int i = 0; i < stats.size(); i++) {
+				Integer id = getStatId(conn, stats.get(i), null);
+				if (id != null) positions.put(id, i);
+			}
+			if (positions.isEmpty()) return result;
+
+			for (int start = 0; start < unique.size(); start += SQLiteQueries.MAX_IN_SIZE) {
+				List<UUID> chunk = unique.subList(start, Math.min(start + SQLiteQueries.MAX_IN_SIZE,
+						unique.size()));
+
+				try (PreparedStatement ps = conn.prepareStatement(queries.customStats(chunk.size()))) {
+					for (int i = 0; i < chunk.size(); i++) {
+						ps.setString(i + 1, chunk.get(i).toString());
+					}
+
+					try (ResultSet set = ps.executeQuery()) {
+						while (set.next()) {
+							int[] values = result.get(UUID.fromString(set.getString(1)));
+							Integer position = positions.get(set.getInt(2));
+							if (values != null && position != null) {
+								values[position] = set.getInt(3);
+							}
+						}
+					}
+				}
+			}
+		} catch (SQLException e) {
+			sqlError(e);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Applies every write in one transaction, in order. New stats are given
+	 * their numbers in the same transaction and only cached once it commits.
+	 *
+	 * @see Datastore#writeCustomStats(List)
+	 */
+	@Override
+	protected boolean writeCustomStats(List<StatBatch.Op> ops) {
+		Map<StatKey, Integer> created = new HashMap<>();
+
+		try (Connection conn = pool.getConnection()) {
+			writeLock.lock();
+			try {
+				conn.setAutoCommit(false);
+				try {
+					for (StatBatch.Op op : ops) {
+						int id = getStatId(conn, op.getStat(), created);
+						int kind = op.isSet() ? 0 : op.getStat().getType() == StatKey.Type.MAX ? 2 : 1;
+						write(conn, queries.insertStat, queries.updateStat[kind], op.getPlayer().toString(),
+								id, op.getValue());
+					}
+					conn.commit();
+				} catch (SQLException e) {
+					conn.rollback();
+					throw e;
+				} finally {
+					conn.setAutoCommit(true);
+				}
+			} finally {
+				writeLock.unlock();
+			}
+		} catch (SQLException e) {
+			sqlError(e);
+			return false;
+		}
+
+		statIds.putAll(created);
+		return true;
+	}
+
+	/**
+	 * Pages through both tables in uuid order. Each table is only read from
+	 * its primary key for at most a page of players past the last one.
+	 *
+	 * @see Datastore#exportPlayers(UUID, int)
+	 */
+	@Override
+	public List<PlayerRecord> exportPlayers(UUID after, int limit) {
+		List<PlayerRecord> page = new ArrayList<>();
+		if (limit <= 0) return page;
+
+		try (Connection conn = pool.getConnection();
+			 PreparedStatement ps = conn.prepareStatement(queries.export)) {
+			// every uuid sorts after an empty string
+			ps.setString(1, after == null ? "" : after.toString());
+			ps.setInt(2, limit);
+
+			try (ResultSet set = ps.executeQuery()) {
+				while (set.next()) {
+					Integer highscore = set.getInt(3);
+					if (set.wasNull()) highscore = null;
+					page.add(new PlayerRecord(UUID.fromString(set.getString(1)), set.getString(2), highscore,
+							set.getBoolean(7), set.getInt(4), set.getInt(5), set.getInt(6)));
+				}
+			}
+		} catch (SQLException e) {
+			sqlError(e);
+			return null;
+		}
+
+		return page;
+	}
+
+	/**
+	 * Replaces every record's rows in one transaction.
+	 *
+	 * @see Datastore#importPlayers(List)
+	 */
+	@Override
+	public boolean importPlayers(List<PlayerRecord> players) {
+		try (Connection conn = pool.getConnection()) {
+			writeLock.lock();
+			try {
+				conn.setAutoCommit(false);
+				try (PreparedStatement highscores = conn.prepareStatement(queries.importHighscore);
+					 PreparedStatement ticTacToe = conn.prepareStatement(queries.importTicTacToe)) {
+					for (PlayerRecord record : players) {
+						if (record.getHighscore() != null) {
+							highscores.setString(1, record.getUUID().toString());
+							highscores.setString(2, record.getName());
+							highscores.setInt(3, record.getHighscore());
+							highscores.executeUpdate();
+						}
+
+						if (record.hasTicTacToe()) {
+							ticTacToe.setString(1, record.getUUID().toString());
+							ticTacToe.setString(2, record.getName());
+							ticTacToe.setInt(3, record.getTicTacToeWins());
+							ticTacToe.setInt(4, record.getTicTacToeLosses());
+							ticTacToe.setInt(5, record.getTicTacToeTies());
+							ticTacToe.executeUpdate();
+						}
+					}
+					conn.commit();
+				} catch (SQLException e) {
+					conn.rollback();
+					throw e;
+				} finally {
+					conn.setAutoCommit(true);
+				}
+			} finally {
+				writeLock.unlock();
+			}
+		} catch (SQLException e) {
+			sqlError(e);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Helper method that returns the number of a registered stat. Numbers are
+	 * cached once found, since a stat's number never changes.
+	 *
+	 * @param conn the connection to use
+	 * @param stat the stat
+	 * @param created where to put numbers given to new stats, or null to not
+	 *                give a stat a number if it has none yet
+	 * @return the stat's number, or null if it has none and created is null
+	 * @throws SQLException if a query fails
+	 */
+	private Integer getStatId(Connection conn, StatKey stat, Map<StatKey, Integer> created)
+			throws SQLException {
+		Integer id = statIds.get(stat);
+		if (id == null && created != null) id = created.get(stat);
+		if (id != null) return id;
+
+		try (PreparedStatement ps = conn.prepareStatement(queries.selectStatId)) {
+			ps.setString(1, stat.getGame());
+			ps.setString(2, stat.getName());
+
+			try (ResultSet set = ps.executeQuery()) {
+				if (set.next()) id = set.getInt(1);
+			}
+			if (id != null) {
+				statIds.put(stat, id);
+				return id;
+			}
+			if (created == null) return null;
+
+			try (PreparedStatement insertPs = conn.prepareStatement(queries.insertStatId)) {
+				insertPs.setString(1, stat.getGame());
+				insertPs.setString(2, stat.getName());
+				insertPs.executeUpdate();
+			}
+
+			try (ResultSet set = ps.executeQuery()) {
+				if (set.next()) id = set.getInt(1);
+			}
+		}
+
+		if (id == null) throw new SQLException("Could not give " + stat + " a number");
+		created.put(stat, id);
+		return id;
+	}
+
+	/**
+	 * @see Datastore#registeredName(String)
+	 */
+	@Override
+	public boolean registeredName(String name) {
+		try (Connection conn = pool.getConnection();
+			 PreparedStatement ps = conn.prepareStatement(queries.registeredName)) {
+			ps.setString(1, name);
+
+			try (ResultSet set = ps.executeQuery()) {
+				return set.next();
+			}
+		} catch (SQLException e) {
+			sqlError(e);
+			return false;
+		}
+	}
+
+	/**
+	 * Moves everything in the WAL back into the database file and closes the
+	 * connection pool, so the plugin folder is left with a single file.
+	 * Should be called in the onDisable method of the plugin.
+	 */
+	@Override
+	public void onDisable() {
+		try (Connection conn = pool.getConnection();
+			 Statement statement = conn.createStatement()) {
+			statement.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+		} catch (SQLException e) {
+			sqlError(e);
+		}
+		pool.closePool();
+	}
+
+	/**
+	 * Adds the connection pool's gauges, the number of failed statements and
+	 * the size of the database file and its WAL.
+	 *
+	 * @see Datastore#collectGauges(List)
+	 */
+	@Override
+	public void collectGauges(List<DatastoreMetrics.Gauge> gauges) {
+		pool.collectGauges(gauges);
+		gauges.add(DatastoreMetrics.Gauge.counter("sqlite_errors_total",
+				"Statements that failed with an SQLException.", sqlErrors.sum()));
+		gauges.add(DatastoreMetrics.Gauge.of("sqlite_file_bytes",
+				"Size of the database file.", file.length()));
+		gauges.add(DatastoreMetrics.Gauge.of("sqlite_wal_bytes",
+				"Size of the WAL not yet checkpointed into the database file.",
+				new File(file.getPath() + "-wal").length()));
+	}
+
+	/**
+	 * Reads run in parallel on pooled connections, so as many operations can
+	 * run at once as the pool has connections.
+	 *
+	 * @return the size of the connection pool
+	 */
+	@Override
+	public int getMaxConcurrentOperations() {
+		return pool.getMaximumConnections();
+	}
+
+	/**
+	 * Helper method that counts a failed statement, reports it against the
+	 * running call and logs it. At most one error is logged a minute, the
+	 * rest are only counted.
+	 *
+	 * @param e the exception
+	 */
+	private void sqlError(SQLException e) {
+		sqlErrors.increment();
+		reportFailure();
+
+		long now = System.currentTimeMillis();
+		if (now - lastErrorLog < ERROR_LOG_INTERVAL) return;
+		lastErrorLog = now;
+
+		String msg = "[LobbyGames] An SQLite statement failed: " + e.getMessage()
+				+ " (" + sqlErrors.sum() + " failed so far)";
+		DatastoreLog.get().info(msg);
+	}
+}
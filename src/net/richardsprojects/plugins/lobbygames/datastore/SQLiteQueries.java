@@ -0,0 +1,204 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+/**
+ * Every statement SQLiteDatastore runs, built once for its table prefix
+ * instead of on every call.
+ *
+ * Older SQLite versions, including the one bundled with Spigot, have no
+ * upsert. Each write is an INSERT OR IGNORE of the new row followed, when
+ * the row already existed, by an UPDATE that combines the stored value with
+ * the new one the same way MySQL's ON DUPLICATE KEY UPDATE would. The
+ * updates use numbered parameters so a value can be used twice.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class SQLiteQueries {
+
+	/**
+	 * The most players looked up per statement. The stats query has two IN
+	 * lists and old SQLite versions allow at most 999 parameters.
+	 */
+	public static final int MAX_IN_SIZE = 256;
+
+	public final String insertHighscore;
+	public final String setHighscore;
+	public final String submitHighscore;
+
+	public final String insertWins;
+	public final String insertLosses;
+	public final String insertTies;
+	public final String setWins;
+	public final String setLosses;
+	public final String setTies;
+	public final String incrementWins;
+	public final String incrementLosses;
+	public final String incrementTies;
+
+	public final String leaderboard;
+	public final String leaderboardPage;
+	public final String rank;
+	public final String countHigherScores;
+
+	public final String profileByUUID;
+	public final String profileByName;
+	public final String registeredName;
+
+	public final String export;
+	public final String importHighscore;
+	public final String importTicTacToe;
+
+	public final String selectStatId;
+	public final String insertStatId;
+	public final String insertStat;
+	/** Indexed by write kind: set, add, keep the highest. */
+	public final String[] updateStat;
+
+	private final String prefix;
+
+	/**
+	 * Builds every statement for the provided table prefix.
+	 *
+	 * @param prefix the table prefix
+	 */
+	public SQLiteQueries(String prefix) {
+		this.prefix = prefix;
+
+		// parameters: uuid, player, value
+		insertHighscore = "INSERT OR IGNORE INTO " + prefix + "highscores (uuid, player, highscore)"
+				+ " VALUES (?, ?, ?)";
+		// parameters: uuid, player, value
+		String highscores = "UPDATE " + prefix + "highscores SET player = ?2, highscore = ";
+		setHighscore = highscores + "?3 WHERE uuid = ?1";
+		submitHighscore = highscores + "CASE WHEN highscore IS NULL OR highscore < ?3 THEN ?3"
+				+ " ELSE highscore END WHERE uuid = ?1";
+
+		String tictactoe = "INSERT OR IGNORE INTO " + prefix + "tictactoe VALUES ";
+		insertWins = tictactoe + "(?, ?, ?, 0, 0)";
+		insertLosses = tictactoe + "(?, ?, 0, ?, 0)";
+		insertTies = tictactoe + "(?, ?, 0, 0, ?)";
+		setWins = updateTicTacToe("games_won", "?3");
+		setLosses = updateTicTacToe("games_lost", "?3");
+		setTies = updateTicTacToe("games_tied", "?3");
+		incrementWins = updateTicTacToe("games_won", "games_won + ?3");
+		incrementLosses = updateTicTacToe("games_lost", "games_lost + ?3");
+		incrementTies = updateTicTacToe("games_tied", "games_tied + ?3");
+
+		leaderboard = "SELECT uuid, player, highscore FROM " + prefix
+				+ "highscores ORDER BY highscore DESC LIMIT 10";
+		leaderboardPage = "SELECT uuid, player, highscore FROM " + prefix + "highscores"
+				+ " WHERE highscore IS NOT NULL ORDER BY highscore DESC, uuid DESC LIMIT ? OFFSET ?";
+		rank = "SELECT h.highscore, (SELECT COUNT(*) FROM " + prefix + "highscores"
+				+ " WHERE highscore > h.highscore) FROM " + prefix + "highscores h WHERE h.uuid = ?";
+		countHigherScores = "SELECT COUNT(*) FROM " + prefix + "highscores WHERE highscore > ?";
+
+		profileByUUID = profile("uuid");
+		profileByName = profile("player");
+		registeredName = "SELECT 1 FROM " + prefix + "highscores WHERE player = ?1 UNION ALL SELECT 1 FROM "
+				+ prefix + "tictactoe WHERE player = ?1 LIMIT 1";
+
+		// parameters: last uuid or an empty string, page size
+		export = "SELECT p.uuid, COALESCE(t.player, h.player), h.highscore, t.games_won, t.games_lost"
+				+ ", t.games_tied, t.uuid IS NOT NULL FROM (SELECT uuid FROM (SELECT uuid FROM " + prefix
+				+ "highscores WHERE uuid > ?1 ORDER BY uuid LIMIT ?2) UNION SELECT uuid FROM (SELECT uuid FROM "
+				+ prefix + "tictactoe WHERE uuid > ?1 ORDER BY uuid LIMIT ?2) ORDER BY uuid LIMIT ?2) p"
+				+ " LEFT JOIN " + prefix + "highscores h ON h.uuid = p.uuid"
+				+ " LEFT JOIN " + prefix + "tictactoe t ON t.uuid = p.uuid ORDER BY p.uuid";
+		importHighscore = "INSERT OR REPLACE INTO " + prefix + "highscores (uuid, player, highscore)"
+				+ " VALUES (?, ?, ?)";
+		importTicTacToe = "INSERT OR REPLACE INTO " + prefix + "tictactoe VALUES (?, ?, ?, ?, ?)";
+
+		selectStatId = "SELECT id FROM " + prefix + "stat_keys WHERE game = ? AND stat = ?";
+		insertStatId = "INSERT OR IGNORE INTO " + prefix + "stat_keys (game, stat) VALUES (?, ?)";
+
+		// parameters: uuid, stat number, value
+		insertStat = "INSERT OR IGNORE INTO " + prefix + "stats (uuid, stat_id, value) VALUES (?, ?, ?)";
+		String stat = "UPDATE " + prefix + "stats SET value = ";
+		updateStat = new String[] {
+				stat + "?3 WHERE uuid = ?1 AND stat_id = ?2",
+				stat + "value + ?3 WHERE uuid = ?1 AND stat_id = ?2",
+				stat + "MAX(value, ?3) WHERE uuid = ?1 AND stat_id = ?2"
+		};
+	}
+
+	/**
+	 * Returns the query that reads the built-in stats of the provided number
+	 * of players from both tables. It has two IN lists of that size, the
+	 * first for highscores and the second for tictactoe.
+	 *
+	 * @param players how many players, at most MAX_IN_SIZE
+	 * @return the SQL
+	 */
+	public String stats(int players) {
+		String in = placeholders(players);
+		// the columns a table doesn't have are 0 so the two rows can simply be added
+		return "SELECT uuid, player, highscore, 0, 0, 0 FROM " + prefix + "highscores WHERE uuid IN ("
+				+ in + ") UNION ALL SELECT uuid, player, 0, games_won, games_lost, games_tied FROM "
+				+ prefix + "tictactoe WHERE uuid IN (" + in + ")";
+	}
+
+	/**
+	 * Returns the query that reads every registered stat of the provided
+	 * number of players. Rows are read by the primary key's uuid prefix and
+	 * the stats that weren't asked for are skipped by the caller, so the
+	 * number of stats never adds parameters.
+	 *
+	 * @param players how many players, at most MAX_IN_SIZE
+	 * @return the SQL
+	 */
+	public String customStats(int players) {
+		return "SELECT uuid, stat_id, value FROM " + prefix + "stats WHERE uuid IN ("
+				+ placeholders(players) + ")";
+	}
+
+	/**
+	 * Returns the statements that create the tables and their indexes.
+	 *
+	 * @return the SQL, in order
+	 */
+	public String[] createSchema() {
+		return new String[] {
+				// names compare without case like MySQL's default collation
+				"CREATE TABLE IF NOT EXISTS " + prefix + "highscores (uuid TEXT NOT NULL PRIMARY KEY"
+						+ ", player TEXT COLLATE NOCASE, highscore INTEGER)",
+				"CREATE TABLE IF NOT EXISTS " + prefix + "tictactoe (uuid TEXT NOT NULL PRIMARY KEY"
+						+ ", player TEXT COLLATE NOCASE, games_won INTEGER NOT NULL DEFAULT 0"
+						+ ", games_lost INTEGER NOT NULL DEFAULT 0, games_tied INTEGER NOT NULL DEFAULT 0)",
+				"CREATE TABLE IF NOT EXISTS " + prefix + "stat_keys (id INTEGER PRIMARY KEY AUTOINCREMENT"
+						+ ", game TEXT NOT NULL, stat TEXT NOT NULL, UNIQUE (game, stat))",
+				"CREATE TABLE IF NOT EXISTS " + prefix + "stats (uuid TEXT NOT NULL, stat_id INTEGER NOT NULL"
+						+ ", value INTEGER NOT NULL, PRIMARY KEY (uuid, stat_id)) WITHOUT ROWID",
+				"CREATE INDEX IF NOT EXISTS " + prefix + "highscores_highscore_idx ON " + prefix
+						+ "highscores (highscore)",
+				"CREATE INDEX IF NOT EXISTS " + prefix + "highscores_player_idx ON " + prefix
+						+ "highscores (player)",
+				"CREATE INDEX IF NOT EXISTS " + prefix + "tictactoe_player_idx ON " + prefix
+						+ "tictactoe (player)"
+		};
+	}
+
+	/**
+	 * A player may only be in one of the tables, so their UUID is found in
+	 * either table first and then left joined to both.
+	 */
+	private String profile(String column) {
+		return "SELECT p.uuid, COALESCE(t.player, h.player), h.highscore, t.games_won, t.games_lost" +
+				", t.games_tied FROM (SELECT uuid FROM " + prefix + "highscores WHERE " + column +
+				" = ?1 UNION SELECT uuid FROM " + prefix + "tictactoe WHERE " + column + " = ?1 LIMIT 1) p" +
+				" LEFT JOIN " + prefix + "highscores h ON h.uuid = p.uuid" +
+				" LEFT JOIN " + prefix + "tictactoe t ON t.uuid = p.uuid";
+	}
+
+	private String updateTicTacToe(String column, String value) {
+		// parameters: uuid, player, value
+		return "UPDATE " + prefix + "tictactoe SET player = ?2, " + column + " = " + value + " WHERE uuid = ?1";
+	}
+
+	private static String placeholders(int count) {
+		StringBuilder builder = new StringBuilder(count * 3);
+		for (int i = 0; i < count; i++) {
+			builder.append(i == 0 ? "?" : ", ?");
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,237 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Brings a MySQL database up to the latest schema by running every migration
+ * it hasn't seen yet, in version order. The versions that have been applied
+ * are recorded in a schema_version table, so each migration only ever runs
+ * once per database and existing deployments are upgraded automatically when
+ * the plugin is updated.
+ *
+ * A named MySQL lock is held while migrating, so several servers sharing a
+ * database can start at the same time without running a migration twice.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class SchemaMigrator {
+
+	private static final int LOCK_TIMEOUT_SECONDS = 30;
+
+	private final ConnectionPoolManager pool;
+	private final String prefix;
+
+	/**
+	 * Creates a migrator for the tables with the provided prefix.
+	 *
+	 * @param pool the pool to borrow a connection from
+	 * @param prefix the table prefix
+	 */
+	public SchemaMigrator(ConnectionPoolManager pool, String prefix) {
+		this.pool = pool;
+		this.prefix = prefix;
+	}
+
+	/**
+	 * Runs every migration newer than the database's current version. Stops
+	 * at the first one that fails, leaving the later ones for the next
+	 * start.
+	 *
+	 * @param migrations every migration the plugin knows about
+	 * @return whether the database is now at the latest version
+	 */
+	public boolean migrate(List<Migration> migrations) {
+		final List<Migration> ordered = new ArrayList<>(migrations);
+		ordered.sort(Comparator.comparingInt(Migration::getVersion));
+
+		return runLocked((conn, prefix) -> {
+			makeVersionTable(conn);
+			int current = getVersion(conn);
+
+			for (Migration migration : ordered) {
+				if (migration.getVersion() <= current) continue;
+
+				String msg = "[LobbyGames] Applying database migration " + migration.getVersion()
+						+ ": " + migration.getDescription();
+				DatastoreLog.get().info(msg);
+
+				migration.apply(conn, prefix);
+				recordVersion(conn, migration);
+			}
+		});
+	}
+
+	/**
+	 * Runs schema changes that aren't numbered migrations while holding the
+	 * same lock, so they can't overlap with migrations or with another
+	 * server making the same change.
+	 *
+	 * @param step the statements to run
+	 * @return whether the statements ran without an error
+	 */
+	public boolean runLocked(Step step) {
+		try (Connection conn = pool.getConnection()) {
+			if (!acquireLock(conn)) {
+				DatastoreLog.get().info("[LobbyGames] Timed out waiting for another server to migrate the database.");
+				return false;
+			}
+
+			try {
+				step.apply(conn, prefix);
+			} finally {
+				releaseLock(conn);
+			}
+		} catch (SQLException e) {
+			DatastoreLog.get().info("[LobbyGames] Database migration failed: " + e.getMessage());
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns whether the table already has an index with the provided name.
+	 * Lets migrations that add indexes run safely on databases where the
+	 * index was created by hand.
+	 *
+	 * @param conn the connection to use
+	 * @param table the full table name including the prefix
+	 * @param index the index name
+	 * @return if the index exists
+	 * @throws SQLException if the query fails
+	 */
+	public static boolean hasIndex(Connection conn, String table, String index) throws SQLException {
+		String sql = "SELECT 1 FROM information_schema.statistics WHERE table_schema = DATABASE()" +
+				" AND table_name = ? AND index_name = ? LIMIT 1";
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			ps.setString(1, table);
+			ps.setString(2, index);
+			try (ResultSet set = ps.executeQuery()) {
+				return set.next();
+			}
+		}
+	}
+
+	/**
+	 * Returns the data type of a column, such as "varchar" or "binary", or
+	 * null if the table or column doesn't exist.
+	 *
+	 * @param conn the connection to use
+	 * @param table the full table name including the prefix
+	 * @param column the column name
+	 * @return the column's data type or null
+	 * @throws SQLException if the query fails
+	 */
+	public static String getColumnType(Connection conn, String table, String column) throws SQLException {
+		String sql = "SELECT data_type FROM information_schema.columns WHERE table_schema = DATABASE()" +
+				" AND table_name = ? AND column_name = ?";
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			ps.setString(1, table);
+			ps.setString(2, column);
+			try (ResultSet set = ps.executeQuery()) {
+				return set.next() ? set.getString(1).toLowerCase(Locale.ROOT) : null;
+			}
+		}
+	}
+
+	private void makeVersionTable(Connection conn) throws SQLException {
+		String sql = "CREATE TABLE IF NOT EXISTS " + prefix + "schema_version (version INT NOT NULL" +
+				", description VARCHAR(200), applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+				", PRIMARY KEY (version))";
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			ps.executeUpdate();
+		}
+	}
+
+	private int getVersion(Connection conn) throws SQLException {
+		String sql = "SELECT MAX(version) FROM " + prefix + "schema_version";
+		try (PreparedStatement ps = conn.prepareStatement(sql);
+			 ResultSet set = ps.executeQuery()) {
+			// MAX of an empty table is NULL, which getInt reads as 0
+			return set.next() ? set.getInt(1) : 0;
+		}
+	}
+
+	private void recordVersion(Connection conn, Migration migration) throws SQLException {
+		String sql = "INSERT INTO " + prefix + "schema_version (version, description) VALUES (?, ?)";
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			ps.setInt(1, migration.getVersion());
+			ps.setString(2, migration.getDescription());
+			ps.executeUpdate();
+		}
+	}
+
+	private boolean acquireLock(Connection conn) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+			ps.setString(1, prefix + "lobbygames_schema");
+			ps.setInt(2, LOCK_TIMEOUT_SECONDS);
+			try (ResultSet set = ps.executeQuery()) {
+				return set.next() && set.getInt(1) == 1;
+			}
+		}
+	}
+
+	private void releaseLock(Connection conn) {
+		try (PreparedStatement ps = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+			ps.setString(1, prefix + "lobbygames_schema");
+			ps.executeQuery().close();
+		} catch (SQLException ignored) {}
+	}
+
+	/**
+	 * One numbered change to the schema. Versions must never be reused or
+	 * reordered once released, new changes always get a new, higher version.
+	 */
+	public static class Migration {
+
+		private final int version;
+		private final String description;
+		private final Step step;
+
+		/**
+		 * @param version the schema version this migration brings the
+		 *                database to
+		 * @param description a short description that is logged and recorded
+		 * @param step the statements to run
+		 */
+		public Migration(int version, String description, Step step) {
+			this.version = version;
+			this.description = description;
+			this.step = step;
+		}
+
+		public int getVersion() {
+			return version;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+
+		private void apply(Connection conn, String prefix) throws SQLException {
+			step.apply(conn, prefix);
+		}
+	}
+
+	/**
+	 * The statements a migration runs.
+	 */
+	public interface Step {
+
+		/**
+		 * @param conn the connection to run the statements on
+		 * @param prefix the table prefix
+		 * @throws SQLException if a statement fails, which stops the migration
+		 */
+		void apply(Connection conn, String prefix) throws SQLException;
+	}
+}
@@ -0,0 +1,838 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import net.richardsprojects.plugins.lobbygames.LobbyGames;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A datastore that wraps any other datastore and keeps a session in memory
+ * for every online player. A player's whole stat row is loaded in the
+ * background when they join, every read for them is then answered from
+ * memory, and their writes are collected in the session instead of going to
+ * the wrapped datastore one by one. Collected writes are flushed every
+ * flush interval and when the player quits, after which the session is
+ * dropped.
+ *
+ * Sets, increments and submitted scores are kept as separate operations and
+ * flushed as such, so an increment is never turned into an absolute value
+ * that could overwrite a change made elsewhere. The leaderboard is always
+ * read from the wrapped datastore, so it only sees a session's scores once
+ * they have been flushed.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class SessionDatastore extends Datastore {
+
+	private static final int HIGHSCORE = PlayerStatTable.HIGHSCORE;
+	private static final int WINS = PlayerStatTable.WINS;
+	private static final int LOSSES = PlayerStatTable.LOSSES;
+	private static final int TIES = PlayerStatTable.TIES;
+	private static final int COLUMNS = PlayerStatTable.COLUMNS;
+
+	private final Datastore storage;
+	private final long flushInterval;
+
+	private final ConcurrentHashMap<UUID, Session> sessions = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, UUID> names = new ConcurrentHashMap<>();
+
+	private FlushTask flushTask;
+
+	/**
+	 * Wraps the provided datastore with player sessions.
+	 *
+	 * @param storage the datastore to load from and flush to
+	 * @param flushInterval ticks between flushes of collected writes
+	 */
+	public SessionDatastore(Datastore storage, long flushInterval) {
+		this.storage = storage;
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Returns the datastore the sessions wrap.
+	 *
+	 * @return the wrapped datastore
+	 */
+	public Datastore getDatastore() {
+		return storage;
+	}
+
+	/**
+	 * Starts a session for a player who just joined and loads their stats in
+	 * the background. Should be called on the main thread. If the player
+	 * rejoined before their last session was dropped, that session is kept.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 */
+	public void open(UUID player, String name) {
+		Session old = sessions.get(player);
+		if (old != null && old.reopen(name)) {
+			names.put(name, player);
+			return;
+		}
+
+		Session session = new Session(player, name);
+		sessions.put(player, session);
+		names.put(name, player);
+
+		new LoadTask(session, old).runTaskAsynchronously(LobbyGames.instance);
+	}
+
+	/**
+	 * Flushes and drops a player's session in the background after they
+	 * quit. Should be called on the main thread.
+	 *
+	 * @param player player's UUID
+	 */
+	public void close(UUID player) {
+		Session session = sessions.get(player);
+		if (session == null) return;
+
+		session.startClosing();
+		new CloseTask(session).runTaskAsynchronously(LobbyGames.instance);
+	}
+
+	/**
+	 * Returns the number of open sessions.
+	 *
+	 * @return session count
+	 */
+	public int size() {
+		return sessions.size();
+	}
+
+	/**
+	 * @see Datastore#initalize()
+	 */
+	@Override
+	public boolean initalize() {
+		if (!storage.initalize()) return false;
+
+		flushTask = new FlushTask();
+		flushTask.runTaskTimerAsynchronously(LobbyGames.instance, flushInterval, flushInterval);
+		return true;
+	}
+
+	/**
+	 * @see Datastore#updateHighscore(UUID, String, int)
+	 */
+	@Override
+	public boolean updateHighscore(UUID player, String name, int score) {
+		Session session = sessions.get(player);
+		if (session != null && session.set(name, HIGHSCORE, score)) return true;
+		return storage.updateHighscore(player, name, score);
+	}
+
+	/**
+	 * @see Datastore#getHighscore(UUID)
+	 */
+	@Override
+	public int getHighscore(UUID player) {
+		PlayerStats profile = getSessionProfile(player);
+		return profile != null ? profile.getHighscore() : storage.getHighscore(player);
+	}
+
+	/**
+	 * @see Datastore#getHighscore(String)
+	 */
+	@Override
+	public int getHighscore(String player) {
+		UUID uuid = names.get(player);
+		return uuid != null ? getHighscore(uuid) : storage.getHighscore(player);
+	}
+
+	/**
+	 * @see Datastore#getLeaderboard()
+	 */
+	@Override
+	public String getLeaderboard() {
+		return storage.getLeaderboard();
+	}
+
+	/**
+	 * @see Datastore#getLeaderboardPage(int, int)
+	 */
+	@Override
+	public List<LeaderboardEntry> getLeaderboardPage(int offset, int limit) {
+		return storage.getLeaderboardPage(offset, limit);
+	}
+
+	/**
+	 * Ranks are read from the wrapped datastore like the leaderboard, so a
+	 * new score only changes the player's rank once it has been flushed.
+	 *
+	 * @see Datastore#getRank(UUID)
+	 */
+	@Override
+	public int getRank(UUID player) {
+		return storage.getRank(player);
+	}
+
+	/**
+	 * @see Datastore#updateTicTacToeWins(UUID, String, int)
+	 */
+	@Override
+	public boolean updateTicTacToeWins(UUID player, String name, int value) {
+		Session session = sessions.get(player);
+		if (session != null && session.set(name, WINS, value)) return true;
+		return storage.updateTicTacToeWins(player, name, value);
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeWins(UUID)
+	 */
+	@Override
+	public int getTicTacToeWins(UUID player) {
+		PlayerStats profile = getSessionProfile(player);
+		return profile != null ? profile.getTicTacToeWins() : storage.getTicTacToeWins(player);
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeWins(String)
+	 */
+	@Override
+	public int getTicTacToeWins(String player) {
+		UUID uuid = names.get(player);
+		return uuid != null ? getTicTacToeWins(uuid) : storage.getTicTacToeWins(player);
+	}
+
+	/**
+	 * @see Datastore#updateTicTacToeLosses(UUID, String, int)
+	 */
+	@Override
+	public boolean updateTicTacToeLosses(UUID player, String name, int value) {
+		Session session = sessions.get(player);
+		if (session != null && session.set(name, LOSSES, value)) return true;
+		return storage.updateTicTacToeLosses(player, name, value);
+	}
+
+	/**
+	 * @see Datastore#updateTicTacToeTies(UUID, String, int)
+	 */
+	@Override
+	public boolean updateTicTacToeTies(UUID player, String name, int value) {
+		Session session = sessions.get(player);
+		if (session != null && session.set(name, TIES, value)) return true;
+		return storage.updateTicTacToeTies(player, name, value);
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeLosses(UUID)
+	 */
+	@Override
+	public int getTicTacToeLosses(UUID player) {
+		PlayerStats profile = getSessionProfile(player);
+		return profile != null ? profile.getTicTacToeLosses() : storage.getTicTacToeLosses(player);
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeLosses(String)
+	 */
+	@Override
+	public int getTicTacToeLosses(String player) {
+		UUID uuid = names.get(player);
+		return uuid != null ? getTicTacToeLosses(uuid) : storage.getTicTacToeLosses(player);
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeTies(String)
+	 */
+	@Override
+	public int getTicTacToeTies(String player) {
+		UUID uuid = names.get(player);
+		return uuid != null ? getTicTacToeTies(uuid) : storage.getTicTacToeTies(player);
+	}
+
+	/**
+	 * @see Datastore#getTicTacToeTies(UUID)
+	 */
+	@Override
+	public int getTicTacToeTies(UUID player) {
+		PlayerStats profile = getSessionProfile(player);
+		return profile != null ? profile.getTicTacToeTies() : storage.getTicTacToeTies(player);
+	}
+
+	/**
+	 * @see Datastore#submitHighscore(UUID, String, int)
+	 */
+	@Override
+	public boolean submitHighscore(UUID player, String name, int score) {
+		Session session = sessions.get(player);
+		if (session != null && session.submit(name, score)) return true;
+		return storage.submitHighscore(player, name, score);
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeWins(UUID, String, int)
+	 */
+	@Override
+	public boolean incrementTicTacToeWins(UUID player, String name, int delta) {
+		Session session = sessions.get(player);
+		if (session != null && session.add(name, WINS, delta)) return true;
+		return storage.incrementTicTacToeWins(player, name, delta);
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeLosses(UUID, String, int)
+	 */
+	@Override
+	public boolean incrementTicTacToeLosses(UUID player, String name, int delta) {
+		Session session = sessions.get(player);
+		if (session != null && session.add(name, LOSSES, delta)) return true;
+		return storage.incrementTicTacToeLosses(player, name, delta);
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeTies(UUID, String, int)
+	 */
+	@Override
+	public boolean incrementTicTacToeTies(UUID player, String name, int delta) {
+		Session session = sessions.get(player);
+		if (session != null && session.add(name, TIES, delta)) return true;
+		return storage.incrementTicTacToeTies(player, name, delta);
+	}
+
+	/**
+	 * @see Datastore#getProfile(UUID)
+	 */
+	@Override
+	public PlayerStats getProfile(UUID player) {
+		PlayerStats profile = getSessionProfile(player);
+		return profile != null ? profile : storage.getProfile(player);
+	}
+
+	/**
+	 * @see Datastore#getProfile(String)
+	 */
+	@Override
+	public PlayerStats getProfile(String name) {
+		UUID uuid = names.get(name);
+		return uuid != null ? getProfile(uuid) : storage.getProfile(name);
+	}
+
+	/**
+	 * Answers online players from their sessions and reads everyone else
+	 * from the wrapped datastore in one call.
+	 *
+	 * @see Datastore#getStats(Collection)
+	 */
+	@Override
+	public Map<UUID, PlayerStats> getStats(Collection<UUID> players) {
+		Map<UUID, PlayerStats> result = new HashMap<>();
+		List<UUID> offline = new ArrayList<>();
+
+		for (UUID player : players) {
+			PlayerStats profile = getSessionProfile(player);
+			if (profile != null) {
+				result.put(player, profile);
+			} else {
+				offline.add(player);
+			}
+		}
+
+		if (!offline.isEmpty()) {
+			result.putAll(storage.getStats(offline));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Flushes every session and closes the wrapped datastore.
+	 *
+	 * @see Datastore#onDisable()
+	 */
+	@Override
+	public void onDisable() {
+		if (flushTask != null) flushTask.cancel();
+
+		for (Session session : sessions.values()) {
+			flush(session);
+		}
+		sessions.clear();
+		names.clear();
+
+		storage.onDisable();
+	}
+
+	/**
+	 * @see Datastore#registeredName(String)
+	 */
+	@Override
+	public boolean registeredName(String name) {
+		return names.containsKey(name) || storage.registeredName(name);
+	}
+
+	/**
+	 * Sessions only hold the built-in stats, registered stats are read from
+	 * the wrapped datastore.
+	 *
+	 * @see Datastore#readCustomStats(Collection, List)
+	 */
+	@Override
+	protected Map<UUID, int[]> readCustomStats(Collection<UUID> players, List<StatKey> stats) {
+		return storage.readCustomStats(players, stats);
+	}
+
+	/**
+	 * Registered stats are written straight through to the wrapped datastore.
+	 *
+	 * @see Datastore#writeCustomStats(List)
+	 */
+	@Override
+	protected boolean writeCustomStats(List<StatBatch.Op> ops) {
+		return storage.writeCustomStats(ops);
+	}
+
+	/**
+	 * Every session is flushed before the first page so the export sees
+	 * what online players have done so far.
+	 *
+	 * @see Datastore#exportPlayers(UUID, int)
+	 */
+	@Override
+	public List<PlayerRecord> exportPlayers(UUID after, int limit) {
+		if (after == null) {
+			for (Session session : sessions.values()) {
+				if (session.isLoaded()) flush(session);
+			}
+		}
+
+		return storage.exportPlayers(after, limit);
+	}
+
+	/**
+	 * Writes the records through and then reloads the sessions of any
+	 * imported players who are online, so their writes since are applied on
+	 * top of the imported stats.
+	 *
+	 * @see Datastore#importPlayers(List)
+	 */
+	@Override
+	public boolean importPlayers(List<PlayerRecord> players) {
+		boolean success = storage.importPlayers(players);
+
+		for (PlayerRecord record : players) {
+			Session session = sessions.get(record.getUUID());
+			if (session != null && session.isLoaded()) {
+				session.load(record.toStats());
+			}
+		}
+
+		return success;
+	}
+
+	/**
+	 * @see Datastore#getMaxConcurrentOperations()
+	 */
+	@Override
+	public int getMaxConcurrentOperations() {
+		return storage.getMaxConcurrentOperations();
+	}
+
+	/**
+	 * Adds the number of open sessions, then the wrapped datastore's gauges.
+	 *
+	 * @see Datastore#collectGauges(List)
+	 */
+	@Override
+	public void collectGauges(List<DatastoreMetrics.Gauge> gauges) {
+		gauges.add(DatastoreMetrics.Gauge.of("sessions_open",
+				"Players with a session in memory.", size()));
+		storage.collectGauges(gauges);
+	}
+
+	/**
+	 * Sessions are written back over whatever is stored, so only the layers
+	 * below them are told.
+	 *
+	 * @see Datastore#addChangeListener(ChangeListener)
+	 */
+	@Override
+	public void addChangeListener(ChangeListener listener) {
+		storage.addChangeListener(listener);
+	}
+
+	/**
+	 * Helper method that returns the player's stats from their session, or
+	 * null if they have none. If the session is still loading, the wrapped
+	 * datastore is read and the session's writes are applied on top.
+	 */
+	private PlayerStats getSessionProfile(UUID player) {
+		Session session = sessions.get(player);
+		if (session == null) return null;
+
+		PlayerStats profile = session.view();
+		if (profile != null) return profile;
+
+		return session.applyPending(storage.getProfile(player));
+	}
+
+	/**
+	 * Writes everything collected in the session to the wrapped datastore.
+	 * Columns that fail to write are put back underneath any newer writes
+	 * so they are tried again on the next flush.
+	 *
+	 * @param session the session to flush
+	 * @return whether everything was written
+	 */
+	private boolean flush(Session session) {
+		synchronized (session.flushLock) {
+			Pending batch = session.startFlush();
+			if (batch == null) return true;
+
+			UUID player = session.uuid;
+			String name = session.getName();
+			boolean[] written = new boolean[COLUMNS];
+
+			if (batch.set[HIGHSCORE] != null) {
+				written[HIGHSCORE] = storage.updateHighscore(player, name, batch.set[HIGHSCORE]);
+			} else if (batch.best != null) {
+				written[HIGHSCORE] = storage.submitHighscore(player, name, batch.best);
+			} else {
+				written[HIGHSCORE] = true;
+			}
+
+			if (batch.set[WINS] != null) {
+				written[WINS] = storage.updateTicTacToeWins(player, name, batch.set[WINS]);
+			} else {
+				written[WINS] = batch.delta[WINS] == 0
+						|| storage.incrementTicTacToeWins(player, name, batch.delta[WINS]);
+			}
+
+			if (batch.set[LOSSES] != null) {
+				written[LOSSES] = storage.updateTicTacToeLosses(player, name, batch.set[LOSSES]);
+			} else {
+				written[LOSSES] = batch.delta[LOSSES] == 0
+						|| storage.incrementTicTacToeLosses(player, name, batch.delta[LOSSES]);
+			}
+
+			if (batch.set[TIES] != null) {
+				written[TIES] = storage.updateTicTacToeTies(player, name, batch.set[TIES]);
+			} else {
+				written[TIES] = batch.delta[TIES] == 0
+						|| storage.incrementTicTacToeTies(player, name, batch.delta[TIES]);
+			}
+
+			return session.finishFlush(written);
+		}
+	}
+
+	/**
+	 * Flushes a closing session and drops it once nothing is left to write.
+	 * If a flush fails the session is kept and the flush task tries again
+	 * later.
+	 *
+	 * @param session the session to drop
+	 */
+	private void drop(Session session) {
+		while (flush(session)) {
+			synchronized (session) {
+				// the player rejoined, keep the session
+				if (!session.closing) return;
+				// written to while flushing, flush again
+				if (!session.pending.isEmpty()) continue;
+
+				session.closed = true;
+				sessions.remove(session.uuid, session);
+				names.remove(session.name, session.uuid);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * One online player's stats. base is the row loaded when they joined,
+	 * inFlight holds writes that are being flushed and pending holds writes
+	 * collected since. All fields are guarded by the session itself, and
+	 * flushLock makes sure only one flush runs at a time.
+	 */
+	private static class Session {
+
+		private final UUID uuid;
+		private final Object flushLock = new Object();
+
+		private String name;
+		private int[] base;
+		private Pending pending = new Pending();
+		private Pending inFlight;
+		private boolean closing = false;
+		private boolean closed = false;
+
+		private Session(UUID uuid, String name) {
+			this.uuid = uuid;
+			this.name = name;
+		}
+
+		private synchronized String getName() {
+			return name;
+		}
+
+		private synchronized void load(PlayerStats profile) {
+			base = new int[] {profile.getHighscore(), profile.getTicTacToeWins(),
+					profile.getTicTacToeLosses(), profile.getTicTacToeTies()};
+			if (name == null) name = profile.getName();
+		}
+
+		private synchronized boolean isLoaded() {
+			return base != null;
+		}
+
+		private synchronized void startClosing() {
+			closing = true;
+		}
+
+		/**
+		 * Keeps using this session for a player who rejoined before it was
+		 * dropped. Only a loaded session can be kept.
+		 */
+		private synchronized boolean reopen(String name) {
+			if (closed || base == null) return false;
+
+			closing = false;
+			this.name = name;
+			return true;
+		}
+
+		private synchronized boolean set(String name, int column, int value) {
+			if (closed) return false;
+
+			if (name != null) this.name = name;
+			pending.set(column, value);
+			return true;
+		}
+
+		private synchronized boolean add(String name, int column, int delta) {
+			if (closed) return false;
+
+			if (name != null) this.name = name;
+			pending.add(column, delta);
+			return true;
+		}
+
+		private synchronized boolean submit(String name, int score) {
+			if (closed) return false;
+
+			if (name != null) this.name = name;
+			pending.submit(score);
+			return true;
+		}
+
+		/**
+		 * Returns the player's current stats or null if they haven't been
+		 * loaded yet.
+		 */
+		private synchronized PlayerStats view() {
+			if (base == null) return null;
+
+			int[] values = new int[COLUMNS];
+			for (int column = 0; column < COLUMNS; column++) {
+				int value = base[column];
+				if (inFlight != null) value = inFlight.apply(column, value);
+				values[column] = pending.apply(column, value);
+			}
+
+			return new PlayerStats(uuid, name, values[HIGHSCORE], values[WINS],
+					values[LOSSES], values[TIES]);
+		}
+
+		/**
+		 * Applies the collected writes to stats read from the wrapped
+		 * datastore while the session is still loading.
+		 */
+		private synchronized PlayerStats applyPending(PlayerStats profile) {
+			return new PlayerStats(uuid, name != null ? name : profile.getName(),
+					pending.apply(HIGHSCORE, profile.getHighscore()),
+					pending.apply(WINS, profile.getTicTacToeWins()),
+					pending.apply(LOSSES, profile.getTicTacToeLosses()),
+					pending.apply(TIES, profile.getTicTacToeTies()));
+		}
+
+		/**
+		 * Moves the collected writes in flight, or returns null if there is
+		 * nothing to flush.
+		 */
+		private synchronized Pending startFlush() {
+			if (pending.isEmpty()) return null;
+
+			inFlight = pending;
+			pending = new Pending();
+			return inFlight;
+		}
+
+		/**
+		 * Folds the written columns into base and puts the rest back
+		 * underneath the writes collected meanwhile.
+		 */
+		private synchronized boolean finishFlush(boolean[] written) {
+			boolean success = true;
+
+			for (int column = 0; column < COLUMNS; column++) {
+				if (written[column]) {
+					if (base != null) base[column] = inFlight.apply(column, base[column]);
+				} else {
+					inFlight.restoreUnder(pending, column);
+					success = false;
+				}
+			}
+
+			inFlight = null;
+			return success;
+		}
+	}
+
+	/**
+	 * Writes collected for one player. Each column is either an absolute
+	 * value (any later increments are folded into it) or a sum of
+	 * increments. The highscore can also be a best submitted score.
+	 */
+	private static class Pending {
+
+		private final Integer[] set = new Integer[COLUMNS];
+		private final int[] delta = new int[COLUMNS];
+		private Integer best;
+
+		private boolean isEmpty() {
+			if (best != null) return false;
+			for (int column = 0; column < COLUMNS; column++) {
+				if (set[column] != null || delta[column] != 0) return false;
+			}
+			return true;
+		}
+
+		private void set(int column, int value) {
+			set[column] = value;
+			delta[column] = 0;
+			if (column == HIGHSCORE) best = null;
+		}
+
+		private void add(int column, int amount) {
+			if (set[column] != null) {
+				set[column] += amount;
+			} else {
+				delta[column] += amount;
+			}
+		}
+
+		private void submit(int score) {
+			if (set[HIGHSCORE] != null) {
+				set[HIGHSCORE] = Math.max(set[HIGHSCORE], score);
+			} else if (best == null || score > best) {
+				best = score;
+			}
+		}
+
+		/**
+		 * Returns what a stored value becomes once this column is written.
+		 */
+		private int apply(int column, int value) {
+			if (set[column] != null) return set[column];
+
+			value += delta[column];
+			if (column == HIGHSCORE && best != null) value = Math.max(value, best);
+			return value;
+		}
+
+		/**
+		 * Merges this column into newer as if it had been written first.
+		 */
+		private void restoreUnder(Pending newer, int column) {
+			// a newer absolute value replaces whatever came before it
+			if (newer.set[column] != null) return;
+
+			if (column == HIGHSCORE) {
+				Integer score = set[HIGHSCORE];
+				Integer submitted = best;
+				if (newer.best != null) {
+					if (score != null) {
+						score = Math.max(score, newer.best);
+					} else if (submitted == null || newer.best > submitted) {
+						submitted = newer.best;
+					}
+				}
+				newer.set[HIGHSCORE] = score;
+				newer.best = score != null ? null : submitted;
+			} else if (set[column] != null) {
+				newer.set[column] = set[column] + newer.delta[column];
+				newer.delta[column] = 0;
+			} else {
+				newer.delta[column] += delta[column];
+			}
+		}
+	}
+
+	/**
+	 * Loads a new session's stats in the background. If the player's
+	 * previous session is still being dropped, it is flushed first so the
+	 * load sees its writes.
+	 */
+	private class LoadTask extends BukkitRunnable {
+
+		private final Session session;
+		private final Session previous;
+
+		public LoadTask(Session session, Session previous) {
+			this.session = session;
+			this.previous = previous;
+		}
+
+		public void run() {
+			if (previous != null) drop(previous);
+
+			try {
+				session.load(storage.getProfile(session.uuid));
+			} catch (RuntimeException e) {
+				// reads keep going to the wrapped datastore until the player rejoins
+				String msg = "[LobbyGames] Could not load the stats of " + session.uuid + ": " + e.getMessage();
+				DatastoreLog.get().info(msg);
+			}
+		}
+	}
+
+	/**
+	 * Flushes and drops a session in the background after its player quit.
+	 */
+	private class CloseTask extends BukkitRunnable {
+
+		private final Session session;
+
+		public CloseTask(Session session) {
+			this.session = session;
+		}
+
+		public void run() {
+			drop(session);
+		}
+	}
+
+	/**
+	 * Flushes every loaded session every interval and retries dropping any
+	 * session whose final flush failed.
+	 */
+	private class FlushTask extends BukkitRunnable {
+
+		public void run() {
+			for (Session session : sessions.values()) {
+				boolean closing;
+				synchronized (session) {
+					closing = session.closing;
+				}
+
+				if (closing) {
+					drop(session);
+				} else if (session.isLoaded()) {
+					flush(session);
+				}
+			}
+		}
+	}
+}
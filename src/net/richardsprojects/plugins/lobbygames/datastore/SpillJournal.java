@@ -0,0 +1,550 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Holds the writes MySQLDatastore couldn't send while MySQL was down. Each
+ * write is appended to a file in the plugin's folder, so it survives a
+ * restart, and merged into an unstarted WriteBehindQueue, which the reads
+ * use to see the writes and which writes them once MySQL is back. Writes
+ * made while anything is waiting are added here too instead of going to
+ * MySQL, so they reach it in the order they were made.
+ *
+ * The writes are sent a batch of players at a time. Each batch gets the
+ * next number, and the file is rewritten to say which writes are in it
+ * before it is sent. The transaction that writes the batch also adds the
+ * journal's id and the batch's number to the spill batches table, and a
+ * batch that is already in the table isn't written again. So a batch that
+ * was committed just before a crash, or whose reply was lost, only counts
+ * once however often it is sent.
+ *
+ * Each write is flushed to the operating system straight away, so it
+ * survives the server crashing but not the machine losing power.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class SpillJournal {
+
+	public static final byte HIGHSCORE = 0;
+	public static final byte SUBMITTED_HIGHSCORE = 1;
+	public static final byte WINS = 2;
+	public static final byte LOSSES = 3;
+	public static final byte TIES = 4;
+	public static final byte WINS_INCREMENT = 5;
+	public static final byte LOSSES_INCREMENT = 6;
+	public static final byte TIES_INCREMENT = 7;
+
+	private final File file;
+	private final ConnectionPoolManager pool;
+	private final WriteBehindQueue queue;
+	private final String markSql;
+	private final String pruneSql;
+	private volatile Consumer<SQLException> errorHandler;
+
+	/** Only one replay runs at a time. */
+	private final Object replayLock = new Object();
+
+	// only changed while holding this journal's lock
+	private DataOutputStream out;
+	private long journalId;
+	private long nextBatch = 1;
+	private long batchNumber;
+	/** The batch being sent or null. The map is never changed once it is set. */
+	private volatile Map<UUID, WriteBehindQueue.Update> batch;
+
+	/**
+	 * Creates a journal kept in the provided file. Nothing is opened until
+	 * open() is called.
+	 *
+	 * @param file the journal file
+	 * @param pool the pool the waiting writes are sent through
+	 * @param prefix the table prefix
+	 */
+	public SpillJournal(File file, ConnectionPoolManager pool, String prefix) {
+		this.file = file;
+		this.pool = pool;
+		// never started, replay takes the batches out of it and writes them
+		this.queue = new WriteBehindQueue(pool, prefix, Integer.MAX_VALUE);
+
+		String table = prefix + "spill_batches";
+		markSql = "INSERT IGNORE INTO " + table + " (journal, batch) VALUES (?, ?)";
+		pruneSql = "DELETE FROM " + table + " WHERE journal = ? AND batch < ?";
+	}
+
+	/**
+	 * Returns the statement that creates the spill batches table.
+	 *
+	 * @param prefix the table prefix
+	 * @return the SQL
+	 */
+	public static String createTable(String prefix) {
+		return "CREATE TABLE IF NOT EXISTS " + prefix + "spill_batches (journal BIGINT NOT NULL"
+				+ ", batch BIGINT NOT NULL, sent_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP"
+				+ ", PRIMARY KEY (journal, batch))";
+	}
+
+	/**
+	 * Sets how the tables store UUIDs. Must be called before replay.
+	 *
+	 * @param uuidFormat the tables' UUID format
+	 */
+	public void setUUIDFormat(UUIDFormat uuidFormat) {
+		queue.setUUIDFormat(uuidFormat);
+	}
+
+	/**
+	 * Sets the change log the writes are recorded in when they are sent.
+	 *
+	 * @param changeLog the change log or null to record nothing
+	 */
+	public void setChangeLog(ChangeLog changeLog) {
+		queue.setChangeLog(changeLog);
+	}
+
+	/**
+	 * Sets what the exception of every replayed batch that fails is passed
+	 * to.
+	 *
+	 * @param errorHandler the handler or null for none
+	 */
+	public void setErrorHandler(Consumer<SQLException> errorHandler) {
+		this.errorHandler = errorHandler;
+	}
+
+	/**
+	 * Reads the writes left in the file by the last run and opens it for
+	 * appending. A new file gets a random id, which tells its batches apart
+	 * from other servers'.
+	 *
+	 * @return whether the file could be read and opened
+	 */
+	public synchronized boolean open() {
+		journalId = ThreadLocalRandom.current().nextLong();
+
+		if (file.exists()) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+				read(in);
+			} catch (IOException e) {
+				String msg = "[LobbyGames] Could not read " + file.getName() + ": " + e.getMessage();
+				DatastoreLog.get().info(msg);
+				return false;
+			}
+
+			if (isActive()) {
+				String msg = "[LobbyGames] " + pendingCount() + " players have writes from the last"
+						+ " run that haven't reached MySQL yet.";
+				DatastoreLog.get().info(msg);
+			}
+		}
+
+		// rewriting drops a cut off write at the end
+		return rewrite();
+	}
+
+	/**
+	 * Reads the file's header, then the batch that was being sent and then
+	 * the writes after it.
+	 */
+	private void read(DataInputStream in) throws IOException {
+		int batchWrites;
+		try {
+			long id = in.readLong();
+			long next = in.readLong();
+			batchWrites = in.readInt();
+			journalId = id;
+			nextBatch = next;
+		} catch (EOFException e) {
+			// empty, the header is only ever written by a rewrite, which replaces the whole file
+			return;
+		}
+
+		// the batch was written by a rewrite too, so it is never cut off
+		if (batchWrites > 0) {
+			WriteBehindQueue sent = new WriteBehindQueue(pool, "", Integer.MAX_VALUE);
+			for (int i = 0; i < batchWrites; i++) {
+				readWrite(in, in.readByte(), sent);
+			}
+			batch = sent.take(Integer.MAX_VALUE);
+			batchNumber = nextBatch - 1;
+		}
+
+		try {
+			while (true) {
+				byte op;
+				try {
+					op = in.readByte();
+				} catch (EOFException e) {
+					break;
+				}
+				readWrite(in, op, queue);
+			}
+		} catch (EOFException e) {
+			// the last write was cut off by a crash and never reported as written
+		}
+	}
+
+	private static void readWrite(DataInputStream in, byte op, WriteBehindQueue target) throws IOException {
+		UUID player = new UUID(in.readLong(), in.readLong());
+		String name = in.readBoolean() ? in.readUTF() : null;
+		apply(target, op, player, name, in.readInt());
+	}
+
+	/**
+	 * Returns whether any writes are waiting. While there are, every write
+	 * has to be added here to keep them in order.
+	 *
+	 * @return whether any writes are waiting
+	 */
+	public boolean isActive() {
+		return batch != null || queue.pendingCount() > 0;
+	}
+
+	/**
+	 * Adds a write.
+	 *
+	 * @param op which write, one of the constants in this class
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param value the write's value
+	 * @return whether the write could be saved to the file
+	 */
+	public synchronized boolean append(byte op, UUID player, String name, int value) {
+		if (out == null) return false;
+
+		try {
+			write(out, op, player, name, value);
+			out.flush();
+		} catch (IOException e) {
+			String msg = "[LobbyGames] Could not write to " + file.getName() + ": " + e.getMessage();
+			DatastoreLog.get().info(msg);
+			return false;
+		}
+
+		apply(queue, op, player, name, value);
+		return true;
+	}
+
+	/**
+	 * Adds every change in the provided updates, such as the ones a
+	 * write-behind queue couldn't send before shutting down.
+	 *
+	 * @param updates the changes keyed by UUID
+	 * @return whether every change was saved to the file
+	 */
+	public synchronized boolean appendAll(Map<UUID, WriteBehindQueue.Update> updates) {
+		boolean success = true;
+		for (Map.Entry<UUID, WriteBehindQueue.Update> entry : updates.entrySet()) {
+			success &= append(entry.getKey(), entry.getValue());
+		}
+		return success;
+	}
+
+	/**
+	 * Returns the waiting changes for the provided player, or null if there
+	 * are none.
+	 *
+	 * @param player player's UUID
+	 * @return the waiting changes or null
+	 */
+	public WriteBehindQueue.Update getPending(UUID player) {
+		Map<UUID, WriteBehindQueue.Update> batch = this.batch;
+		WriteBehindQueue.Update older = batch != null ? batch.get(player) : null;
+		WriteBehindQueue.Update newer = queue.getPending(player);
+		if (older == null) return newer;
+
+		return WriteBehindQueue.Update.merge(older, newer);
+	}
+
+	/**
+	 * Returns the number of players with waiting writes. A player with
+	 * writes both in the batch being sent and after it is counted twice.
+	 *
+	 * @return waiting player count
+	 */
+	public int pendingCount() {
+		Map<UUID, WriteBehindQueue.Update> batch = this.batch;
+		return queue.pendingCount() + (batch != null ? batch.size() : 0);
+	}
+
+	/**
+	 * Returns the size of the journal file.
+	 *
+	 * @return the file's size in bytes
+	 */
+	public long getFileSize() {
+		return file.length();
+	}
+
+	/**
+	 * Sends the waiting writes to MySQL, the provided number of players at a
+	 * time. Stops at the first batch that fails, which the next replay sends
+	 * again as it is. Should not be called on the main thread.
+	 *
+	 * @param batchSize the most players sent per transaction
+	 * @return whether nothing is left waiting
+	 */
+	public boolean replay(int batchSize) {
+		synchronized (replayLock) {
+			if (!isActive()) return true;
+
+			String msg = "[LobbyGames] Sending " + pendingCount() + " players' writes that were saved while"
+					+ " MySQL was down...";
+			DatastoreLog.get().info(msg);
+
+			while (true) {
+				Map<UUID, WriteBehindQueue.Update> sending;
+				long number;
+
+				synchronized (this) {
+					if (batch == null) {
+						Map<UUID, WriteBehindQueue.Update> taken = queue.take(batchSize);
+						if (taken.isEmpty()) break;
+						batch = taken;
+						batchNumber = nextBatch++;
+					}
+
+					// the file has to name the batch before it can be committed
+					if (!rewrite()) return false;
+					sending = batch;
+					number = batchNumber;
+				}
+
+				if (!send(number, sending)) {
+					msg = "[LobbyGames] Stopped sending saved writes, " + pendingCount() + " players are"
+							+ " still waiting.";
+					DatastoreLog.get().info(msg);
+					return false;
+				}
+
+				synchronized (this) {
+					batch = null;
+					// if this fails the file still names the batch, which is then skipped as sent
+					rewrite();
+				}
+			}
+
+			DatastoreLog.get().info("[LobbyGames] Every saved write has reached MySQL.");
+			return true;
+		}
+	}
+
+	/**
+	 * Writes a batch in one transaction unless the spill batches table says
+	 * it was written already, and forgets the batches before it.
+	 *
+	 * @return whether the batch is in MySQL
+	 */
+	private boolean send(long number, Map<UUID, WriteBehindQueue.Update> sending) {
+		try (Connection conn = pool.getConnection()) {
+			conn.setAutoCommit(false);
+
+			try {
+				boolean marked;
+				try (PreparedStatement ps = conn.prepareStatement(markSql)) {
+					ps.setLong(1, journalId);
+					ps.setLong(2, number);
+					marked = ps.executeUpdate() > 0;
+				}
+
+				if (marked) {
+					queue.write(conn, sending);
+					// a batch is only taken once the one before it is in MySQL
+					try (PreparedStatement ps = conn.prepareStatement(pruneSql)) {
+						ps.setLong(1, journalId);
+						ps.setLong(2, number);
+						ps.executeUpdate();
+					}
+				}
+
+				conn.commit();
+			} catch (SQLException e) {
+				conn.rollback();
+				throw e;
+			} finally {
+				conn.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			Consumer<SQLException> errorHandler = this.errorHandler;
+			if (errorHandler != null) errorHandler.accept(e);
+			String msg = "[LobbyGames] Failed to send " + sending.size() + " players' saved writes to MySQL: "
+					+ e.getMessage();
+			DatastoreLog.get().info(msg);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Closes the file. Anything still waiting stays in it for the next run.
+	 */
+	public synchronized void close() {
+		if (out == null) return;
+		try {
+			out.close();
+		} catch (IOException ignored) {}
+		out = null;
+	}
+
+	/**
+	 * Replaces the file with one holding the header, the batch being sent and
+	 * then the other waiting writes. It is moved into place in one step, so a
+	 * crash leaves either the old or the new file.
+	 */
+	private synchronized boolean rewrite() {
+		File temp = new File(file.getPath() + ".tmp");
+		close();
+
+		boolean success = true;
+		try {
+			try (DataOutputStream tempOut = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(temp)))) {
+				Map<UUID, WriteBehindQueue.Update> batch = this.batch;
+				int batchWrites = 0;
+				if (batch != null) {
+					for (WriteBehindQueue.Update update : batch.values()) {
+						batchWrites += toWrites(update).length;
+					}
+				}
+
+				tempOut.writeLong(journalId);
+				tempOut.writeLong(nextBatch);
+				tempOut.writeInt(batchWrites);
+				if (batch != null) {
+					for (Map.Entry<UUID, WriteBehindQueue.Update> entry : batch.entrySet()) {
+						write(tempOut, entry.getKey(), entry.getValue());
+					}
+				}
+				for (Map.Entry<UUID, WriteBehindQueue.Update> entry : queue.getPendingUpdates().entrySet()) {
+					write(tempOut, entry.getKey(), entry.getValue());
+				}
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			String msg = "[LobbyGames] Could not rewrite " + file.getName() + ": " + e.getMessage();
+			DatastoreLog.get().info(msg);
+			success = false;
+		}
+
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+		} catch (IOException e) {
+			String msg = "[LobbyGames] Could not open " + file.getName() + ": " + e.getMessage();
+			DatastoreLog.get().info(msg);
+			return false;
+		}
+
+		return success;
+	}
+
+	/**
+	 * Adds an update's changes as the writes that would make them.
+	 */
+	private boolean append(UUID player, WriteBehindQueue.Update update) {
+		String name = update.getName();
+		boolean success = true;
+
+		for (int[] write : toWrites(update)) {
+			success &= append((byte) write[0], player, name, write[1]);
+		}
+
+		return success;
+	}
+
+	private static void write(DataOutputStream out, UUID player, WriteBehindQueue.Update update)
+			throws IOException {
+		for (int[] write : toWrites(update)) {
+			write(out, (byte) write[0], player, update.getName(), write[1]);
+		}
+	}
+
+	/**
+	 * Returns the writes that make an update's changes, each as the op and
+	 * its value. An absolute value comes before the delta on top of it.
+	 */
+	private static int[][] toWrites(WriteBehindQueue.Update update) {
+		int[][] writes = new int[8][];
+		int count = 0;
+
+		if (update.getHighscore() != null) writes[count++] = new int[] {HIGHSCORE, update.getHighscore()};
+		if (update.getBestScore() != null) {
+			writes[count++] = new int[] {SUBMITTED_HIGHSCORE, update.getBestScore()};
+		}
+		if (update.getWins() != null) writes[count++] = new int[] {WINS, update.getWins()};
+		if (update.getWinsDelta() != 0) writes[count++] = new int[] {WINS_INCREMENT, update.getWinsDelta()};
+		if (update.getLosses() != null) writes[count++] = new int[] {LOSSES, update.getLosses()};
+		if (update.getLossesDelta() != 0) {
+			writes[count++] = new int[] {LOSSES_INCREMENT, update.getLossesDelta()};
+		}
+		if (update.getTies() != null) writes[count++] = new int[] {TIES, update.getTies()};
+		if (update.getTiesDelta() != 0) writes[count++] = new int[] {TIES_INCREMENT, update.getTiesDelta()};
+
+		int[][] result = new int[count][];
+		System.arraycopy(writes, 0, result, 0, count);
+		return result;
+	}
+
+	private static void write(DataOutputStream out, byte op, UUID player, String name, int value)
+			throws IOException {
+		out.writeByte(op);
+		out.writeLong(player.getMostSignificantBits());
+		out.writeLong(player.getLeastSignificantBits());
+		out.writeBoolean(name != null);
+		if (name != null) out.writeUTF(name);
+		out.writeInt(value);
+	}
+
+	/**
+	 * Merges a write into the provided queue.
+	 */
+	private static void apply(WriteBehindQueue target, byte op, UUID player, String name, int value) {
+		switch (op) {
+			case HIGHSCORE:
+				target.queueHighscore(player, name, value);
+				break;
+			case SUBMITTED_HIGHSCORE:
+				target.queueSubmittedHighscore(player, name, value);
+				break;
+			case WINS:
+				target.queueTicTacToeWins(player, name, value);
+				break;
+			case LOSSES:
+				target.queueTicTacToeLosses(player, name, value);
+				break;
+			case TIES:
+				target.queueTicTacToeTies(player, name, value);
+				break;
+			case WINS_INCREMENT:
+				target.queueTicTacToeWinsIncrement(player, name, value);
+				break;
+			case LOSSES_INCREMENT:
+				target.queueTicTacToeLossesIncrement(player, name, value);
+				break;
+			case TIES_INCREMENT:
+				target.queueTicTacToeTiesIncrement(player, name, value);
+				break;
+			default:
+				break;
+		}
+	}
+}
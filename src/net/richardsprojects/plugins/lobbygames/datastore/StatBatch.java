@@ -0,0 +1,104 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A list of stat writes for any number of players and stats that a
+ * datastore applies together, in the order they were added. MySQL sends the
+ * whole batch in one transaction instead of one round trip per write.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public final class StatBatch {
+
+	private final List<Op> ops = new ArrayList<>();
+
+	/**
+	 * Sets the stat to an exact value.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param stat the stat
+	 * @param value the new value
+	 * @return this batch
+	 */
+	public StatBatch set(UUID player, String name, StatKey stat, int value) {
+		ops.add(new Op(player, name, stat, value, true));
+		return this;
+	}
+
+	/**
+	 * Records a value for the stat. A COUNTER stat has the value added to
+	 * it and a MAX stat keeps the higher of the two.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param stat the stat
+	 * @param value the value to record
+	 * @return this batch
+	 */
+	public StatBatch record(UUID player, String name, StatKey stat, int value) {
+		ops.add(new Op(player, name, stat, value, false));
+		return this;
+	}
+
+	public List<Op> getOps() {
+		return Collections.unmodifiableList(ops);
+	}
+
+	public int size() {
+		return ops.size();
+	}
+
+	public boolean isEmpty() {
+		return ops.isEmpty();
+	}
+
+	/**
+	 * One write in a batch.
+	 */
+	public static final class Op {
+
+		private final UUID player;
+		private final String name;
+		private final StatKey stat;
+		private final int value;
+		private final boolean set;
+
+		private Op(UUID player, String name, StatKey stat, int value, boolean set) {
+			this.player = player;
+			this.name = name;
+			this.stat = stat;
+			this.value = value;
+			this.set = set;
+		}
+
+		public UUID getPlayer() {
+			return player;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public StatKey getStat() {
+			return stat;
+		}
+
+		public int getValue() {
+			return value;
+		}
+
+		/**
+		 * @return true if the value replaces the stored one, false if it is
+		 *         recorded according to the stat's type
+		 */
+		public boolean isSet() {
+			return set;
+		}
+	}
+}
@@ -0,0 +1,317 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import net.richardsprojects.plugins.lobbygames.Utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps the registered stats that aren't built in, stored by column. Every
+ * player gets a row number once, and every stat is a plain int array indexed
+ * by row with a bit set marking which rows have a value. A stat that only a
+ * few players have costs one int per row and nothing per player in boxed
+ * objects, and reading one stat for many players walks a single array.
+ *
+ * Each stat is saved to its own file in the stats folder, named after the
+ * stat's id, and only stats that changed are rewritten. Stats are loaded by
+ * id, so files for stats that haven't been registered yet are kept and
+ * saved as they are.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class StatColumnStore {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final File folder;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// guarded by lock
+	private final HashMap<UUID, Integer> rows = new HashMap<>();
+	private final HashMap<String, Column> columns = new HashMap<>();
+	private UUID[] players = new UUID[INITIAL_CAPACITY];
+	private int size = 0;
+
+	/**
+	 * @param folder the folder the stat files are kept in
+	 */
+	public StatColumnStore(File folder) {
+		this.folder = folder;
+	}
+
+	/**
+	 * Creates the stats folder and loads every stat file in it.
+	 *
+	 * @return whether every file was loaded
+	 */
+	public boolean load() {
+		if (!folder.exists() && !folder.mkdirs()) return false;
+
+		File[] files = folder.listFiles((dir, name) -> name.endsWith(".yml"));
+		if (files == null) return false;
+
+		boolean success = true;
+		for (File file : files) {
+			final String id = file.getName().substring(0, file.getName().length() - 4);
+
+			success &= FlatYmlCodec.read(file, (key, value) -> {
+				UUID uuid = Utils.parseUUID(key);
+				if (uuid == null) return;
+
+				try {
+					write(uuid, id, Integer.parseInt(value), Write.SET);
+				} catch (NumberFormatException e) {
+					String msg = "[LobbyGames] There was an error reading ";
+					msg = msg + key + " from " + file.getName() + ".";
+					DatastoreLog.get().info(msg);
+				}
+			});
+		}
+
+		// nothing has changed since it was loaded
+		for (Column column : columns.values()) {
+			column.dirty = false;
+		}
+
+		return success;
+	}
+
+	/**
+	 * Reads the stats for each player, in the order of the provided list.
+	 * Every player gets an entry, with 0 for stats they don't have.
+	 *
+	 * @param players the players' UUIDs
+	 * @param stats the stats to read
+	 * @return each player's values keyed by UUID
+	 */
+	public Map<UUID, int[]> read(Collection<UUID> players, List<StatKey> stats) {
+		Map<UUID, int[]> result = new HashMap<>();
+
+		lock.readLock().lock();
+		try {
+			Column[] read = new Column[stats.size()];
+			for (int i = 0; i < read.length; i++) {
+				read[i] = columns.get(stats.get(i).getId());
+			}
+
+			for (UUID player : players) {
+				int[] values = new int[read.length];
+				Integer row = rows.get(player);
+
+				if (row != null) {
+					for (int i = 0; i < read.length; i++) {
+						if (read[i] != null) values[i] = read[i].get(row);
+					}
+				}
+
+				result.put(player, values);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Applies writes in order.
+	 *
+	 * @param ops the writes
+	 */
+	public void write(List<StatBatch.Op> ops) {
+		lock.writeLock().lock();
+		try {
+			for (StatBatch.Op op : ops) {
+				Write write;
+				if (op.isSet()) {
+					write = Write.SET;
+				} else if (op.getStat().getType() == StatKey.Type.MAX) {
+					write = Write.MAX;
+				} else {
+					write = Write.ADD;
+				}
+
+				write(op.getPlayer(), op.getStat().getId(), op.getValue(), write);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of stats with changes that are not saved yet.
+	 *
+	 * @return changed stat count
+	 */
+	public int getDirtyCount() {
+		lock.readLock().lock();
+		try {
+			int dirty = 0;
+			for (Column column : columns.values()) {
+				if (column.dirty) dirty++;
+			}
+			return dirty;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes every stat that changed since the last save, or every stat if
+	 * onlyChanged is false. Columns are copied under the lock and written
+	 * after it is released, so writes never wait on the disk.
+	 *
+	 * @param onlyChanged whether only changed stats should be written
+	 * @return whether every stat was written
+	 */
+	public boolean save(boolean onlyChanged) {
+		Map<String, Column> copies = new HashMap<>();
+		UUID[] players;
+		int size;
+
+		lock.writeLock().lock();
+		try {
+			for (Map.Entry<String, Column> entry : columns.entrySet()) {
+				Column column = entry.getValue();
+				if (onlyChanged && !column.dirty) continue;
+
+				copies.put(entry.getKey(), column.copy());
+				// cleared before saving so anything changed meanwhile is saved next time
+				column.dirty = false;
+			}
+
+			players = this.players;
+			size = this.size;
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		List<String> failed = new ArrayList<>();
+		for (Map.Entry<String, Column> entry : copies.entrySet()) {
+			if (!saveColumn(entry.getKey(), entry.getValue(), players, size)) {
+				failed.add(entry.getKey());
+			}
+		}
+
+		if (failed.isEmpty()) return true;
+
+		// try again on the next run
+		lock.writeLock().lock();
+		try {
+			for (String id : failed) {
+				columns.get(id).dirty = true;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		return false;
+	}
+
+	/**
+	 * Writes one stat's file. Rows only ever get added to the end of the
+	 * players array, so the copy taken under the lock can be read without
+	 * it.
+	 */
+	private boolean saveColumn(String id, Column column, UUID[] players, int size) {
+		FlatYmlCodec.Writer writer = FlatYmlCodec.write(new File(folder, id + ".yml"));
+
+		int rows = Math.min(size, column.values.length);
+		for (int row = 0; row < rows; row++) {
+			if (column.has(row)) {
+				writer.write(players[row].toString(), column.values[row]);
+			}
+		}
+
+		return writer.commit();
+	}
+
+	/**
+	 * Applies one write. Must hold the write lock, or be loading.
+	 */
+	private void write(UUID player, String id, int value, Write write) {
+		Integer row = rows.get(player);
+		if (row == null) {
+			if (size == players.length) {
+				players = Arrays.copyOf(players, size * 2);
+			}
+			row = size++;
+			players[row] = player;
+			rows.put(player, row);
+		}
+
+		Column column = columns.get(id);
+		if (column == null) {
+			column = new Column(players.length);
+			columns.put(id, column);
+		}
+
+		int old = column.get(row);
+		boolean present = column.has(row);
+		switch (write) {
+			case ADD:
+				column.put(row, old + value);
+				break;
+			case MAX:
+				column.put(row, present ? Math.max(old, value) : value);
+				break;
+			default:
+				column.put(row, value);
+				break;
+		}
+	}
+
+	private enum Write {
+		SET, ADD, MAX
+	}
+
+	/**
+	 * One stat's values by row and a bit set of the rows that have one.
+	 */
+	private static class Column {
+
+		private int[] values;
+		private long[] present;
+		private boolean dirty = false;
+
+		private Column(int capacity) {
+			values = new int[capacity];
+			present = new long[(capacity + 63) >>> 6];
+		}
+
+		private boolean has(int row) {
+			return row < values.length && (present[row >>> 6] & (1L << row)) != 0;
+		}
+
+		private int get(int row) {
+			return row < values.length ? values[row] : 0;
+		}
+
+		private void put(int row, int value) {
+			if (row >= values.length) {
+				int capacity = Math.max(row + 1, values.length * 2);
+				values = Arrays.copyOf(values, capacity);
+				present = Arrays.copyOf(present, (capacity + 63) >>> 6);
+			}
+
+			values[row] = value;
+			present[row >>> 6] |= 1L << row;
+			dirty = true;
+		}
+
+		private Column copy() {
+			Column copy = new Column(0);
+			copy.values = values.clone();
+			copy.present = present.clone();
+			return copy;
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * A stat a game keeps for each player, such as the wins in a game. Stats are
+ * registered once by game and name, and every datastore stores every
+ * registered stat without needing its own methods, tables or files for it.
+ *
+ * A COUNTER stat is added to when it is recorded, and a MAX stat only keeps
+ * the highest value recorded. Both can also be set to an exact value. The
+ * 2048 highscore and the tic tac toe stats are registered as built-in stats
+ * and stay in the tables and files they have always been in.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public final class StatKey {
+
+	/**
+	 * How a recorded value is combined with the stored one.
+	 */
+	public enum Type {
+		/** the recorded value is added to the stored value */
+		COUNTER,
+		/** the higher of the recorded and stored value is kept */
+		MAX
+	}
+
+	private static final Pattern NAME = Pattern.compile("[a-z0-9_]{1,32}");
+	private static final ConcurrentHashMap<String, StatKey> REGISTRY = new ConcurrentHashMap<>();
+
+	public static final StatKey HIGHSCORE =
+			builtIn("2048", "highscore", Type.MAX, PlayerStatTable.HIGHSCORE);
+	public static final StatKey TICTACTOE_WINS =
+			builtIn("tictactoe", "wins", Type.COUNTER, PlayerStatTable.WINS);
+	public static final StatKey TICTACTOE_LOSSES =
+			builtIn("tictactoe", "losses", Type.COUNTER, PlayerStatTable.LOSSES);
+	public static final StatKey TICTACTOE_TIES =
+			builtIn("tictactoe", "ties", Type.COUNTER, PlayerStatTable.TIES);
+
+	private final String game;
+	private final String name;
+	private final String id;
+	private final Type type;
+	private final int column;
+
+	private StatKey(String game, String name, Type type, int column) {
+		this.game = game;
+		this.name = name;
+		this.id = game + "." + name;
+		this.type = type;
+		this.column = column;
+	}
+
+	/**
+	 * Registers a stat, or returns the one already registered with the same
+	 * game and name. Games should register their stats when they are
+	 * enabled and keep the returned key.
+	 *
+	 * @param game the game's name, lowercase letters, digits and underscores
+	 * @param name the stat's name, lowercase letters, digits and underscores
+	 * @param type how recorded values are combined
+	 * @return the stat's key
+	 * @throws IllegalArgumentException if a name is invalid or the stat is
+	 *                                  already registered with another type
+	 */
+	public static StatKey register(String game, String name, Type type) {
+		if (!NAME.matcher(game).matches() || !NAME.matcher(name).matches()) {
+			throw new IllegalArgumentException("Invalid stat name " + game + "." + name);
+		}
+
+		StatKey stat = new StatKey(game, name, type, -1);
+		StatKey existing = REGISTRY.putIfAbsent(stat.id, stat);
+		if (existing == null) return stat;
+
+		if (existing.type != type) {
+			throw new IllegalArgumentException("Stat " + stat.id + " is already a " + existing.type);
+		}
+		return existing;
+	}
+
+	/**
+	 * Returns the stat registered with the provided game and name, or null
+	 * if there is none.
+	 *
+	 * @param game the game's name
+	 * @param name the stat's name
+	 * @return the stat's key or null
+	 */
+	public static StatKey get(String game, String name) {
+		return REGISTRY.get(game + "." + name);
+	}
+
+	/**
+	 * Returns every registered stat, including the built-in ones.
+	 *
+	 * @return a copy of the registered stats
+	 */
+	public static Collection<StatKey> values() {
+		return Collections.unmodifiableList(new ArrayList<>(REGISTRY.values()));
+	}
+
+	private static StatKey builtIn(String game, String name, Type type, int column) {
+		StatKey stat = new StatKey(game, name, type, column);
+		REGISTRY.put(stat.id, stat);
+		return stat;
+	}
+
+	public String getGame() {
+		return game;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return game and name separated by a dot, such as tictactoe.wins
+	 */
+	public String getId() {
+		return id;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return whether the stat is one of the stats the datastores had before
+	 *         the registry existed
+	 */
+	public boolean isBuiltIn() {
+		return column >= 0;
+	}
+
+	/**
+	 * Returns the stat table column of a built-in stat or -1.
+	 */
+	int getColumn() {
+		return column;
+	}
+
+	/**
+	 * Reads a built-in stat from a player's profile.
+	 */
+	int getValue(PlayerStats profile) {
+		switch (column) {
+			case PlayerStatTable.HIGHSCORE:
+				return profile.getHighscore();
+			case PlayerStatTable.WINS:
+				return profile.getTicTacToeWins();
+			case PlayerStatTable.LOSSES:
+				return profile.getTicTacToeLosses();
+			case PlayerStatTable.TIES:
+				return profile.getTicTacToeTies();
+			default:
+				throw new IllegalStateException(id + " is not a built-in stat");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return id;
+	}
+}
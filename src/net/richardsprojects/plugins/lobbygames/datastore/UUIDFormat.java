@@ -0,0 +1,117 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.util.UUID;
+
+/**
+ * How UUIDs are stored in the MySQL tables. STRING is the original
+ * VARCHAR(50) column holding UUID.toString(). BINARY is a BINARY(16) column
+ * holding the UUID's 16 bytes, which makes the primary key and every index
+ * that contains it less than half the size and compares keys as bytes
+ * instead of strings.
+ *
+ * The byte order matches UNHEX(REPLACE(uuid, '-', '')) so rows can be
+ * converted in SQL.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public enum UUIDFormat {
+
+	STRING {
+		@Override
+		public void set(PreparedStatement ps, int index, UUID uuid) throws SQLException {
+			ps.setString(index, uuid.toString());
+		}
+
+		@Override
+		public UUID get(ResultSet set, String column) throws SQLException {
+			String uuid = set.getString(column);
+			if (uuid == null) return null;
+
+			// 16 raw bytes, the column was converted by another server
+			if (uuid.length() != 36) {
+				throw new SQLDataException("The " + column + " column doesn't hold a text UUID.", "22000");
+			}
+			return UUID.fromString(uuid);
+		}
+	},
+
+	BINARY {
+		@Override
+		public void set(PreparedStatement ps, int index, UUID uuid) throws SQLException {
+			ps.setBytes(index, toBytes(uuid));
+		}
+
+		@Override
+		public UUID get(ResultSet set, String column) throws SQLException {
+			byte[] uuid = set.getBytes(column);
+			return uuid == null ? null : fromBytes(uuid);
+		}
+	};
+
+	/**
+	 * Sets a statement parameter to the provided UUID in this format.
+	 *
+	 * @param ps the statement
+	 * @param index the parameter index
+	 * @param uuid the UUID
+	 * @throws SQLException if the parameter could not be set
+	 */
+	public abstract void set(PreparedStatement ps, int index, UUID uuid) throws SQLException;
+
+	/**
+	 * Reads a UUID in this format from the current row of a result set.
+	 *
+	 * @param set the result set
+	 * @param column the column label
+	 * @return the UUID or null if the column was null
+	 * @throws SQLException if the column could not be read
+	 */
+	public abstract UUID get(ResultSet set, String column) throws SQLException;
+
+	/**
+	 * Returns the UUID's 16 bytes, most significant first.
+	 *
+	 * @param uuid the UUID
+	 * @return a new array of 16 bytes
+	 */
+	public static byte[] toBytes(UUID uuid) {
+		byte[] bytes = new byte[16];
+		putLong(bytes, 0, uuid.getMostSignificantBits());
+		putLong(bytes, 8, uuid.getLeastSignificantBits());
+		return bytes;
+	}
+
+	/**
+	 * Reads a UUID from 16 bytes, most significant first.
+	 *
+	 * @param bytes the bytes
+	 * @return the UUID
+	 */
+	public static UUID fromBytes(byte[] bytes) {
+		if (bytes.length != 16) {
+			throw new IllegalArgumentException("A UUID is 16 bytes, got " + bytes.length);
+		}
+
+		return new UUID(getLong(bytes, 0), getLong(bytes, 8));
+	}
+
+	private static void putLong(byte[] bytes, int offset, long value) {
+		for (int i = 7; i >= 0; i--) {
+			bytes[offset + i] = (byte) value;
+			value >>>= 8;
+		}
+	}
+
+	private static long getLong(byte[] bytes, int offset) {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (bytes[offset + i] & 0xff);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,685 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import net.richardsprojects.plugins.lobbygames.LobbyGames;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Buffers MySQLDatastore updates in memory and writes them to the database
+ * in the background. Updates to the same player are coalesced so only the
+ * latest value of each column is written (increments are summed and
+ * submitted scores keep the best one), and everything pending is sent as
+ * one JDBC batch per table inside a single transaction. A flush happens every
+ * few ticks, as soon as enough players have pending changes and when the
+ * plugin is disabled.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class WriteBehindQueue {
+
+	private final ConnectionPoolManager pool;
+	private final int maxPending;
+
+	private final String highscoreSql;
+	private final String ticTacToeSql;
+
+	private final Object lock = new Object();
+	private final Object flushLock = new Object();
+
+	private HashMap<UUID, Update> pending = new HashMap<>();
+	private HashMap<UUID, Update> inFlight = new HashMap<>();
+	private boolean flushRequested = false;
+
+	private FlushTask flushTask;
+	private volatile UUIDFormat uuidFormat = UUIDFormat.STRING;
+	private volatile ChangeLog changeLog;
+	private volatile Consumer<SQLException> errorHandler;
+	private final LongAdder failedFlushes = new LongAdder();
+
+	/**
+	 * Creates a new write-behind queue that writes through the provided
+	 * connection pool.
+	 *
+	 * @param pool the pool to borrow connections from
+	 * @param prefix the table prefix
+	 * @param maxPending how many players may have pending changes before a
+	 *                   flush is started early
+	 */
+	public WriteBehindQueue(ConnectionPoolManager pool, String prefix, int maxPending) {
+		this.pool = pool;
+		this.maxPending = maxPending;
+
+		// either an absolute highscore or a best submitted score is set, never both
+		highscoreSql = "INSERT INTO " + prefix + "highscores VALUES (?, ?, IFNULL(?, ?)) ON DUPLICATE" +
+				" KEY UPDATE highscore = IFNULL(?, GREATEST(highscore, ?)), player = ?";
+		// each column is an optional absolute value plus a delta on top of it
+		ticTacToeSql = "INSERT INTO " + prefix + "tictactoe VALUES (?, ?, IFNULL(?, 0) + ?" +
+				", IFNULL(?, 0) + ?, IFNULL(?, 0) + ?) ON DUPLICATE KEY UPDATE" +
+				" games_won = IFNULL(?, games_won) + ?, games_lost = IFNULL(?, games_lost) + ?" +
+				", games_tied = IFNULL(?, games_tied) + ?, player = ?";
+	}
+
+	/**
+	 * Sets how the tables store UUIDs. Must be called before the first flush
+	 * if the tables use anything other than strings.
+	 *
+	 * @param uuidFormat the tables' UUID format
+	 */
+	public void setUUIDFormat(UUIDFormat uuidFormat) {
+		this.uuidFormat = uuidFormat;
+	}
+
+	/**
+	 * Sets the change log every flushed player is recorded in, as part of
+	 * the flush's transaction.
+	 *
+	 * @param changeLog the change log or null to record nothing
+	 */
+	public void setChangeLog(ChangeLog changeLog) {
+		this.changeLog = changeLog;
+	}
+
+	/**
+	 * Sets what every failed flush's exception is passed to, after it is put
+	 * back in the queue.
+	 *
+	 * @param errorHandler the handler or null for none
+	 */
+	public void setErrorHandler(Consumer<SQLException> errorHandler) {
+		this.errorHandler = errorHandler;
+	}
+
+	/**
+	 * Starts the background task that flushes the queue every interval.
+	 *
+	 * @param interval ticks between flushes
+	 */
+	public void start(long interval) {
+		flushTask = new FlushTask(this);
+		flushTask.runTaskTimerAsynchronously(LobbyGames.instance, interval, interval);
+	}
+
+	/**
+	 * Stops the background task and writes everything that is still pending.
+	 * Should be run before the connection pool is closed.
+	 */
+	public void stop() {
+		if (flushTask != null) {
+			flushTask.cancel();
+			flushTask = null;
+		}
+
+		if (!flush()) {
+			String msg = "[LobbyGames] Could not write " + pendingCount()
+					+ " pending player updates to MySQL.";
+			DatastoreLog.get().info(msg);
+		}
+	}
+
+	/**
+	 * Queues a new highscore for the player.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param score new highscore
+	 */
+	public void queueHighscore(UUID player, String name, int score) {
+		synchronized (lock) {
+			Update update = getOrCreate(player, name);
+			update.highscore = score;
+			update.bestScore = null;
+		}
+		checkSize();
+	}
+
+	/**
+	 * Queues a submitted score for the player that only replaces their
+	 * highscore if it is higher.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param score submitted score
+	 */
+	public void queueSubmittedHighscore(UUID player, String name, int score) {
+		synchronized (lock) {
+			Update update = getOrCreate(player, name);
+			if (update.highscore != null) {
+				update.highscore = Math.max(update.highscore, score);
+			} else if (update.bestScore == null || score > update.bestScore) {
+				update.bestScore = score;
+			}
+		}
+		checkSize();
+	}
+
+	/**
+	 * Queues a new tic tac toe win count for the player.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param wins new win count
+	 */
+	public void queueTicTacToeWins(UUID player, String name, int wins) {
+		synchronized (lock) {
+			Update update = getOrCreate(player, name);
+			update.wins = wins;
+			update.winsDelta = 0;
+		}
+		checkSize();
+	}
+
+	/**
+	 * Queues a new tic tac toe loss count for the player.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param losses new loss count
+	 */
+	public void queueTicTacToeLosses(UUID player, String name, int losses) {
+		synchronized (lock) {
+			Update update = getOrCreate(player, name);
+			update.losses = losses;
+			update.lossesDelta = 0;
+		}
+		checkSize();
+	}
+
+	/**
+	 * Queues a new tic tac toe tie count for the player.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param ties new tie count
+	 */
+	public void queueTicTacToeTies(UUID player, String name, int ties) {
+		synchronized (lock) {
+			Update update = getOrCreate(player, name);
+			update.ties = ties;
+			update.tiesDelta = 0;
+		}
+		checkSize();
+	}
+
+	/**
+	 * Queues an amount to add to the player's tic tac toe win count.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param delta amount to add
+	 */
+	public void queueTicTacToeWinsIncrement(UUID player, String name, int delta) {
+		synchronized (lock) {
+			Update update = getOrCreate(player, name);
+			if (update.wins != null) {
+				update.wins += delta;
+			} else {
+				update.winsDelta += delta;
+			}
+		}
+		checkSize();
+	}
+
+	/**
+	 * Queues an amount to add to the player's tic tac toe loss count.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param delta amount to add
+	 */
+	public void queueTicTacToeLossesIncrement(UUID player, String name, int delta) {
+		synchronized (lock) {
+			Update update = getOrCreate(player, name);
+			if (update.losses != null) {
+				update.losses += delta;
+			} else {
+				update.lossesDelta += delta;
+			}
+		}
+		checkSize();
+	}
+
+	/**
+	 * Queues an amount to add to the player's tic tac toe tie count.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name
+	 * @param delta amount to add
+	 */
+	public void queueTicTacToeTiesIncrement(UUID player, String name, int delta) {
+		synchronized (lock) {
+			Update update = getOrCreate(player, name);
+			if (update.ties != null) {
+				update.ties += delta;
+			} else {
+				update.tiesDelta += delta;
+			}
+		}
+		checkSize();
+	}
+
+	/**
+	 * Returns a copy of the changes that have not reached the database yet
+	 * for the provided player, or null if there are none. Used so reads see
+	 * the player's own recent writes. Increments that are part of a flush
+	 * still in progress may briefly be counted twice or not at all, depending
+	 * on whether the flush has committed yet.
+	 *
+	 * @param player player's UUID
+	 * @return the unwritten changes or null
+	 */
+	public Update getPending(UUID player) {
+		synchronized (lock) {
+			Update newer = pending.get(player);
+			Update older = inFlight.get(player);
+			if (newer == null && older == null) return null;
+
+			return Update.merge(older, newer);
+		}
+	}
+
+	/**
+	 * Returns a copy of every player's changes that have not reached the
+	 * database yet, the same as getPending returns them.
+	 *
+	 * @return the unwritten changes keyed by UUID
+	 */
+	public Map<UUID, Update> getPendingUpdates() {
+		synchronized (lock) {
+			Map<UUID, Update> copies = new HashMap<>();
+			for (UUID player : inFlight.keySet()) {
+				copies.put(player, getPending(player));
+			}
+			for (UUID player : pending.keySet()) {
+				copies.put(player, getPending(player));
+			}
+			return copies;
+		}
+	}
+
+	/**
+	 * Removes the changes of at most the provided number of players from the
+	 * queue and returns them, for a caller that writes them itself.
+	 *
+	 * @param maxPlayers the most players to remove
+	 * @return the removed changes keyed by UUID
+	 */
+	Map<UUID, Update> take(int maxPlayers) {
+		synchronized (lock) {
+			Map<UUID, Update> taken = new HashMap<>();
+			Iterator<Map.Entry<UUID, Update>> entries = pending.entrySet().iterator();
+			while (entries.hasNext() && taken.size() < maxPlayers) {
+				Map.Entry<UUID, Update> entry = entries.next();
+				taken.put(entry.getKey(), entry.getValue());
+				entries.remove();
+			}
+			return taken;
+		}
+	}
+
+	/**
+	 * Returns the number of players with changes that are not written yet.
+	 *
+	 * @return pending player count
+	 */
+	public int pendingCount() {
+		synchronized (lock) {
+			return pending.size() + inFlight.size();
+		}
+	}
+
+	/**
+	 * Returns the number of flushes that failed and were put back in the
+	 * queue.
+	 *
+	 * @return failed flush count
+	 */
+	public long getFailedFlushes() {
+		return failedFlushes.sum();
+	}
+
+	/**
+	 * Writes every pending change to the database as one transaction. If the
+	 * write fails the changes are put back in the queue so the next flush can
+	 * try again. Only one flush runs at a time.
+	 *
+	 * @return whether the pending changes were written
+	 */
+	public boolean flush() {
+		return flush(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Writes the pending changes of at most the provided number of players
+	 * as one transaction, leaving the rest for the next flush. If the write
+	 * fails the changes are put back in the queue.
+	 *
+	 * @param maxPlayers the most players to write
+	 * @return whether the changes were written
+	 */
+	public boolean flush(int maxPlayers) {
+		synchronized (flushLock) {
+			HashMap<UUID, Update> batch;
+			synchronized (lock) {
+				flushRequested = false;
+				if (pending.isEmpty()) return true;
+
+				if (pending.size() <= maxPlayers) {
+					batch = pending;
+					pending = new HashMap<>();
+				} else {
+					batch = new HashMap<>();
+					Iterator<Map.Entry<UUID, Update>> entries = pending.entrySet().iterator();
+					while (batch.size() < maxPlayers) {
+						Map.Entry<UUID, Update> entry = entries.next();
+						batch.put(entry.getKey(), entry.getValue());
+						entries.remove();
+					}
+				}
+				inFlight = batch;
+			}
+
+			boolean success = writeBatch(batch);
+
+			synchronized (lock) {
+				if (!success) {
+					// anything queued since the swap is newer, so it goes on top
+					for (Map.Entry<UUID, Update> entry : batch.entrySet()) {
+						Update older = entry.getValue();
+						Update newer = pending.get(entry.getKey());
+						if (newer != null) {
+							older.name = newer.name;
+							older.applyAfter(newer);
+						}
+						pending.put(entry.getKey(), older);
+					}
+				}
+				inFlight = new HashMap<>();
+			}
+
+			return success;
+		}
+	}
+
+	/**
+	 * Sends the provided updates to the database as one batch per table in a
+	 * single transaction.
+	 *
+	 * @param batch the updates to write
+	 * @return whether the transaction was committed
+	 */
+	private boolean writeBatch(HashMap<UUID, Update> batch) {
+		try (Connection conn = pool.getConnection()) {
+			conn.setAutoCommit(false);
+
+			try {
+				write(conn, batch);
+				conn.commit();
+			} catch (SQLException e) {
+				conn.rollback();
+				throw e;
+			} finally {
+				conn.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			failedFlushes.increment();
+			Consumer<SQLException> errorHandler = this.errorHandler;
+			if (errorHandler != null) errorHandler.accept(e);
+			String msg = "[LobbyGames] Failed to flush " + batch.size()
+					+ " player updates to MySQL: " + e.getMessage();
+			DatastoreLog.get().info(msg);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Adds the statements that write the provided updates to the
+	 * connection's transaction, one batch per table, and records the players
+	 * in the change log. Doesn't commit.
+	 *
+	 * @param conn the connection to write with
+	 * @param batch the updates to write
+	 * @throws SQLException if a statement failed
+	 */
+	void write(Connection conn, Map<UUID, Update> batch) throws SQLException {
+		try (PreparedStatement highscorePs = conn.prepareStatement(highscoreSql);
+			 PreparedStatement ticTacToePs = conn.prepareStatement(ticTacToeSql)) {
+			int highscoreRows = 0;
+			int ticTacToeRows = 0;
+
+			for (Map.Entry<UUID, Update> entry : batch.entrySet()) {
+				UUID uuid = entry.getKey();
+				Update update = entry.getValue();
+
+				if (update.hasHighscore()) {
+					uuidFormat.set(highscorePs, 1, uuid);
+					highscorePs.setString(2, update.name);
+					setNullableInt(highscorePs, 3, update.highscore);
+					setNullableInt(highscorePs, 4, update.bestScore);
+					setNullableInt(highscorePs, 5, update.highscore);
+					setNullableInt(highscorePs, 6, update.bestScore);
+					highscorePs.setString(7, update.name);
+					highscorePs.addBatch();
+					highscoreRows++;
+				}
+
+				if (update.hasTicTacToe()) {
+					uuidFormat.set(ticTacToePs, 1, uuid);
+					ticTacToePs.setString(2, update.name);
+					setNullableInt(ticTacToePs, 3, update.wins);
+					ticTacToePs.setInt(4, update.winsDelta);
+					setNullableInt(ticTacToePs, 5, update.losses);
+					ticTacToePs.setInt(6, update.lossesDelta);
+					setNullableInt(ticTacToePs, 7, update.ties);
+					ticTacToePs.setInt(8, update.tiesDelta);
+					setNullableInt(ticTacToePs, 9, update.wins);
+					ticTacToePs.setInt(10, update.winsDelta);
+					setNullableInt(ticTacToePs, 11, update.losses);
+					ticTacToePs.setInt(12, update.lossesDelta);
+					setNullableInt(ticTacToePs, 13, update.ties);
+					ticTacToePs.setInt(14, update.tiesDelta);
+					ticTacToePs.setString(15, update.name);
+					ticTacToePs.addBatch();
+					ticTacToeRows++;
+				}
+			}
+
+			if (highscoreRows > 0) highscorePs.executeBatch();
+			if (ticTacToeRows > 0) ticTacToePs.executeBatch();
+
+			if (changeLog != null) {
+				Map<UUID, String> players = new HashMap<>();
+				for (Map.Entry<UUID, Update> entry : batch.entrySet()) {
+					players.put(entry.getKey(), entry.getValue().name);
+				}
+				changeLog.record(conn, players);
+			}
+		}
+	}
+
+	/**
+	 * Helper method that returns the pending update for a player, creating
+	 * it if needed and always recording the latest name. Must be called while
+	 * holding the lock.
+	 */
+	private Update getOrCreate(UUID player, String name) {
+		Update update = pending.get(player);
+		if (update == null) {
+			update = new Update(name);
+			pending.put(player, update);
+		} else {
+			update.name = name;
+		}
+		return update;
+	}
+
+	/**
+	 * Starts an early async flush if too many players have pending changes.
+	 */
+	private void checkSize() {
+		synchronized (lock) {
+			if (flushRequested || pending.size() < maxPending) return;
+			flushRequested = true;
+		}
+		new FlushTask(this).runTaskAsynchronously(LobbyGames.instance);
+	}
+
+	private static void setNullableInt(PreparedStatement ps, int index, Integer value)
+			throws SQLException {
+		if (value == null) {
+			ps.setNull(index, Types.INTEGER);
+		} else {
+			ps.setInt(index, value);
+		}
+	}
+
+	/**
+	 * The latest unwritten values for a single player. A null absolute value
+	 * means that column has not been set, in which case the delta (or the
+	 * best submitted score) is applied on top of whatever the database has.
+	 */
+	public static class Update {
+
+		String name;
+		Integer highscore;
+		Integer bestScore;
+		Integer wins;
+		Integer losses;
+		Integer ties;
+		int winsDelta;
+		int lossesDelta;
+		int tiesDelta;
+
+		private Update(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Integer getHighscore() {
+			return highscore;
+		}
+
+		public Integer getBestScore() {
+			return bestScore;
+		}
+
+		public Integer getWins() {
+			return wins;
+		}
+
+		public Integer getLosses() {
+			return losses;
+		}
+
+		public Integer getTies() {
+			return ties;
+		}
+
+		public int getWinsDelta() {
+			return winsDelta;
+		}
+
+		public int getLossesDelta() {
+			return lossesDelta;
+		}
+
+		public int getTiesDelta() {
+			return tiesDelta;
+		}
+
+		/**
+		 * Returns a new update with the newer update's changes applied on top
+		 * of the older one's. Either may be null but not both.
+		 */
+		static Update merge(Update older, Update newer) {
+			Update merged = new Update(newer != null ? newer.name : older.name);
+			if (older != null) merged.applyAfter(older);
+			if (newer != null) merged.applyAfter(newer);
+			return merged;
+		}
+
+		private boolean hasHighscore() {
+			return highscore != null || bestScore != null;
+		}
+
+		private boolean hasTicTacToe() {
+			return wins != null || losses != null || ties != null
+					|| winsDelta != 0 || lossesDelta != 0 || tiesDelta != 0;
+		}
+
+		/**
+		 * Applies the changes from a newer update on top of this one.
+		 */
+		private void applyAfter(Update newer) {
+			if (newer.highscore != null) {
+				highscore = newer.highscore;
+				bestScore = null;
+			} else if (newer.bestScore != null) {
+				if (highscore != null) {
+					highscore = Math.max(highscore, newer.bestScore);
+				} else if (bestScore == null || newer.bestScore > bestScore) {
+					bestScore = newer.bestScore;
+				}
+			}
+
+			if (newer.wins != null) {
+				wins = newer.wins;
+				winsDelta = newer.winsDelta;
+			} else if (wins != null) {
+				wins += newer.winsDelta;
+			} else {
+				winsDelta += newer.winsDelta;
+			}
+
+			if (newer.losses != null) {
+				losses = newer.losses;
+				lossesDelta = newer.lossesDelta;
+			} else if (losses != null) {
+				losses += newer.lossesDelta;
+			} else {
+				lossesDelta += newer.lossesDelta;
+			}
+
+			if (newer.ties != null) {
+				ties = newer.ties;
+				tiesDelta = newer.tiesDelta;
+			} else if (ties != null) {
+				ties += newer.tiesDelta;
+			} else {
+				tiesDelta += newer.tiesDelta;
+			}
+		}
+	}
+
+	/**
+	 * A small BukkitRunnable that flushes the queue so it can be run on a
+	 * timer or once in the background.
+	 */
+	private class FlushTask extends BukkitRunnable {
+
+		private WriteBehindQueue queue;
+
+		public FlushTask(WriteBehindQueue queue) {
+			this.queue = queue;
+		}
+
+		public void run() {
+			queue.flush();
+		}
+	}
+}
@@ -2,15 +2,24 @@ package net.richardsprojects.plugins.lobbygames.datastore;
 
 import net.richardsprojects.plugins.lobbygames.LobbyGames;
 import net.richardsprojects.plugins.lobbygames.Utils;
-import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.scheduler.BukkitRunnable;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.UUID;
-import java.util.Collections;
-import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class is an implementation of the LobbyGames datastore system in
@@ -21,90 +30,124 @@ import java.util.ArrayList;
  */
 public class YmlDatastore extends Datastore {
 
-	private HashMap<UUID, String> names = new HashMap<>();
-	private HashMap<UUID, Integer> losses = new HashMap<>();
-	private HashMap<UUID, Integer> wins = new HashMap<>();
-	private HashMap<UUID, Integer> ties = new HashMap<>();
-	private HashMap<UUID, Integer> highscores = new HashMap<>();
+	private final PlayerStatTable stats = new PlayerStatTable();
+	private final ConcurrentHashMap<String, UUID> uuids = new ConcurrentHashMap<>();
+	private final LeaderboardIndex leaderboard = new LeaderboardIndex();
 
 	private File highscoresFile;
 	private File ticTacToeFile;
 	private File uuidsFile;
+	private StatColumnStore customStats;
 
 	private SaveTask saveTask;
 
-	public boolean uuidsNeedsUpdate = false;
-	public boolean ticTacToeNeedsUpdate = false;
-	public boolean highscoresNeedsUpdate = false;
+	private YmlJournal journal;
+	private final Set<UUID> dirty = ConcurrentHashMap.newKeySet();
+	private long lastCompaction = System.currentTimeMillis();
+
+	private final LatencyHistogram saveTimes = new LatencyHistogram();
+	private final LongAdder failedSaves = new LongAdder();
+	private volatile long lastSaveTime;
+
+	private volatile UUID[] exportOrder;
+
+	private final boolean caseInsensitiveNames = LobbyGames.instance.yml_caseInsensitiveNames;
+
+	public volatile boolean uuidsNeedsUpdate = false;
+	public volatile boolean ticTacToeNeedsUpdate = false;
+	public volatile boolean highscoresNeedsUpdate = false;
 
 	/**
 	 * Checks for the existence of tictactoe.yml, highscores.yml and uuids.yml
 	 * and creates them if they do not exist. Loads highscores, tic tac toe
-	 * stats and uuids into memory and starts a background task to save changes
-	 * every 30 seconds. Returns false if anything fails.
+	 * stats and uuids into memory, replays the journal if it is enabled and
+	 * starts a background task to save changes every 30 seconds. Returns
+	 * false if anything fails.
 	 *
 	 * @return whether it succeeded or not.
 	 */
 	@Override
 	public boolean initalize() {
 		if (!checkFiles()) return false;
-		if (!loadHighscores()) return false;
-		if (!loadTicTacToe()) return false;
+		if (!loadFiles()) return false;
+
+		if (LobbyGames.instance.yml_journal && !openJournal()) return false;
 
 		saveTask = new SaveTask(this, true);
 		saveTask.runTaskTimerAsynchronously(LobbyGames.instance, 600, 600);
 
-		return loadUUIDs();
+		return true;
 	}
 
 	/**
-	 * This method attempts to load the highscore information from
-	 * highscores.yml and returns whether the operation failed or succeeded.
+	 * Replays the changes recorded in the journal since the last snapshot and
+	 * opens it for appending.
 	 *
 	 * @return whether or not it was successful
 	 */
-	private boolean loadHighscores() {
-		try {
-			YamlConfiguration highscoresYML = new YamlConfiguration();
-			highscoresYML.load(highscoresFile);
-
-			for (String key : highscoresYML.getKeys(true)) {
-				UUID uuid = Utils.parseUUID(key);
-				if (uuid != null) {
-					int score = highscoresYML.getInt(key);
-					highscores.put(uuid, score);
+	private boolean openJournal() {
+		journal = new YmlJournal(LobbyGames.dataFolder);
+		if (!journal.replay(this::applyRow)) {
+			DatastoreLog.get().info("[LobbyGames] Could not read the journal.");
+			return false;
+		}
+
+		return journal.open();
+	}
+
+	/**
+	 * Puts a full player row from the journal back into memory, keeping the
+	 * name and leaderboard indexes in step.
+	 *
+	 * @param uuid player's UUID
+	 * @param name player's name or null
+	 * @param values every stat column for the player
+	 * @param present mask of the columns that have a value
+	 */
+	private void applyRow(UUID uuid, String name, int[] values, int present) {
+		for (int column = 0; column < PlayerStatTable.COLUMNS; column++) {
+			if (!PlayerStatTable.isPresent(present, column)) continue;
+
+			if (column == PlayerStatTable.HIGHSCORE) {
+				synchronized (leaderboard) {
+					long oldScore = stats.put(uuid, column, values[column]);
+					leaderboard.update(uuid, toInteger(oldScore), values[column]);
 				}
+			} else {
+				stats.put(uuid, column, values[column]);
 			}
-		} catch (Exception e) {
-			return false;
 		}
 
-		return true;
+		setName(uuid, name);
 	}
 
 	/**
-	 * This method attempts to load the UUID to username information from
-	 * uuids.yml and returns whether the operation failed or succeeded.
+	 * Loads highscores.yml, tictactoe.yml, uuids.yml and the registered stats
+	 * at the same time. Each file fills different columns of the stat table,
+	 * and the registered stats have a store of their own, so they don't get
+	 * in each other's way. Returns false if any of them failed.
 	 *
 	 * @return whether or not it was successful
 	 */
-	private boolean loadUUIDs() {
+	private boolean loadFiles() {
+		ExecutorService loader = Executors.newFixedThreadPool(4);
 		try {
-			YamlConfiguration uuidsYML = new YamlConfiguration();
-			uuidsYML.load(uuidsFile);
-
-			for (String key : uuidsYML.getKeys(true)) {
-				UUID uuid = Utils.parseUUID(key);
-				if (uuid != null) {
-					String name = uuidsYML.getString(key);
-					names.put(uuid, name);
-				}
-			}
-		} catch (Exception e) {
+			Future<Boolean> highscores = loader.submit(this::loadHighscores);
+			Future<Boolean> ticTacToe = loader.submit(this::loadTicTacToe);
+			Future<Boolean> names = loader.submit(this::loadUUIDs);
+			Future<Boolean> custom = loader.submit(customStats::load);
+
+			// wait for all of them so nothing is still loading if one failed
+			boolean highscoresLoaded = highscores.get();
+			boolean ticTacToeLoaded = ticTacToe.get();
+			boolean namesLoaded = names.get();
+			boolean customLoaded = custom.get();
+			return highscoresLoaded && ticTacToeLoaded && namesLoaded && customLoaded;
+		} catch (InterruptedException | ExecutionException e) {
 			return false;
+		} finally {
+			loader.shutdown();
 		}
-
-		return true;
 	}
 
 	/**
@@ -113,87 +156,166 @@ public class YmlDatastore extends Datastore {
 	 *
 	 * @return whether or not it was successful
 	 */
+	private boolean loadHighscores() {
+		return FlatYmlCodec.read(highscoresFile, (key, value) -> {
+			UUID uuid = Utils.parseUUID(key);
+			if (uuid == null) return;
+
+			try {
+				int score = Integer.parseInt(value);
+				long oldScore = stats.put(uuid, PlayerStatTable.HIGHSCORE, score);
+				leaderboard.update(uuid, toInteger(oldScore), score);
+			} catch (NumberFormatException e) {
+				String msg = "[LobbyGames] There was an error reading ";
+				msg = msg + key + " from highscores.yml.";
+				DatastoreLog.get().info(msg);
+			}
+		});
+	}
+
+	/**
+	 * This method attempts to load the UUID to username information from
+	 * uuids.yml and returns whether the operation failed or succeeded.
+	 *
+	 * @return whether or not it was successful
+	 */
+	private boolean loadUUIDs() {
+		return FlatYmlCodec.read(uuidsFile, (key, value) -> {
+			UUID uuid = Utils.parseUUID(key);
+			if (uuid != null) {
+				setName(uuid, value);
+			}
+		});
+	}
+
+	/**
+	 * This method attempts to load the tic tac toe information from
+	 * tictactoe.yml and returns whether the operation failed or succeeded.
+	 * Each value is stored as "wins-losses-ties".
+	 *
+	 * @return whether or not it was successful
+	 */
 	private boolean loadTicTacToe() {
-		try {
-			YamlConfiguration ticTacToeYML = new YamlConfiguration();
-			ticTacToeYML.load(ticTacToeFile);
-
-			for (String key : ticTacToeYML.getKeys(true)) {
-				UUID uuid = Utils.parseUUID(key);
-				if (uuid != null) {
-					// parse resulting wins and losses
-					boolean sucessfullyParsed = true;
-					String data = ticTacToeYML.getString(key);
-					String[] split = data.split("-");
-					int losses = 0;
-					int wins = 0;
-					int ties = 0;
-					if (split.length == 3) {
-						try {
-							wins = Integer.parseInt(split[0]);
-							losses = Integer.parseInt(split[1]);
-							ties = Integer.parseInt(split[2]);
-						} catch (NumberFormatException e) {
-							sucessfullyParsed = false;
-						}
-					} else {
-						sucessfullyParsed = false;
-					}
-
-					if (sucessfullyParsed) {
-						this.losses.put(uuid, losses);
-						this.wins.put(uuid, wins);
-						this.ties.put(uuid, ties);
-					} else {
-						String msg = "[LobbyGames] There was an error reading ";
-						msg = msg + key + " from tictactoe.yml.";
-						LobbyGames.instance.log.info(msg);
-					}
-				}
+		final int[] parsed = new int[3];
+
+		return FlatYmlCodec.read(ticTacToeFile, (key, value) -> {
+			UUID uuid = Utils.parseUUID(key);
+			if (uuid == null) return;
+
+			if (parseTicTacToe(value, parsed)) {
+				stats.put(uuid, PlayerStatTable.WINS, parsed[0]);
+				stats.put(uuid, PlayerStatTable.LOSSES, parsed[1]);
+				stats.put(uuid, PlayerStatTable.TIES, parsed[2]);
+			} else {
+				String msg = "[LobbyGames] There was an error reading ";
+				msg = msg + key + " from tictactoe.yml.";
+				DatastoreLog.get().info(msg);
+			}
+		});
+	}
+
+	/**
+	 * Parses a "wins-losses-ties" String into the provided array without
+	 * splitting it. Returns false if the String is not three whole numbers
+	 * separated by dashes.
+	 *
+	 * @param data the String to parse
+	 * @param parsed array of 3 to put wins, losses and ties in
+	 * @return whether it could be parsed
+	 */
+	private static boolean parseTicTacToe(String data, int[] parsed) {
+		int field = 0;
+		int value = 0;
+		boolean digits = false;
+
+		for (int i = 0; i < data.length(); i++) {
+			char c = data.charAt(i);
+			if (c >= '0' && c <= '9') {
+				value = value * 10 + (c - '0');
+				digits = true;
+			} else if (c == '-' && digits && field < 2) {
+				parsed[field++] = value;
+				value = 0;
+				digits = false;
+			} else {
+				return false;
 			}
-		} catch (Exception e) {
-			return false;
 		}
 
+		if (!digits || field != 2) return false;
+		parsed[2] = value;
 		return true;
 	}
 
 	/**
-	 * Helper method that attempts to get the UUID of a player from the HashMap
-	 * based on the provided name. Will return null if it could not find one.
+	 * Helper method that attempts to get the UUID of a player from the name
+	 * index based on the provided name. Will return null if it could not find
+	 * one.
 	 *
 	 * @param name the player name
-	 * @return the player's UUID based on the HashMap
+	 * @return the player's UUID based on the name index
 	 */
 	private UUID getUUID(String name) {
-		UUID uuid = null;
+		if (name == null) return null;
+		return uuids.get(nameKey(name));
+	}
 
-		if (names.containsValue(name)) {
-			for (UUID cUUID : names.keySet()) {
-				if (names.get(cUUID).equals(name)) {
-					uuid = cUUID;
-				}
-			}
+	/**
+	 * Helper method that records a player's name and keeps the name index in
+	 * step with it. If the player was known under a different name the old
+	 * name is removed from the index. If another update renamed the player
+	 * while this one ran, the name added here is taken back out again so two
+	 * updates for the same player can't leave a stale name behind.
+	 *
+	 * @param player the player's uuid
+	 * @param name the player's current name
+	 */
+	private void setName(UUID player, String name) {
+		if (name == null) return;
+
+		String oldName = stats.putName(player, name);
+		if (oldName != null && !oldName.equals(name)) {
+			uuids.remove(nameKey(oldName), player);
 		}
+		uuids.put(nameKey(name), player);
 
-		return uuid;
+		if (!name.equals(stats.getName(player))) {
+			uuids.remove(nameKey(name), player);
+		}
 	}
 
 	/**
-	 * Helper method that attempts to get the name of a player from the HashMap
-	 * based on the provided UUID. Will return null if it could not find one.
+	 * Returns the key a name is stored under in the name index. Names are
+	 * lower cased when case-insensitive names are enabled in the config.
+	 *
+	 * @param name the player name
+	 * @return the name index key
+	 */
+	private String nameKey(String name) {
+		return caseInsensitiveNames ? name.toLowerCase(Locale.ROOT) : name;
+	}
+
+	/**
+	 * Helper method that attempts to get the name of a player from the stat
+	 * table based on the provided UUID. Will return null if it could not find
+	 * one.
 	 *
 	 * @param uuid the player's uuid
-	 * @return the player's UUID based on the HashMap
+	 * @return the player's UUID based on the stat table
 	 */
 	private String getName(UUID uuid) {
-		String name = null;
-
-		if (names.containsKey(uuid)) {
-			name = names.get(uuid);
-		}
+		return stats.getName(uuid);
+	}
 
-		return name;
+	/**
+	 * Helper method that turns a value returned by the stat table into an
+	 * Integer, or null if the table had no value.
+	 *
+	 * @param value the value from the stat table
+	 * @return the value or null
+	 */
+	private static Integer toInteger(long value) {
+		return value == PlayerStatTable.NO_VALUE ? null : (int) value;
 	}
 
 	/**
@@ -226,6 +348,9 @@ public class YmlDatastore extends Datastore {
 			}
 		}
 
+		// registered stats are kept one file per stat in their own folder
+		customStats = new StatColumnStore(new File(LobbyGames.dataFolder, "stats"));
+
 		// create UUID's file
 		path = LobbyGames.dataFolder.toString() + File.separator + "uuids.yml";
 		uuidsFile = new File(path);
@@ -245,18 +370,17 @@ public class YmlDatastore extends Datastore {
 	 */
 	@Override
 	public boolean updateHighscore(UUID player, String name, int score) {
-		if (highscores.containsKey(player)) {
-			highscores.remove(player);
+		// the map and the index have to change together
+		synchronized (leaderboard) {
+			long oldScore = stats.put(player, PlayerStatTable.HIGHSCORE, score);
+			leaderboard.update(player, toInteger(oldScore), score);
 		}
-		highscores.put(player, score);
 
-		if (names.containsKey(player)) {
-			names.remove(player);
-		}
-		names.put(player, name);
+		setName(player, name);
 
 		highscoresNeedsUpdate = true;
 		uuidsNeedsUpdate = true;
+		dirty.add(player);
 
 		return true;
 	}
@@ -266,11 +390,7 @@ public class YmlDatastore extends Datastore {
 	 */
 	@Override
 	public int getHighscore(UUID player) {
-		if (highscores.containsKey(player)) {
-			return highscores.get(player);
-		} else {
-			return 0;
-		}
+		return stats.get(player, PlayerStatTable.HIGHSCORE);
 	}
 
 	/**
@@ -292,51 +412,63 @@ public class YmlDatastore extends Datastore {
 	 * This method creates a String with the leaderboard of highscores in 2048.
 	 * Each entry is separated by a greater than sign (>) and each the username
 	 * and score is separated by a comma (,). There will be a max of 10 entries
-	 * returned.
+	 * returned. Players that share a score are listed in the same entry
+	 * separated by an ampersand (&). The scores are read from the leaderboard
+	 * index so nothing needs to be sorted or scanned here.
 	 *
 	 * @return the scoreboard String
 	 */
 	@Override
 	public String getLeaderboard() {
-		if (highscores.size() < 1) {
-			return "";
+		StringBuilder builder = new StringBuilder();
+
+		for (LeaderboardIndex.ScoreGroup group : leaderboard.getTop(10)) {
+			builder.append(">");
+			for (int i = 0; i < group.getPlayers().size(); i++) {
+				if (i > 0) builder.append(" & ");
+				builder.append(getName(group.getPlayers().get(i)));
+			}
+			builder.append(",");
+			builder.append(group.getScore());
 		}
 
-		String leaderboard = "";
-		List<Integer> list = new ArrayList<Integer>(highscores.values());
-		Collections.sort(list, Collections.reverseOrder());
+		String leaderboard = builder.toString();
+		if (leaderboard.length() > 0) leaderboard = leaderboard.substring(1);
+		return leaderboard;
+	}
 
-		List<Integer> sortedList;
-		if (list.size() < 10) {
+	/**
+	 * Reads the page straight out of the leaderboard index, which finds the
+	 * offset in O(log n) without walking the players before it.
+	 *
+	 * @see Datastore#getLeaderboardPage(int, int)
+	 */
+	@Override
+	public List<LeaderboardEntry> getLeaderboardPage(int offset, int limit) {
+		List<LeaderboardEntry> page = new ArrayList<>();
 
-			sortedList = list.subList(0, list.size());
-		} else {
-			sortedList = list.subList(0, 9);
+		for (LeaderboardIndex.Entry entry : leaderboard.getPage(offset, limit)) {
+			page.add(new LeaderboardEntry(entry.getRank(), entry.getPlayer(),
+					getName(entry.getPlayer()), entry.getScore()));
 		}
 
-		for (int i = 0; i < sortedList.size(); i++) {
-			int score = sortedList.get(i);
+		return page;
+	}
 
-			if ((Utils.countOfValue(sortedList, score) > 1 &&
-					!leaderboard.contains(score + "")) ||
-					Utils.countOfValue(sortedList, score) == 1) {
-				// get the list of people with that score
-				String pName = "";
-				for (UUID uuid : highscores.keySet()) {
-					if (highscores.get(uuid) == score) {
-						pName = pName + " & " + getName(uuid);
-					}
-				}
-				if (pName.length() > 2) {
-					pName = pName.substring(3);
-				}
+	/**
+	 * Counts the players above the player's score in the leaderboard index
+	 * in O(log n).
+	 *
+	 * @see Datastore#getRank(UUID)
+	 */
+	@Override
+	public int getRank(UUID player) {
+		// read under the index lock so the score and the index agree
+		synchronized (leaderboard) {
+			if (!stats.has(player, PlayerStatTable.HIGHSCORE)) return 0;
 
-				leaderboard = leaderboard + ">" + pName + "," + score;
-			}
+			return leaderboard.getRank(stats.get(player, PlayerStatTable.HIGHSCORE));
 		}
-
-		if (leaderboard.length() > 0) leaderboard = leaderboard.substring(1);
-		return leaderboard;
 	}
 
 	/**
@@ -344,18 +476,13 @@ public class YmlDatastore extends Datastore {
 	 */
 	@Override
 	public boolean updateTicTacToeWins(UUID player, String name, int value) {
-		if (wins.containsKey(player)) {
-			wins.remove(player);
-		}
-		wins.put(player, value);
+		stats.put(player, PlayerStatTable.WINS, value);
 
-		if (names.containsKey(player)) {
-			names.remove(player);
-		}
-		names.put(player, name);
+		setName(player, name);
 
 		ticTacToeNeedsUpdate = true;
 		uuidsNeedsUpdate = true;
+		dirty.add(player);
 
 		return true;
 	}
@@ -365,11 +492,7 @@ public class YmlDatastore extends Datastore {
 	 */
 	@Override
 	public int getTicTacToeWins(UUID player) {
-		if (wins.containsKey(player)) {
-			return wins.get(player);
-		} else {
-			return 0;
-		}
+		return stats.get(player, PlayerStatTable.WINS);
 	}
 
 	/**
@@ -391,36 +514,95 @@ public class YmlDatastore extends Datastore {
 	 */
 	@Override
 	public boolean updateTicTacToeLosses(UUID player, String name, int value) {
-		if (losses.containsKey(player)) {
-			losses.remove(player);
-		}
-		losses.put(player, value);
+		stats.put(player, PlayerStatTable.LOSSES, value);
 
-		if (names.containsKey(player)) {
-			names.remove(player);
-		}
-		names.put(player, name);
+		setName(player, name);
 
 		ticTacToeNeedsUpdate = true;
 		uuidsNeedsUpdate = true;
+		dirty.add(player);
 
 		return true;
 	}
 
 	@Override
 	public boolean updateTicTacToeTies(UUID player, String name, int value) {
-		if (ties.containsKey(player)) {
-			ties.remove(player);
-		}
-		ties.put(player, value);
+		stats.put(player, PlayerStatTable.TIES, value);
 
-		if (names.containsKey(player)) {
-			names.remove(player);
+		setName(player, name);
+
+		ticTacToeNeedsUpdate = true;
+		uuidsNeedsUpdate = true;
+		dirty.add(player);
+
+		return true;
+	}
+
+	/**
+	 * Keeps the higher of the stored and submitted score. The stat table
+	 * makes the comparison atomically and the leaderboard lock keeps the
+	 * index in step, so concurrent submissions never lose the best score.
+	 *
+	 * @see Datastore#submitHighscore(UUID, String, int)
+	 */
+	@Override
+	public boolean submitHighscore(UUID player, String name, int score) {
+		synchronized (leaderboard) {
+			long oldScore = stats.max(player, PlayerStatTable.HIGHSCORE, score);
+			if (oldScore == PlayerStatTable.NO_VALUE || score > oldScore) {
+				leaderboard.update(player, toInteger(oldScore), score);
+			}
 		}
-		names.put(player, name);
+		setName(player, name);
+
+		highscoresNeedsUpdate = true;
+		uuidsNeedsUpdate = true;
+		dirty.add(player);
+
+		return true;
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeWins(UUID, String, int)
+	 */
+	@Override
+	public boolean incrementTicTacToeWins(UUID player, String name, int delta) {
+		stats.add(player, PlayerStatTable.WINS, delta);
+		setName(player, name);
 
 		ticTacToeNeedsUpdate = true;
 		uuidsNeedsUpdate = true;
+		dirty.add(player);
+
+		return true;
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeLosses(UUID, String, int)
+	 */
+	@Override
+	public boolean incrementTicTacToeLosses(UUID player, String name, int delta) {
+		stats.add(player, PlayerStatTable.LOSSES, delta);
+		setName(player, name);
+
+		ticTacToeNeedsUpdate = true;
+		uuidsNeedsUpdate = true;
+		dirty.add(player);
+
+		return true;
+	}
+
+	/**
+	 * @see Datastore#incrementTicTacToeTies(UUID, String, int)
+	 */
+	@Override
+	public boolean incrementTicTacToeTies(UUID player, String name, int delta) {
+		stats.add(player, PlayerStatTable.TIES, delta);
+		setName(player, name);
+
+		ticTacToeNeedsUpdate = true;
+		uuidsNeedsUpdate = true;
+		dirty.add(player);
 
 		return true;
 	}
@@ -430,11 +612,7 @@ public class YmlDatastore extends Datastore {
 	 */
 	@Override
 	public int getTicTacToeLosses(UUID player) {
-		if (losses.containsKey(player)) {
-			return losses.get(player);
-		} else {
-			return 0;
-		}
+		return stats.get(player, PlayerStatTable.LOSSES);
 	}
 
 	/**
@@ -456,11 +634,7 @@ public class YmlDatastore extends Datastore {
 	 */
 	@Override
 	public int getTicTacToeTies(UUID player) {
-		if (ties.containsKey(player)) {
-			return ties.get(player);
-		} else {
-			return 0;
-		}
+		return stats.get(player, PlayerStatTable.TIES);
 	}
 
 	/**
@@ -478,6 +652,32 @@ public class YmlDatastore extends Datastore {
 	}
 
 
+	/**
+	 * Copies the player's whole row out of the stat table in one lookup.
+	 *
+	 * @see Datastore#getProfile(UUID)
+	 */
+	@Override
+	public PlayerStats getProfile(UUID player) {
+		int[] values = new int[PlayerStatTable.COLUMNS];
+		if (stats.getRow(player, values) < 0) {
+			return new PlayerStats(player, null, 0, 0, 0, 0);
+		}
+
+		return new PlayerStats(player, stats.getName(player), values[PlayerStatTable.HIGHSCORE],
+				values[PlayerStatTable.WINS], values[PlayerStatTable.LOSSES],
+				values[PlayerStatTable.TIES]);
+	}
+
+	/**
+	 * @see Datastore#getProfile(String)
+	 */
+	@Override
+	public PlayerStats getProfile(String name) {
+		UUID uuid = getUUID(name);
+		return uuid == null ? null : getProfile(uuid);
+	}
+
 	/**
 	 * Simple method that handles cleanup for the YMLDatastore by saving
 	 * everything to disk.
@@ -485,10 +685,124 @@ public class YmlDatastore extends Datastore {
 	@Override
 	public void onDisable() {
 		String msg = "Saving data to disk...";
-		LobbyGames.instance.log.info(msg);
+		DatastoreLog.get().info(msg);
 		saveTask.cancel();
 		saveTask = new SaveTask(this, false);
 		saveTask.run();
+
+		if (journal != null) {
+			journal.close();
+		}
+	}
+
+	/**
+	 * @see Datastore#readCustomStats(Collection, List)
+	 */
+	@Override
+	protected Map<UUID, int[]> readCustomStats(Collection<UUID> players, List<StatKey> stats) {
+		return customStats.read(players, stats);
+	}
+
+	/**
+	 * Names are kept in the stat table with the built-in stats, so they are
+	 * saved and journaled the same way.
+	 *
+	 * @see Datastore#writeCustomStats(List)
+	 */
+	@Override
+	protected boolean writeCustomStats(List<StatBatch.Op> ops) {
+		customStats.write(ops);
+
+		for (StatBatch.Op op : ops) {
+			if (op.getName() != null) {
+				setName(op.getPlayer(), op.getName());
+				uuidsNeedsUpdate = true;
+				dirty.add(op.getPlayer());
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Players are returned in UUID order. The order is taken from a snapshot
+	 * when the export starts, or when it is resumed after a restart, and
+	 * reused for every page after that so each page only has to find its
+	 * starting point. Players added after the snapshot aren't exported.
+	 *
+	 * @see Datastore#exportPlayers(UUID, int)
+	 */
+	@Override
+	public List<PlayerRecord> exportPlayers(UUID after, int limit) {
+		UUID[] order = exportOrder;
+		if (after == null || order == null) {
+			List<UUID> players = new ArrayList<>(stats.size());
+			stats.forEach((uuid, name, values, present) -> players.add(uuid));
+			order = players.toArray(new UUID[players.size()]);
+			Arrays.sort(order);
+			exportOrder = order;
+		}
+
+		int start = 0;
+		if (after != null) {
+			int index = Arrays.binarySearch(order, after);
+			start = index >= 0 ? index + 1 : -index - 1;
+		}
+
+		List<PlayerRecord> page = new ArrayList<>();
+		int[] values = new int[PlayerStatTable.COLUMNS];
+		for (int i = start; i < order.length && page.size() < limit; i++) {
+			UUID player = order[i];
+			int present = stats.getRow(player, values);
+			if (present < 0) continue;
+
+			boolean highscore = PlayerStatTable.isPresent(present, PlayerStatTable.HIGHSCORE);
+			// tictactoe.yml has a line for every player with a name
+			boolean ticTacToe = stats.getName(player) != null
+					|| PlayerStatTable.isPresent(present, PlayerStatTable.WINS)
+					|| PlayerStatTable.isPresent(present, PlayerStatTable.LOSSES)
+					|| PlayerStatTable.isPresent(present, PlayerStatTable.TIES);
+			page.add(new PlayerRecord(player, stats.getName(player),
+					highscore ? values[PlayerStatTable.HIGHSCORE] : null, ticTacToe,
+					values[PlayerStatTable.WINS], values[PlayerStatTable.LOSSES],
+					values[PlayerStatTable.TIES]));
+		}
+
+		if (page.isEmpty()) exportOrder = null;
+		return page;
+	}
+
+	/**
+	 * Puts each record into memory the same way a journal row is replayed,
+	 * and saves them with the next background save.
+	 *
+	 * @see Datastore#importPlayers(List)
+	 */
+	@Override
+	public boolean importPlayers(List<PlayerRecord> players) {
+		int[] values = new int[PlayerStatTable.COLUMNS];
+
+		for (PlayerRecord record : players) {
+			int present = 0;
+			if (record.getHighscore() != null) {
+				values[PlayerStatTable.HIGHSCORE] = record.getHighscore();
+				present |= 1 << PlayerStatTable.HIGHSCORE;
+			}
+			if (record.hasTicTacToe()) {
+				values[PlayerStatTable.WINS] = record.getTicTacToeWins();
+				values[PlayerStatTable.LOSSES] = record.getTicTacToeLosses();
+				values[PlayerStatTable.TIES] = record.getTicTacToeTies();
+				present |= 1 << PlayerStatTable.WINS | 1 << PlayerStatTable.LOSSES | 1 << PlayerStatTable.TIES;
+			}
+
+			applyRow(record.getUUID(), record.getName(), values, present);
+			dirty.add(record.getUUID());
+		}
+
+		highscoresNeedsUpdate = true;
+		ticTacToeNeedsUpdate = true;
+		uuidsNeedsUpdate = true;
+		return true;
 	}
 
 	/**
@@ -504,125 +818,215 @@ public class YmlDatastore extends Datastore {
 	}
 
 	/**
-	 * The goal of this method is to save all data to disk from the HashMaps
-	 * and return whether or not it was successful.
+	 * Adds how long saves take, how many failed and how much is waiting to
+	 * be saved.
 	 *
-	 * @param flag whether it should be saved regardless of anything being
-	 *             updated
+	 * @see Datastore#collectGauges(List)
+	 */
+	@Override
+	public void collectGauges(List<DatastoreMetrics.Gauge> gauges) {
+		int dirtyFiles = (uuidsNeedsUpdate ? 1 : 0) + (highscoresNeedsUpdate ? 1 : 0)
+				+ (ticTacToeNeedsUpdate ? 1 : 0) + customStats.getDirtyCount();
+
+		gauges.add(DatastoreMetrics.Gauge.of("yml_players",
+				"Players kept in memory.", stats.size()));
+		gauges.add(DatastoreMetrics.Gauge.of("yml_dirty_players",
+				"Players changed since the last save.", dirty.size()));
+		gauges.add(DatastoreMetrics.Gauge.of("yml_dirty_files",
+				"Files with changes that are not saved yet.", dirtyFiles));
+		gauges.add(DatastoreMetrics.Gauge.counter("yml_saves_total",
+				"Background and shutdown saves.", saveTimes.getCount()));
+		gauges.add(DatastoreMetrics.Gauge.counter("yml_failed_saves_total",
+				"Saves where at least one file could not be written.", failedSaves.sum()));
+		gauges.add(DatastoreMetrics.Gauge.of("yml_save_last_seconds",
+				"How long the last save took.", lastSaveTime / 1e9));
+		gauges.add(DatastoreMetrics.Gauge.of("yml_save_p99_seconds",
+				"99th percentile save time.", saveTimes.getPercentile(0.99) / 1e9));
+		gauges.add(DatastoreMetrics.Gauge.of("yml_save_max_seconds",
+				"Longest save.", saveTimes.getMax() / 1e9));
+	}
+
+	/**
+	 * The goal of this method is to save all data to disk from the stat table
+	 * and return whether or not it was successful. Every file is written from
+	 * the same point-in-time snapshot, so updates made while saving neither
+	 * wait for the save nor end up in only some of the files.
+	 *
+	 * @param flag whether it should only save what has been updated
 	 * @return whether or not the save was successful
 	 *
 	 */
 	private boolean save(boolean flag) {
-		if (uuidsNeedsUpdate || !flag) {
-			if (!saveUUIDs()) {
-				return false;
+		boolean saveUUIDs = uuidsNeedsUpdate || !flag;
+		boolean saveHighscores = highscoresNeedsUpdate || !flag;
+		boolean saveTicTacToe = ticTacToeNeedsUpdate || !flag;
+
+		// cleared before the snapshot so anything changed after it is saved next time
+		if (saveUUIDs) uuidsNeedsUpdate = false;
+		if (saveHighscores) highscoresNeedsUpdate = false;
+		if (saveTicTacToe) ticTacToeNeedsUpdate = false;
+
+		PlayerStatTable.Snapshot snapshot = stats.snapshot();
+		boolean success = false;
+		try {
+			success = (!saveUUIDs || saveUUIDs(snapshot))
+					&& (!saveHighscores || saveHighscores(snapshot))
+					&& (!saveTicTacToe || saveTicTacToe(snapshot));
+		} finally {
+			snapshot.release();
+
+			if (!success) {
+				// try again on the next run
+				if (saveUUIDs) uuidsNeedsUpdate = true;
+				if (saveHighscores) highscoresNeedsUpdate = true;
+				if (saveTicTacToe) ticTacToeNeedsUpdate = true;
 			}
 		}
 
-		if (highscoresNeedsUpdate || !flag) {
-			if (!saveHighscores()) {
-				return false;
-			}
+		return success;
+	}
+
+	/**
+	 * Saves any changes to disk. Without the journal this is the same as
+	 * save(flag). With the journal, only the players that changed since the
+	 * last run are appended to it and a full snapshot is only written every
+	 * compaction interval, or right away if everything has to be saved.
+	 *
+	 * @param flag whether it should only save what has been updated
+	 * @return whether or not the save was successful
+	 */
+	private synchronized boolean persist(boolean flag) {
+		// registered stats aren't journaled, only the stats that changed are rewritten
+		boolean customSaved = customStats.save(flag);
+
+		if (journal == null) {
+			// only the journal needs to know who changed, this just keeps the count right
+			dirty.clear();
+			return save(flag) && customSaved;
+		}
+
+		long interval = LobbyGames.instance.yml_compactionInterval * 1000L;
+		if (!flag || System.currentTimeMillis() - lastCompaction >= interval) {
+			return compact() && customSaved;
 		}
 
-		if (ticTacToeNeedsUpdate || !flag) {
-			if (!saveTicTacToe()) {
+		return appendDirty() && customSaved;
+	}
+
+	/**
+	 * Appends the full row of every player that changed since the last call
+	 * to the journal and forces it to disk. Players are only forgotten once
+	 * their records are safely written.
+	 *
+	 * @return whether or not it was successful
+	 */
+	private boolean appendDirty() {
+		int[] values = new int[PlayerStatTable.COLUMNS];
+		List<UUID> appended = new ArrayList<>();
+
+		Iterator<UUID> iterator = dirty.iterator();
+		while (iterator.hasNext()) {
+			UUID player = iterator.next();
+			// removed before reading so a change made meanwhile marks it again
+			iterator.remove();
+			appended.add(player);
+
+			int present = stats.getRow(player, values);
+			if (present < 0) continue;
+
+			if (!journal.append(player, stats.getName(player), values, present)) {
+				dirty.addAll(appended);
 				return false;
 			}
 		}
 
+		if (!journal.sync()) {
+			dirty.addAll(appended);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Folds the journal into a new snapshot. The journal is rotated first so
+	 * changes made while the snapshot is written still go to a fresh
+	 * journal, and the rotated journal is only deleted once the snapshot has
+	 * been saved.
+	 *
+	 * @return whether or not it was successful
+	 */
+	private boolean compact() {
+		if (!appendDirty()) return false;
+		if (!journal.rotate()) return false;
+		if (!save(false)) return false;
+
+		journal.finishCompaction();
+		lastCompaction = System.currentTimeMillis();
 		return true;
 	}
 
 	/**
 	 * Saves all the UUIDs and their corresponding names to uuids.yml based on
-	 * the contents of the hashmaps. Returns false if an exception occurred,
+	 * the contents of the snapshot. Returns false if an exception occurred,
 	 * true otherwise.
 	 *
+	 * @param snapshot the stat table snapshot to save
 	 * @return whether the operation was successful or not
 	 */
-	private boolean saveUUIDs() {
-		try {
-			YamlConfiguration uuidsYML = new YamlConfiguration();
-			uuidsYML.load(uuidsFile);
+	private boolean saveUUIDs(PlayerStatTable.Snapshot snapshot) {
+		final FlatYmlCodec.Writer writer = FlatYmlCodec.write(uuidsFile);
 
-			for (UUID uuid : names.keySet()) {
-				String name = names.get(uuid);
-				if (name != null) {
-					uuidsYML.set(uuid.toString(), name);
-				}
+		snapshot.forEach((uuid, name, values, present) -> {
+			if (name != null) {
+				writer.write(uuid.toString(), name);
 			}
+		});
 
-			uuidsYML.save(uuidsFile);
-		} catch (Exception e) {
-			return false;
-		}
-
-		return true;
+		return writer.commit();
 	}
 
 	/**
 	 * Saves all the highscores in 2048 with the player's corresponding UUID in
-	 * highscores.yml based on the contents of the hashmaps. Returns false if
+	 * highscores.yml based on the contents of the snapshot. Returns false if
 	 * an exception occured and true if there were no problems.
 	 *
+	 * @param snapshot the stat table snapshot to save
 	 * @return whether or not it was successful
 	 */
-	private boolean saveHighscores() {
-		try {
-			YamlConfiguration highscoresYML = new YamlConfiguration();
-			highscoresYML.load(highscoresFile);
+	private boolean saveHighscores(PlayerStatTable.Snapshot snapshot) {
+		final FlatYmlCodec.Writer writer = FlatYmlCodec.write(highscoresFile);
 
-			for (UUID uuid : highscores.keySet()) {
-				int highscore = highscores.get(uuid);
-				highscoresYML.set(uuid.toString(), highscore);
+		snapshot.forEach((uuid, name, values, present) -> {
+			if (PlayerStatTable.isPresent(present, PlayerStatTable.HIGHSCORE)) {
+				writer.write(uuid.toString(), values[PlayerStatTable.HIGHSCORE]);
 			}
+		});
 
-			highscoresYML.save(highscoresFile);
-		} catch (Exception e) {
-			return false;
-		}
-
-		return true;
+		return writer.commit();
 	}
 
 	/**
-	 * Saves the the tic tac toe wins and losses from HashMaps to the
+	 * Saves the the tic tac toe wins and losses from the snapshot to the
 	 * tictactoe.yml file.
 	 *
+	 * @param snapshot the stat table snapshot to save
 	 * @return whether or not it was successful
 	 */
-	private boolean saveTicTacToe() {
-		try {
-			YamlConfiguration ticTacToeYML = new YamlConfiguration();
-			ticTacToeYML.load(ticTacToeFile);
-
-			for (UUID uuid : names.keySet()) {
-				int wins = 0;
-				int losses = 0;
-				int ties = 0;
-
-				if (this.wins.get(uuid) != null) {
-					wins = this.wins.get(uuid);
-				}
-				if (this.losses.get(uuid) != null) {
-					losses = this.losses.get(uuid);
-				}
-				if (this.ties.get(uuid) != null) {
-					ties = this.ties.get(uuid);
-				}
-
-				String str = wins + "-" + losses + "-" + ties;
-				ticTacToeYML.set(uuid.toString(), str);
+	private boolean saveTicTacToe(PlayerStatTable.Snapshot snapshot) {
+		final FlatYmlCodec.Writer writer = FlatYmlCodec.write(ticTacToeFile);
+
+		snapshot.forEach((uuid, name, values, present) -> {
+			if (name != null) {
+				// missing stats are stored as 0
+				String str = values[PlayerStatTable.WINS] + "-"
+						+ values[PlayerStatTable.LOSSES] + "-"
+						+ values[PlayerStatTable.TIES];
+				writer.write(uuid.toString(), str);
 			}
+		});
 
-			ticTacToeYML.save(ticTacToeFile);
-		} catch (Exception e) {
-			e.printStackTrace();
-			return false;
-		}
-
-		return true;
+		return writer.commit();
 	}
 
 	/**
@@ -644,7 +1048,13 @@ public class YmlDatastore extends Datastore {
 		}
 
 		public void run() {
-			storage.save(onlySaveIfUpdated);
+			long start = System.nanoTime();
+			boolean success = storage.persist(onlySaveIfUpdated);
+			long time = System.nanoTime() - start;
+
+			storage.saveTimes.record(time);
+			storage.lastSaveTime = time;
+			if (!success) storage.failedSaves.increment();
 		}
 	}
 }
@@ -0,0 +1,209 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import net.richardsprojects.plugins.lobbygames.Utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * An append-only journal of changed player rows for YmlDatastore. Instead
+ * of rewriting every yml file when a few players change, only the changed
+ * rows are appended here. Each record holds the player's full row, so
+ * replaying the journal over the last snapshot is idempotent and the last
+ * record for a player always wins.
+ *
+ * During compaction the journal is rotated to a separate file while a new
+ * snapshot is written. That file is only deleted once the snapshot has been
+ * saved, so a crash mid-compaction never loses changes.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class YmlJournal {
+
+	private final File journalFile;
+	private final File compactingFile;
+
+	private FileOutputStream out;
+	private BufferedWriter writer;
+
+	/**
+	 * Creates a journal that lives in the provided folder. Nothing is opened
+	 * until open() is called.
+	 *
+	 * @param folder the plugin's data folder
+	 */
+	public YmlJournal(File folder) {
+		journalFile = new File(folder, "journal.log");
+		compactingFile = new File(folder, "journal.compacting.log");
+	}
+
+	/**
+	 * Opens the journal for appending, creating it if it does not exist.
+	 *
+	 * @return whether the journal could be opened
+	 */
+	public synchronized boolean open() {
+		try {
+			out = new FileOutputStream(journalFile, true);
+			writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Replays every record in the journal, oldest first, including any left
+	 * over from a compaction that did not finish.
+	 *
+	 * @param visitor called once per record
+	 * @return whether the journal could be read
+	 */
+	public synchronized boolean replay(PlayerStatTable.RowVisitor visitor) {
+		return replay(compactingFile, visitor) && replay(journalFile, visitor);
+	}
+
+	/**
+	 * Adds a player's full row to the journal. The record is buffered until
+	 * sync() is called.
+	 *
+	 * @param player player's UUID
+	 * @param name player's name or null
+	 * @param values every stat column for the player
+	 * @param present mask of the columns that have a value
+	 * @return whether the record could be written
+	 */
+	public synchronized boolean append(UUID player, String name, int[] values, int present) {
+		try {
+			writer.write(player.toString());
+			writer.write('\t');
+			writer.write(Integer.toString(present));
+			for (int value : values) {
+				writer.write('\t');
+				writer.write(Integer.toString(value));
+			}
+			writer.write('\t');
+			if (name != null) writer.write(name);
+			writer.write('\n');
+		} catch (IOException e) {
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Writes every buffered record and forces it to disk.
+	 *
+	 * @return whether the records were written
+	 */
+	public synchronized boolean sync() {
+		try {
+			writer.flush();
+			out.getFD().sync();
+		} catch (IOException e) {
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Moves the current journal aside so a new snapshot can be written while
+	 * new changes go to a fresh journal. If an earlier compaction did not
+	 * finish, the current journal is added to the end of the one it left
+	 * behind instead.
+	 *
+	 * @return whether the journal was rotated
+	 */
+	public synchronized boolean rotate() {
+		if (!sync()) return false;
+		close();
+
+		try {
+			if (compactingFile.exists()) {
+				Files.write(compactingFile.toPath(), Files.readAllBytes(journalFile.toPath()),
+						StandardOpenOption.APPEND);
+				Files.delete(journalFile.toPath());
+			} else if (!journalFile.renameTo(compactingFile)) {
+				open();
+				return false;
+			}
+		} catch (IOException e) {
+			open();
+			return false;
+		}
+
+		return open();
+	}
+
+	/**
+	 * Deletes the rotated journal once its changes are part of the snapshot.
+	 */
+	public synchronized void finishCompaction() {
+		if (compactingFile.exists() && !compactingFile.delete()) {
+			String msg = "[LobbyGames] Could not delete " + compactingFile.getName();
+			DatastoreLog.get().info(msg);
+		}
+	}
+
+	/**
+	 * Closes the journal without deleting anything.
+	 */
+	public synchronized void close() {
+		if (writer != null) try { writer.close(); } catch (IOException ignored) {}
+		writer = null;
+		out = null;
+	}
+
+	private boolean replay(File file, PlayerStatTable.RowVisitor visitor) {
+		if (!file.exists()) return true;
+
+		int[] values = new int[PlayerStatTable.COLUMNS];
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// uuid, present mask, one field per column and the name
+				String[] split = line.split("\t", -1);
+				if (split.length != PlayerStatTable.COLUMNS + 3) {
+					// most likely the last record of a crash, skip it
+					String msg = "[LobbyGames] Skipping a damaged record in " + file.getName();
+					DatastoreLog.get().info(msg);
+					continue;
+				}
+
+				UUID player = Utils.parseUUID(split[0]);
+				if (player == null) continue;
+
+				try {
+					int present = Integer.parseInt(split[1]);
+					for (int column = 0; column < PlayerStatTable.COLUMNS; column++) {
+						values[column] = Integer.parseInt(split[column + 2]);
+					}
+					String name = split[PlayerStatTable.COLUMNS + 2];
+					visitor.visit(player, name.isEmpty() ? null : name, values, present);
+				} catch (NumberFormatException e) {
+					String msg = "[LobbyGames] Skipping a damaged record in " + file.getName();
+					DatastoreLog.get().info(msg);
+				}
+			}
+		} catch (IOException e) {
+			return false;
+		}
+
+		return true;
+	}
+}
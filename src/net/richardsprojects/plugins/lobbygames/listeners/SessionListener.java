@@ -0,0 +1,38 @@
+package net.richardsprojects.plugins.lobbygames.listeners;
+
+import net.richardsprojects.plugins.lobbygames.datastore.SessionDatastore;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Opens a stat session when a player joins and closes it when they quit.
+ * Loading and flushing happen in the background, so neither event waits on
+ * the datastore.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class SessionListener implements Listener {
+
+	private final SessionDatastore sessions;
+
+	public SessionListener(SessionDatastore sessions) {
+		this.sessions = sessions;
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onPlayerJoin(PlayerJoinEvent e) {
+		Player player = e.getPlayer();
+		sessions.open(player.getUniqueId(), player.getName());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onPlayerQuit(PlayerQuitEvent e) {
+		sessions.close(e.getPlayer().getUniqueId());
+	}
+}
@@ -0,0 +1,152 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that DatastoreMigrator copies every player, saves how far it got
+ * and carries on from there after a failure.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class DatastoreMigratorTest {
+
+	/** More than three of the migrator's pages of 1000 players. */
+	private static final int PLAYERS = 3500;
+
+	private File folder;
+	private File progress;
+	private MemoryDatastore source;
+	private MemoryDatastore target;
+	private final List<String> messages = new ArrayList<>();
+
+	@Before
+	public void setUp() throws IOException {
+		folder = Files.createTempDirectory("migration").toFile();
+		progress = new File(folder, "migration-yml-mysql.properties");
+
+		source = new MemoryDatastore();
+		target = new MemoryDatastore();
+
+		Random random = new Random(3);
+		for (int i = 0; i < PLAYERS; i++) {
+			UUID player = new UUID(random.nextLong(), random.nextLong());
+			String name = "player" + i;
+			if (i % 3 != 0) source.updateHighscore(player, name, random.nextInt(100000));
+			if (i % 3 != 1) {
+				source.updateTicTacToeWins(player, name, random.nextInt(50));
+				source.updateTicTacToeLosses(player, name, random.nextInt(50));
+				source.updateTicTacToeTies(player, name, random.nextInt(50));
+			}
+		}
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				child.delete();
+			}
+		}
+		folder.delete();
+	}
+
+	@Test
+	public void copiesAndVerifiesEveryPlayer() {
+		assertTrue(migrator().run(false));
+
+		assertEquals(PLAYERS, target.size());
+		assertEquals(PLAYERS, target.getImportedPlayers());
+		assertFalse("the progress file is deleted once done", progress.exists());
+		assertTrue(messages.contains("Migration complete, both datastores match."));
+	}
+
+	@Test
+	public void savesProgressAndResumesAfterAFailure() throws IOException {
+		target.failImportsAfter(2);
+		assertFalse(migrator().run(false));
+
+		// only whole pages are saved, and only the ones before the failed page
+		Properties saved = readProgress();
+		assertEquals("2000", saved.getProperty("players"));
+		UUID after = UUID.fromString(saved.getProperty("after"));
+		assertEquals(source.exportPlayers(null, 2000).get(1999).getUUID(), after);
+		assertEquals(2000, target.getImportedPlayers());
+
+		target.failImportsAfter(Integer.MAX_VALUE);
+		assertTrue(migrator().run(false));
+
+		// the second run only wrote the players after the saved position
+		assertEquals(PLAYERS, target.getImportedPlayers());
+		assertEquals(PLAYERS, target.size());
+		assertFalse(progress.exists());
+		assertTrue(messages.contains("Resuming after " + after + " with 2000 players already copied."));
+	}
+
+	@Test
+	public void restartIgnoresTheSavedProgress() {
+		target.failImportsAfter(1);
+		assertFalse(migrator().run(false));
+		assertTrue(progress.exists());
+
+		target.failImportsAfter(Integer.MAX_VALUE);
+		assertTrue(migrator().run(true));
+
+		assertEquals(1000 + PLAYERS, target.getImportedPlayers());
+		assertFalse(progress.exists());
+	}
+
+	@Test
+	public void unreadableProgressStartsFromTheBeginning() throws IOException {
+		Files.write(progress.toPath(), "after=not-a-uuid\nplayers=12\n".getBytes("ISO-8859-1"));
+
+		assertTrue(migrator().run(false));
+		assertEquals(PLAYERS, target.getImportedPlayers());
+	}
+
+	@Test
+	public void verificationFindsADifference() {
+		// a player without a highscore doesn't overwrite the one the target already has
+		PlayerRecord noHighscore = null;
+		for (PlayerRecord record : source.exportPlayers(null, PLAYERS)) {
+			if (record.getHighscore() == null) {
+				noHighscore = record;
+				break;
+			}
+		}
+		target.updateHighscore(noHighscore.getUUID(), noHighscore.getName(), 5);
+
+		assertFalse(migrator().run(false));
+		assertTrue(messages.contains("1 players differ between the two datastores."));
+	}
+
+	private DatastoreMigrator migrator() {
+		return new DatastoreMigrator(source, target, progress, messages::add);
+	}
+
+	private Properties readProgress() throws IOException {
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(progress)) {
+			properties.load(in);
+		}
+		return properties;
+	}
+}
@@ -0,0 +1,100 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for LatencyHistogram.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void emptyHistogramReadsZero() {
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getSum());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(0.99));
+	}
+
+	@Test
+	public void countSumAndMaxAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(5);
+		histogram.record(1000);
+		histogram.record(123456789);
+		histogram.record(-7);
+
+		assertEquals(4, histogram.getCount());
+		assertEquals(5 + 1000 + 123456789, histogram.getSum());
+		assertEquals(123456789, histogram.getMax());
+	}
+
+	@Test
+	public void smallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 4; i++) {
+			histogram.record(i);
+		}
+
+		assertEquals(1, histogram.getPercentile(0.25));
+		assertEquals(2, histogram.getPercentile(0.5));
+		assertEquals(4, histogram.getPercentile(1));
+	}
+
+	@Test
+	public void percentilesAreWithinTheBucketError() {
+		Random random = new Random(7);
+		LatencyHistogram histogram = new LatencyHistogram();
+		long[] values = new long[10000];
+		for (int i = 0; i < values.length; i++) {
+			// spread over six orders of magnitude
+			values[i] = (long) Math.pow(10, 2 + random.nextDouble() * 6);
+			histogram.record(values[i]);
+		}
+		Arrays.sort(values);
+
+		for (double fraction : new double[] {0.5, 0.9, 0.99, 0.999}) {
+			long real = values[(int) Math.ceil(fraction * values.length) - 1];
+			long estimate = histogram.getPercentile(fraction);
+
+			assertTrue(fraction + ": " + estimate + " below " + real, estimate >= real);
+			assertTrue(fraction + ": " + estimate + " too far above " + real, estimate <= real * 1.125 + 1);
+		}
+
+		assertEquals(values[values.length - 1], histogram.getPercentile(1));
+	}
+
+	@Test
+	public void percentileNeverExceedsTheMax() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1000001);
+
+		assertEquals(1000001, histogram.getPercentile(0.5));
+	}
+
+	@Test
+	public void resetClearsEverything() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(100);
+		histogram.record(200);
+		histogram.reset();
+
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getSum());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(0.5));
+
+		histogram.record(300);
+		assertEquals(300, histogram.getPercentile(0.5));
+	}
+}
@@ -0,0 +1,146 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for LeaderboardIndex.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class LeaderboardIndexTest {
+
+	private static final UUID A = new UUID(0, 1);
+	private static final UUID B = new UUID(0, 2);
+	private static final UUID C = new UUID(0, 3);
+	private static final UUID D = new UUID(0, 4);
+
+	@Test
+	public void tiedPlayersShareARank() {
+		LeaderboardIndex index = new LeaderboardIndex();
+		index.update(A, null, 50);
+		index.update(B, null, 80);
+		index.update(C, null, 50);
+		index.update(D, null, 10);
+
+		List<LeaderboardIndex.Entry> page = index.getPage(0, 10);
+		assertEquals(4, page.size());
+		assertEntry(page.get(0), 1, B, 80);
+		assertEntry(page.get(1), 2, A, 50);
+		assertEntry(page.get(2), 2, C, 50);
+		assertEntry(page.get(3), 4, D, 10);
+
+		assertEquals(1, index.getRank(80));
+		assertEquals(2, index.getRank(50));
+		assertEquals(4, index.getRank(10));
+		assertEquals(5, index.getRank(0));
+	}
+
+	@Test
+	public void pageStartingInsideATieKeepsTheTiedRank() {
+		LeaderboardIndex index = new LeaderboardIndex();
+		index.update(A, null, 50);
+		index.update(B, null, 80);
+		index.update(C, null, 50);
+		index.update(D, null, 10);
+
+		List<LeaderboardIndex.Entry> page = index.getPage(2, 2);
+		assertEquals(2, page.size());
+		assertEntry(page.get(0), 2, C, 50);
+		assertEntry(page.get(1), 4, D, 10);
+
+		assertTrue(index.getPage(4, 10).isEmpty());
+		assertTrue(index.getPage(0, 0).isEmpty());
+	}
+
+	@Test
+	public void updateMovesAPlayer() {
+		LeaderboardIndex index = new LeaderboardIndex();
+		index.update(A, null, 10);
+		index.update(B, null, 20);
+
+		index.update(A, 10, 30);
+		assertEquals(2, index.size());
+		List<LeaderboardIndex.Entry> page = index.getPage(0, 10);
+		assertEntry(page.get(0), 1, A, 30);
+		assertEntry(page.get(1), 2, B, 20);
+
+		// the same score again changes nothing
+		index.update(A, 30, 30);
+		assertEquals(2, index.size());
+
+		index.remove(A, 30);
+		assertEquals(1, index.size());
+		assertEntry(index.getPage(0, 10).get(0), 1, B, 20);
+
+		index.clear();
+		assertEquals(0, index.size());
+		assertTrue(index.getPage(0, 10).isEmpty());
+	}
+
+	@Test
+	public void topIncludesEveryTiedPlayer() {
+		LeaderboardIndex index = new LeaderboardIndex();
+		index.update(A, null, 50);
+		index.update(B, null, 80);
+		index.update(C, null, 50);
+		index.update(D, null, 10);
+
+		List<LeaderboardIndex.ScoreGroup> top = index.getTop(2);
+		assertEquals(2, top.size());
+		assertEquals(80, top.get(0).getScore());
+		assertEquals(Collections.singletonList(B), top.get(0).getPlayers());
+		assertEquals(50, top.get(1).getScore());
+		assertEquals(2, top.get(1).getPlayers().size());
+
+		assertTrue(index.getTop(0).isEmpty());
+	}
+
+	@Test
+	public void matchesASortedListAfterRandomUpdates() {
+		Random random = new Random(42);
+		LeaderboardIndex index = new LeaderboardIndex();
+		Map<UUID, Integer> scores = new HashMap<>();
+		List<UUID> players = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			players.add(new UUID(random.nextLong(), random.nextLong()));
+		}
+
+		for (int i = 0; i < 2000; i++) {
+			UUID player = players.get(random.nextInt(players.size()));
+			int score = random.nextInt(50);
+			index.update(player, scores.put(player, score), score);
+		}
+
+		List<UUID> expected = new ArrayList<>(scores.keySet());
+		expected.sort((a, b) -> {
+			int cmp = Integer.compare(scores.get(b), scores.get(a));
+			return cmp != 0 ? cmp : a.compareTo(b);
+		});
+
+		List<LeaderboardIndex.Entry> page = index.getPage(0, expected.size());
+		assertEquals(expected.size(), index.size());
+		for (int i = 0; i < expected.size(); i++) {
+			UUID player = expected.get(i);
+			assertEquals(player, page.get(i).getPlayer());
+			assertEquals(index.getRank(scores.get(player)), page.get(i).getRank());
+		}
+	}
+
+	private static void assertEntry(LeaderboardIndex.Entry entry, int rank, UUID player, int score) {
+		assertEquals(rank, entry.getRank());
+		assertEquals(player, entry.getPlayer());
+		assertEquals(score, entry.getScore());
+	}
+}
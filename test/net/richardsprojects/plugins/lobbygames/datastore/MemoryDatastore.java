@@ -0,0 +1,250 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A datastore kept in a sorted map, for tests that need a real source or
+ * target. Imports can be made to fail after a number of successful ones.
+ * Only what the tests use is implemented.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+class MemoryDatastore extends Datastore {
+
+	private final NavigableMap<UUID, Row> rows = new TreeMap<>();
+	private final AtomicInteger imports = new AtomicInteger();
+	private final AtomicInteger importedPlayers = new AtomicInteger();
+	private volatile int failAfter = Integer.MAX_VALUE;
+
+	/**
+	 * Makes every import after the provided number of successful ones fail.
+	 *
+	 * @param imports how many imports succeed, or Integer.MAX_VALUE for all
+	 */
+	void failImportsAfter(int imports) {
+		this.failAfter = imports;
+		this.imports.set(0);
+	}
+
+	/**
+	 * @return how many players were written by successful imports
+	 */
+	int getImportedPlayers() {
+		return importedPlayers.get();
+	}
+
+	/**
+	 * @return how many players the datastore has
+	 */
+	synchronized int size() {
+		return rows.size();
+	}
+
+	@Override
+	public boolean importPlayers(List<PlayerRecord> players) {
+		if (imports.getAndIncrement() >= failAfter) return false;
+
+		boolean success = super.importPlayers(players);
+		importedPlayers.addAndGet(players.size());
+		return success;
+	}
+
+	@Override
+	public boolean initalize() {
+		return true;
+	}
+
+	@Override
+	public synchronized boolean updateHighscore(UUID player, String name, int score) {
+		row(player, name).highscore = score;
+		return true;
+	}
+
+	@Override
+	public synchronized boolean submitHighscore(UUID player, String name, int score) {
+		Row row = row(player, name);
+		if (row.highscore == null || score > row.highscore) row.highscore = score;
+		return true;
+	}
+
+	@Override
+	public synchronized boolean updateTicTacToeWins(UUID player, String name, int value) {
+		ticTacToe(player, name).wins = value;
+		return true;
+	}
+
+	@Override
+	public synchronized boolean updateTicTacToeLosses(UUID player, String name, int value) {
+		ticTacToe(player, name).losses = value;
+		return true;
+	}
+
+	@Override
+	public synchronized boolean updateTicTacToeTies(UUID player, String name, int value) {
+		ticTacToe(player, name).ties = value;
+		return true;
+	}
+
+	@Override
+	public synchronized boolean incrementTicTacToeWins(UUID player, String name, int delta) {
+		ticTacToe(player, name).wins += delta;
+		return true;
+	}
+
+	@Override
+	public synchronized boolean incrementTicTacToeLosses(UUID player, String name, int delta) {
+		ticTacToe(player, name).losses += delta;
+		return true;
+	}
+
+	@Override
+	public synchronized boolean incrementTicTacToeTies(UUID player, String name, int delta) {
+		ticTacToe(player, name).ties += delta;
+		return true;
+	}
+
+	@Override
+	public synchronized PlayerStats getProfile(UUID player) {
+		Row row = rows.get(player);
+		if (row == null) return null;
+
+		return new PlayerStats(player, row.name, row.highscore == null ? 0 : row.highscore,
+				row.wins, row.losses, row.ties);
+	}
+
+	@Override
+	public synchronized List<PlayerRecord> exportPlayers(UUID after, int limit) {
+		Map<UUID, Row> tail = after == null ? rows : rows.tailMap(after, false);
+		List<PlayerRecord> page = new ArrayList<>();
+
+		for (Map.Entry<UUID, Row> entry : tail.entrySet()) {
+			if (page.size() >= limit) break;
+			Row row = entry.getValue();
+			page.add(new PlayerRecord(entry.getKey(), row.name, row.highscore, row.ticTacToe,
+					row.wins, row.losses, row.ties));
+		}
+
+		return page;
+	}
+
+	@Override
+	public int getHighscore(UUID player) {
+		PlayerStats profile = getProfile(player);
+		return profile == null ? 0 : profile.getHighscore();
+	}
+
+	@Override
+	public int getTicTacToeWins(UUID player) {
+		PlayerStats profile = getProfile(player);
+		return profile == null ? 0 : profile.getTicTacToeWins();
+	}
+
+	@Override
+	public int getTicTacToeLosses(UUID player) {
+		PlayerStats profile = getProfile(player);
+		return profile == null ? 0 : profile.getTicTacToeLosses();
+	}
+
+	@Override
+	public int getTicTacToeTies(UUID player) {
+		PlayerStats profile = getProfile(player);
+		return profile == null ? 0 : profile.getTicTacToeTies();
+	}
+
+	@Override
+	protected Map<UUID, int[]> readCustomStats(Collection<UUID> players, List<StatKey> stats) {
+		Map<UUID, int[]> values = new HashMap<>();
+		for (UUID player : players) {
+			values.put(player, new int[stats.size()]);
+		}
+		return values;
+	}
+
+	@Override
+	protected boolean writeCustomStats(List<StatBatch.Op> ops) {
+		return true;
+	}
+
+	@Override
+	public void onDisable() {}
+
+	@Override
+	public int getHighscore(String player) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getLeaderboard() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public List<LeaderboardEntry> getLeaderboardPage(int offset, int limit) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int getRank(UUID player) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int getTicTacToeWins(String player) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int getTicTacToeLosses(String player) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int getTicTacToeTies(String player) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean registeredName(String name) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public PlayerStats getProfile(String name) {
+		throw new UnsupportedOperationException();
+	}
+
+	private Row row(UUID player, String name) {
+		Row row = rows.get(player);
+		if (row == null) {
+			row = new Row();
+			rows.put(player, row);
+		}
+		if (name != null) row.name = name;
+		return row;
+	}
+
+	private Row ticTacToe(UUID player, String name) {
+		Row row = row(player, name);
+		row.ticTacToe = true;
+		return row;
+	}
+
+	private static class Row {
+
+		private String name;
+		private Integer highscore;
+		private boolean ticTacToe;
+		private int wins;
+		private int losses;
+		private int ties;
+	}
+}
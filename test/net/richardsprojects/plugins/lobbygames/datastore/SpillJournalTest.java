@@ -0,0 +1,191 @@
+package net.richardsprojects.plugins.lobbygames.datastore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that SpillJournal keeps its writes across restarts and merges them
+ * the same way the write-behind queue does. Nothing here reaches MySQL, so
+ * the journals have no connection pool.
+ *
+ * @author RichardB122
+ * @version 10/17/26
+ */
+public class SpillJournalTest {
+
+	private static final UUID PLAYER = new UUID(1, 2);
+	private static final UUID OTHER = new UUID(3, 4);
+
+	private File folder;
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		folder = Files.createTempDirectory("spill").toFile();
+		file = new File(folder, "mysql-spill.dat");
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				child.delete();
+			}
+		}
+		folder.delete();
+	}
+
+	@Test
+	public void newJournalIsEmpty() {
+		SpillJournal journal = open();
+
+		assertFalse(journal.isActive());
+		assertEquals(0, journal.pendingCount());
+		assertNull(journal.getPending(PLAYER));
+		assertTrue(file.exists());
+		journal.close();
+	}
+
+	@Test
+	public void writesSurviveARestart() {
+		SpillJournal journal = open();
+		assertTrue(journal.append(SpillJournal.HIGHSCORE, PLAYER, "Steve", 100));
+		assertTrue(journal.append(SpillJournal.WINS, PLAYER, "Steve", 3));
+		assertTrue(journal.append(SpillJournal.LOSSES_INCREMENT, OTHER, null, 2));
+		journal.close();
+
+		SpillJournal reopened = open();
+		assertTrue(reopened.isActive());
+		assertEquals(2, reopened.pendingCount());
+
+		WriteBehindQueue.Update update = reopened.getPending(PLAYER);
+		assertEquals("Steve", update.getName());
+		assertEquals(Integer.valueOf(100), update.getHighscore());
+		assertEquals(Integer.valueOf(3), update.getWins());
+
+		WriteBehindQueue.Update other = reopened.getPending(OTHER);
+		assertNull(other.getName());
+		assertNull(other.getLosses());
+		assertEquals(2, other.getLossesDelta());
+		reopened.close();
+	}
+
+	@Test
+	public void writesAreMergedInOrder() {
+		SpillJournal journal = open();
+		journal.append(SpillJournal.SUBMITTED_HIGHSCORE, PLAYER, "Steve", 40);
+		journal.append(SpillJournal.SUBMITTED_HIGHSCORE, PLAYER, "Steve", 30);
+		journal.append(SpillJournal.WINS_INCREMENT, PLAYER, "Steve", 1);
+		journal.append(SpillJournal.WINS_INCREMENT, PLAYER, "Steve", 1);
+		journal.append(SpillJournal.TIES, PLAYER, "Steve", 5);
+		journal.append(SpillJournal.TIES_INCREMENT, PLAYER, "Steve", 2);
+
+		WriteBehindQueue.Update update = journal.getPending(PLAYER);
+		assertNull(update.getHighscore());
+		assertEquals(Integer.valueOf(40), update.getBestScore());
+		assertNull(update.getWins());
+		assertEquals(2, update.getWinsDelta());
+		assertEquals(Integer.valueOf(7), update.getTies());
+		assertEquals(0, update.getTiesDelta());
+		journal.close();
+
+		// the file holds the merged writes, so reading it gives the same result
+		WriteBehindQueue.Update reread = open().getPending(PLAYER);
+		assertEquals(Integer.valueOf(40), reread.getBestScore());
+		assertEquals(2, reread.getWinsDelta());
+		assertEquals(Integer.valueOf(7), reread.getTies());
+	}
+
+	@Test
+	public void writeCutOffByACrashIsDropped() throws IOException {
+		SpillJournal journal = open();
+		journal.append(SpillJournal.HIGHSCORE, PLAYER, "Steve", 100);
+		journal.append(SpillJournal.HIGHSCORE, OTHER, "Alex", 200);
+		journal.close();
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 3);
+		}
+
+		SpillJournal reopened = open();
+		assertEquals(1, reopened.pendingCount());
+		assertEquals(Integer.valueOf(100), reopened.getPending(PLAYER).getHighscore());
+		assertNull(reopened.getPending(OTHER));
+
+		// the cut off write is gone from the file too, so new writes follow whole ones
+		assertTrue(reopened.append(SpillJournal.WINS, OTHER, "Alex", 1));
+		reopened.close();
+		assertEquals(Integer.valueOf(1), open().getPending(OTHER).getWins());
+	}
+
+	@Test
+	public void emptyFileOpens() throws IOException {
+		new FileOutputStream(file).close();
+
+		SpillJournal journal = open();
+		assertFalse(journal.isActive());
+		journal.close();
+	}
+
+	@Test
+	public void appendAllSavesEveryChange() {
+		WriteBehindQueue source = new WriteBehindQueue(null, "", Integer.MAX_VALUE);
+		source.queueSubmittedHighscore(PLAYER, "Steve", 75);
+		source.queueTicTacToeLossesIncrement(PLAYER, "Steve", 4);
+		source.queueTicTacToeWins(OTHER, "Alex", 9);
+
+		SpillJournal journal = open();
+		assertTrue(journal.appendAll(source.getPendingUpdates()));
+		journal.close();
+
+		SpillJournal reopened = open();
+		assertEquals(Integer.valueOf(75), reopened.getPending(PLAYER).getBestScore());
+		assertEquals(4, reopened.getPending(PLAYER).getLossesDelta());
+		assertEquals(Integer.valueOf(9), reopened.getPending(OTHER).getWins());
+		reopened.close();
+	}
+
+	@Test
+	public void mergeAppliesTheNewerUpdateOnTop() {
+		WriteBehindQueue queue = new WriteBehindQueue(null, "", Integer.MAX_VALUE);
+		queue.queueHighscore(PLAYER, "Steve", 50);
+		queue.queueTicTacToeWinsIncrement(PLAYER, "Steve", 2);
+		Map<UUID, WriteBehindQueue.Update> older = new HashMap<>(queue.take(Integer.MAX_VALUE));
+
+		queue.queueSubmittedHighscore(PLAYER, "Steve2", 60);
+		queue.queueTicTacToeWinsIncrement(PLAYER, "Steve2", 3);
+		queue.queueTicTacToeLosses(PLAYER, "Steve2", 1);
+		WriteBehindQueue.Update newer = queue.getPending(PLAYER);
+
+		WriteBehindQueue.Update merged = WriteBehindQueue.Update.merge(older.get(PLAYER), newer);
+		assertEquals("Steve2", merged.getName());
+		assertEquals(Integer.valueOf(60), merged.getHighscore());
+		assertNull(merged.getBestScore());
+		assertEquals(5, merged.getWinsDelta());
+		assertEquals(Integer.valueOf(1), merged.getLosses());
+
+		assertEquals(Integer.valueOf(50), WriteBehindQueue.Update.merge(older.get(PLAYER), null).getHighscore());
+	}
+
+	private SpillJournal open() {
+		SpillJournal journal = new SpillJournal(file, null, "");
+		assertTrue(journal.open());
+		return journal;
+	}
+}